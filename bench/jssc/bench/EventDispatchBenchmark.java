@@ -0,0 +1,156 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jssc.LoopbackSerialNativeInterface;
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+import jssc.SerialPortPrimitiveListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Задержка от записи байта до вызова слушателя в потоке обработки ивентов
+ * принимающего порта. Параметр <b>listener</b> выбирает обычный слушатель
+ * (<b>object</b>, новый <b>SerialPortEvent</b> на каждый ивент) или
+ * <b>SerialPortPrimitiveListener</b> (<b>primitive</b>, без выделения
+ * памяти). Частоту выделения памяти на операцию показывает профайлер
+ * <b>gc</b> (ключ <b>-prof gc</b>, см. <b>SerialPortBenchmarks</b>).
+ *
+ * @author scream3r
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDispatchBenchmark {
+
+    private static final long DELIVERY_TIMEOUT = 1000000000L;
+
+    @Param({"object", "primitive"})
+    public String listener;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final byte[] data = new byte[1];
+    private SerialPort writer;
+    private SerialPort reader;
+    private long sent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SerialPortException {
+        LoopbackSerialNativeInterface serialInterface = new LoopbackSerialNativeInterface();
+        serialInterface.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        serialInterface.linkPorts("BENCH_W", "BENCH_R");
+        writer = new SerialPort("BENCH_W", serialInterface);
+        reader = new SerialPort("BENCH_R", serialInterface);
+        writer.openPort();
+        reader.openPort();
+        reader.setEventsMask(SerialPort.MASK_RXCHAR);
+        if("primitive".equals(listener)){
+            reader.addEventListener(new PrimitiveReader());
+        }
+        else {
+            reader.addEventListener(new ObjectReader());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SerialPortException {
+        reader.removeEventListener();
+        reader.closePort();
+        writer.closePort();
+    }
+
+    @Benchmark
+    public long writeToListener() throws SerialPortException {
+        sent++;
+        writer.writeBytes(data);
+        long start = System.nanoTime();
+        while(delivered.get() < sent){
+            if(System.nanoTime() - start > DELIVERY_TIMEOUT){
+                throw new IllegalStateException("RXCHAR was not delivered within 1 s");
+            }
+            Thread.yield();
+        }
+        return sent;
+    }
+
+    private final byte[] buffer = new byte[4096];
+
+    private void consume(int bytesAvailable) {
+        try {
+            int result = reader.readBytes(buffer, 0, Math.min(bytesAvailable, buffer.length));
+            if(result > 0){
+                delivered.addAndGet(result);
+            }
+        }
+        catch (SerialPortException ex) {
+            //Do nothing
+        }
+    }
+
+    private class ObjectReader implements SerialPortEventListener {
+
+        @Override
+        public void serialEvent(SerialPortEvent serialPortEvent) {
+            if(serialPortEvent.isRXCHAR()){
+                consume(serialPortEvent.getEventValue());
+            }
+        }
+    }
+
+    private class PrimitiveReader implements SerialPortPrimitiveListener {
+
+        @Override
+        public void onRxChar(int bytesAvailable) {
+            consume(bytesAvailable);
+        }
+
+        @Override
+        public void onLineChange(int mask, int state) {
+        }
+
+        @Override
+        public void serialEvent(SerialPortEvent serialPortEvent) {
+        }
+    }
+}
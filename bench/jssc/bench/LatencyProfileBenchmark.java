@@ -0,0 +1,153 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc.bench;
+
+import java.util.concurrent.TimeUnit;
+import jssc.LinuxSerialNativeInterface;
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Задержка запрос-ответ через псевдотерминал при разных режимах ожидания
+ * ивентов. Бенчмарк играет роль устройства: пишет байт запроса на ведущую
+ * сторону псевдотерминала и ждёт ответ, а слушатель порта на ведомой
+ * стороне читает запрос и сразу отвечает, как контроллер в замкнутом
+ * контуре. Режим SampleTime выводит перцентили p50/p99/p99.9.
+ * <br></br>
+ * <br>Параметр <b>profile</b>: <b>blocking</b> - обычный поток
+ * EventThread с блокирующим <b>waitEvents</b>, <b>spin</b> - активное
+ * ожидание без парковки, <b>spinPark</b> - активное ожидание с переходом к
+ * парковке через 1 мс без ивентов (см. <b>SerialPort.setEventSpinning</b>).
+ * Параметр <b>cpu</b> привязывает поток цикла ожидания к процессору
+ * (например, <b>-p cpu=3</b>), значение -1 оставляет поток без привязки.</br>
+ * <br>Ответ ожидается опросом ведущей стороны без блокировки, чтобы
+ * пробуждение потока бенчмарка не входило в результат, поэтому режимы
+ * <b>spin</b> и <b>spinPark</b> имеют смысл только при двух и более свободных
+ * ядрах. Работает только на Linux.</br>
+ *
+ * @author scream3r
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyProfileBenchmark {
+
+    private static final long SPIN_PARK_BUDGET = 1;
+    private static final long RESPONSE_TIMEOUT = 1000000000L;
+
+    @Param({"blocking", "spin", "spinPark"})
+    public String profile;
+
+    @Param({"-1"})
+    public int cpu;
+
+    private LinuxSerialNativeInterface masterInterface;
+    private int master;
+    private SerialPort port;
+    private final byte[] request = new byte[1];
+    private final byte[] response = new byte[1];
+
+    @Setup(Level.Trial)
+    public void setUp() throws SerialPortException {
+        masterInterface = new LinuxSerialNativeInterface();
+        master = masterInterface.openPseudoTerminal();
+        if(master == -1){
+            throw new IllegalStateException("Can't open pseudo terminal");
+        }
+        port = new SerialPort(masterInterface.getSlaveName(master), masterInterface);
+        port.openPort();
+        if("spin".equals(profile)){
+            port.setEventSpinning(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        else if("spinPark".equals(profile)){
+            port.setEventSpinning(SPIN_PARK_BUDGET, TimeUnit.MILLISECONDS);
+        }
+        port.setEventThreadAffinity(cpu);
+        port.setEventsMask(SerialPort.MASK_RXCHAR);
+        port.addEventListener(new Responder());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SerialPortException {
+        port.removeEventListener();
+        port.closePort();
+        masterInterface.closePort(master);
+    }
+
+    @Benchmark
+    public int requestResponse() {
+        request[0]++;
+        masterInterface.writeBytes(master, request, 0, 1);
+        long start = System.nanoTime();
+        while(masterInterface.getInputBufferBytesCount(master) < 1){
+            if(System.nanoTime() - start > RESPONSE_TIMEOUT){
+                throw new IllegalStateException("No response within 1 s");
+            }
+            Thread.yield();
+        }
+        if(masterInterface.readBytes(master, response, 0, 1, 0) != 1 || response[0] != request[0]){
+            throw new IllegalStateException("Unexpected response");
+        }
+        return response[0];
+    }
+
+    private class Responder implements SerialPortEventListener {
+
+        private final byte[] buffer = new byte[16];
+
+        @Override
+        public void serialEvent(SerialPortEvent serialPortEvent) {
+            if(serialPortEvent.isRXCHAR()){
+                try {
+                    int result = port.readBytes(buffer, 0, Math.min(serialPortEvent.getEventValue(), buffer.length));
+                    if(result > 0){
+                        port.writeBytes(buffer, 0, result);
+                    }
+                }
+                catch (SerialPortException ex) {
+                    //Do nothing
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc.bench;
+
+import java.util.concurrent.TimeUnit;
+import jssc.LinuxSerialNativeInterface;
+import jssc.SerialNativeInterface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Накладные расходы одного вызова <b>SerialNativeInterface</b> для
+ * реализаций <b>"linux"</b> (JNA) и <b>"ffm"</b> (java.lang.foreign) на
+ * маленьких чтениях и записях. Порт - ведомая сторона псевдотерминала,
+ * ведущая сторона всегда обслуживается реализацией <b>"linux"</b>, поэтому
+ * разница результатов относится только к проверяемой реализации.
+ * <br></br>
+ * <br>Работает только на Linux; вариант <b>"ffm"</b> требует JDK 22+ и
+ * класса <b>jssc.FfmSerialNativeInterface</b> в classpath.</br>
+ *
+ * @author scream3r
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class NativeCallBenchmark {
+
+    private static final int READ_TIMEOUT = 1000;
+
+    @Param({"linux", "ffm"})
+    public String backend;
+
+    @Param({"1", "16"})
+    public int bufferSize;
+
+    private LinuxSerialNativeInterface masterInterface;
+    private SerialNativeInterface serialInterface;
+    private int master;
+    private int handle;
+    private byte[] data;
+    private byte[] received;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        masterInterface = new LinuxSerialNativeInterface();
+        master = masterInterface.openPseudoTerminal();
+        if(master == -1){
+            throw new IllegalStateException("Can't open pseudo terminal");
+        }
+        serialInterface = SerialNativeInterface.createInterface(backend);
+        handle = serialInterface.openPort(masterInterface.getSlaveName(master));
+        if(handle == -1){
+            throw new IllegalStateException("Can't open pseudo terminal slave");
+        }
+        data = new byte[bufferSize];
+        received = new byte[bufferSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        serialInterface.closePort(handle);
+        masterInterface.closePort(master);
+    }
+
+    /**
+     * Вызов без передачи данных: количество байт во входном буфере.
+     */
+    @Benchmark
+    public int inputBufferBytesCount() {
+        return serialInterface.getInputBufferBytesCount(handle);
+    }
+
+    /**
+     * Запись в порт проверяемой реализацией, чтение с ведущей стороны.
+     */
+    @Benchmark
+    public int write() {
+        serialInterface.writeBytes(handle, data, 0, bufferSize);
+        return drain(masterInterface, master);
+    }
+
+    /**
+     * Запись на ведущей стороне, чтение из порта проверяемой реализацией.
+     */
+    @Benchmark
+    public int read() {
+        masterInterface.writeBytes(master, data, 0, bufferSize);
+        return drain(serialInterface, handle);
+    }
+
+    private int drain(SerialNativeInterface readerInterface, int readerHandle) {
+        int result = readerInterface.readBytes(readerHandle, received, 0, bufferSize, READ_TIMEOUT);
+        if(result != bufferSize){
+            throw new IllegalStateException("Read failed");
+        }
+        return result;
+    }
+}
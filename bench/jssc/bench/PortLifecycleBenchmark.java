@@ -0,0 +1,79 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc.bench;
+
+import java.util.concurrent.TimeUnit;
+import jssc.LoopbackSerialNativeInterface;
+import jssc.SerialPort;
+import jssc.SerialPortException;
+import jssc.SerialPortList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Стоимость операций управления портом: получения списка портов системы
+ * (<b>SerialPortList.getPortNames()</b>) и полного цикла открытия,
+ * настройки и закрытия виртуального порта.
+ *
+ * @author scream3r
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortLifecycleBenchmark {
+
+    private SerialPort serialPort;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LoopbackSerialNativeInterface serialInterface = new LoopbackSerialNativeInterface();
+        serialInterface.linkPorts("BENCH_A", "BENCH_B");
+        serialPort = new SerialPort("BENCH_A", serialInterface);
+    }
+
+    @Benchmark
+    public String[] getPortNames() {
+        return SerialPortList.getPortNames();
+    }
+
+    @Benchmark
+    public boolean openCloseCycle() throws SerialPortException {
+        serialPort.openPort();
+        serialPort.setParams(SerialPort.BAUDRATE_115200, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        return serialPort.closePort();
+    }
+}
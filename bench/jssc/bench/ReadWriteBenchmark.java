@@ -0,0 +1,129 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc.bench;
+
+import java.util.concurrent.TimeUnit;
+import jssc.LoopbackSerialNativeInterface;
+import jssc.SerialPort;
+import jssc.SerialPortException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Пропускная способность <b>writeBytes</b> и <b>readBytes</b> для разных
+ * размеров буфера. Используется пара виртуальных портов
+ * <b>LoopbackSerialNativeInterface</b> с мгновенной передачей, поэтому
+ * измеряются только накладные расходы библиотеки.
+ *
+ * @author scream3r
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteBenchmark {
+
+    @Param({"1", "16", "256", "4096"})
+    public int bufferSize;
+
+    private SerialPort writer;
+    private SerialPort reader;
+    private SerialPort sink;
+    private byte[] data;
+    private byte[] received;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SerialPortException {
+        LoopbackSerialNativeInterface serialInterface = new LoopbackSerialNativeInterface();
+        serialInterface.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        serialInterface.setInputBufferSize(Math.max(bufferSize, 4096));
+        serialInterface.linkPorts("BENCH_W", "BENCH_R");
+        serialInterface.linkPorts("BENCH_S", "BENCH_NONE");
+        writer = new SerialPort("BENCH_W", serialInterface);
+        reader = new SerialPort("BENCH_R", serialInterface);
+        sink = new SerialPort("BENCH_S", serialInterface);
+        writer.openPort();
+        reader.openPort();
+        sink.openPort();
+        data = new byte[bufferSize];
+        received = new byte[bufferSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SerialPortException {
+        writer.closePort();
+        reader.closePort();
+        sink.closePort();
+    }
+
+    /**
+     * Запись в порт, у которого нет открытого партнёра: данные отбрасываются.
+     */
+    @Benchmark
+    public boolean writeBytes() throws SerialPortException {
+        return sink.writeBytes(data);
+    }
+
+    /**
+     * Запись в порт и чтение тех же данных с другого конца линии в
+     * заранее выделенный массив.
+     */
+    @Benchmark
+    public int writeReadBytes() throws SerialPortException {
+        writer.writeBytes(data);
+        int offset = 0;
+        while(offset < bufferSize){
+            int result = reader.readBytes(received, offset, bufferSize - offset);
+            if(result < 0){
+                throw new IllegalStateException("Read failed");
+            }
+            offset += result;
+        }
+        return offset;
+    }
+
+    /**
+     * Запись в порт и чтение тех же данных методом <b>readBytes(int)</b>,
+     * создающим новый массив на каждый вызов.
+     */
+    @Benchmark
+    public byte[] writeReadAllocating() throws SerialPortException {
+        writer.writeBytes(data);
+        return reader.readBytes(bufferSize);
+    }
+}
@@ -0,0 +1,64 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск всех бенчмарков jSSC с выводом результатов в JSON для сравнения
+ * версий между собой.
+ * <p>
+ * Бенчмарки компилируются вместе с jssc и jmh-core, обработчик аннотаций
+ * jmh-generator-annprocess должен быть в classpath компилятора:</br>
+ * <b>javac -cp jssc.jar:jmh-core.jar:jmh-generator-annprocess.jar -d out bench/jssc/bench/*.java</b></br>
+ * <b>java -cp jssc.jar:jna.jar:jmh-core.jar:&lt;зависимости jmh&gt;:out jssc.bench.SerialPortBenchmarks [файл.json] [regexp]</b>
+ * <p>
+ * По умолчанию результаты записываются в <b>jssc-benchmarks.json</b>.
+ * Профайлер <b>gc</b> добавляет к результатам частоту выделения памяти
+ * (<b>gc.alloc.rate.norm</b>, байт на операцию).
+ *
+ * @author scream3r
+ */
+public class SerialPortBenchmarks {
+
+    private static final String DEFAULT_RESULT_FILE = "jssc-benchmarks.json";
+
+    public static void main(String[] args) throws RunnerException {
+        String resultFile = args.length > 0 ? args[0] : DEFAULT_RESULT_FILE;
+        String include = args.length > 1 ? args[1] : SerialPortBenchmarks.class.getPackage().getName() + ".*";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,627 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+import static jssc.LinuxLibC.EAGAIN;
+import static jssc.LinuxLibC.EINTR;
+import static jssc.LinuxLibC.FIONREAD;
+import static jssc.LinuxLibC.POLLERR;
+import static jssc.LinuxLibC.POLLIN;
+import static jssc.LinuxLibC.POLLNVAL;
+import static jssc.LinuxLibC.POLLOUT;
+
+/**
+ * Реализация <b>SerialNativeInterface</b> для Linux на основе
+ * <b>java.lang.foreign</b> (JDK 22+). Чтение, запись, ожидание готовности
+ * (<b>ppoll</b>) и запрос количества байт во входном буфере выполняются
+ * через downcall-дескрипторы, которые создаются один раз при загрузке
+ * класса. Массивы и буферы передаются в <b>read</b>/<b>write</b> как
+ * <b>MemorySegment</b> без копирования (функции связываются с опцией
+ * <b>Linker.Option.critical(true)</b>, дескриптор порта неблокирующий,
+ * поэтому вызовы не ждут в нативном коде). Настройка порта, ивенты и
+ * статус линий наследуются от <b>LinuxSerialNativeInterface</b>.
+ * <br></br>
+ * <br>Помимо методов <b>SerialNativeInterface</b> класс предоставляет
+ * методы для работы с сегментами памяти по handle типа <b>long</b>.</br>
+ * <br>Класс находится в отдельном каталоге исходников и компилируется
+ * отдельно, на старых JDK он не загружается:</br>
+ * <b>javac --release 22 -cp jssc.jar:jna.jar -d out src-jdk22/jssc/*.java</b>
+ * <br>Выбор реализации -
+ * системным свойством <b>jssc.backend=ffm</b> (см.
+ * <b>SerialNativeInterface.createInterface</b>). Без предупреждений о
+ * доступе к нативному коду JVM запускается с
+ * <b>--enable-native-access=ALL-UNNAMED</b>. Поддерживается только
+ * 64-битный Linux.</br>
+ *
+ * @author scream3r
+ */
+public class FfmSerialNativeInterface extends LinuxSerialNativeInterface {
+
+    private static final long CANCEL_CHECK_INTERVAL = 100000000L;
+    private static final int SCRATCH_SIZE = 64;
+
+    private static final StructLayout CAPTURE_LAYOUT = Linker.Option.captureStateLayout();
+    private static final VarHandle ERRNO = CAPTURE_LAYOUT.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+    private static final boolean HEAP_ACCESS;
+    private static final MethodHandle READ;
+    private static final MethodHandle WRITE;
+    private static final MethodHandle PPOLL;
+    private static final MethodHandle IOCTL;
+
+    static {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup libc = linker.defaultLookup();
+        FunctionDescriptor transfer = FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG);
+        MethodHandle read;
+        MethodHandle write;
+        boolean heapAccess;
+        try {
+            read = downcall(linker, libc, "read", transfer, Linker.Option.critical(true));
+            write = downcall(linker, libc, "write", transfer, Linker.Option.critical(true));
+            heapAccess = true;
+        }
+        catch (IllegalArgumentException ex) {
+            //Линкер не поддерживает critical вместе с captureCallState
+            read = downcall(linker, libc, "read", transfer);
+            write = downcall(linker, libc, "write", transfer);
+            heapAccess = false;
+        }
+        READ = read;
+        WRITE = write;
+        HEAP_ACCESS = heapAccess;
+        PPOLL = downcall(linker, libc, "ppoll", FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, ADDRESS, ADDRESS));
+        IOCTL = downcall(linker, libc, "ioctl", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, ADDRESS), Linker.Option.firstVariadicArg(2));
+    }
+
+    private final Map<Long, FfmPort> ports = new ConcurrentHashMap<Long, FfmPort>();
+    private final ThreadLocal<CallState> callStates = new ThreadLocal<CallState>() {
+        @Override
+        protected CallState initialValue() {
+            return new CallState();
+        }
+    };
+
+    private static MethodHandle downcall(Linker linker, SymbolLookup libc, String name, FunctionDescriptor descriptor, Linker.Option... options) {
+        MemorySegment symbol = libc.find(name).orElseThrow();
+        Linker.Option[] linkerOptions = Arrays.copyOf(options, options.length + 1);
+        linkerOptions[options.length] = Linker.Option.captureCallState("errno");
+        return linker.downcallHandle(symbol, descriptor, linkerOptions);
+    }
+
+    @Override
+    public int openPort(String portName) {
+        int handle = super.openPort(portName);
+        if(handle != -1){
+            ports.put((long)handle, new FfmPort(handle));
+        }
+        return handle;
+    }
+
+    @Override
+    public boolean closePort(int handle) {
+        FfmPort port = ports.remove((long)handle);
+        if(port != null){
+            port.cancelled = true;
+        }
+        return super.closePort(handle);
+    }
+
+    @Override
+    public void cancelIo(int handle) {
+        FfmPort port = ports.get((long)handle);
+        if(port != null){
+            port.cancelled = true;
+        }
+        super.cancelIo(handle);
+    }
+
+    /**
+     * Чтение данных из порта в сегмент памяти. Метод блокируется до
+     * поступления хотя бы одного байта, данные записываются прямо в сегмент.
+     *
+     * @param handle handle открытого порта.
+     * @param segment сегмент для приёма данных.
+     *
+     * @return Метод возвращает количество прочитанных байт или <b>-1</b>
+     * при ошибке.
+     */
+    public int read(long handle, MemorySegment segment) {
+        FfmPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        if(segment.byteSize() == 0){
+            return 0;
+        }
+        port.input.lock();
+        try {
+            return markRead(port, readAvailable(port, callStates.get(), segment));
+        }
+        finally {
+            port.input.unlock();
+        }
+    }
+
+    /**
+     * Чтение данных из порта в сегмент памяти с таймаутом. Метод
+     * блокируется до заполнения сегмента или до истечения таймаута.
+     *
+     * @param timeout таймаут в миллисекундах.
+     *
+     * @return Метод возвращает количество прочитанных байт или <b>-1</b>
+     * при ошибке.
+     */
+    public int read(long handle, MemorySegment segment, int timeout) {
+        FfmPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        if(segment.byteSize() == 0){
+            return 0;
+        }
+        port.input.lock();
+        try {
+            return markRead(port, readTimed(port, callStates.get(), segment, timeout));
+        }
+        finally {
+            port.input.unlock();
+        }
+    }
+
+    /**
+     * Запись всего сегмента памяти в порт.
+     *
+     * @return Метод возвращает количество записанных байт или <b>-1</b>
+     * при ошибке.
+     */
+    public int write(long handle, MemorySegment segment) {
+        return write(handle, segment, -1);
+    }
+
+    private int write(long handle, MemorySegment segment, long timeoutNanos) {
+        FfmPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        if(segment.byteSize() == 0){
+            return 0;
+        }
+        port.output.lock();
+        try {
+            setTxPending(port.fd);
+            return writeTimed(port, callStates.get(), segment, timeoutNanos);
+        }
+        finally {
+            port.output.unlock();
+        }
+    }
+
+    @Override
+    public byte[] readBytes(int handle, int byteCount) {
+        FfmPort port = ports.get((long)handle);
+        if(port == null){
+            return super.readBytes(handle, byteCount);
+        }
+        if(byteCount <= 0){
+            return new byte[0];
+        }
+        byte[] buffer = new byte[byteCount];
+        int offset = 0;
+        CallState state = callStates.get();
+        port.input.lock();
+        try {
+            MemorySegment segment = state.segment(buffer, 0, byteCount);
+            while(offset < byteCount){
+                int result = readAvailable(port, state, segment.asSlice(offset));
+                if(result < 0){
+                    break;
+                }
+                offset += result;
+            }
+            state.copyOut(segment, buffer, 0, offset);
+        }
+        finally {
+            port.input.unlock();
+        }
+        markRead(port, offset);
+        return offset < byteCount ? Arrays.copyOf(buffer, offset) : buffer;
+    }
+
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length) {
+        FfmPort port = ports.get((long)handle);
+        if(port == null){
+            return super.readBytes(handle, buffer, offset, length);
+        }
+        if(length == 0){
+            return 0;
+        }
+        CallState state = callStates.get();
+        port.input.lock();
+        try {
+            MemorySegment segment = state.segment(buffer, offset, length);
+            int result = markRead(port, readAvailable(port, state, segment));
+            state.copyOut(segment, buffer, offset, result);
+            return result;
+        }
+        finally {
+            port.input.unlock();
+        }
+    }
+
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length, int timeout) {
+        FfmPort port = ports.get((long)handle);
+        if(port == null){
+            return super.readBytes(handle, buffer, offset, length, timeout);
+        }
+        if(length == 0){
+            return 0;
+        }
+        CallState state = callStates.get();
+        port.input.lock();
+        try {
+            MemorySegment segment = state.segment(buffer, offset, length);
+            int result = markRead(port, readTimed(port, state, segment, timeout));
+            state.copyOut(segment, buffer, offset, result);
+            return result;
+        }
+        finally {
+            port.input.unlock();
+        }
+    }
+
+    @Override
+    public int readBytes(int handle, ByteBuffer buffer) {
+        if(buffer.isReadOnly()){
+            throw new ReadOnlyBufferException();
+        }
+        if(ports.get((long)handle) == null || (!buffer.isDirect() && !HEAP_ACCESS)){
+            return super.readBytes(handle, buffer);
+        }
+        int result = read((long)handle, MemorySegment.ofBuffer(buffer));
+        if(result > 0){
+            buffer.position(buffer.position() + result);
+        }
+        return result;
+    }
+
+    @Override
+    public int waitInput(int handle, long timeoutNanos) {
+        FfmPort port = ports.get((long)handle);
+        if(port == null){
+            return super.waitInput(handle, timeoutNanos);
+        }
+        CallState state = callStates.get();
+        port.input.lock();
+        try {
+            int available = getInputBytes(port, state);
+            if(available > 0 || timeoutNanos <= 0){
+                return available;
+            }
+            if(awaitReady(port, state, POLLIN, timeoutNanos) < 0){
+                return -1;
+            }
+            return getInputBytes(port, state);
+        }
+        finally {
+            port.input.unlock();
+        }
+    }
+
+    @Override
+    public int getInputBufferBytesCount(int handle) {
+        FfmPort port = ports.get((long)handle);
+        if(port == null){
+            return super.getInputBufferBytesCount(handle);
+        }
+        CallState state = callStates.get();
+        if(ioctl(state, port.fd, FIONREAD, state.argument) != 0){
+            return -1;
+        }
+        return state.argument.get(JAVA_INT, 0);
+    }
+
+    @Override
+    public boolean writeBytes(int handle, byte[] buffer) {
+        return writeBytes(handle, buffer, 0, buffer.length);
+    }
+
+    @Override
+    public boolean writeBytes(int handle, byte[] buffer, int offset, int length) {
+        FfmPort port = ports.get((long)handle);
+        if(port == null){
+            return super.writeBytes(handle, buffer, offset, length);
+        }
+        CallState state = callStates.get();
+        port.output.lock();
+        try {
+            MemorySegment segment = state.segment(buffer, offset, length);
+            state.copyIn(buffer, offset, segment, length);
+            setTxPending(port.fd);
+            return writeTimed(port, state, segment, -1) == length;
+        }
+        finally {
+            port.output.unlock();
+        }
+    }
+
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer) {
+        return writeBuffer(handle, buffer, -1);
+    }
+
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer, int timeout) {
+        return writeBuffer(handle, buffer, Math.max(timeout, 0) * 1000000L);
+    }
+
+    private int writeBuffer(int handle, ByteBuffer buffer, long timeoutNanos) {
+        if(ports.get((long)handle) == null || (!buffer.isDirect() && !HEAP_ACCESS)){
+            return timeoutNanos < 0 ? super.writeBytes(handle, buffer) : super.writeBytes(handle, buffer, (int)(timeoutNanos / 1000000L));
+        }
+        int written = write((long)handle, MemorySegment.ofBuffer(buffer), timeoutNanos);
+        if(written > 0){
+            buffer.position(buffer.position() + written);
+        }
+        return written;
+    }
+
+    private int markRead(FfmPort port, int result) {
+        if(result > 0){
+            setInputRead(port.fd);
+        }
+        return result;
+    }
+
+    private static int readAvailable(FfmPort port, CallState state, MemorySegment segment) {
+        while(true){
+            long result = read(state, port.fd, segment);
+            if(result > 0){
+                return (int)result;
+            }
+            else if(result == 0 || !isRetryable(state.errno()) || awaitReady(port, state, POLLIN, -1) <= 0){
+                return -1;
+            }
+        }
+    }
+
+    private static int readTimed(FfmPort port, CallState state, MemorySegment segment, int timeout) {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        long length = segment.byteSize();
+        long offset = 0;
+        while(offset < length){
+            long result = read(state, port.fd, segment.asSlice(offset));
+            if(result > 0){
+                offset += result;
+            }
+            else if(result == 0 || !isRetryable(state.errno())){
+                return offset > 0 ? (int)offset : -1;
+            }
+            else {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    break;
+                }
+                if(awaitReady(port, state, POLLIN, remaining) < 0){
+                    return offset > 0 ? (int)offset : -1;
+                }
+            }
+        }
+        return (int)offset;
+    }
+
+    private static int writeTimed(FfmPort port, CallState state, MemorySegment segment, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        long length = segment.byteSize();
+        long offset = 0;
+        while(offset < length){
+            long result = write(state, port.fd, segment.asSlice(offset));
+            if(result >= 0){
+                offset += result;
+            }
+            else if(!isRetryable(state.errno())){
+                return offset > 0 ? (int)offset : -1;
+            }
+            else {
+                long remaining = -1;
+                if(timeoutNanos >= 0){
+                    remaining = deadline - System.nanoTime();
+                    if(remaining <= 0){
+                        break;
+                    }
+                }
+                if(awaitReady(port, state, POLLOUT, remaining) < 0){
+                    return offset > 0 ? (int)offset : -1;
+                }
+            }
+        }
+        return (int)offset;
+    }
+
+    /**
+     * Ожидание готовности порта вызовом <b>ppoll</b>. Долгое ожидание
+     * выполняется частями по CANCEL_CHECK_INTERVAL, чтобы заметить вызов
+     * <b>cancelIo</b>; в виртуальном потоке <b>ppoll</b> вызывается без
+     * ожидания, а между проверками поток паркуется.
+     *
+     * @return 1 если порт готов, 0 если истёк таймаут, -1 при ошибке.
+     */
+    private static int awaitReady(FfmPort port, CallState state, short events, long timeoutNanos) {
+        boolean virtual = VirtualThreadSupport.isCurrentThreadVirtual();
+        long deadline = System.nanoTime() + timeoutNanos;
+        long parkNanos = VirtualThreadSupport.MIN_PARK_NANOS;
+        MemorySegment pollFd = state.pollFd;
+        while(true){
+            if(port.cancelled){
+                return -1;
+            }
+            long remaining = timeoutNanos < 0 ? -1 : Math.max(0, deadline - System.nanoTime());
+            long slice = remaining >= 0 && remaining < CANCEL_CHECK_INTERVAL ? remaining : CANCEL_CHECK_INTERVAL;
+            long nanos = virtual ? 0 : slice;
+            state.timespec.set(JAVA_LONG, 0, nanos / 1000000000L);
+            state.timespec.set(JAVA_LONG, 8, nanos % 1000000000L);
+            pollFd.set(JAVA_INT, 0, port.fd);
+            pollFd.set(JAVA_SHORT, 4, events);
+            pollFd.set(JAVA_SHORT, 6, (short)0);
+            int result = ppoll(state, pollFd, state.timespec);
+            if(result < 0){
+                return state.errno() == EINTR ? 1 : -1;
+            }
+            if(result > 0){
+                return (pollFd.get(JAVA_SHORT, 6) & (POLLERR | POLLNVAL)) == 0 ? 1 : -1;
+            }
+            if(remaining == 0){
+                return 0;
+            }
+            if(virtual){
+                parkNanos = VirtualThreadSupport.park(remaining > 0 ? Math.min(parkNanos, remaining) : parkNanos);
+            }
+        }
+    }
+
+    private static int getInputBytes(FfmPort port, CallState state) {
+        if(ioctl(state, port.fd, FIONREAD, state.argument) != 0){
+            return 0;
+        }
+        return state.argument.get(JAVA_INT, 0);
+    }
+
+    private static boolean isRetryable(int errno) {
+        return errno == EAGAIN || errno == EINTR;
+    }
+
+    private static long read(CallState state, int fd, MemorySegment segment) {
+        try {
+            return (long)READ.invokeExact(state.capture, fd, segment, segment.byteSize());
+        }
+        catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static long write(CallState state, int fd, MemorySegment segment) {
+        try {
+            return (long)WRITE.invokeExact(state.capture, fd, segment, segment.byteSize());
+        }
+        catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static int ppoll(CallState state, MemorySegment pollFd, MemorySegment timespec) {
+        try {
+            return (int)PPOLL.invokeExact(state.capture, pollFd, 1L, timespec, MemorySegment.NULL);
+        }
+        catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static int ioctl(CallState state, int fd, long request, MemorySegment argument) {
+        try {
+            return (int)IOCTL.invokeExact(state.capture, fd, request, argument);
+        }
+        catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class FfmPort {
+
+        private final int fd;
+        //Не мониторы: ожидание готовности в виртуальном потоке паркует его
+        private final ReentrantLock input = new ReentrantLock();
+        private final ReentrantLock output = new ReentrantLock();
+        private volatile boolean cancelled = false;
+
+        private FfmPort(int fd) {
+            this.fd = fd;
+        }
+    }
+
+    /**
+     * Нативная память потока для параметров вызовов: errno, pollfd,
+     * timespec, аргумент ioctl и промежуточный буфер для массивов (если
+     * линкер не позволяет передавать массивы напрямую).
+     */
+    private static class CallState {
+
+        private final Arena arena = Arena.ofAuto();
+        private final MemorySegment capture = arena.allocate(CAPTURE_LAYOUT);
+        private final MemorySegment pollFd = arena.allocate(8, 8);
+        private final MemorySegment timespec = arena.allocate(16, 8);
+        private final MemorySegment argument = arena.allocate(JAVA_INT);
+        private MemorySegment scratch = arena.allocate(SCRATCH_SIZE);
+
+        private int errno() {
+            return (int)ERRNO.get(capture, 0L);
+        }
+
+        private MemorySegment segment(byte[] buffer, int offset, int length) {
+            if(HEAP_ACCESS){
+                return MemorySegment.ofArray(buffer).asSlice(offset, length);
+            }
+            if(scratch.byteSize() < length){
+                scratch = arena.allocate(length);
+            }
+            return scratch.asSlice(0, length);
+        }
+
+        private void copyIn(byte[] buffer, int offset, MemorySegment segment, int length) {
+            if(!HEAP_ACCESS){
+                MemorySegment.copy(buffer, offset, segment, JAVA_BYTE, 0, length);
+            }
+        }
+
+        private void copyOut(MemorySegment segment, byte[] buffer, int offset, int length) {
+            if(!HEAP_ACCESS && length > 0){
+                MemorySegment.copy(segment, JAVA_BYTE, 0, buffer, offset, length);
+            }
+        }
+    }
+}
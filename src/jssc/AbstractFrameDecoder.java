@@ -0,0 +1,82 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Базовый класс декодеров кадров. Кадры передаются получателю через
+ * окно (duplicate) входного буфера, которое создаётся один раз для каждого
+ * входного буфера, поэтому выделение кадра не создаёт объектов.
+ * <p>
+ * Незавершённый кадр передаётся декодеру повторно вместе с новыми данными.
+ * Чтобы не просматривать его заново при каждом вызове, декодер запоминает
+ * количество уже просмотренных байт (<b>setScanned</b>) и продолжает поиск
+ * конца кадра с этого места. Количество отсчитывается от позиции буфера,
+ * поэтому не зависит от сдвига данных (<b>ByteBuffer.compact()</b>).
+ *
+ * @author scream3r
+ */
+public abstract class AbstractFrameDecoder implements FrameDecoder {
+
+    private ByteBuffer source;
+    private ByteBuffer view;
+    private int scanned = 0;
+
+    /**
+     * Передача получателю кадра, занимающего байты буфера с индексами от
+     * <b>start</b> (включительно) до <b>end</b> (исключительно).
+     */
+    protected final void emit(ByteBuffer buffer, int start, int end, FrameHandler output) {
+        if(buffer != source){
+            view = buffer.duplicate();
+            source = buffer;
+        }
+        view.limit(view.capacity());
+        view.position(start);
+        view.limit(end);
+        output.frameReceived(view);
+    }
+
+    /**
+     * Получение количества байт незавершённого кадра (от позиции буфера),
+     * просмотренных предыдущим вызовом <b>decode</b>.
+     */
+    protected final int getScanned(ByteBuffer buffer) {
+        return Math.min(scanned, buffer.remaining());
+    }
+
+    /**
+     * Сохранение количества просмотренных байт незавершённого кадра.
+     */
+    protected final void setScanned(int scanned) {
+        this.scanned = scanned;
+    }
+
+    @Override
+    public void reset() {
+        scanned = 0;
+    }
+}
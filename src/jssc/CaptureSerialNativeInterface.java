@@ -0,0 +1,310 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Реализация <b>SerialNativeInterface</b>, передающая все вызовы другой
+ * реализации и записывающая трафик в файл захвата
+ * (<b>SerialPortCaptureWriter</b>): открытие и закрытие портов, параметры,
+ * принятые и переданные данные и полученные ивенты. Каналом записи служит
+ * handle порта. Файл захвата воспроизводится
+ * <b>ReplaySerialNativeInterface</b>.
+ * <p>
+ * Пример: <b>new SerialPort(name, new CaptureSerialNativeInterface(
+ * SerialNativeInterface.getDefaultInterface(), writer))</b>.
+ *
+ * @author scream3r
+ */
+public class CaptureSerialNativeInterface extends SerialNativeInterface {
+
+    private final SerialNativeInterface target;
+    private final SerialPortCaptureWriter writer;
+
+    public CaptureSerialNativeInterface(SerialNativeInterface target, SerialPortCaptureWriter writer) {
+        super(false);
+        this.target = target;
+        this.writer = writer;
+    }
+
+    /**
+     * Получение объекта записи захвата.
+     */
+    public SerialPortCaptureWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public int openPort(String portName) {
+        int handle = target.openPort(portName);
+        if(handle != -1){
+            byte[] name = portName.getBytes(SerialPortCaptureWriter.CHARSET);
+            writer.record(SerialPortCaptureWriter.RECORD_OPEN, handle, name, 0, name.length);
+        }
+        return handle;
+    }
+
+    @Override
+    public boolean setParams(int handle, int baudRate, int dataBits, int stopBits, int parity) {
+        boolean result = target.setParams(handle, baudRate, dataBits, stopBits, parity);
+        if(result){
+            writer.recordParams(handle, baudRate, dataBits, stopBits, parity);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean purgePort(int handle, int flags) {
+        return target.purgePort(handle, flags);
+    }
+
+    @Override
+    public boolean closePort(int handle) {
+        boolean result = target.closePort(handle);
+        if(result){
+            writer.record(SerialPortCaptureWriter.RECORD_CLOSE, handle, new byte[0], 0, 0);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean setEventsMask(int handle, int mask) {
+        return target.setEventsMask(handle, mask);
+    }
+
+    @Override
+    public int getEventsMask(int handle) {
+        return target.getEventsMask(handle);
+    }
+
+    @Override
+    public int[][] waitEvents(int handle) {
+        int[][] eventArray = target.waitEvents(handle);
+        if(eventArray != null){
+            for(int[] event : eventArray){
+                writer.recordEvent(handle, event[0], event[1]);
+            }
+        }
+        return eventArray;
+    }
+
+    @Override
+    public int waitEvents(int handle, int[] events) {
+        return recordEvents(handle, events, target.waitEvents(handle, events));
+    }
+
+    @Override
+    public int waitEvents(int handle, int[] events, int timeout) {
+        return recordEvents(handle, events, target.waitEvents(handle, events, timeout));
+    }
+
+    @Override
+    public int waitEvents(int[] handles, int[][] events, int[] eventCounts, int count, int timeout) {
+        int result = target.waitEvents(handles, events, eventCounts, count, timeout);
+        for(int i = 0; i < count; i++){
+            recordEvents(handles[i], events[i], eventCounts[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean setRTS(int handle, boolean value) {
+        return target.setRTS(handle, value);
+    }
+
+    @Override
+    public boolean setDTR(int handle, boolean value) {
+        return target.setDTR(handle, value);
+    }
+
+    @Override
+    public byte[] readBytes(int handle, int byteCount) {
+        byte[] data = target.readBytes(handle, byteCount);
+        if(data != null){
+            writer.record(SerialPortCaptureWriter.RECORD_RX, handle, data, 0, data.length);
+        }
+        return data;
+    }
+
+    @Override
+    public boolean writeBytes(int handle, byte[] buffer) {
+        boolean result = target.writeBytes(handle, buffer);
+        if(result){
+            writer.record(SerialPortCaptureWriter.RECORD_TX, handle, buffer, 0, buffer.length);
+        }
+        return result;
+    }
+
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length) {
+        int result = target.readBytes(handle, buffer, offset, length);
+        if(result > 0){
+            writer.record(SerialPortCaptureWriter.RECORD_RX, handle, buffer, offset, result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean writeBytes(int handle, byte[] buffer, int offset, int length) {
+        boolean result = target.writeBytes(handle, buffer, offset, length);
+        if(result){
+            writer.record(SerialPortCaptureWriter.RECORD_TX, handle, buffer, offset, length);
+        }
+        return result;
+    }
+
+    @Override
+    public int readBytes(int handle, ByteBuffer buffer) {
+        int position = buffer.position();
+        int result = target.readBytes(handle, buffer);
+        if(result > 0){
+            recordBuffer(SerialPortCaptureWriter.RECORD_RX, handle, buffer, position, result);
+        }
+        return result;
+    }
+
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer) {
+        int position = buffer.position();
+        int result = target.writeBytes(handle, buffer);
+        if(result > 0){
+            recordBuffer(SerialPortCaptureWriter.RECORD_TX, handle, buffer, position, result);
+        }
+        return result;
+    }
+
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length, int timeout) {
+        int result = target.readBytes(handle, buffer, offset, length, timeout);
+        if(result > 0){
+            writer.record(SerialPortCaptureWriter.RECORD_RX, handle, buffer, offset, result);
+        }
+        return result;
+    }
+
+    @Override
+    public int waitInput(int handle, long timeoutNanos) {
+        return target.waitInput(handle, timeoutNanos);
+    }
+
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer, int timeout) {
+        int position = buffer.position();
+        int result = target.writeBytes(handle, buffer, timeout);
+        if(result > 0){
+            recordBuffer(SerialPortCaptureWriter.RECORD_TX, handle, buffer, position, result);
+        }
+        return result;
+    }
+
+    @Override
+    public long writeBytes(int handle, ByteBuffer[] buffers, int offset, int length) {
+        int[] positions = new int[length];
+        for(int i = 0; i < length; i++){
+            positions[i] = buffers[offset + i].position();
+        }
+        long result = target.writeBytes(handle, buffers, offset, length);
+        if(result > 0){
+            for(int i = 0; i < length; i++){
+                ByteBuffer buffer = buffers[offset + i];
+                int written = buffer.position() - positions[i];
+                if(written > 0){
+                    recordBuffer(SerialPortCaptureWriter.RECORD_TX, handle, buffer, positions[i], written);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int waitReady(int[] handles, int[] interests, int count, int timeout) {
+        return target.waitReady(handles, interests, count, timeout);
+    }
+
+    @Override
+    public boolean isPortConnected(int handle) {
+        return target.isPortConnected(handle);
+    }
+
+    @Override
+    public void cancelIo(int handle) {
+        target.cancelIo(handle);
+    }
+
+    @Override
+    public boolean setThreadAffinity(int cpu) {
+        return target.setThreadAffinity(cpu);
+    }
+
+    @Override
+    public int getInputBufferBytesCount(int handle) {
+        return target.getInputBufferBytesCount(handle);
+    }
+
+    @Override
+    public String[] getSerialPortNames() {
+        return target.getSerialPortNames();
+    }
+
+    @Override
+    public SerialPortInfo getSerialPortInfo(String portName) {
+        return target.getSerialPortInfo(portName);
+    }
+
+    @Override
+    public int openPortWatch() {
+        return target.openPortWatch();
+    }
+
+    @Override
+    public int waitPortWatch(int watchHandle, int timeout) {
+        return target.waitPortWatch(watchHandle, timeout);
+    }
+
+    @Override
+    public boolean closePortWatch(int watchHandle) {
+        return target.closePortWatch(watchHandle);
+    }
+
+    @Override
+    public int[] getLinesStatus(int handle) {
+        return target.getLinesStatus(handle);
+    }
+
+    private int recordEvents(int handle, int[] events, int count) {
+        for(int i = 0; i < count; i++){
+            writer.recordEvent(handle, events[i * 2], events[i * 2 + 1]);
+        }
+        return count;
+    }
+
+    private void recordBuffer(int type, int handle, ByteBuffer buffer, int position, int length) {
+        ByteBuffer data = buffer.duplicate();
+        data.limit(position + length);
+        data.position(position);
+        writer.record(type, handle, data);
+    }
+}
@@ -0,0 +1,74 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Декодер кадров COBS (Consistent Overhead Byte Stuffing). Кадр
+ * завершается нулевым байтом, кодирование снимается на месте. Кадры с
+ * нарушенной структурой пропускаются.
+ *
+ * @author scream3r
+ */
+public class CobsFrameDecoder extends AbstractFrameDecoder {
+
+    @Override
+    public void decode(ByteBuffer buffer, FrameHandler output) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        for(int i = start + getScanned(buffer); i < limit; i++){
+            if(buffer.get(i) == 0){
+                if(i > start){
+                    int end = unstuff(buffer, start, i);
+                    if(end >= 0){
+                        emit(buffer, start, end, output);
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        buffer.position(start);
+        setScanned(limit - start);
+    }
+
+    private static int unstuff(ByteBuffer buffer, int start, int end) {
+        int write = start;
+        int read = start;
+        while(read < end){
+            int code = buffer.get(read++) & 0xFF;
+            if(code == 0 || read + code - 1 > end){
+                return -1;
+            }
+            for(int i = 1; i < code; i++){
+                buffer.put(write++, buffer.get(read++));
+            }
+            if(code < 0xFF && read < end){
+                buffer.put(write++, (byte)0);
+            }
+        }
+        return write;
+    }
+}
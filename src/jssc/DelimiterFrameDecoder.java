@@ -0,0 +1,80 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Декодер кадров, завершающихся последовательностью-разделителем (например,
+ * <b>"\r\n"</b>).
+ *
+ * @author scream3r
+ */
+public class DelimiterFrameDecoder extends AbstractFrameDecoder {
+
+    private final byte[] delimiter;
+    private final boolean stripDelimiter;
+
+    /**
+     * @param delimiter последовательность байт, завершающая кадр.
+     * @param stripDelimiter если true, разделитель не включается в кадр.
+     */
+    public DelimiterFrameDecoder(byte[] delimiter, boolean stripDelimiter) {
+        if(delimiter.length == 0){
+            throw new IllegalArgumentException("Empty delimiter");
+        }
+        this.delimiter = delimiter.clone();
+        this.stripDelimiter = stripDelimiter;
+    }
+
+    @Override
+    public void decode(ByteBuffer buffer, FrameHandler output) {
+        int start = buffer.position();
+        int limit = buffer.limit() - delimiter.length;
+        //Разделитель мог начаться в конце просмотренных байт
+        int i = start + Math.max(getScanned(buffer) - delimiter.length + 1, 0);
+        while(i <= limit){
+            if(matches(buffer, i)){
+                emit(buffer, start, stripDelimiter ? i : i + delimiter.length, output);
+                i += delimiter.length;
+                start = i;
+            }
+            else {
+                i++;
+            }
+        }
+        buffer.position(start);
+        setScanned(buffer.limit() - start);
+    }
+
+    private boolean matches(ByteBuffer buffer, int index) {
+        for(int i = 0; i < delimiter.length; i++){
+            if(buffer.get(index + i) != delimiter[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+}
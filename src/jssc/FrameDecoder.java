@@ -0,0 +1,53 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Инкрементальный декодер кадров. Декодер получает поток байт порциями и
+ * передаёт каждый полный кадр получателю <b>FrameHandler</b>.
+ *
+ * @author scream3r
+ */
+public interface FrameDecoder {
+
+    /**
+     * Выделение кадров из данных между позицией и лимитом буфера. Для каждого
+     * полного кадра вызывается <b>output.frameReceived()</b>. Позиция буфера
+     * сдвигается за последний обработанный байт: байты незавершённого кадра
+     * остаются в буфере и передаются при следующем вызове вместе с новыми
+     * данными; если вызывающий код их отбрасывает, он вызывает
+     * <b>reset()</b>. Декодер может изменять данные буфера между позицией и
+     * лимитом (например, декодировать экранирование на месте).
+     */
+    public abstract void decode(ByteBuffer buffer, FrameHandler output);
+
+    /**
+     * Сброс состояния декодера. Вызывается, когда незавершённый кадр
+     * отбрасывается.
+     */
+    public abstract void reset();
+}
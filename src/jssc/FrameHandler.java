@@ -0,0 +1,43 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Получатель кадров, выделенных <b>FrameDecoder</b>.
+ *
+ * @author scream3r
+ */
+public interface FrameHandler {
+
+    /**
+     * Получение кадра. Данные кадра находятся между позицией и лимитом
+     * буфера <b>frame</b>. Буфер является окном во внутренний буфер
+     * декодера (без копирования) и действителен только во время вызова:
+     * чтобы сохранить кадр, скопируйте его данные.
+     */
+    public abstract void frameReceived(ByteBuffer frame);
+}
@@ -0,0 +1,89 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Декодер кадров с префиксом длины. Кадр начинается с поля длины размером
+ * 1, 2 или 4 байта, за которым следуют данные. Если поле длины учитывает
+ * не только данные (например, включает само поле или контрольную сумму),
+ * используйте <b>lengthAdjustment</b>: длина данных вычисляется как
+ * значение поля плюс <b>lengthAdjustment</b>.
+ *
+ * @author scream3r
+ */
+public class LengthFieldFrameDecoder extends AbstractFrameDecoder {
+
+    private final int lengthFieldSize;
+    private final boolean bigEndian;
+    private final int lengthAdjustment;
+    private final boolean stripLengthField;
+
+    /**
+     * @param lengthFieldSize размер поля длины: 1, 2 или 4 байта.
+     * @param bigEndian порядок байт поля длины.
+     * @param lengthAdjustment поправка, прибавляемая к значению поля длины.
+     * @param stripLengthField если true, поле длины не включается в кадр.
+     */
+    public LengthFieldFrameDecoder(int lengthFieldSize, boolean bigEndian, int lengthAdjustment, boolean stripLengthField) {
+        if(lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4){
+            throw new IllegalArgumentException("lengthFieldSize must be 1, 2 or 4");
+        }
+        this.lengthFieldSize = lengthFieldSize;
+        this.bigEndian = bigEndian;
+        this.lengthAdjustment = lengthAdjustment;
+        this.stripLengthField = stripLengthField;
+    }
+
+    @Override
+    public void decode(ByteBuffer buffer, FrameHandler output) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while(limit - position >= lengthFieldSize){
+            long length = getLength(buffer, position) + lengthAdjustment;
+            if(length < 0){
+                position++;
+                continue;
+            }
+            long frameLength = lengthFieldSize + length;
+            if(limit - position < frameLength){
+                break;
+            }
+            emit(buffer, stripLengthField ? position + lengthFieldSize : position, position + (int)frameLength, output);
+            position += (int)frameLength;
+        }
+        buffer.position(position);
+    }
+
+    private long getLength(ByteBuffer buffer, int index) {
+        long length = 0;
+        for(int i = 0; i < lengthFieldSize; i++){
+            int value = buffer.get(index + (bigEndian ? i : lengthFieldSize - 1 - i)) & 0xFF;
+            length = (length << 8) | value;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,315 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+/**
+ * Прямое отображение функций libc, необходимых для работы с
+ * последовательными портами в Linux.
+ *
+ * @author scream3r
+ */
+final class LinuxLibC {
+
+    static {
+        Native.register("c");
+    }
+
+    static final int O_RDWR = 02;
+    static final int O_NOCTTY = 0400;
+    static final int O_NONBLOCK = 04000;
+
+    static final int F_GETFL = 3;
+    static final int F_SETFL = 4;
+
+    static final int EINTR = 4;
+    static final int EAGAIN = 11;
+
+    static final int TCSANOW = 0;
+    static final int TCIFLUSH = 0;
+    static final int TCOFLUSH = 1;
+    static final int TCIOFLUSH = 2;
+
+    static final int IGNBRK = 01;
+    static final int BRKINT = 02;
+    static final int IGNPAR = 04;
+    static final int PARMRK = 010;
+    static final int INPCK = 020;
+    static final int ISTRIP = 040;
+    static final int INLCR = 0100;
+    static final int IGNCR = 0200;
+    static final int ICRNL = 0400;
+    static final int IXON = 02000;
+    static final int IXANY = 04000;
+    static final int IXOFF = 010000;
+
+    static final int OPOST = 01;
+
+    static final int CBAUD = 010017;
+    static final int BOTHER = 010000;
+    static final int CSIZE = 060;
+    static final int CS5 = 0;
+    static final int CS6 = 020;
+    static final int CS7 = 040;
+    static final int CS8 = 060;
+    static final int CSTOPB = 0100;
+    static final int CREAD = 0200;
+    static final int PARENB = 0400;
+    static final int PARODD = 01000;
+    static final int CLOCAL = 04000;
+    static final int CMSPAR = 010000000000;
+    static final int CRTSCTS = 020000000000;
+
+    static final int ISIG = 01;
+    static final int ICANON = 02;
+    static final int ECHO = 010;
+    static final int ECHOE = 020;
+    static final int ECHONL = 0100;
+    static final int IEXTEN = 0100000;
+
+    static final int VTIME = 5;
+    static final int VMIN = 6;
+
+    static final int TCGETS2 = 0x802C542A;
+    static final int TCSETS2 = 0x402C542B;
+    static final int TIOCEXCL = 0x540C;
+    static final int TIOCOUTQ = 0x5411;
+    static final int TIOCMGET = 0x5415;
+    static final int TIOCMBIS = 0x5416;
+    static final int TIOCMBIC = 0x5417;
+    static final int FIONREAD = 0x541B;
+    static final int TIOCGSERIAL = 0x541E;
+    static final int TIOCGICOUNT = 0x545D;
+
+    static final int TIOCM_DTR = 0x002;
+    static final int TIOCM_RTS = 0x004;
+    static final int TIOCM_CTS = 0x020;
+    static final int TIOCM_CAR = 0x040;
+    static final int TIOCM_RNG = 0x080;
+    static final int TIOCM_DSR = 0x100;
+
+    static final short POLLIN = 0x001;
+    static final short POLLOUT = 0x004;
+    static final short POLLERR = 0x008;
+    static final short POLLHUP = 0x010;
+    static final short POLLNVAL = 0x020;
+
+    static final int POLLFD_SIZE = 8;
+
+    static final int TIMESPEC_SIZE = Native.LONG_SIZE * 2;
+
+    static final int IOV_MAX = 1024;
+    static final int IOVEC_SIZE = Pointer.SIZE * 2;
+
+    static final int IN_NONBLOCK = 04000;
+    static final int IN_CLOEXEC = 02000000;
+    static final int IN_MOVED_FROM = 0x040;
+    static final int IN_MOVED_TO = 0x080;
+    static final int IN_CREATE = 0x100;
+    static final int IN_DELETE = 0x200;
+    static final int IN_Q_OVERFLOW = 0x4000;
+    static final int INOTIFY_EVENT_SIZE = 16;
+
+    private LinuxLibC() {
+    }
+
+    static native int open(String path, int flags);
+
+    static native int close(int fd);
+
+    static int read(int fd, byte[] buffer, int count) {
+        try {
+            return Checked.read(fd, buffer, count);
+        }
+        catch (LastErrorException ex) {
+            return fail(ex);
+        }
+    }
+
+    static int read(int fd, Pointer buffer, int count) {
+        try {
+            return Checked.read(fd, buffer, count);
+        }
+        catch (LastErrorException ex) {
+            return fail(ex);
+        }
+    }
+
+    static int write(int fd, byte[] buffer, int count) {
+        try {
+            return Checked.write(fd, buffer, count);
+        }
+        catch (LastErrorException ex) {
+            return fail(ex);
+        }
+    }
+
+    static int write(int fd, Pointer buffer, int count) {
+        try {
+            return Checked.write(fd, buffer, count);
+        }
+        catch (LastErrorException ex) {
+            return fail(ex);
+        }
+    }
+
+    static int writev(int fd, Pointer iov, int iovcnt) {
+        try {
+            return Checked.writev(fd, iov, iovcnt);
+        }
+        catch (LastErrorException ex) {
+            return fail(ex);
+        }
+    }
+
+    static native int fcntl(int fd, int command, int argument);
+
+    static int poll(Pointer fds, int nfds, int timeout) {
+        try {
+            return Checked.poll(fds, nfds, timeout);
+        }
+        catch (LastErrorException ex) {
+            return fail(ex);
+        }
+    }
+
+    static int ppoll(Pointer fds, int nfds, Pointer timeout, Pointer sigmask) {
+        try {
+            return Checked.ppoll(fds, nfds, timeout, sigmask);
+        }
+        catch (LastErrorException ex) {
+            return fail(ex);
+        }
+    }
+
+    static native int ioctl(int fd, int request, int[] argument);
+
+    static native int ioctl(int fd, int request, Pointer argument);
+
+    static native int ioctl(int fd, int request, Termios2 argument);
+
+    static native int tcgetattr(int fd, Termios termios);
+
+    static native int tcsetattr(int fd, int optionalActions, Termios termios);
+
+    static native int cfsetispeed(Termios termios, int speed);
+
+    static native int cfsetospeed(Termios termios, int speed);
+
+    static native int tcflush(int fd, int queueSelector);
+
+    static native int openpty(int[] master, int[] slave, Pointer name, Pointer termp, Pointer winp);
+
+    static native String ptsname(int fd);
+
+    static native int sched_setaffinity(int pid, int cpusetsize, long[] mask);
+
+    static native int inotify_init1(int flags);
+
+    static native int inotify_add_watch(int fd, String path, int mask);
+
+    /**
+     * Код ошибки последнего неудачного вызова read/write/writev/poll/ppoll в
+     * текущем потоке.
+     */
+    static int errno() {
+        return lastError.get()[0];
+    }
+
+    private static int fail(LastErrorException ex) {
+        lastError.get()[0] = ex.getErrorCode();
+        return -1;
+    }
+
+    private static final ThreadLocal<int[]> lastError = new ThreadLocal<int[]>() {
+
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /**
+     * Вызовы, после которых проверяется errno. JNA сохраняет errno сразу
+     * после возврата из функции, поэтому код JNA и JVM, выполняющийся до
+     * проверки, не может его изменить.
+     */
+    private static final class Checked {
+
+        static {
+            Native.register("c");
+        }
+
+        private Checked() {
+        }
+
+        static native int read(int fd, byte[] buffer, int count) throws LastErrorException;
+
+        static native int read(int fd, Pointer buffer, int count) throws LastErrorException;
+
+        static native int write(int fd, byte[] buffer, int count) throws LastErrorException;
+
+        static native int write(int fd, Pointer buffer, int count) throws LastErrorException;
+
+        static native int writev(int fd, Pointer iov, int iovcnt) throws LastErrorException;
+
+        static native int poll(Pointer fds, int nfds, int timeout) throws LastErrorException;
+
+        static native int ppoll(Pointer fds, int nfds, Pointer timeout, Pointer sigmask) throws LastErrorException;
+    }
+
+    /**
+     * Структура <b>termios</b> библиотеки glibc.
+     */
+    public static class Termios extends Structure {
+        public int c_iflag;
+        public int c_oflag;
+        public int c_cflag;
+        public int c_lflag;
+        public byte c_line;
+        public byte[] c_cc = new byte[32];
+        public int c_ispeed;
+        public int c_ospeed;
+    }
+
+    /**
+     * Структура <b>termios2</b> ядра, позволяющая задавать произвольную
+     * скорость через флаг <b>BOTHER</b>.
+     */
+    public static class Termios2 extends Structure {
+        public int c_iflag;
+        public int c_oflag;
+        public int c_cflag;
+        public int c_lflag;
+        public byte c_line;
+        public byte[] c_cc = new byte[19];
+        public int c_ispeed;
+        public int c_ospeed;
+    }
+}
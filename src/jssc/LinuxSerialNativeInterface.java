@@ -0,0 +1,1403 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static jssc.LinuxLibC.*;
+
+/**
+ * Реализация <b>SerialNativeInterface</b> для Linux. Работа с портом
+ * ведётся напрямую через вызовы open/termios/ioctl/poll библиотеки libc
+ * (посредством JNA), поэтому библиотека libjssc не требуется.
+ *
+ * @author scream3r
+ */
+public class LinuxSerialNativeInterface extends SerialNativeInterface {
+
+    private static final int WAIT_INTERVAL = 100;
+    private static final int LINES_WAIT_INTERVAL = 10;
+    private static final long CANCEL_CHECK_INTERVAL = 100000000L;
+
+    private static final int LINES_MASK = SerialPort.MASK_CTS + SerialPort.MASK_DSR +
+                                          SerialPort.MASK_RING + SerialPort.MASK_RLSD;
+    private static final int COUNTERS_MASK = SerialPort.MASK_BREAK + SerialPort.MASK_ERR;
+
+    private static final int ICOUNT_SIZE = 80;
+    private static final int ICOUNT_FRAME = 24;
+    private static final int ICOUNT_OVERRUN = 28;
+    private static final int ICOUNT_PARITY = 32;
+    private static final int ICOUNT_BRK = 36;
+    private static final int ICOUNT_BUF_OVERRUN = 40;
+
+    private static final String[] WATCH_PATHS = {"/dev", "/sys/class/tty"};
+    private static final int WATCH_BUFFER_SIZE = 4096;
+    private static final int USB_DEVICE_DEPTH = 4;
+
+    private final Map<Integer, LinuxPort> ports = new ConcurrentHashMap<Integer, LinuxPort>();
+    private final Map<Integer, IoState> watches = new ConcurrentHashMap<Integer, IoState>();
+    private final ThreadLocal<PollSet> pollSets = new ThreadLocal<PollSet>() {
+        @Override
+        protected PollSet initialValue() {
+            return new PollSet();
+        }
+    };
+
+    public LinuxSerialNativeInterface() {
+        super(false);
+    }
+
+    @Override
+    public int openPort(String portName) {
+        int fd = LinuxLibC.open(getDevicePath(portName), O_RDWR | O_NOCTTY | O_NONBLOCK);
+        if(fd < 0){
+            return -1;
+        }
+        ioctl(fd, TIOCEXCL, (Pointer)null);
+        Termios termios = new Termios();
+        if(tcgetattr(fd, termios) == 0){
+            makeRaw(termios);
+            tcsetattr(fd, TCSANOW, termios);
+        }
+        ports.put(fd, new LinuxPort(fd, -1));
+        return fd;
+    }
+
+    @Override
+    public boolean setParams(int handle, int baudRate, int dataBits, int stopBits, int parity) {
+        Termios termios = new Termios();
+        if(tcgetattr(handle, termios) != 0){
+            return false;
+        }
+        makeRaw(termios);
+        termios.c_cflag &= ~(CSIZE | CSTOPB | PARENB | PARODD | CMSPAR);
+        termios.c_iflag &= ~INPCK;
+        switch(dataBits){
+            case 5: termios.c_cflag |= CS5; break;
+            case 6: termios.c_cflag |= CS6; break;
+            case 7: termios.c_cflag |= CS7; break;
+            case 8: termios.c_cflag |= CS8; break;
+            default: return false;
+        }
+        if(stopBits != 0){
+            termios.c_cflag |= CSTOPB;
+        }
+        switch(parity){
+            case SerialPort.PARITY_NONE: break;
+            case SerialPort.PARITY_ODD: termios.c_cflag |= PARENB | PARODD; break;
+            case SerialPort.PARITY_EVEN: termios.c_cflag |= PARENB; break;
+            case SerialPort.PARITY_MARK: termios.c_cflag |= PARENB | PARODD | CMSPAR; break;
+            case SerialPort.PARITY_SPACE: termios.c_cflag |= PARENB | CMSPAR; break;
+            default: return false;
+        }
+        if(parity != SerialPort.PARITY_NONE){
+            termios.c_iflag |= INPCK;
+        }
+        int speed = getBaudRateConstant(baudRate);
+        if(speed != -1){
+            cfsetispeed(termios, speed);
+            cfsetospeed(termios, speed);
+            return tcsetattr(handle, TCSANOW, termios) == 0;
+        }
+        if(tcsetattr(handle, TCSANOW, termios) != 0){
+            return false;
+        }
+        Termios2 termios2 = new Termios2();
+        if(ioctl(handle, TCGETS2, termios2) != 0){
+            return false;
+        }
+        termios2.c_cflag &= ~CBAUD;
+        termios2.c_cflag |= BOTHER;
+        termios2.c_ispeed = baudRate;
+        termios2.c_ospeed = baudRate;
+        return ioctl(handle, TCSETS2, termios2) == 0;
+    }
+
+    @Override
+    public boolean purgePort(int handle, int flags) {
+        boolean rx = (flags & (SerialPort.PURGE_RXABORT | SerialPort.PURGE_RXCLEAR)) != 0;
+        boolean tx = (flags & (SerialPort.PURGE_TXABORT | SerialPort.PURGE_TXCLEAR)) != 0;
+        if(rx && tx){
+            return tcflush(handle, TCIOFLUSH) == 0;
+        }
+        else if(rx){
+            return tcflush(handle, TCIFLUSH) == 0;
+        }
+        else if(tx){
+            return tcflush(handle, TCOFLUSH) == 0;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean closePort(int handle) {
+        LinuxPort port = ports.remove(handle);
+        if(port != null && port.linkedFd != -1){
+            LinuxLibC.close(port.linkedFd);
+        }
+        return LinuxLibC.close(handle) == 0;
+    }
+
+    @Override
+    public boolean setEventsMask(int handle, int mask) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return false;
+        }
+        port.mask = mask;
+        return true;
+    }
+
+    @Override
+    public int getEventsMask(int handle) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return 0;
+        }
+        return port.mask;
+    }
+
+    /**
+     * Ожидание ивентов. В отличие от Windows, драйвер не сообщает о смене
+     * состояния линий, поэтому метод ожидает данные с помощью <b>poll</b>
+     * с небольшим таймаутом, после чего сравнивает состояние порта с
+     * предыдущим. Если ивентов не было, метод возвращает 0. Метод не создаёт
+     * объектов.
+     */
+    @Override
+    public int waitEvents(int handle, int[] events) {
+        return waitEvents(handle, events, WAIT_INTERVAL);
+    }
+
+    @Override
+    public int waitEvents(int handle, int[] events, int timeout) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return 0;
+        }
+        int interval = Math.min(getPollInterval(port), Math.max(timeout, 0));
+        Pointer pollFd = port.eventPoll;
+        pollFd.setInt(0, handle);
+        pollFd.setShort(4, getPollEvents(port));
+        pollFd.setShort(6, (short)0);
+        if(poll(pollFd, 1, interval) > 0 && (pollFd.getShort(6) & (POLLHUP | POLLERR | POLLNVAL)) != 0){
+            sleep(interval);
+        }
+        return collectEvents(handle, port, events);
+    }
+
+    /**
+     * Ожидание ивентов на нескольких портах одним вызовом <b>poll</b>. Порты,
+     * на которых произошёл обрыв связи (POLLHUP), исключаются из ожидания и
+     * проверяются только по таймауту, чтобы не вызывать холостой цикл.
+     */
+    @Override
+    public int waitEvents(int[] handles, int[][] events, int[] eventCounts, int count, int timeout) {
+        Memory pollFds = pollSets.get().memory(count);
+        int interval = Math.max(timeout, 0);
+        for(int i = 0; i < count; i++){
+            LinuxPort port = ports.get(handles[i]);
+            long offset = i * POLLFD_SIZE;
+            if(port == null || port.hangup){
+                pollFds.setInt(offset, -1);
+                pollFds.setShort(offset + 4, (short)0);
+            }
+            else {
+                pollFds.setInt(offset, handles[i]);
+                pollFds.setShort(offset + 4, getPollEvents(port));
+            }
+            pollFds.setShort(offset + 6, (short)0);
+            if(port != null){
+                interval = Math.min(interval, getPollInterval(port));
+            }
+        }
+        if(poll(pollFds, count, interval) < 0 && errno() != EINTR){
+            sleep(interval);
+        }
+        int ready = 0;
+        for(int i = 0; i < count; i++){
+            LinuxPort port = ports.get(handles[i]);
+            if(port == null){
+                eventCounts[i] = 0;
+                continue;
+            }
+            if((pollFds.getShort(i * POLLFD_SIZE + 6) & (POLLHUP | POLLERR | POLLNVAL)) != 0){
+                port.hangup = true;
+            }
+            eventCounts[i] = collectEvents(handles[i], port, events[i]);
+            if(eventCounts[i] > 0){
+                ready++;
+            }
+        }
+        return ready;
+    }
+
+    private static short getPollEvents(LinuxPort port) {
+        if((port.mask & SerialPort.MASK_RXCHAR) != 0 && (port.reportedInput == 0 || port.inputRead)){
+            return POLLIN;
+        }
+        return 0;
+    }
+
+    private static int getPollInterval(LinuxPort port) {
+        if((port.mask & ~SerialPort.MASK_RXCHAR) != 0 || (port.reportedInput != 0 && !port.inputRead)){
+            return LINES_WAIT_INTERVAL;
+        }
+        return WAIT_INTERVAL;
+    }
+
+    private static int collectEvents(int handle, LinuxPort port, int[] events) {
+        int mask = port.mask;
+        int count = 0;
+        if((mask & SerialPort.MASK_RXCHAR) != 0){
+            if(port.inputRead){
+                port.inputRead = false;
+                port.reportedInput = 0;
+            }
+            int available = getInputBytes(handle, port.eventArgument);
+            if(available > 0 && available != port.reportedInput){
+                count = putEvent(events, count, SerialPortEvent.RXCHAR, available);
+            }
+            port.reportedInput = available;
+        }
+        if((mask & SerialPort.MASK_TXEMPTY) != 0 && port.txPending){
+            if(ioctl(handle, TIOCOUTQ, port.eventArgument) == 0 && port.eventArgument[0] == 0){
+                port.txPending = false;
+                count = putEvent(events, count, SerialPortEvent.TXEMPTY, 0);
+            }
+        }
+        if((mask & LINES_MASK) != 0 && port.lines != -1){
+            int lines = getModemLines(handle, port.eventArgument);
+            if(lines != -1){
+                int changed = lines ^ port.lines;
+                port.lines = lines;
+                count = putLineEvent(events, count, mask, changed, lines, SerialPort.MASK_CTS, TIOCM_CTS);
+                count = putLineEvent(events, count, mask, changed, lines, SerialPort.MASK_DSR, TIOCM_DSR);
+                count = putLineEvent(events, count, mask, changed, lines, SerialPort.MASK_RLSD, TIOCM_CAR);
+                count = putLineEvent(events, count, mask, changed, lines, SerialPort.MASK_RING, TIOCM_RNG);
+            }
+        }
+        if((mask & COUNTERS_MASK) != 0 && port.counters != null){
+            Memory counters = port.counters;
+            int frame = counters.getInt(ICOUNT_FRAME);
+            int overrun = counters.getInt(ICOUNT_OVERRUN);
+            int parity = counters.getInt(ICOUNT_PARITY);
+            int brk = counters.getInt(ICOUNT_BRK);
+            int bufOverrun = counters.getInt(ICOUNT_BUF_OVERRUN);
+            if(ioctl(handle, TIOCGICOUNT, counters) == 0){
+                if((mask & SerialPort.MASK_BREAK) != 0 && counters.getInt(ICOUNT_BRK) != brk){
+                    count = putEvent(events, count, SerialPortEvent.BREAK, 0);
+                }
+                int errors = 0;
+                if(counters.getInt(ICOUNT_FRAME) != frame){
+                    errors |= SerialPort.ERROR_FRAME;
+                }
+                if(counters.getInt(ICOUNT_OVERRUN) != overrun){
+                    errors |= SerialPort.ERROR_OVERRUN;
+                }
+                if(counters.getInt(ICOUNT_PARITY) != parity){
+                    errors |= SerialPort.ERROR_PARITY;
+                }
+                if(counters.getInt(ICOUNT_BUF_OVERRUN) != bufOverrun){
+                    errors |= SerialPort.ERROR_RXOVER;
+                }
+                if((mask & SerialPort.MASK_ERR) != 0 && errors != 0){
+                    count = putEvent(events, count, SerialPortEvent.ERR, errors);
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int[][] waitEvents(int handle) {
+        int[] events = new int[MAX_EVENTS * 2];
+        return toEventArray(events, waitEvents(handle, events));
+    }
+
+    @Override
+    public boolean setRTS(int handle, boolean value) {
+        return setModemLine(handle, TIOCM_RTS, value);
+    }
+
+    @Override
+    public boolean setDTR(int handle, boolean value) {
+        return setModemLine(handle, TIOCM_DTR, value);
+    }
+
+    /**
+     * Чтение данных из порта. Метод блокируется до тех пор, пока не будет
+     * прочитано <b>byteCount</b> байт, либо до возникновения ошибки (в этом
+     * случае возвращается только прочитанная часть).
+     */
+    @Override
+    public byte[] readBytes(int handle, int byteCount) {
+        LinuxPort port = ports.get(handle);
+        if(port == null || byteCount <= 0){
+            return new byte[0];
+        }
+        IoState input = port.input;
+        input.lock.lock();
+        try {
+            Memory memory = input.memory(byteCount);
+            long address = Pointer.nativeValue(memory);
+            int offset = 0;
+            while(offset < byteCount){
+                int result = read(handle, input.pointer(address + offset), byteCount - offset);
+                if(result > 0){
+                    offset += result;
+                }
+                else if(result < 0 && isRetryable(errno())){
+                    if(!awaitReady(handle, input, POLLIN)){
+                        break;
+                    }
+                }
+                else {
+                    break;
+                }
+            }
+            if(offset > 0){
+                port.inputRead = true;
+            }
+            byte[] buffer = new byte[offset];
+            memory.read(0, buffer, 0, offset);
+            return buffer;
+        }
+        finally {
+            input.lock.unlock();
+        }
+    }
+
+    /**
+     * Чтение данных из порта в массив. Метод блокируется до поступления хотя
+     * бы одного байта и копирует прочитанные данные прямо в переданный массив.
+     */
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        if(length == 0){
+            return 0;
+        }
+        IoState input = port.input;
+        input.lock.lock();
+        try {
+            Memory memory = input.memory(length);
+            int result = readAvailable(handle, input, Pointer.nativeValue(memory), length);
+            if(result > 0){
+                port.inputRead = true;
+                memory.read(0, buffer, offset, result);
+            }
+            return result;
+        }
+        finally {
+            input.lock.unlock();
+        }
+    }
+
+    /**
+     * Чтение данных из порта с таймаутом. Ожидание данных выполняется
+     * вызовом <b>poll</b> с оставшимся временем таймаута.
+     */
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length, int timeout) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        if(length == 0){
+            return 0;
+        }
+        IoState input = port.input;
+        input.lock.lock();
+        try {
+            Memory memory = input.memory(length);
+            int result = readTimed(handle, input, Pointer.nativeValue(memory), length, timeout);
+            if(result > 0){
+                port.inputRead = true;
+                memory.read(0, buffer, offset, result);
+            }
+            return result;
+        }
+        finally {
+            input.lock.unlock();
+        }
+    }
+
+    /**
+     * Ожидание данных вызовом <b>ppoll</b> с наносекундным таймаутом.
+     */
+    @Override
+    public int waitInput(int handle, long timeoutNanos) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        IoState input = port.input;
+        input.lock.lock();
+        try {
+            int available = getInputBytes(handle, input.argument);
+            if(available > 0 || timeoutNanos <= 0){
+                return available;
+            }
+            if(awaitReady(handle, input, POLLIN, timeoutNanos) < 0){
+                return -1;
+            }
+            return getInputBytes(handle, input.argument);
+        }
+        finally {
+            input.lock.unlock();
+        }
+    }
+
+    /**
+     * Проверка связи вызовом <b>poll</b> без ожидания: после отключения
+     * устройства ядро выставляет для дескриптора POLLHUP или POLLERR.
+     */
+    @Override
+    public boolean isPortConnected(int handle) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return false;
+        }
+        Memory pollFd = pollSets.get().memory(1);
+        pollFd.setInt(0, handle);
+        pollFd.setShort(4, (short)0);
+        pollFd.setShort(6, (short)0);
+        if(poll(pollFd, 1, 0) < 0){
+            return errno() == EINTR;
+        }
+        return (pollFd.getShort(6) & (POLLHUP | POLLERR | POLLNVAL)) == 0;
+    }
+
+    /**
+     * Прерывание ожидания готовности порта. Потоки, ожидающие в
+     * <b>ppoll</b>, замечают прерывание не позже чем через
+     * CANCEL_CHECK_INTERVAL.
+     */
+    @Override
+    public void cancelIo(int handle) {
+        LinuxPort port = ports.get(handle);
+        if(port != null){
+            port.input.cancelled = true;
+            port.output.cancelled = true;
+        }
+    }
+
+    @Override
+    public boolean setThreadAffinity(int cpu) {
+        if(cpu < 0){
+            return false;
+        }
+        long[] mask = new long[cpu / 64 + 1];
+        mask[cpu / 64] = 1L << (cpu % 64);
+        return sched_setaffinity(0, mask.length * 8, mask) == 0;
+    }
+
+    @Override
+    public int getInputBufferBytesCount(int handle) {
+        if(!ports.containsKey(handle)){
+            return -1;
+        }
+        int[] argument = new int[1];
+        if(ioctl(handle, FIONREAD, argument) != 0){
+            return -1;
+        }
+        return argument[0];
+    }
+
+    /**
+     * Чтение данных из порта в буфер. Прямой буфер заполняется вызовом
+     * <b>read</b> без промежуточного копирования.
+     */
+    @Override
+    public int readBytes(int handle, ByteBuffer buffer) {
+        if(buffer.isReadOnly()){
+            throw new ReadOnlyBufferException();
+        }
+        if(!buffer.isDirect()){
+            int result = readBytes(handle, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if(result > 0){
+                buffer.position(buffer.position() + result);
+            }
+            return result;
+        }
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        if(!buffer.hasRemaining()){
+            return 0;
+        }
+        IoState input = port.input;
+        input.lock.lock();
+        try {
+            int result = readAvailable(handle, input, input.address(buffer), buffer.remaining());
+            if(result > 0){
+                port.inputRead = true;
+                buffer.position(buffer.position() + result);
+            }
+            return result;
+        }
+        finally {
+            input.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean writeBytes(int handle, byte[] buffer) {
+        return writeBytes(handle, buffer, 0, buffer.length);
+    }
+
+    @Override
+    public boolean writeBytes(int handle, byte[] buffer, int offset, int length) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return false;
+        }
+        IoState output = port.output;
+        output.lock.lock();
+        try {
+            Memory memory = output.memory(length);
+            memory.write(0, buffer, offset, length);
+            port.txPending = true;
+            return writeFully(handle, output, Pointer.nativeValue(memory), length) == length;
+        }
+        finally {
+            output.lock.unlock();
+        }
+    }
+
+    /**
+     * Запись данных из буфера в порт. Данные прямого буфера передаются
+     * вызову <b>write</b> без промежуточного копирования.
+     */
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer) {
+        return writeBuffer(handle, buffer, -1);
+    }
+
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer, int timeout) {
+        return writeBuffer(handle, buffer, Math.max(timeout, 0) * 1000000L);
+    }
+
+    /**
+     * Запись нескольких буферов одним вызовом <b>writev</b>. Данные прямых
+     * буферов передаются без копирования, данные остальных буферов
+     * копируются в общий промежуточный буфер.
+     */
+    @Override
+    public long writeBytes(int handle, ByteBuffer[] buffers, int offset, int length) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        length = Math.min(length, IOV_MAX);
+        IoState output = port.output;
+        output.lock.lock();
+        try {
+            int heapBytes = 0;
+            for(int i = offset; i < offset + length; i++){
+                if(!buffers[i].isDirect()){
+                    heapBytes += buffers[i].remaining();
+                }
+            }
+            Memory memory = output.memory(heapBytes);
+            Memory iov = output.iov(length);
+            long heapAddress = Pointer.nativeValue(memory);
+            int heapOffset = 0;
+            long total = 0;
+            int count = 0;
+            for(int i = offset; i < offset + length; i++){
+                ByteBuffer buffer = buffers[i];
+                int remaining = buffer.remaining();
+                if(remaining == 0){
+                    continue;
+                }
+                long address;
+                if(buffer.isDirect()){
+                    address = Pointer.nativeValue(Native.getDirectBufferPointer(buffer)) + buffer.position();
+                }
+                else {
+                    if(buffer.hasArray()){
+                        memory.write(heapOffset, buffer.array(), buffer.arrayOffset() + buffer.position(), remaining);
+                    }
+                    else {
+                        byte[] data = new byte[remaining];
+                        buffer.duplicate().get(data);
+                        memory.write(heapOffset, data, 0, remaining);
+                    }
+                    address = heapAddress + heapOffset;
+                    heapOffset += remaining;
+                }
+                setIovec(iov, count, address, remaining);
+                count++;
+                total += remaining;
+            }
+            if(count == 0){
+                return 0;
+            }
+            port.txPending = true;
+            long written = writevFully(handle, output, iov, count, total);
+            if(written < 0){
+                return -1;
+            }
+            long left = written;
+            for(int i = offset; i < offset + length && left > 0; i++){
+                int consumed = (int)Math.min(buffers[i].remaining(), left);
+                buffers[i].position(buffers[i].position() + consumed);
+                left -= consumed;
+            }
+            return written;
+        }
+        finally {
+            output.lock.unlock();
+        }
+    }
+
+    /**
+     * Ожидание готовности портов одним вызовом <b>poll</b>. Закрытый порт
+     * считается готовым, чтобы ожидающая его операция сразу завершилась
+     * ошибкой.
+     */
+    @Override
+    public int waitReady(int[] handles, int[] interests, int count, int timeout) {
+        Memory pollFds = pollSets.get().memory(count);
+        for(int i = 0; i < count; i++){
+            if(!ports.containsKey(handles[i])){
+                return 1;
+            }
+            short events = 0;
+            if((interests[i] & READY_READ) != 0){
+                events |= POLLIN;
+            }
+            if((interests[i] & READY_WRITE) != 0){
+                events |= POLLOUT;
+            }
+            long offset = i * POLLFD_SIZE;
+            pollFds.setInt(offset, handles[i]);
+            pollFds.setShort(offset + 4, events);
+            pollFds.setShort(offset + 6, (short)0);
+        }
+        int result = poll(pollFds, count, Math.max(timeout, 0));
+        if(result < 0){
+            return errno() == EINTR ? 0 : -1;
+        }
+        return result;
+    }
+
+    private int writeBuffer(int handle, ByteBuffer buffer, long timeoutNanos) {
+        LinuxPort port = ports.get(handle);
+        if(port == null){
+            return -1;
+        }
+        int length = buffer.remaining();
+        if(length == 0){
+            return 0;
+        }
+        IoState output = port.output;
+        output.lock.lock();
+        try {
+            long address;
+            if(buffer.isDirect()){
+                address = output.address(buffer);
+            }
+            else {
+                Memory memory = output.memory(length);
+                if(buffer.hasArray()){
+                    memory.write(0, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                }
+                else {
+                    byte[] data = new byte[length];
+                    buffer.duplicate().get(data);
+                    memory.write(0, data, 0, length);
+                }
+                address = Pointer.nativeValue(memory);
+            }
+            port.txPending = true;
+            int written = writeTimed(handle, output, address, length, timeoutNanos);
+            if(written < 0){
+                return -1;
+            }
+            buffer.position(buffer.position() + written);
+            return written;
+        }
+        finally {
+            output.lock.unlock();
+        }
+    }
+
+    /**
+     * Получение списка последовательных портов. Список строится по
+     * содержимому <b>/sys/class/tty</b>: учитываются только устройства,
+     * у которых есть драйвер. Порты драйвера serial8250, за которыми не
+     * стоит реального UART, отбрасываются.
+     */
+    @Override
+    public String[] getSerialPortNames() {
+        String[] names = new File("/sys/class/tty").list();
+        if(names == null){
+            return new String[0];
+        }
+        List<String> portNames = new ArrayList<String>();
+        for(String name : names){
+            File driver = new File("/sys/class/tty/" + name + "/device/driver");
+            if(!driver.exists()){
+                continue;
+            }
+            String devicePath = "/dev/" + name;
+            try {
+                if(driver.getCanonicalFile().getName().equals("serial8250") && !isUartPresent(devicePath)){
+                    continue;
+                }
+            }
+            catch (IOException ex) {
+                continue;
+            }
+            portNames.add(devicePath);
+        }
+        return portNames.toArray(new String[portNames.size()]);
+    }
+
+    /**
+     * Получение сведений о порте из <b>/sys/class/tty</b>: имя драйвера и,
+     * если порт принадлежит USB-устройству, атрибуты idVendor, idProduct,
+     * serial, manufacturer и product этого устройства.
+     */
+    @Override
+    public SerialPortInfo getSerialPortInfo(String portName) {
+        String devicePath = getDevicePath(portName);
+        String name = devicePath.substring(devicePath.lastIndexOf('/') + 1);
+        File device = new File("/sys/class/tty/" + name + "/device");
+        String driver = null;
+        File usbDevice = null;
+        try {
+            File driverLink = new File(device, "driver");
+            if(driverLink.exists()){
+                driver = driverLink.getCanonicalFile().getName();
+            }
+            File parent = device.exists() ? device.getCanonicalFile() : null;
+            for(int i = 0; parent != null && i < USB_DEVICE_DEPTH; i++){
+                if(new File(parent, "idVendor").exists()){
+                    usbDevice = parent;
+                    break;
+                }
+                parent = parent.getParentFile();
+            }
+        }
+        catch (IOException ex) {
+            //Do nothing
+        }
+        if(usbDevice == null){
+            return new SerialPortInfo(devicePath, driver, -1, -1, null, null, null);
+        }
+        return new SerialPortInfo(devicePath, driver,
+                                  parseHex(readAttribute(usbDevice, "idVendor")),
+                                  parseHex(readAttribute(usbDevice, "idProduct")),
+                                  readAttribute(usbDevice, "serial"),
+                                  readAttribute(usbDevice, "manufacturer"),
+                                  readAttribute(usbDevice, "product"));
+    }
+
+    /**
+     * Отслеживание списка портов через <b>inotify</b>: наблюдаются создание,
+     * удаление и переименование файлов в <b>/dev</b> и
+     * <b>/sys/class/tty</b>.
+     */
+    @Override
+    public int openPortWatch() {
+        int fd = inotify_init1(IN_NONBLOCK | IN_CLOEXEC);
+        if(fd < 0){
+            return -1;
+        }
+        int mask = IN_CREATE | IN_DELETE | IN_MOVED_FROM | IN_MOVED_TO;
+        boolean watching = false;
+        for(String path : WATCH_PATHS){
+            if(inotify_add_watch(fd, path, mask) >= 0){
+                watching = true;
+            }
+        }
+        if(!watching){
+            LinuxLibC.close(fd);
+            return -1;
+        }
+        watches.put(fd, new IoState());
+        return fd;
+    }
+
+    /**
+     * Ожидание изменения списка портов. Уведомления о файлах, имя которых не
+     * начинается с "tty", пропускаются.
+     */
+    @Override
+    public int waitPortWatch(int watchHandle, int timeout) {
+        IoState state = watches.get(watchHandle);
+        if(state == null){
+            return -1;
+        }
+        state.lock.lock();
+        try {
+            long deadline = System.nanoTime() + timeout * 1000000L;
+            while(true){
+                int ready = awaitReady(watchHandle, state, POLLIN, Math.max(0, deadline - System.nanoTime()));
+                if(ready <= 0){
+                    return ready;
+                }
+                int changed = readWatchEvents(watchHandle, state);
+                if(changed != 0){
+                    return changed;
+                }
+            }
+        }
+        finally {
+            state.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean closePortWatch(int watchHandle) {
+        IoState state = watches.remove(watchHandle);
+        if(state == null){
+            return false;
+        }
+        state.lock.lock();
+        try {
+            return LinuxLibC.close(watchHandle) == 0;
+        }
+        finally {
+            state.lock.unlock();
+        }
+    }
+
+    @Override
+    public int[] getLinesStatus(int handle) {
+        int[] returnValue = new int[4];
+        int lines = getModemLines(handle, new int[1]);
+        if(lines != -1){
+            returnValue[0] = (lines & TIOCM_CTS) != 0 ? 1 : 0;
+            returnValue[1] = (lines & TIOCM_DSR) != 0 ? 1 : 0;
+            returnValue[2] = (lines & TIOCM_RNG) != 0 ? 1 : 0;
+            returnValue[3] = (lines & TIOCM_CAR) != 0 ? 1 : 0;
+        }
+        return returnValue;
+    }
+
+    /**
+     * Создание пары псевдотерминалов с помощью <b>openpty()</b>. Ведомую
+     * сторону (slave) можно открыть как обычный порт по имени, полученному
+     * методом <b>getSlaveName(int)</b>, а с ведущей стороной (master) можно
+     * работать через методы данного интерфейса по возвращённому handle.
+     *
+     * @return Метод возвращает <b>handle</b> ведущей стороны или <b>-1</b>
+     * если пару создать не удалось.
+     */
+    public int openPseudoTerminal() {
+        int[] master = new int[1];
+        int[] slave = new int[1];
+        if(openpty(master, slave, null, null, null) != 0){
+            return -1;
+        }
+        fcntl(master[0], F_SETFL, fcntl(master[0], F_GETFL, 0) | O_NONBLOCK);
+        LinuxPort port = new LinuxPort(master[0], slave[0]);
+        port.slaveName = ptsname(master[0]);
+        ports.put(master[0], port);
+        return master[0];
+    }
+
+    /**
+     * Получение имени ведомой стороны псевдотерминала.
+     *
+     * @param masterHandle handle, полученный методом <b>openPseudoTerminal()</b>.
+     *
+     * @return Метод возвращает имя устройства (например <b>/dev/pts/3</b>) или
+     * <b>null</b> если handle не принадлежит псевдотерминалу.
+     */
+    public String getSlaveName(int masterHandle) {
+        LinuxPort port = ports.get(masterHandle);
+        if(port == null){
+            return null;
+        }
+        return port.slaveName;
+    }
+
+    /**
+     * Отметка о начале передачи для ивента <b>MASK_TXEMPTY</b>. Вызывается
+     * реализациями, которые пишут в дескриптор порта в обход методов
+     * данного класса.
+     */
+    void setTxPending(int handle) {
+        LinuxPort port = ports.get(handle);
+        if(port != null){
+            port.txPending = true;
+        }
+    }
+
+    /**
+     * Отметка о чтении данных из порта для ивента RXCHAR, если чтение
+     * выполнено в обход методов данного класса. Без отметки буфер,
+     * прочитанный и снова заполненный до того же количества байт между
+     * двумя проверками, не порождает нового ивента.
+     */
+    void setInputRead(int handle) {
+        LinuxPort port = ports.get(handle);
+        if(port != null){
+            port.inputRead = true;
+        }
+    }
+
+    private static String getDevicePath(String portName) {
+        if(portName.indexOf('/') == -1){
+            return "/dev/" + portName;
+        }
+        return portName;
+    }
+
+    private static void makeRaw(Termios termios) {
+        termios.c_iflag &= ~(IGNBRK | BRKINT | PARMRK | ISTRIP | INLCR | IGNCR | ICRNL | IXON | IXOFF | IXANY);
+        termios.c_oflag &= ~OPOST;
+        termios.c_lflag &= ~(ECHO | ECHOE | ECHONL | ICANON | ISIG | IEXTEN);
+        termios.c_cflag &= ~(CSIZE | PARENB | CRTSCTS);
+        termios.c_cflag |= CS8 | CREAD | CLOCAL;
+        termios.c_cc[VMIN] = 1;
+        termios.c_cc[VTIME] = 0;
+    }
+
+    private static int getBaudRateConstant(int baudRate) {
+        switch(baudRate){
+            case 50: return 01;
+            case 75: return 02;
+            case 110: return 03;
+            case 134: return 04;
+            case 150: return 05;
+            case 200: return 06;
+            case 300: return 07;
+            case 600: return 010;
+            case 1200: return 011;
+            case 1800: return 012;
+            case 2400: return 013;
+            case 4800: return 014;
+            case 9600: return 015;
+            case 19200: return 016;
+            case 38400: return 017;
+            case 57600: return 010001;
+            case 115200: return 010002;
+            case 230400: return 010003;
+            case 460800: return 010004;
+            case 500000: return 010005;
+            case 576000: return 010006;
+            case 921600: return 010007;
+            case 1000000: return 010010;
+            case 1152000: return 010011;
+            case 1500000: return 010012;
+            case 2000000: return 010013;
+            case 2500000: return 010014;
+            case 3000000: return 010015;
+            case 3500000: return 010016;
+            case 4000000: return 010017;
+            default: return -1;
+        }
+    }
+
+    private static boolean isRetryable(int errno) {
+        return errno == EAGAIN || errno == EINTR;
+    }
+
+    private static boolean awaitReady(int handle, IoState state, short events) {
+        return awaitReady(handle, state, events, -1) > 0;
+    }
+
+    /**
+     * Ожидание готовности порта к чтению или записи вызовом <b>ppoll</b>, что
+     * позволяет задавать таймаут точнее миллисекунды. В виртуальном потоке
+     * <b>ppoll</b> вызывается без ожидания, а между проверками поток
+     * паркуется, чтобы не занимать поток-носитель. Долгое ожидание
+     * выполняется частями по CANCEL_CHECK_INTERVAL, чтобы заметить вызов
+     * <b>cancelIo</b>.
+     *
+     * @param timeoutNanos таймаут в наносекундах, отрицательное значение -
+     * ожидание без ограничения.
+     *
+     * @return 1 если порт готов, 0 если истёк таймаут, -1 при ошибке.
+     */
+    private static int awaitReady(int handle, IoState state, short events, long timeoutNanos) {
+        boolean virtual = VirtualThreadSupport.isCurrentThreadVirtual();
+        long deadline = System.nanoTime() + timeoutNanos;
+        long parkNanos = VirtualThreadSupport.MIN_PARK_NANOS;
+        Pointer pollFd = state.poll;
+        while(true){
+            if(state.cancelled){
+                return -1;
+            }
+            long remaining = timeoutNanos < 0 ? -1 : Math.max(0, deadline - System.nanoTime());
+            long slice = remaining >= 0 && remaining < CANCEL_CHECK_INTERVAL ? remaining : CANCEL_CHECK_INTERVAL;
+            Pointer timeout = state.timespec(virtual ? 0 : slice);
+            pollFd.setInt(0, handle);
+            pollFd.setShort(4, events);
+            pollFd.setShort(6, (short)0);
+            int result = ppoll(pollFd, 1, timeout, null);
+            if(result < 0){
+                return errno() == EINTR ? 1 : -1;
+            }
+            if(result > 0){
+                return (pollFd.getShort(6) & (POLLERR | POLLNVAL)) == 0 ? 1 : -1;
+            }
+            if(remaining == 0){
+                return 0;
+            }
+            if(virtual){
+                parkNanos = VirtualThreadSupport.park(remaining > 0 ? Math.min(parkNanos, remaining) : parkNanos);
+            }
+        }
+    }
+
+    private static int readAvailable(int handle, IoState input, long address, int length) {
+        while(true){
+            int result = read(handle, input.pointer(address), length);
+            if(result > 0){
+                return result;
+            }
+            else if(result == 0 || !isRetryable(errno()) || !awaitReady(handle, input, POLLIN)){
+                return -1;
+            }
+        }
+    }
+
+    private static int readTimed(int handle, IoState input, long address, int length, int timeout) {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        int offset = 0;
+        while(offset < length){
+            int result = read(handle, input.pointer(address + offset), length - offset);
+            if(result > 0){
+                offset += result;
+            }
+            else if(result == 0 || !isRetryable(errno())){
+                return offset > 0 ? offset : -1;
+            }
+            else {
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    break;
+                }
+                int ready = awaitReady(handle, input, POLLIN, remaining);
+                if(ready < 0){
+                    return offset > 0 ? offset : -1;
+                }
+            }
+        }
+        return offset;
+    }
+
+    private static int writeFully(int handle, IoState output, long address, int length) {
+        return writeTimed(handle, output, address, length, -1);
+    }
+
+    private static int writeTimed(int handle, IoState output, long address, int length, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        int offset = 0;
+        while(offset < length){
+            int result = write(handle, output.pointer(address + offset), length - offset);
+            if(result >= 0){
+                offset += result;
+            }
+            else if(!isRetryable(errno())){
+                return offset > 0 ? offset : -1;
+            }
+            else {
+                long remaining = -1;
+                if(timeoutNanos >= 0){
+                    remaining = deadline - System.nanoTime();
+                    if(remaining <= 0){
+                        break;
+                    }
+                }
+                if(awaitReady(handle, output, POLLOUT, remaining) < 0){
+                    return offset > 0 ? offset : -1;
+                }
+            }
+        }
+        return offset;
+    }
+
+    private static long writevFully(int handle, IoState output, Memory iov, int count, long total) {
+        long written = 0;
+        int index = 0;
+        while(written < total){
+            int result = writev(handle, output.pointer(Pointer.nativeValue(iov) + index * IOVEC_SIZE), count - index);
+            if(result >= 0){
+                written += result;
+                long left = result;
+                while(index < count && left >= getIovecLength(iov, index)){
+                    left -= getIovecLength(iov, index);
+                    index++;
+                }
+                if(left > 0){
+                    setIovec(iov, index, getIovecBase(iov, index) + left, getIovecLength(iov, index) - left);
+                }
+            }
+            else if(!isRetryable(errno()) || !awaitReady(handle, output, POLLOUT)){
+                return written > 0 ? written : -1;
+            }
+        }
+        return written;
+    }
+
+    private static void setIovec(Memory iov, int index, long base, long length) {
+        if(Pointer.SIZE == 8){
+            iov.setLong(index * IOVEC_SIZE, base);
+            iov.setLong(index * IOVEC_SIZE + 8, length);
+        }
+        else {
+            iov.setInt(index * IOVEC_SIZE, (int)base);
+            iov.setInt(index * IOVEC_SIZE + 4, (int)length);
+        }
+    }
+
+    private static long getIovecBase(Memory iov, int index) {
+        return Pointer.SIZE == 8 ? iov.getLong(index * IOVEC_SIZE) : iov.getInt(index * IOVEC_SIZE) & 0xFFFFFFFFL;
+    }
+
+    private static long getIovecLength(Memory iov, int index) {
+        return Pointer.SIZE == 8 ? iov.getLong(index * IOVEC_SIZE + 8) : iov.getInt(index * IOVEC_SIZE + 4) & 0xFFFFFFFFL;
+    }
+
+    private static int getInputBytes(int handle, int[] argument) {
+        if(ioctl(handle, FIONREAD, argument) != 0){
+            return 0;
+        }
+        return argument[0];
+    }
+
+    private static int getModemLines(int handle, int[] argument) {
+        if(ioctl(handle, TIOCMGET, argument) != 0){
+            return -1;
+        }
+        return argument[0];
+    }
+
+    private static boolean setModemLine(int handle, int line, boolean value) {
+        int[] argument = new int[]{line};
+        return ioctl(handle, value ? TIOCMBIS : TIOCMBIC, argument) == 0;
+    }
+
+    /**
+     * Чтение всех накопленных уведомлений inotify.
+     *
+     * @return 1 если среди уведомлений есть относящиеся к tty-устройствам
+     * (или очередь уведомлений переполнилась), 0 если таких нет, -1 при ошибке.
+     */
+    private static int readWatchEvents(int handle, IoState state) {
+        Memory memory = state.memory(WATCH_BUFFER_SIZE);
+        int changed = 0;
+        while(true){
+            int result = read(handle, memory, WATCH_BUFFER_SIZE);
+            if(result < 0){
+                return isRetryable(errno()) ? changed : -1;
+            }
+            if(result == 0){
+                return changed;
+            }
+            int offset = 0;
+            while(offset + INOTIFY_EVENT_SIZE <= result){
+                int mask = memory.getInt(offset + 4);
+                int length = memory.getInt(offset + 12);
+                if((mask & IN_Q_OVERFLOW) != 0 || (length > 0 && memory.getString(offset + INOTIFY_EVENT_SIZE).startsWith("tty"))){
+                    changed = 1;
+                }
+                offset += INOTIFY_EVENT_SIZE + length;
+            }
+        }
+    }
+
+    private static String readAttribute(File directory, String name) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(new File(directory, name)));
+            String line = reader.readLine();
+            return line != null ? line.trim() : null;
+        }
+        catch (IOException ex) {
+            return null;
+        }
+        finally {
+            if(reader != null){
+                try {
+                    reader.close();
+                }
+                catch (IOException ex) {
+                    //Do nothing
+                }
+            }
+        }
+    }
+
+    private static int parseHex(String value) {
+        if(value == null){
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value, 16);
+        }
+        catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static boolean isUartPresent(String devicePath) {
+        int fd = LinuxLibC.open(devicePath, O_RDWR | O_NOCTTY | O_NONBLOCK);
+        if(fd < 0){
+            return false;
+        }
+        Memory serialInfo = new Memory(128);
+        serialInfo.clear();
+        boolean present = ioctl(fd, TIOCGSERIAL, serialInfo) == 0 && serialInfo.getInt(0) != 0;
+        LinuxLibC.close(fd);
+        return present;
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class LinuxPort {
+
+        private final int linkedFd;
+        private final IoState input = new IoState();
+        private final IoState output = new IoState();
+        private final Memory eventPoll = new Memory(POLLFD_SIZE);
+        private final int[] eventArgument = new int[1];
+        private String slaveName;
+        private Memory counters;
+        private volatile int mask = 0;
+        private volatile boolean txPending = false;
+        private boolean hangup = false;
+        private int reportedInput = 0;
+        private volatile boolean inputRead = false;
+        private int lines;
+
+        private LinuxPort(int fd, int linkedFd) {
+            this.linkedFd = linkedFd;
+            lines = getModemLines(fd, eventArgument);
+            counters = new Memory(ICOUNT_SIZE);
+            counters.clear();
+            if(ioctl(fd, TIOCGICOUNT, counters) != 0){
+                counters = null;
+            }
+        }
+    }
+
+    /**
+     * Состояние одного направления передачи: буфер для копирования данных
+     * из массивов, структура для <b>poll</b> и указатель, адрес которого
+     * переустанавливается при каждом вызове, чтобы не создавать новые объекты.
+     * Операции в одном направлении упорядочиваются блокировкой <b>lock</b>.
+     * Это не монитор: виртуальный поток, ожидающий готовности порта с
+     * захваченным монитором, не отпускал бы поток-носитель.
+     */
+    private static class IoState {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Memory poll = new Memory(POLLFD_SIZE + TIMESPEC_SIZE);
+        private final Pointer timespec = poll.share(POLLFD_SIZE);
+        private final Pointer pointer = new Pointer(0);
+        private final int[] argument = new int[1];
+        private volatile boolean cancelled = false;
+        private Memory memory;
+        private Memory iov;
+        private ByteBuffer buffer;
+        private long bufferAddress;
+
+        private Memory memory(int size) {
+            if(memory == null || memory.size() < size){
+                memory = new Memory(Math.max(size, 1));
+            }
+            return memory;
+        }
+
+        private Pointer timespec(long nanos) {
+            if(Native.LONG_SIZE == 8){
+                timespec.setLong(0, nanos / 1000000000L);
+                timespec.setLong(8, nanos % 1000000000L);
+            }
+            else {
+                timespec.setInt(0, (int)(nanos / 1000000000L));
+                timespec.setInt(4, (int)(nanos % 1000000000L));
+            }
+            return timespec;
+        }
+
+        private Memory iov(int count) {
+            if(iov == null || iov.size() < count * IOVEC_SIZE){
+                iov = new Memory(Math.max(count, 1) * IOVEC_SIZE);
+            }
+            return iov;
+        }
+
+        private Pointer pointer(long address) {
+            Pointer.nativeValue(pointer, address);
+            return pointer;
+        }
+
+        private long address(ByteBuffer buffer) {
+            if(buffer != this.buffer){
+                bufferAddress = Pointer.nativeValue(Native.getDirectBufferPointer(buffer));
+                this.buffer = buffer;
+            }
+            return bufferAddress + buffer.position();
+        }
+    }
+
+    private static class PollSet {
+
+        private Memory memory;
+
+        private Memory memory(int count) {
+            if(memory == null || memory.size() < count * POLLFD_SIZE){
+                memory = new Memory(Math.max(count, 1) * POLLFD_SIZE);
+            }
+            return memory;
+        }
+    }
+}
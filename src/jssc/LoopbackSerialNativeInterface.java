@@ -0,0 +1,955 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Программная реализация <b>SerialNativeInterface</b>, не требующая
+ * оборудования. Интерфейс содержит пары связанных виртуальных портов
+ * (нуль-модемное соединение): данные, записанные в один порт, поступают
+ * в другой со скоростью, соответствующей параметрам <b>setParams</b>
+ * (скорость, биты данных, стоповые биты, чётность). Линия RTS одного
+ * порта соединена с CTS другого, DTR - с DSR и RLSD.
+ * <br></br>
+ * <br>Время передачи можно ускорить методом <b>setSpeedFactor(double)</b>,
+ * а ошибки линии (BREAK, RING, ошибки чётности и кадра) - сымитировать
+ * методами <b>inject*</b>.</br>
+ *
+ * @author scream3r
+ */
+public class LoopbackSerialNativeInterface extends SerialNativeInterface {
+
+    /**
+     * Значение для <b>setSpeedFactor(double)</b>, при котором данные
+     * передаются мгновенно.
+     */
+    public static final double SPEED_UNLIMITED = 0;
+
+    private static final int DEFAULT_INPUT_BUFFER_SIZE = 4096;
+    private static final long WAIT_INTERVAL = 100000000L;
+
+    private static final int LINE_CTS = 1;
+    private static final int LINE_DSR = 2;
+    private static final int LINE_RING = 4;
+    private static final int LINE_RLSD = 8;
+
+    private final Object lock = new Object();
+    private final Map<String, VirtualPort> portsByName = new HashMap<String, VirtualPort>();
+    private final Map<Integer, VirtualPort> portsByHandle = new HashMap<Integer, VirtualPort>();
+    private final Map<Integer, Integer> watches = new HashMap<Integer, Integer>();
+    private int nextHandle = 1;
+    private int portsVersion = 0;
+    private double speedFactor = 1;
+    private int inputBufferSize = DEFAULT_INPUT_BUFFER_SIZE;
+
+    public LoopbackSerialNativeInterface() {
+        super(false);
+    }
+
+    /**
+     * Создание интерфейса с одной парой связанных портов.
+     *
+     * @param portNameA имя первого порта.
+     * @param portNameB имя второго порта.
+     */
+    public LoopbackSerialNativeInterface(String portNameA, String portNameB) {
+        this();
+        linkPorts(portNameA, portNameB);
+    }
+
+    /**
+     * Создание пары связанных виртуальных портов.
+     *
+     * @param portNameA имя первого порта.
+     * @param portNameB имя второго порта.
+     */
+    public void linkPorts(String portNameA, String portNameB) {
+        synchronized(lock){
+            if(portsByName.containsKey(portNameA) || portsByName.containsKey(portNameB) || portNameA.equals(portNameB)){
+                throw new IllegalArgumentException("Port names must be unique");
+            }
+            VirtualPort portA = new VirtualPort();
+            VirtualPort portB = new VirtualPort();
+            portA.peer = portB;
+            portB.peer = portA;
+            portsByName.put(portNameA, portA);
+            portsByName.put(portNameB, portB);
+            portsVersion++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Удаление пары связанных портов, имитирующее отключение устройства.
+     * Открытые порты пары остаются открытыми до вызова <b>closePort</b>, но
+     * запись в них завершается ошибкой, а <b>isPortConnected</b> возвращает
+     * false. Пару с теми же именами можно создать заново.
+     *
+     * @param portName имя одного из портов пары.
+     */
+    public void unlinkPorts(String portName) {
+        synchronized(lock){
+            VirtualPort port = getPort(portName);
+            Iterator<VirtualPort> iterator = portsByName.values().iterator();
+            while(iterator.hasNext()){
+                VirtualPort current = iterator.next();
+                if(current == port || current == port.peer){
+                    current.detached = true;
+                    iterator.remove();
+                }
+            }
+            portsVersion++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Установка множителя скорости передачи. Значение <b>1</b> соответствует
+     * реальной скорости линии, <b>N</b> - ускорению в N раз,
+     * <b>SPEED_UNLIMITED</b> - мгновенной передаче.
+     */
+    public void setSpeedFactor(double speedFactor) {
+        if(speedFactor < 0){
+            throw new IllegalArgumentException("Speed factor must not be negative");
+        }
+        synchronized(lock){
+            this.speedFactor = speedFactor;
+        }
+    }
+
+    /**
+     * Получение множителя скорости передачи.
+     */
+    public double getSpeedFactor() {
+        synchronized(lock){
+            return speedFactor;
+        }
+    }
+
+    /**
+     * Установка размера входящего буфера виртуальных портов. Байты, не
+     * поместившиеся в буфер, теряются, при этом выставляется ошибка
+     * <b>SerialPort.ERROR_RXOVER</b>.
+     */
+    public void setInputBufferSize(int inputBufferSize) {
+        if(inputBufferSize <= 0){
+            throw new IllegalArgumentException("Input buffer size must be positive");
+        }
+        synchronized(lock){
+            this.inputBufferSize = inputBufferSize;
+        }
+    }
+
+    /**
+     * Имитация ошибок приёма на порту. В качестве параметра используйте
+     * константы с префиксом <b>"ERROR_"</b> класса <b>SerialPort</b>, например
+     * <b>"SerialPort.ERROR_FRAME + SerialPort.ERROR_PARITY"</b>. Ошибки будут
+     * переданы ивентом <b>ERR</b>.
+     *
+     * @param portName имя порта, на котором возникает ошибка.
+     * @param errors маска ошибок.
+     */
+    public void injectErrors(String portName, int errors) {
+        synchronized(lock){
+            getPort(portName).pendingErrors |= errors;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Имитация сигнала BREAK на входе порта.
+     *
+     * @param portName имя порта, на котором возникает BREAK.
+     */
+    public void injectBreak(String portName) {
+        synchronized(lock){
+            getPort(portName).pendingBreak = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Изменение состояния линии RING на входе порта.
+     *
+     * @param portName имя порта.
+     * @param value <b>true - вкл.</b>, <b>false - выкл.</b>
+     */
+    public void setRING(String portName, boolean value) {
+        synchronized(lock){
+            getPort(portName).ring = value;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public int openPort(String portName) {
+        synchronized(lock){
+            VirtualPort port = portsByName.get(portName);
+            if(port == null || port.handle != -1){
+                return -1;
+            }
+            port.reset();
+            port.handle = nextHandle++;
+            port.reportedLines = getLines(port);
+            portsByHandle.put(port.handle, port);
+            lock.notifyAll();
+            return port.handle;
+        }
+    }
+
+    @Override
+    public boolean setParams(int handle, int baudRate, int dataBits, int stopBits, int parity) {
+        if(baudRate <= 0 || dataBits < 5 || dataBits > 8 || stopBits < 0 || stopBits > 2 || parity < 0 || parity > 4){
+            return false;
+        }
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port == null){
+                return false;
+            }
+            port.baudRate = baudRate;
+            port.dataBits = dataBits;
+            port.stopBits = stopBits;
+            port.parity = parity;
+            return true;
+        }
+    }
+
+    @Override
+    public boolean purgePort(int handle, int flags) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port == null){
+                return false;
+            }
+            long now = System.nanoTime();
+            if((flags & (SerialPort.PURGE_RXABORT | SerialPort.PURGE_RXCLEAR)) != 0){
+                port.clearInput();
+            }
+            if((flags & (SerialPort.PURGE_TXABORT | SerialPort.PURGE_TXCLEAR)) != 0 && port.txBusyUntil > now){
+                port.peer.discardAfter(now + getCharTime(port));
+                port.txBusyUntil = now;
+            }
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean closePort(int handle) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.remove(handle);
+            if(port == null){
+                return false;
+            }
+            port.handle = -1;
+            port.clearInput();
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean setEventsMask(int handle, int mask) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port == null){
+                return false;
+            }
+            port.mask = mask;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    @Override
+    public int getEventsMask(int handle) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port == null){
+                return 0;
+            }
+            return port.mask;
+        }
+    }
+
+    /**
+     * Ожидание ивентов. Метод блокируется до появления хотя бы одного ивента,
+     * разрешённого маской, либо до истечения внутреннего таймаута (в этом
+     * случае возвращается 0).
+     */
+    @Override
+    public int waitEvents(int handle, int[] events) {
+        return waitEvents(handle, events, (int)(WAIT_INTERVAL / 1000000));
+    }
+
+    @Override
+    public int waitEvents(int handle, int[] events, int timeout) {
+        synchronized(lock){
+            long deadline = System.nanoTime() + Math.min(Math.max(timeout, 0) * 1000000L, WAIT_INTERVAL);
+            while(true){
+                VirtualPort port = portsByHandle.get(handle);
+                if(port == null){
+                    return 0;
+                }
+                long now = System.nanoTime();
+                int count = collectEvents(port, now, events);
+                if(count > 0 || now - deadline >= 0){
+                    return count;
+                }
+                if(!await(getWakeup(port, now, deadline) - now)){
+                    return 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int waitEvents(int[] handles, int[][] events, int[] eventCounts, int count, int timeout) {
+        synchronized(lock){
+            long deadline = System.nanoTime() + Math.max(timeout, 0) * 1000000L;
+            while(true){
+                long now = System.nanoTime();
+                long wakeup = deadline;
+                int ready = 0;
+                for(int i = 0; i < count; i++){
+                    VirtualPort port = portsByHandle.get(handles[i]);
+                    if(port == null){
+                        eventCounts[i] = 0;
+                        continue;
+                    }
+                    eventCounts[i] = collectEvents(port, now, events[i]);
+                    if(eventCounts[i] > 0){
+                        ready++;
+                    }
+                    wakeup = getWakeup(port, now, wakeup);
+                }
+                if(ready > 0 || now - deadline >= 0){
+                    return ready;
+                }
+                if(!await(wakeup - now)){
+                    return 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int[][] waitEvents(int handle) {
+        int[] events = new int[MAX_EVENTS * 2];
+        return toEventArray(events, waitEvents(handle, events));
+    }
+
+    @Override
+    public boolean setRTS(int handle, boolean value) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port == null){
+                return false;
+            }
+            port.rts = value;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean setDTR(int handle, boolean value) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port == null){
+                return false;
+            }
+            port.dtr = value;
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Чтение данных из порта. Метод блокируется до тех пор, пока
+     * <b>byteCount</b> байт не будут "приняты" с учётом скорости линии, либо
+     * до закрытия порта (в этом случае возвращается только прочитанная часть).
+     */
+    @Override
+    public byte[] readBytes(int handle, int byteCount) {
+        byte[] buffer = new byte[Math.max(byteCount, 0)];
+        int offset = 0;
+        synchronized(lock){
+            while(offset < buffer.length){
+                VirtualPort port = portsByHandle.get(handle);
+                if(port == null || port.cancelled){
+                    break;
+                }
+                long now = System.nanoTime();
+                offset += port.take(buffer, offset, buffer.length - offset, now);
+                if(offset < buffer.length){
+                    long arrival = port.nextArrival(now);
+                    if(!await(arrival == -1 ? WAIT_INTERVAL : arrival - now)){
+                        break;
+                    }
+                }
+            }
+        }
+        if(offset < buffer.length){
+            byte[] returnValue = new byte[offset];
+            System.arraycopy(buffer, 0, returnValue, 0, offset);
+            return returnValue;
+        }
+        return buffer;
+    }
+
+    /**
+     * Чтение данных из порта в часть массива. Метод блокируется до "приёма"
+     * хотя бы одного байта.
+     */
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length) {
+        if(length == 0){
+            return 0;
+        }
+        synchronized(lock){
+            while(true){
+                VirtualPort port = portsByHandle.get(handle);
+                if(port == null || port.cancelled){
+                    return -1;
+                }
+                long now = System.nanoTime();
+                int count = port.take(buffer, offset, length, now);
+                if(count > 0){
+                    return count;
+                }
+                long arrival = port.nextArrival(now);
+                if(!await(arrival == -1 ? WAIT_INTERVAL : arrival - now)){
+                    return -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Чтение данных из порта с таймаутом. Метод блокируется до "приёма"
+     * <b>length</b> байт или до истечения таймаута.
+     */
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length, int timeout) {
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        int count = 0;
+        synchronized(lock){
+            while(true){
+                VirtualPort port = portsByHandle.get(handle);
+                if(port == null || port.cancelled){
+                    return count > 0 ? count : -1;
+                }
+                long now = System.nanoTime();
+                count += port.take(buffer, offset + count, length - count, now);
+                long remaining = deadline - now;
+                if(count == length || remaining <= 0){
+                    return count;
+                }
+                long arrival = port.nextArrival(now);
+                if(!await(Math.min(arrival == -1 ? WAIT_INTERVAL : arrival - now, remaining))){
+                    return count;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int waitInput(int handle, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        synchronized(lock){
+            while(true){
+                VirtualPort port = portsByHandle.get(handle);
+                if(port == null || port.cancelled){
+                    return -1;
+                }
+                long now = System.nanoTime();
+                int available = port.available(now);
+                long remaining = deadline - now;
+                if(available > 0 || remaining <= 0){
+                    return available;
+                }
+                long arrival = port.nextArrival(now);
+                if(!await(Math.min(arrival == -1 ? WAIT_INTERVAL : arrival - now, remaining))){
+                    return 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getInputBufferBytesCount(int handle) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port == null){
+                return -1;
+            }
+            return port.available(System.nanoTime());
+        }
+    }
+
+    /**
+     * Чтение данных из порта в буфер. Метод блокируется до "приёма" хотя бы
+     * одного байта.
+     */
+    @Override
+    public int readBytes(int handle, ByteBuffer buffer) {
+        if(!buffer.hasRemaining()){
+            return 0;
+        }
+        synchronized(lock){
+            while(true){
+                VirtualPort port = portsByHandle.get(handle);
+                if(port == null || port.cancelled){
+                    return -1;
+                }
+                long now = System.nanoTime();
+                int count = port.take(buffer, now);
+                if(count > 0){
+                    return count;
+                }
+                long arrival = port.nextArrival(now);
+                if(!await(arrival == -1 ? WAIT_INTERVAL : arrival - now)){
+                    return -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Ожидание готовности портов. Запись в виртуальный порт не блокируется,
+     * поэтому порт, ожидающий записи, готов всегда; порт, ожидающий чтения,
+     * готов, когда во входной буфер "поступил" хотя бы один байт.
+     */
+    @Override
+    public int waitReady(int[] handles, int[] interests, int count, int timeout) {
+        long deadline = System.nanoTime() + Math.max(timeout, 0) * 1000000L;
+        synchronized(lock){
+            while(true){
+                long now = System.nanoTime();
+                long wakeup = deadline;
+                int ready = 0;
+                for(int i = 0; i < count; i++){
+                    VirtualPort port = portsByHandle.get(handles[i]);
+                    if(port == null || (interests[i] & READY_WRITE) != 0 || port.available(now) > 0){
+                        ready++;
+                    }
+                    else {
+                        long arrival = port.nextArrival(now);
+                        if(arrival != -1 && arrival - wakeup < 0){
+                            wakeup = arrival;
+                        }
+                    }
+                }
+                if(ready > 0 || deadline - now <= 0){
+                    return ready;
+                }
+                if(!await(Math.min(wakeup - now, WAIT_INTERVAL))){
+                    return 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Запись данных в порт. Данные помещаются в линию сразу, а поступают во
+     * входящий буфер связанного порта по одному символу за время передачи
+     * символа. Если параметры портов не совпадают, на приёмной стороне
+     * возникает ошибка <b>SerialPort.ERROR_FRAME</b>.
+     */
+    @Override
+    public boolean writeBytes(int handle, byte[] buffer) {
+        return writeBytes(handle, ByteBuffer.wrap(buffer)) != -1;
+    }
+
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port == null || port.detached){
+                return -1;
+            }
+            int length = buffer.remaining();
+            long now = System.nanoTime();
+            long charTime = getCharTime(port);
+            long start = port.txBusyUntil - now > 0 ? port.txBusyUntil : now;
+            VirtualPort peer = port.peer;
+            if(peer.handle != -1){
+                for(int i = 0; i < length; i++){
+                    if(!peer.offer(buffer.get(), start + (i + 1) * charTime, inputBufferSize)){
+                        peer.pendingErrors |= SerialPort.ERROR_RXOVER;
+                    }
+                }
+                if(length > 0 && !port.hasSameParams(peer)){
+                    peer.pendingErrors |= SerialPort.ERROR_FRAME;
+                }
+            }
+            else {
+                buffer.position(buffer.limit());
+            }
+            port.txBusyUntil = start + length * charTime;
+            port.txEmptyPending = true;
+            lock.notifyAll();
+            return length;
+        }
+    }
+
+    /**
+     * Запись в виртуальный порт не блокируется, поэтому таймаут не нужен.
+     */
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer, int timeout) {
+        return writeBytes(handle, buffer);
+    }
+
+    @Override
+    public String[] getSerialPortNames() {
+        synchronized(lock){
+            return portsByName.keySet().toArray(new String[portsByName.size()]);
+        }
+    }
+
+    @Override
+    public boolean isPortConnected(int handle) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            return port != null && !port.detached;
+        }
+    }
+
+    /**
+     * Прерывание ожидающих чтений: они возвращают уже "принятые" данные или
+     * ошибку, не дожидаясь поступления новых.
+     */
+    @Override
+    public void cancelIo(int handle) {
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port != null){
+                port.cancelled = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public int openPortWatch() {
+        synchronized(lock){
+            int watchHandle = nextHandle++;
+            watches.put(watchHandle, portsVersion);
+            return watchHandle;
+        }
+    }
+
+    @Override
+    public int waitPortWatch(int watchHandle, int timeout) {
+        synchronized(lock){
+            long deadline = System.nanoTime() + timeout * 1000000L;
+            while(true){
+                Integer version = watches.get(watchHandle);
+                if(version == null){
+                    return -1;
+                }
+                if(version != portsVersion){
+                    watches.put(watchHandle, portsVersion);
+                    return 1;
+                }
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    return 0;
+                }
+                if(!await(remaining)){
+                    return -1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean closePortWatch(int watchHandle) {
+        synchronized(lock){
+            boolean removed = watches.remove(watchHandle) != null;
+            lock.notifyAll();
+            return removed;
+        }
+    }
+
+    @Override
+    public int[] getLinesStatus(int handle) {
+        int[] returnValue = new int[4];
+        synchronized(lock){
+            VirtualPort port = portsByHandle.get(handle);
+            if(port != null){
+                int lines = getLines(port);
+                returnValue[0] = (lines & LINE_CTS) != 0 ? 1 : 0;
+                returnValue[1] = (lines & LINE_DSR) != 0 ? 1 : 0;
+                returnValue[2] = (lines & LINE_RING) != 0 ? 1 : 0;
+                returnValue[3] = (lines & LINE_RLSD) != 0 ? 1 : 0;
+            }
+        }
+        return returnValue;
+    }
+
+    private VirtualPort getPort(String portName) {
+        VirtualPort port = portsByName.get(portName);
+        if(port == null){
+            throw new IllegalArgumentException("Unknown port: " + portName);
+        }
+        return port;
+    }
+
+    private long getCharTime(VirtualPort port) {
+        if(speedFactor == SPEED_UNLIMITED){
+            return 0;
+        }
+        double bits = 1 + port.dataBits + (port.parity != SerialPort.PARITY_NONE ? 1 : 0);
+        switch(port.stopBits){
+            case 0: bits += 1; break;
+            case 1: bits += 1.5; break;
+            default: bits += 2; break;
+        }
+        return (long)(bits * 1000000000.0 / port.baudRate / speedFactor);
+    }
+
+    private int getLines(VirtualPort port) {
+        int lines = 0;
+        VirtualPort peer = port.peer;
+        if(peer.handle != -1){
+            if(peer.rts){
+                lines |= LINE_CTS;
+            }
+            if(peer.dtr){
+                lines |= LINE_DSR | LINE_RLSD;
+            }
+        }
+        if(port.ring){
+            lines |= LINE_RING;
+        }
+        return lines;
+    }
+
+    private static long getWakeup(VirtualPort port, long now, long wakeup) {
+        long arrival = port.nextArrival(now);
+        if(arrival != -1 && arrival - wakeup < 0){
+            wakeup = arrival;
+        }
+        if(port.txEmptyPending && port.txBusyUntil - wakeup < 0){
+            wakeup = port.txBusyUntil;
+        }
+        return wakeup;
+    }
+
+    private int collectEvents(VirtualPort port, long now, int[] events) {
+        int count = 0;
+        int mask = port.mask;
+        int available = port.available(now);
+        if((mask & SerialPort.MASK_RXCHAR) != 0 && available > 0 && available != port.reportedInput){
+            count = putEvent(events, count, SerialPortEvent.RXCHAR, available);
+        }
+        port.reportedInput = available;
+        if(port.txEmptyPending && port.txBusyUntil - now <= 0){
+            port.txEmptyPending = false;
+            if((mask & SerialPort.MASK_TXEMPTY) != 0){
+                count = putEvent(events, count, SerialPortEvent.TXEMPTY, 0);
+            }
+        }
+        int lines = getLines(port);
+        int changed = lines ^ port.reportedLines;
+        port.reportedLines = lines;
+        count = putLineEvent(events, count, mask, changed, lines, SerialPort.MASK_CTS, LINE_CTS);
+        count = putLineEvent(events, count, mask, changed, lines, SerialPort.MASK_DSR, LINE_DSR);
+        count = putLineEvent(events, count, mask, changed, lines, SerialPort.MASK_RLSD, LINE_RLSD);
+        count = putLineEvent(events, count, mask, changed, lines, SerialPort.MASK_RING, LINE_RING);
+        if(port.pendingBreak){
+            port.pendingBreak = false;
+            if((mask & SerialPort.MASK_BREAK) != 0){
+                count = putEvent(events, count, SerialPortEvent.BREAK, 0);
+            }
+        }
+        if(port.pendingErrors != 0){
+            if((mask & SerialPort.MASK_ERR) != 0){
+                count = putEvent(events, count, SerialPortEvent.ERR, port.pendingErrors);
+            }
+            port.pendingErrors = 0;
+        }
+        return count;
+    }
+
+    private boolean await(long nanos) {
+        if(nanos <= 0){
+            return true;
+        }
+        try {
+            lock.wait(nanos / 1000000, (int)(nanos % 1000000));
+            return true;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class VirtualPort {
+
+        private VirtualPort peer;
+        private boolean detached = false;
+        private boolean cancelled = false;
+        private int handle = -1;
+        private int baudRate;
+        private int dataBits;
+        private int stopBits;
+        private int parity;
+        private int mask;
+        private boolean rts;
+        private boolean dtr;
+        private boolean ring;
+        private byte[] data = new byte[64];
+        private long[] arrivals = new long[64];
+        private int head;
+        private int size;
+        private long txBusyUntil;
+        private boolean txEmptyPending;
+        private int reportedInput;
+        private int reportedLines;
+        private int pendingErrors;
+        private boolean pendingBreak;
+
+        private VirtualPort() {
+            reset();
+        }
+
+        private void reset() {
+            baudRate = SerialPort.BAUDRATE_9600;
+            dataBits = SerialPort.DATABITS_8;
+            stopBits = 0;
+            parity = SerialPort.PARITY_NONE;
+            mask = 0;
+            rts = true;
+            dtr = true;
+            txBusyUntil = System.nanoTime();
+            txEmptyPending = false;
+            reportedInput = 0;
+            pendingErrors = 0;
+            pendingBreak = false;
+            cancelled = false;
+            clearInput();
+        }
+
+        private boolean hasSameParams(VirtualPort port) {
+            return baudRate == port.baudRate && dataBits == port.dataBits &&
+                   stopBits == port.stopBits && parity == port.parity;
+        }
+
+        private boolean offer(byte value, long arrival, int capacity) {
+            if(size >= capacity){
+                return false;
+            }
+            if(size == data.length){
+                byte[] newData = new byte[data.length * 2];
+                long[] newArrivals = new long[data.length * 2];
+                for(int i = 0; i < size; i++){
+                    newData[i] = data[(head + i) % data.length];
+                    newArrivals[i] = arrivals[(head + i) % data.length];
+                }
+                data = newData;
+                arrivals = newArrivals;
+                head = 0;
+            }
+            int index = (head + size) % data.length;
+            data[index] = value;
+            arrivals[index] = arrival;
+            size++;
+            return true;
+        }
+
+        private int available(long now) {
+            int count = 0;
+            while(count < size && arrivals[(head + count) % data.length] - now <= 0){
+                count++;
+            }
+            return count;
+        }
+
+        private long nextArrival(long now) {
+            for(int i = 0; i < size; i++){
+                long arrival = arrivals[(head + i) % data.length];
+                if(arrival - now > 0){
+                    return arrival;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Извлечение принятых данных. После чтения следующая проверка
+         * ивентов сообщает RXCHAR заново, даже если буфер успел заполниться
+         * до прежнего количества байт.
+         */
+        private int take(byte[] buffer, int offset, int length, long now) {
+            int count = 0;
+            while(count < length && size > 0 && arrivals[head] - now <= 0){
+                buffer[offset + count] = data[head];
+                head = (head + 1) % data.length;
+                size--;
+                count++;
+            }
+            if(count > 0){
+                reportedInput = 0;
+            }
+            return count;
+        }
+
+        private int take(ByteBuffer buffer, long now) {
+            int count = 0;
+            while(buffer.hasRemaining() && size > 0 && arrivals[head] - now <= 0){
+                buffer.put(data[head]);
+                head = (head + 1) % data.length;
+                size--;
+                count++;
+            }
+            if(count > 0){
+                reportedInput = 0;
+            }
+            return count;
+        }
+
+        private void discardAfter(long time) {
+            while(size > 0 && arrivals[(head + size - 1) % data.length] - time > 0){
+                size--;
+            }
+        }
+
+        private void clearInput() {
+            head = 0;
+            size = 0;
+            reportedInput = 0;
+        }
+    }
+}
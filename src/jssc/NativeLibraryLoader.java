@@ -0,0 +1,357 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Загрузка библиотеки libjssc. Библиотека загружается при создании первого
+ * экземпляра <b>SerialNativeInterface</b>, работающего через неё, а не при
+ * загрузке классов jSSC.
+ * <br></br>
+ * <br>Порядок поиска:</br>
+ * <br>1. Файл, указанный системным свойством <b>"jssc.library.path"</b>.</br>
+ * <br>2. Ресурс <b>/jssc/natives/&lt;os&gt;-&lt;arch&gt;/&lt;имя
+ * библиотеки&gt;</b> (например <b>/jssc/natives/linux-x86_64/libjssc.so</b>),
+ * либо ресурс из каталога <b>SerialPort.SERIAL_LIBRARY_SEARCH_PATH</b>.
+ * Ресурс один раз извлекается в кэш
+ * <b>&lt;jssc.cache.dir&gt;/&lt;версия&gt;/&lt;os&gt;-&lt;arch&gt;/&lt;сумма&gt;/</b>
+ * (по умолчанию <b>~/.jssc/cache</b>), при следующих запусках JVM
+ * используется файл из кэша после проверки его контрольной суммы CRC32.
+ * Если рядом с ресурсом лежит файл с суффиксом <b>.sha256</b>, извлечённые
+ * данные проверяются по SHA-256 из него, а сам ресурс при заполненном кэше
+ * не читается.</br>
+ * <br>3. Библиотека <b>jssc</b> из <b>java.library.path</b>.</br>
+ * <br>Ошибка загрузки не запоминается: следующий вызов <b>load()</b> снова
+ * попытается загрузить библиотеку.</br>
+ *
+ * @author scream3r
+ */
+final class NativeLibraryLoader {
+
+    static final String LIBRARY_PATH_PROPERTY = "jssc.library.path";
+    static final String CACHE_DIR_PROPERTY = "jssc.cache.dir";
+
+    private static final String LIBRARY_NAME = "jssc";
+    private static final String LEGACY_LIBRARY_NAME = "libjssc";
+    private static final String NATIVES_PATH = "/jssc/natives/";
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+    private static final String CHECKSUM_ALGORITHM = "SHA-256";
+    private static final String CRC_SUFFIX = ".crc32";
+    private static final String DEFAULT_VERSION = "dev";
+    private static final int BUFFER_SIZE = 8192;
+
+    private static boolean loaded = false;
+
+    private NativeLibraryLoader() {
+    }
+
+    /**
+     * Загрузка библиотеки, если она ещё не загружена.
+     *
+     * @throws UnsatisfiedLinkError если библиотеку не удалось найти или
+     * загрузить.
+     */
+    static synchronized void load() {
+        if(loaded){
+            return;
+        }
+        String libraryPath = System.getProperty(LIBRARY_PATH_PROPERTY);
+        if(libraryPath != null){
+            System.load(new File(libraryPath).getAbsolutePath());
+        }
+        else {
+            String resource = findResource();
+            if(resource != null){
+                try {
+                    System.load(extract(resource).getAbsolutePath());
+                }
+                catch (IOException ex) {
+                    UnsatisfiedLinkError error = new UnsatisfiedLinkError("Can't extract " + resource + ": " + ex.getMessage());
+                    error.initCause(ex);
+                    throw error;
+                }
+            }
+            else {
+                System.loadLibrary(LIBRARY_NAME);
+            }
+        }
+        loaded = true;
+    }
+
+    /**
+     * Проверка доступности библиотеки. При необходимости библиотека
+     * загружается.
+     */
+    static boolean isAvailable() {
+        try {
+            load();
+            return true;
+        }
+        catch (UnsatisfiedLinkError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Получение имени платформы в виде <b>&lt;os&gt;-&lt;arch&gt;</b>,
+     * например <b>windows-x86</b> или <b>linux-aarch64</b>.
+     */
+    static String getPlatform() {
+        String osName = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        String os;
+        if(osName.startsWith("windows")){
+            os = "windows";
+        }
+        else if(osName.startsWith("linux")){
+            os = "linux";
+        }
+        else if(osName.startsWith("mac") || osName.startsWith("darwin")){
+            os = "mac";
+        }
+        else if(osName.startsWith("sunos") || osName.startsWith("solaris")){
+            os = "solaris";
+        }
+        else {
+            os = osName.replaceAll("[^a-z0-9]", "");
+        }
+        String archName = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+        String arch;
+        if(archName.equals("amd64") || archName.equals("x86_64")){
+            arch = "x86_64";
+        }
+        else if(archName.equals("x86") || archName.matches("i[3-6]86")){
+            arch = "x86";
+        }
+        else if(archName.equals("aarch64") || archName.equals("arm64")){
+            arch = "aarch64";
+        }
+        else if(archName.startsWith("arm")){
+            arch = "arm";
+        }
+        else {
+            arch = archName.replaceAll("[^a-z0-9_]", "");
+        }
+        return os + "-" + arch;
+    }
+
+    private static String findResource() {
+        String resource = NATIVES_PATH + getPlatform() + "/" + System.mapLibraryName(LIBRARY_NAME);
+        if(NativeLibraryLoader.class.getResource(resource) != null){
+            return resource;
+        }
+        String searchPath = SerialPort.SERIAL_LIBRARY_SEARCH_PATH;
+        if(searchPath != null){
+            if(!searchPath.endsWith("/")){
+                searchPath += "/";
+            }
+            resource = searchPath + System.mapLibraryName(LEGACY_LIBRARY_NAME);
+            if(NativeLibraryLoader.class.getResource(resource) != null){
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Извлечение ресурса в кэш. Если в кэше уже лежит файл, CRC32 которого
+     * совпадает с записанной при извлечении, используется он. Файлы
+     * записываются во временные файлы и переименовываются, поэтому несколько
+     * JVM могут извлекать библиотеку одновременно.
+     */
+    private static File extract(String resource) throws IOException {
+        String fileName = resource.substring(resource.lastIndexOf('/') + 1);
+        String checksum = readChecksum(openChecksum(resource + CHECKSUM_SUFFIX));
+        String key = checksum;
+        if(key == null){
+            key = copy(openResource(resource), null, new CRC32(), null);
+        }
+        File directory = new File(getCacheDirectory(), key);
+        File file = new File(directory, fileName);
+        File crcFile = new File(directory, fileName + CRC_SUFFIX);
+        if(file.isFile() && crcFile.isFile()){
+            String crc = readChecksum(new FileInputStream(crcFile));
+            if(crc != null && crc.equals(copy(new FileInputStream(file), null, new CRC32(), null))){
+                return file;
+            }
+        }
+        if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()){
+            throw new IOException("Can't create directory " + directory);
+        }
+        String crc = extractFile(openResource(resource), directory, file, checksum, checksum == null ? key : null);
+        extractFile(new ByteArrayInputStream(crc.getBytes(StandardCharsets.US_ASCII)), directory, crcFile, null, null);
+        return file;
+    }
+
+    /**
+     * Запись потока во временный файл, проверка контрольных сумм и
+     * переименование временного файла в <b>file</b>. Если переименовать не
+     * удалось, потому что файл уже извлёк другой процесс, используется его
+     * файл.
+     *
+     * @param sha256 ожидаемая сумма SHA-256 или <b>null</b>.
+     * @param crc32 ожидаемая сумма CRC32 или <b>null</b>.
+     *
+     * @return Метод возвращает CRC32 записанных данных.
+     */
+    private static String extractFile(InputStream stream, File directory, File file, String sha256, String crc32) throws IOException {
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            MessageDigest digest = sha256 != null ? createDigest() : null;
+            String crc = copy(stream, temporaryFile, new CRC32(), digest);
+            if((digest != null && !sha256.equals(toHex(digest.digest()))) || (crc32 != null && !crc32.equals(crc))){
+                throw new IOException("Checksum mismatch for " + file.getName());
+            }
+            try {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException ex) {
+                if(!file.isFile() || !crc.equals(copy(new FileInputStream(file), null, new CRC32(), null))){
+                    throw ex;
+                }
+            }
+            return crc;
+        }
+        finally {
+            temporaryFile.delete();
+        }
+    }
+
+    private static File getCacheDirectory() {
+        String cacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+        if(cacheDir == null){
+            cacheDir = System.getProperty("user.home") + File.separator + ".jssc" + File.separator + "cache";
+        }
+        String version = NativeLibraryLoader.class.getPackage() != null ? NativeLibraryLoader.class.getPackage().getImplementationVersion() : null;
+        if(version == null){
+            version = DEFAULT_VERSION;
+        }
+        return new File(new File(cacheDir, version), getPlatform());
+    }
+
+    private static InputStream openResource(String resource) throws IOException {
+        InputStream stream = NativeLibraryLoader.class.getResourceAsStream(resource);
+        if(stream == null){
+            throw new IOException("Resource not found: " + resource);
+        }
+        return stream;
+    }
+
+    private static InputStream openChecksum(String resource) {
+        return NativeLibraryLoader.class.getResourceAsStream(resource);
+    }
+
+    /**
+     * Чтение контрольной суммы - первого слова первой строки потока.
+     */
+    private static String readChecksum(InputStream stream) throws IOException {
+        if(stream == null){
+            return null;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.US_ASCII));
+        try {
+            String line = reader.readLine();
+            if(line == null || line.trim().isEmpty()){
+                return null;
+            }
+            return line.trim().split("\\s+")[0].toLowerCase(Locale.ROOT);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Чтение потока с вычислением контрольных сумм и, если передан файл,
+     * записью данных в него.
+     *
+     * @return Метод возвращает CRC32 данных в шестнадцатеричном виде.
+     */
+    private static String copy(InputStream stream, File file, CRC32 crc, MessageDigest digest) throws IOException {
+        OutputStream output = null;
+        try {
+            if(file != null){
+                output = new FileOutputStream(file);
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while((count = stream.read(buffer)) != -1){
+                crc.update(buffer, 0, count);
+                if(digest != null){
+                    digest.update(buffer, 0, count);
+                }
+                if(output != null){
+                    output.write(buffer, 0, count);
+                }
+            }
+        }
+        finally {
+            stream.close();
+            if(output != null){
+                output.close();
+            }
+        }
+        String hex = Long.toHexString(crc.getValue());
+        return "00000000".substring(hex.length()) + hex;
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++){
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = digits[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,692 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Реализация <b>SerialNativeInterface</b>, воспроизводящая файл захвата
+ * (<b>SerialPortCaptureWriter</b>). Каждое открытие порта в захвате
+ * образует сеанс; <b>openPort(name)</b> открывает следующий ещё не
+ * воспроизведённый сеанс порта с этим именем. Принятые данные и ивенты
+ * сеанса становятся доступны через <b>readBytes</b> и <b>waitEvents</b> в
+ * моменты, отсчитанные от открытия порта, с исходными интервалами или
+ * ускоренно (см. <b>setSpeedFactor(double)</b>). Данные, прочитанные
+ * приложением после ивента RXCHAR, становятся доступны в момент этого
+ * ивента. Записываемые данные отбрасываются.
+ *
+ * @author scream3r
+ */
+public class ReplaySerialNativeInterface extends SerialNativeInterface {
+
+    /**
+     * Значение для <b>setSpeedFactor(double)</b>, при котором весь захват
+     * доступен сразу после открытия порта.
+     */
+    public static final double SPEED_UNLIMITED = 0;
+
+    private static final long WAIT_INTERVAL = 100000000L;
+
+    private final Object lock = new Object();
+    private final List<Session> sessions = new ArrayList<Session>();
+    private final Map<Integer, ReplayPort> portsByHandle = new HashMap<Integer, ReplayPort>();
+    private int nextHandle = 1;
+    private double speedFactor = 1;
+    private long bytesWritten = 0;
+
+    public ReplaySerialNativeInterface(File captureFile) throws IOException {
+        super(false);
+        load(captureFile);
+    }
+
+    /**
+     * @param captureFile файл захвата.
+     * @param speedFactor множитель скорости воспроизведения.
+     */
+    public ReplaySerialNativeInterface(File captureFile, double speedFactor) throws IOException {
+        this(captureFile);
+        setSpeedFactor(speedFactor);
+    }
+
+    /**
+     * Установка множителя скорости воспроизведения. Значение <b>1</b>
+     * соответствует исходным интервалам, <b>N</b> - ускорению в N раз,
+     * <b>SPEED_UNLIMITED</b> - воспроизведению без задержек. Действует для
+     * портов, открытых после вызова.
+     */
+    public void setSpeedFactor(double speedFactor) {
+        if(speedFactor < 0){
+            throw new IllegalArgumentException("Speed factor must not be negative");
+        }
+        synchronized(lock){
+            this.speedFactor = speedFactor;
+        }
+    }
+
+    /**
+     * Получение множителя скорости воспроизведения.
+     */
+    public double getSpeedFactor() {
+        synchronized(lock){
+            return speedFactor;
+        }
+    }
+
+    /**
+     * Получение количества байт, переданных приложением в порты (и
+     * отброшенных).
+     */
+    public long getBytesWritten() {
+        synchronized(lock){
+            return bytesWritten;
+        }
+    }
+
+    private void load(File captureFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(captureFile, "r");
+        ByteBuffer buffer;
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        finally {
+            file.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[SerialPortCaptureWriter.MAGIC.length];
+        if(buffer.limit() < SerialPortCaptureWriter.HEADER_SIZE){
+            throw new IOException("Not a capture file: " + captureFile);
+        }
+        buffer.get(magic);
+        if(!Arrays.equals(magic, SerialPortCaptureWriter.MAGIC)){
+            throw new IOException("Not a capture file: " + captureFile);
+        }
+        long size = buffer.getLong(SerialPortCaptureWriter.HEADER_LENGTH);
+        int end = size > 0 && size <= buffer.limit() ? (int)size : buffer.limit();
+        Map<Integer, Session> openSessions = new HashMap<Integer, Session>();
+        int position = SerialPortCaptureWriter.HEADER_SIZE;
+        while(position + SerialPortCaptureWriter.RECORD_HEADER_SIZE <= end){
+            int length = buffer.getInt(position) - 1;
+            if(length < 0 || position + SerialPortCaptureWriter.RECORD_HEADER_SIZE + length > end){
+                break;
+            }
+            int type = buffer.get(position + SerialPortCaptureWriter.RECORD_TYPE);
+            int channel = buffer.getInt(position + SerialPortCaptureWriter.RECORD_CHANNEL);
+            long time = buffer.getLong(position + SerialPortCaptureWriter.RECORD_TIME);
+            int data = position + SerialPortCaptureWriter.RECORD_HEADER_SIZE;
+            position = data + length;
+            if(type == SerialPortCaptureWriter.RECORD_OPEN){
+                byte[] name = new byte[length];
+                ByteBuffer view = buffer.duplicate();
+                view.position(data);
+                view.get(name);
+                Session session = new Session(new String(name, SerialPortCaptureWriter.CHARSET), time);
+                sessions.add(session);
+                openSessions.put(channel, session);
+                continue;
+            }
+            Session session = openSessions.get(channel);
+            if(session == null){
+                continue;
+            }
+            switch(type){
+                case SerialPortCaptureWriter.RECORD_CLOSE:
+                    openSessions.remove(channel);
+                    break;
+                case SerialPortCaptureWriter.RECORD_RX:
+                    ByteBuffer view = buffer.duplicate();
+                    view.position(data);
+                    view.limit(data + length);
+                    session.addData(view, time);
+                    break;
+                case SerialPortCaptureWriter.RECORD_EVENT:
+                    session.addEvent(buffer.getInt(data), buffer.getInt(data + 4), time);
+                    break;
+                default:
+                    break;
+            }
+        }
+        for(Session session : sessions){
+            session.complete();
+        }
+    }
+
+    @Override
+    public int openPort(String portName) {
+        synchronized(lock){
+            for(Session session : sessions){
+                if(!session.used && session.portName.equals(portName)){
+                    session.used = true;
+                    ReplayPort port = new ReplayPort(session, nextHandle++, System.nanoTime(), speedFactor);
+                    portsByHandle.put(port.handle, port);
+                    return port.handle;
+                }
+            }
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean setParams(int handle, int baudRate, int dataBits, int stopBits, int parity) {
+        synchronized(lock){
+            return portsByHandle.containsKey(handle);
+        }
+    }
+
+    @Override
+    public boolean purgePort(int handle, int flags) {
+        synchronized(lock){
+            ReplayPort port = portsByHandle.get(handle);
+            if(port == null){
+                return false;
+            }
+            if((flags & SerialPort.PURGE_RXCLEAR) != 0){
+                port.available(System.nanoTime());
+                port.consumed = port.availableEnd;
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean closePort(int handle) {
+        synchronized(lock){
+            ReplayPort port = portsByHandle.remove(handle);
+            lock.notifyAll();
+            return port != null;
+        }
+    }
+
+    /**
+     * Прерывание ожидающих чтений и ожидания ивентов: они возвращают уже
+     * "принятые" данные или ошибку, не дожидаясь следующей записи захвата.
+     */
+    @Override
+    public void cancelIo(int handle) {
+        synchronized(lock){
+            ReplayPort port = portsByHandle.get(handle);
+            if(port != null){
+                port.cancelled = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public boolean setEventsMask(int handle, int mask) {
+        synchronized(lock){
+            ReplayPort port = portsByHandle.get(handle);
+            if(port == null){
+                return false;
+            }
+            port.mask = mask;
+            return true;
+        }
+    }
+
+    @Override
+    public int getEventsMask(int handle) {
+        synchronized(lock){
+            ReplayPort port = portsByHandle.get(handle);
+            return port != null ? port.mask : -1;
+        }
+    }
+
+    @Override
+    public int[][] waitEvents(int handle) {
+        int[] events = new int[MAX_EVENTS * 2];
+        return toEventArray(events, waitEvents(handle, events));
+    }
+
+    @Override
+    public int waitEvents(int handle, int[] events) {
+        while(true){
+            int count = waitEvents(handle, events, (int)(WAIT_INTERVAL / 1000000));
+            synchronized(lock){
+                if(count != 0 || getActivePort(handle) == null){
+                    return count;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int waitEvents(int handle, int[] events, int timeout) {
+        synchronized(lock){
+            long deadline = System.nanoTime() + timeout * 1000000L;
+            while(true){
+                ReplayPort port = getActivePort(handle);
+                if(port == null){
+                    return 0;
+                }
+                long now = System.nanoTime();
+                int count = port.collectEvents(events, now);
+                if(count > 0){
+                    return count;
+                }
+                long remaining = deadline - now;
+                if(remaining <= 0){
+                    return 0;
+                }
+                long next = port.nextEvent();
+                if(!await(next == -1 ? remaining : Math.min(remaining, next - now))){
+                    return 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean setRTS(int handle, boolean value) {
+        synchronized(lock){
+            return portsByHandle.containsKey(handle);
+        }
+    }
+
+    @Override
+    public boolean setDTR(int handle, boolean value) {
+        synchronized(lock){
+            return portsByHandle.containsKey(handle);
+        }
+    }
+
+    @Override
+    public byte[] readBytes(int handle, int byteCount) {
+        synchronized(lock){
+            while(true){
+                ReplayPort port = getActivePort(handle);
+                if(port == null){
+                    return null;
+                }
+                long now = System.nanoTime();
+                int available = port.available(now);
+                long arrival = port.nextArrival();
+                if(available >= byteCount || arrival == -1){
+                    byte[] data = new byte[Math.min(available, byteCount)];
+                    port.take(data, 0, data.length);
+                    return data;
+                }
+                if(!await(arrival - now)){
+                    return null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean writeBytes(int handle, byte[] buffer) {
+        synchronized(lock){
+            if(!portsByHandle.containsKey(handle)){
+                return false;
+            }
+            bytesWritten += buffer.length;
+            return true;
+        }
+    }
+
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length) {
+        synchronized(lock){
+            while(true){
+                ReplayPort port = getActivePort(handle);
+                if(port == null){
+                    return -1;
+                }
+                long now = System.nanoTime();
+                int available = port.available(now);
+                if(available > 0 || length == 0){
+                    int count = Math.min(available, length);
+                    port.take(buffer, offset, count);
+                    return count;
+                }
+                long arrival = port.nextArrival();
+                if(arrival == -1 || !await(arrival - now)){
+                    return -1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int readBytes(int handle, ByteBuffer buffer) {
+        if(buffer.hasArray()){
+            int result = readBytes(handle, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if(result > 0){
+                buffer.position(buffer.position() + result);
+            }
+            return result;
+        }
+        byte[] data = new byte[buffer.remaining()];
+        int result = readBytes(handle, data, 0, data.length);
+        if(result > 0){
+            buffer.put(data, 0, result);
+        }
+        return result;
+    }
+
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer) {
+        synchronized(lock){
+            if(!portsByHandle.containsKey(handle)){
+                return -1;
+            }
+            int length = buffer.remaining();
+            buffer.position(buffer.limit());
+            bytesWritten += length;
+            return length;
+        }
+    }
+
+    /**
+     * Запись в виртуальный порт не блокируется, поэтому таймаут не нужен.
+     */
+    @Override
+    public int writeBytes(int handle, ByteBuffer buffer, int timeout) {
+        return writeBytes(handle, buffer);
+    }
+
+    @Override
+    public int readBytes(int handle, byte[] buffer, int offset, int length, int timeout) {
+        synchronized(lock){
+            long deadline = System.nanoTime() + timeout * 1000000L;
+            int count = 0;
+            while(true){
+                ReplayPort port = getActivePort(handle);
+                if(port == null){
+                    return count > 0 ? count : -1;
+                }
+                long now = System.nanoTime();
+                int taken = Math.min(port.available(now), length - count);
+                port.take(buffer, offset + count, taken);
+                count += taken;
+                long remaining = deadline - now;
+                long arrival = port.nextArrival();
+                if(count == length || remaining <= 0 || arrival == -1){
+                    return count;
+                }
+                if(!await(Math.min(remaining, arrival - now))){
+                    return count;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int waitInput(int handle, long timeoutNanos) {
+        synchronized(lock){
+            long deadline = System.nanoTime() + timeoutNanos;
+            while(true){
+                ReplayPort port = getActivePort(handle);
+                if(port == null){
+                    return -1;
+                }
+                long now = System.nanoTime();
+                int available = port.available(now);
+                long remaining = deadline - now;
+                long arrival = port.nextArrival();
+                if(available > 0 || remaining <= 0 || arrival == -1){
+                    return available;
+                }
+                if(!await(Math.min(remaining, arrival - now))){
+                    return 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isPortConnected(int handle) {
+        synchronized(lock){
+            return portsByHandle.containsKey(handle);
+        }
+    }
+
+    @Override
+    public int getInputBufferBytesCount(int handle) {
+        synchronized(lock){
+            ReplayPort port = portsByHandle.get(handle);
+            return port != null ? port.available(System.nanoTime()) : -1;
+        }
+    }
+
+    @Override
+    public String[] getSerialPortNames() {
+        Set<String> portNames = new LinkedHashSet<String>();
+        for(Session session : sessions){
+            portNames.add(session.portName);
+        }
+        return portNames.toArray(new String[portNames.size()]);
+    }
+
+    @Override
+    public int[] getLinesStatus(int handle) {
+        int[] returnValue = new int[4];
+        synchronized(lock){
+            ReplayPort port = portsByHandle.get(handle);
+            if(port != null){
+                port.updateLines(System.nanoTime());
+                returnValue[0] = (port.lines & SerialPortEvent.CTS) != 0 ? 1 : 0;
+                returnValue[1] = (port.lines & SerialPortEvent.DSR) != 0 ? 1 : 0;
+                returnValue[2] = (port.lines & SerialPortEvent.RING) != 0 ? 1 : 0;
+                returnValue[3] = (port.lines & SerialPortEvent.RLSD) != 0 ? 1 : 0;
+            }
+        }
+        return returnValue;
+    }
+
+    /**
+     * Получение порта, ожидание на котором не прервано методом
+     * <b>cancelIo</b>. Вызывается под <b>lock</b>.
+     */
+    private ReplayPort getActivePort(int handle) {
+        ReplayPort port = portsByHandle.get(handle);
+        return port != null && !port.cancelled ? port : null;
+    }
+
+    private boolean await(long nanos) {
+        if(nanos <= 0){
+            return true;
+        }
+        try {
+            lock.wait(nanos / 1000000, (int)(nanos % 1000000));
+            return true;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Один сеанс порта из файла захвата: от открытия до закрытия.
+     */
+    private static class Session {
+
+        private static final int LINE_EVENTS = SerialPortEvent.CTS | SerialPortEvent.DSR |
+                                               SerialPortEvent.RING | SerialPortEvent.RLSD;
+
+        private final String portName;
+        private final long startTime;
+        private ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+        private final List<long[]> chunks = new ArrayList<long[]>();
+        private final List<int[]> eventList = new ArrayList<int[]>();
+        private final List<Long> eventTimeList = new ArrayList<Long>();
+        private long pendingRxcharTime = -1;
+        private byte[] data;
+        private int[] chunkEnds;
+        private long[] chunkTimes;
+        private int[] eventTypes;
+        private int[] eventValues;
+        private long[] eventTimes;
+        private boolean used = false;
+
+        private Session(String portName, long startTime) {
+            this.portName = portName;
+            this.startTime = startTime;
+        }
+
+        private void addData(ByteBuffer buffer, long time) {
+            while(buffer.hasRemaining()){
+                dataStream.write(buffer.get());
+            }
+            long available = pendingRxcharTime != -1 ? pendingRxcharTime : time;
+            pendingRxcharTime = -1;
+            chunks.add(new long[]{dataStream.size(), available - startTime});
+        }
+
+        private void addEvent(int eventType, int eventValue, long time) {
+            if(eventType == SerialPortEvent.RXCHAR && pendingRxcharTime == -1){
+                pendingRxcharTime = time;
+            }
+            eventList.add(new int[]{eventType, eventValue});
+            eventTimeList.add(time - startTime);
+        }
+
+        private void complete() {
+            data = dataStream.toByteArray();
+            dataStream = null;
+            chunkEnds = new int[chunks.size()];
+            chunkTimes = new long[chunks.size()];
+            for(int i = 0; i < chunkEnds.length; i++){
+                chunkEnds[i] = (int)chunks.get(i)[0];
+                chunkTimes[i] = chunks.get(i)[1];
+            }
+            eventTypes = new int[eventList.size()];
+            eventValues = new int[eventList.size()];
+            eventTimes = new long[eventList.size()];
+            for(int i = 0; i < eventTypes.length; i++){
+                eventTypes[i] = eventList.get(i)[0];
+                eventValues[i] = eventList.get(i)[1];
+                eventTimes[i] = eventTimeList.get(i);
+            }
+            chunks.clear();
+            eventList.clear();
+            eventTimeList.clear();
+        }
+    }
+
+    /**
+     * Состояние воспроизведения открытого сеанса.
+     */
+    private static class ReplayPort {
+
+        private final Session session;
+        private final int handle;
+        private final long startNanos;
+        private final double speedFactor;
+        private int mask = 0;
+        private int lines = 0;
+        private int chunkIndex = 0;
+        private int availableEnd = 0;
+        private int consumed = 0;
+        private int eventIndex = 0;
+        private int lineIndex = 0;
+        private boolean cancelled = false;
+
+        private ReplayPort(Session session, int handle, long startNanos, double speedFactor) {
+            this.session = session;
+            this.handle = handle;
+            this.startNanos = startNanos;
+            this.speedFactor = speedFactor;
+        }
+
+        private long due(long time) {
+            if(speedFactor == SPEED_UNLIMITED){
+                return startNanos;
+            }
+            return startNanos + (long)(time / speedFactor);
+        }
+
+        private int available(long now) {
+            while(chunkIndex < session.chunkEnds.length && due(session.chunkTimes[chunkIndex]) - now <= 0){
+                availableEnd = session.chunkEnds[chunkIndex];
+                chunkIndex++;
+            }
+            return availableEnd - consumed;
+        }
+
+        private long nextArrival() {
+            return chunkIndex < session.chunkEnds.length ? due(session.chunkTimes[chunkIndex]) : -1;
+        }
+
+        private void take(byte[] buffer, int offset, int length) {
+            System.arraycopy(session.data, consumed, buffer, offset, length);
+            consumed += length;
+        }
+
+        private long nextEvent() {
+            return eventIndex < session.eventTypes.length ? due(session.eventTimes[eventIndex]) : -1;
+        }
+
+        /**
+         * Выборка наступивших ивентов, разрешённых маской.
+         */
+        private int collectEvents(int[] events, long now) {
+            int count = 0;
+            while(eventIndex < session.eventTypes.length && due(session.eventTimes[eventIndex]) - now <= 0){
+                if(count * 2 + 1 >= events.length){
+                    break;
+                }
+                int eventType = session.eventTypes[eventIndex];
+                if((mask & eventType) != 0){
+                    count = putEvent(events, count, eventType, session.eventValues[eventIndex]);
+                }
+                eventIndex++;
+            }
+            return count;
+        }
+
+        /**
+         * Обновление статуса линий по наступившим ивентам CTS, DSR, RING и
+         * RLSD независимо от их доставки через <b>waitEvents</b>.
+         */
+        private void updateLines(long now) {
+            while(lineIndex < session.eventTypes.length && due(session.eventTimes[lineIndex]) - now <= 0){
+                int eventType = session.eventTypes[lineIndex];
+                if((eventType & Session.LINE_EVENTS) != 0){
+                    if(session.eventValues[lineIndex] != 0){
+                        lines |= eventType;
+                    }
+                    else {
+                        lines &= ~eventType;
+                    }
+                }
+                lineIndex++;
+            }
+        }
+    }
+}
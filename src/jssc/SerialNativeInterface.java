@@ -24,14 +24,157 @@
  */
 package jssc;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  *
  * @author scream3r
  */
 public class SerialNativeInterface {
-    
-    static {
-        System.loadLibrary(SerialPort.SERIAL_LIBRARY_SEARCH_PATH + "libjssc");
+
+    /**
+     * Имя системного свойства, позволяющего явно выбрать реализацию
+     * интерфейса: <b>"jni"</b> - библиотека libjssc, <b>"linux"</b> -
+     * реализация на основе termios (JNA), <b>"ffm"</b> - реализация для Linux
+     * на основе java.lang.foreign (JDK 22+), <b>"loopback"</b> - виртуальные
+     * порты без нативного кода.
+     */
+    public static final String BACKEND_PROPERTY = "jssc.backend";
+
+    /**
+     * Имя системного свойства с реализацией, которая используется, если
+     * библиотеку libjssc не удалось загрузить (например <b>"loopback"</b>).
+     * Если свойство не задано, ошибка загрузки передаётся вызывающему.
+     */
+    public static final String BACKEND_FALLBACK_PROPERTY = "jssc.backend.fallback";
+
+    public static final String BACKEND_JNI = "jni";
+    public static final String BACKEND_LINUX = "linux";
+    public static final String BACKEND_FFM = "ffm";
+    public static final String BACKEND_LOOPBACK = "loopback";
+
+    private static final String FFM_INTERFACE_CLASS = "jssc.FfmSerialNativeInterface";
+
+    /**
+     * Максимальное количество ивентов, возвращаемых одним вызовом
+     * <b>waitEvents</b> (по одному на каждый тип ивента). Массив, передаваемый
+     * в <b>waitEvents(int, int[])</b>, должен содержать <b>MAX_EVENTS * 2</b>
+     * элементов.
+     */
+    public static final int MAX_EVENTS = 9;
+
+    /**
+     * Флаги готовности порта для <b>waitReady</b>.
+     */
+    public static final int READY_READ = 1;
+    public static final int READY_WRITE = 2;
+
+    private static final long INPUT_POLL_INTERVAL = 100000;
+
+    private static SerialNativeInterface defaultInterface;
+
+    /**
+     * Создание интерфейса работающего через библиотеку libjssc. Библиотека
+     * загружается при создании первого экземпляра (см.
+     * <b>NativeLibraryLoader</b>).
+     *
+     * @throws UnsatisfiedLinkError если библиотеку не удалось загрузить.
+     */
+    public SerialNativeInterface() {
+        this(true);
+    }
+
+    /**
+     * Конструктор для альтернативных реализаций. Реализация, которая
+     * переопределяет все методы данного класса, должна передать
+     * <b>false</b>, чтобы библиотека libjssc не загружалась.
+     *
+     * @param loadLibrary необходимость загрузки библиотеки libjssc.
+     */
+    protected SerialNativeInterface(boolean loadLibrary) {
+        if(loadLibrary){
+            NativeLibraryLoader.load();
+        }
+    }
+
+    /**
+     * Получение интерфейса, подходящего для текущей операционной системы.
+     * Выбор можно переопределить системным свойством <b>"jssc.backend"</b>.
+     * Интерфейс создаётся при первом вызове, если создать его не удалось,
+     * следующий вызов повторит попытку.
+     *
+     * @return Метод возвращает общий для всех портов экземпляр интерфейса.
+     *
+     * @throws UnsatisfiedLinkError если библиотеку libjssc не удалось
+     * загрузить и не задано свойство <b>"jssc.backend.fallback"</b>.
+     */
+    public static synchronized SerialNativeInterface getDefaultInterface() {
+        if(defaultInterface == null){
+            String backend = System.getProperty(BACKEND_PROPERTY);
+            if(backend == null){
+                String osName = System.getProperty("os.name", "");
+                if(osName.toLowerCase().startsWith("linux")){
+                    backend = BACKEND_LINUX;
+                }
+                else {
+                    backend = BACKEND_JNI;
+                }
+            }
+            try {
+                defaultInterface = createInterface(backend);
+            }
+            catch (UnsatisfiedLinkError ex) {
+                String fallback = System.getProperty(BACKEND_FALLBACK_PROPERTY);
+                if(fallback == null){
+                    throw ex;
+                }
+                defaultInterface = createInterface(fallback);
+            }
+        }
+        return defaultInterface;
+    }
+
+    /**
+     * Создание нового экземпляра интерфейса по имени реализации.
+     *
+     * @param backend имя реализации: <b>BACKEND_JNI</b>, <b>BACKEND_LINUX</b>,
+     * <b>BACKEND_FFM</b> или <b>BACKEND_LOOPBACK</b>. Для неизвестного имени
+     * используется <b>BACKEND_JNI</b>.
+     *
+     * @throws UnsupportedOperationException если реализация недоступна в
+     * текущей JVM (например, <b>BACKEND_FFM</b> на JDK старше 22).
+     */
+    public static SerialNativeInterface createInterface(String backend) {
+        if(backend.equalsIgnoreCase(BACKEND_LINUX)){
+            return new LinuxSerialNativeInterface();
+        }
+        else if(backend.equalsIgnoreCase(BACKEND_FFM)){
+            return createFfmInterface();
+        }
+        else if(backend.equalsIgnoreCase(BACKEND_LOOPBACK)){
+            return new LoopbackSerialNativeInterface();
+        }
+        else {
+            return new SerialNativeInterface();
+        }
+    }
+
+    /**
+     * Реализация FFM компилируется под JDK 22 отдельно от остальных классов,
+     * поэтому загружается через reflection.
+     */
+    private static SerialNativeInterface createFfmInterface() {
+        try {
+            Class<?> interfaceClass = Class.forName(FFM_INTERFACE_CLASS);
+            return (SerialNativeInterface)interfaceClass.getConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new UnsupportedOperationException("FFM backend is not available", ex);
+        }
+        catch (LinkageError ex) {
+            throw new UnsupportedOperationException("FFM backend requires JDK 22 or later", ex);
+        }
     }
 
     /**
@@ -107,6 +250,126 @@ public class SerialNativeInterface {
      */
     public native int[][] waitEvents(int handle);
 
+    /**
+     * Ожидание ивентов с записью результата в переданный массив. Ивенты
+     * записываются парами: <b>events[i * 2] - тип ивента</b>,
+     * <b>events[i * 2 + 1] - значение ивента</b>. Массив принадлежит
+     * вызывающему коду и может использоваться повторно, поэтому реализации,
+     * переопределяющие этот метод, не создают объектов на каждый вызов.
+     * <br></br>
+     * <br>Реализация по умолчанию вызывает <b>waitEvents(int)</b> и копирует
+     * результат.</br>
+     *
+     * @param handle handle открытого порта.
+     * @param events массив для ивентов длиной не менее <b>MAX_EVENTS * 2</b>.
+     *
+     * @return Метод возвращает количество записанных ивентов.
+     */
+    public int waitEvents(int handle, int[] events) {
+        int[][] eventArray = waitEvents(handle);
+        int count = 0;
+        for(int i = 0; i < eventArray.length; i++){
+            count = putEvent(events, count, eventArray[i][0], eventArray[i][1]);
+        }
+        return count;
+    }
+
+    /**
+     * Ожидание ивентов с ограничением времени. Формат результата аналогичен
+     * <b>waitEvents(int, int[])</b>. При <b>timeout</b> равном 0 выполняется
+     * проверка без ожидания, что позволяет обслуживать порт из виртуального
+     * потока, не занимая поток-носитель нативным ожиданием.
+     * <br></br>
+     * <br>Реализация по умолчанию (libjssc) не поддерживает ограничение
+     * времени и выбрасывает <b>UnsupportedOperationException</b>; в этом
+     * случае используется <b>waitEvents(int, int[])</b>.</br>
+     *
+     * @param handle handle открытого порта.
+     * @param events массив для ивентов длиной не менее <b>MAX_EVENTS * 2</b>.
+     * @param timeout максимальное время ожидания в миллисекундах.
+     *
+     * @return Метод возвращает количество записанных ивентов.
+     *
+     * @throws UnsupportedOperationException если реализация не поддерживает
+     * ограничение времени.
+     */
+    public int waitEvents(int handle, int[] events, int timeout) {
+        throw new UnsupportedOperationException("Timed waitEvents is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Ожидание ивентов сразу на нескольких портах. Используется
+     * <b>SerialPortSelector</b>, чтобы обслуживать множество портов одним
+     * потоком.
+     * <br></br>
+     * <br>Реализация по умолчанию (libjssc) не поддерживает ожидание на
+     * нескольких портах.</br>
+     *
+     * @param handles handles открытых портов.
+     * @param events массивы для ивентов каждого порта, формат аналогичен
+     * <b>waitEvents(int, int[])</b>.
+     * @param eventCounts массив, в который записывается количество ивентов
+     * каждого порта.
+     * @param count количество портов.
+     * @param timeout максимальное время ожидания в миллисекундах (<b>0</b> -
+     * проверка без ожидания). Реализация может вернуться раньше, даже если
+     * ивентов нет.
+     *
+     * @return Метод возвращает количество портов, на которых есть ивенты.
+     *
+     * @throws UnsupportedOperationException если реализация не поддерживает
+     * ожидание на нескольких портах.
+     */
+    public int waitEvents(int[] handles, int[][] events, int[] eventCounts, int count, int timeout) {
+        throw new UnsupportedOperationException("Multiplexed waitEvents is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Запись ивента в упакованный массив ивентов, если в нём есть место.
+     *
+     * @return Метод возвращает новое количество ивентов в массиве.
+     */
+    protected static int putEvent(int[] events, int count, int eventType, int eventValue) {
+        if(count * 2 + 1 < events.length){
+            events[count * 2] = eventType;
+            events[count * 2 + 1] = eventValue;
+            return count + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Запись ивента изменения линии, если линия разрешена маской и её
+     * состояние изменилось.
+     *
+     * @param mask маска ивентов порта.
+     * @param changed биты линий, изменивших состояние.
+     * @param lines текущее состояние линий.
+     * @param eventType тип ивента (например <b>SerialPortEvent.CTS</b>).
+     * @param line бит линии в <b>changed</b> и <b>lines</b>.
+     *
+     * @return Метод возвращает новое количество ивентов в массиве.
+     */
+    protected static int putLineEvent(int[] events, int count, int mask, int changed, int lines, int eventType, int line) {
+        if((mask & eventType) != 0 && (changed & line) != 0){
+            return putEvent(events, count, eventType, (lines & line) != 0 ? 1 : 0);
+        }
+        return count;
+    }
+
+    /**
+     * Преобразование упакованного массива ивентов в формат
+     * <b>waitEvents(int)</b>.
+     */
+    protected static int[][] toEventArray(int[] events, int count) {
+        int[][] eventArray = new int[count][2];
+        for(int i = 0; i < count; i++){
+            eventArray[i][0] = events[i * 2];
+            eventArray[i][1] = events[i * 2 + 1];
+        }
+        return eventArray;
+    }
+
     /**
      * Изменение состояния линии RTS.
      * 
@@ -150,6 +413,334 @@ public class SerialNativeInterface {
      */
     public native boolean writeBytes(int handle, byte[] buffer);
 
+    /**
+     * Чтение данных из порта в часть массива. Метод блокируется до
+     * поступления хотя бы одного байта и читает не более <b>length</b> байт.
+     * <br></br>
+     * <br>Реализация по умолчанию работает через
+     * <b>readBytes(int, ByteBuffer)</b> и, как и он, не ожидает больше
+     * байт, чем уже принято, кроме первого.</br>
+     *
+     * @param handle handle открытого порта.
+     * @param buffer массив для прочитанных данных.
+     * @param offset смещение в массиве, с которого записываются данные.
+     * @param length максимальное количество байт для чтения.
+     *
+     * @return Метод возвращает количество прочитанных байт или <b>-1</b> если
+     * чтение не удалось.
+     */
+    public int readBytes(int handle, byte[] buffer, int offset, int length) {
+        return readBytes(handle, ByteBuffer.wrap(buffer, offset, length));
+    }
+
+    /**
+     * Запись части массива в порт.
+     * <br></br>
+     * <br>Реализация по умолчанию работает через
+     * <b>writeBytes(int, ByteBuffer)</b>.</br>
+     *
+     * @param handle handle открытого порта.
+     * @param buffer массив байт для записи.
+     * @param offset смещение первого байта для записи.
+     * @param length количество байт для записи.
+     *
+     * @return Если операция удачно выполнена, то метод вернёт true, в противном
+     * случае false.
+     */
+    public boolean writeBytes(int handle, byte[] buffer, int offset, int length) {
+        return writeBytes(handle, ByteBuffer.wrap(buffer, offset, length)) == length;
+    }
+
+    /**
+     * Чтение данных из порта в буфер. Метод блокируется до поступления хотя
+     * бы одного байта, читает не более <b>buffer.remaining()</b> байт и сдвигает
+     * позицию буфера на количество прочитанных байт.
+     * <br></br>
+     * <br>Реализация по умолчанию читает через <b>readBytes(int, int)</b>
+     * принятые байты, количество которых сообщает
+     * <b>getInputBufferBytesCount(int)</b>, а если их нет или количество
+     * неизвестно - ожидает один байт и дочитывает принятые вместе с ним.
+     * Данные копируются в буфер. Альтернативные реализации заполняют прямые
+     * (direct) буферы без копирования.</br>
+     *
+     * @param handle handle открытого порта.
+     * @param buffer буфер для прочитанных данных.
+     *
+     * @return Метод возвращает количество прочитанных байт или <b>-1</b> если
+     * чтение не удалось.
+     */
+    public int readBytes(int handle, ByteBuffer buffer) {
+        if(!buffer.hasRemaining()){
+            return 0;
+        }
+        int available = getInputBufferBytesCount(handle);
+        //readBytes(int, int) блокируется до получения всех запрошенных байт
+        byte[] data = readBytes(handle, available > 0 ? Math.min(available, buffer.remaining()) : 1);
+        if(data == null || data.length == 0){
+            return -1;
+        }
+        buffer.put(data);
+        int count = data.length;
+        if(available <= 0 && buffer.hasRemaining()){
+            available = getInputBufferBytesCount(handle);
+            if(available > 0){
+                data = readBytes(handle, Math.min(available, buffer.remaining()));
+                if(data != null){
+                    buffer.put(data);
+                    count += data.length;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Запись данных из буфера в порт. Записываются все байты между позицией
+     * и лимитом буфера, позиция сдвигается на количество записанных байт.
+     * <br></br>
+     * <br>Реализация по умолчанию копирует данные в массив и передаёт его
+     * методу <b>writeBytes(int, byte[])</b>.</br>
+     *
+     * @param handle handle открытого порта.
+     * @param buffer буфер с данными для записи.
+     *
+     * @return Метод возвращает количество записанных байт или <b>-1</b> если
+     * запись не удалась.
+     */
+    public int writeBytes(int handle, ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if(length == 0){
+            return 0;
+        }
+        byte[] data = new byte[length];
+        buffer.duplicate().get(data);
+        if(!writeBytes(handle, data)){
+            return -1;
+        }
+        buffer.position(buffer.position() + length);
+        return length;
+    }
+
+    /**
+     * Чтение данных из порта с таймаутом. Метод блокируется до тех пор, пока
+     * не будет прочитано <b>length</b> байт, либо до истечения таймаута, и
+     * возвращает количество фактически прочитанных байт (при истечении
+     * таймаута оно меньше <b>length</b>).
+     * <br></br>
+     * <br>Реализация по умолчанию ожидает данные через <b>waitInput</b> и
+     * читает только уже принятые байты через <b>readBytes(int, int)</b>,
+     * поэтому требует поддержки <b>getInputBufferBytesCount(int)</b>.
+     * Альтернативные реализации ожидают данные средствами ОС (например,
+     * <b>poll</b>).</br>
+     *
+     * @param handle handle открытого порта.
+     * @param buffer массив для прочитанных данных.
+     * @param offset смещение в массиве, с которого записываются данные.
+     * @param length количество байт для чтения.
+     * @param timeout таймаут в миллисекундах, при значении 0 читаются только
+     * уже принятые данные.
+     *
+     * @return Метод возвращает количество прочитанных байт или <b>-1</b> если
+     * чтение не удалось.
+     *
+     * @throws UnsupportedOperationException если реализация не сообщает
+     * количество байт во входном буфере.
+     */
+    public int readBytes(int handle, byte[] buffer, int offset, int length, int timeout) {
+        if(length == 0){
+            return 0;
+        }
+        if(getInputBufferBytesCount(handle) < 0){
+            throw new UnsupportedOperationException("Timed readBytes is not supported by " + getClass().getName());
+        }
+        long deadline = System.nanoTime() + Math.max(timeout, 0) * 1000000L;
+        int count = 0;
+        while(count < length){
+            int available = waitInput(handle, deadline - System.nanoTime());
+            if(available <= 0){
+                if(available < 0 && count == 0){
+                    return -1;
+                }
+                break;
+            }
+            byte[] data = readBytes(handle, Math.min(available, length - count));
+            if(data == null){
+                return count > 0 ? count : -1;
+            }
+            System.arraycopy(data, 0, buffer, offset + count, data.length);
+            count += data.length;
+        }
+        return count;
+    }
+
+    /**
+     * Ожидание поступления данных во входной буфер порта. Таймаут задаётся
+     * в наносекундах, что позволяет измерять межсимвольные интервалы на
+     * высоких скоростях (см. <b>SerialPortGapFramer</b>).
+     * <br></br>
+     * <br>Реализация по умолчанию опрашивает
+     * <b>getInputBufferBytesCount(int)</b> с интервалом 0.1 мс и возвращает
+     * -1, если этот метод не поддерживается.</br>
+     *
+     * @param handle handle открытого порта.
+     * @param timeoutNanos таймаут в наносекундах, при значении 0 и меньше
+     * метод не ожидает.
+     *
+     * @return Метод возвращает количество байт во входном буфере (0 если
+     * истёк таймаут) или <b>-1</b> при ошибке.
+     */
+    public int waitInput(int handle, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while(true){
+            int available = getInputBufferBytesCount(handle);
+            long remaining = deadline - System.nanoTime();
+            if(available != 0 || remaining <= 0){
+                return available;
+            }
+            LockSupport.parkNanos(Math.min(remaining, INPUT_POLL_INTERVAL));
+        }
+    }
+
+    /**
+     * Запись данных из буфера в порт с таймаутом. Записывается столько байт,
+     * сколько порт принимает до истечения таймаута, позиция буфера сдвигается
+     * на количество записанных байт.
+     * <br></br>
+     * <br>Реализация по умолчанию не знает свободного места в выходном
+     * буфере порта и выбрасывает <b>UnsupportedOperationException</b>.</br>
+     *
+     * @param handle handle открытого порта.
+     * @param buffer буфер с данными для записи.
+     * @param timeout таймаут в миллисекундах, при значении 0 записывается
+     * только то, что порт принимает без ожидания.
+     *
+     * @return Метод возвращает количество записанных байт (возможно 0) или
+     * <b>-1</b> если запись не удалась.
+     *
+     * @throws UnsupportedOperationException если реализация не поддерживает
+     * запись с таймаутом.
+     */
+    public int writeBytes(int handle, ByteBuffer buffer, int timeout) {
+        throw new UnsupportedOperationException("Timed writeBytes is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Запись нескольких буферов в порт, аналогично
+     * <b>GatheringByteChannel.write(ByteBuffer[], int, int)</b>. Позиции
+     * буферов сдвигаются на количество записанных из них байт.
+     * <br></br>
+     * <br>Реализация по умолчанию записывает буферы по очереди через
+     * <b>writeBytes(int, ByteBuffer)</b>. Альтернативные реализации передают
+     * все буферы одним системным вызовом (например, <b>writev</b>).</br>
+     *
+     * @param handle handle открытого порта.
+     * @param buffers массив буферов с данными для записи.
+     * @param offset индекс первого буфера.
+     * @param length количество буферов.
+     *
+     * @return Метод возвращает количество записанных байт или <b>-1</b> если
+     * запись не удалась.
+     */
+    public long writeBytes(int handle, ByteBuffer[] buffers, int offset, int length) {
+        long total = 0;
+        for(int i = offset; i < offset + length; i++){
+            if(!buffers[i].hasRemaining()){
+                continue;
+            }
+            int result = writeBytes(handle, buffers[i]);
+            if(result < 0){
+                return total > 0 ? total : -1;
+            }
+            total += result;
+        }
+        return total;
+    }
+
+    /**
+     * Ожидание готовности хотя бы одного из портов к чтению или записи.
+     * Используется <b>SerialPortIoEngine</b> для обслуживания асинхронных
+     * операций всех портов одним потоком.
+     * <br></br>
+     * <br>Реализация по умолчанию не поддерживает ожидание готовности и
+     * выбрасывает <b>UnsupportedOperationException</b>.</br>
+     *
+     * @param handles массив handle открытых портов.
+     * @param interests для каждого порта - комбинация флагов <b>READY_READ</b>
+     * и <b>READY_WRITE</b>.
+     * @param count количество используемых элементов массивов.
+     * @param timeout максимальное время ожидания в миллисекундах.
+     *
+     * @return Метод возвращает количество готовых портов, 0 если истёк таймаут
+     * или <b>-1</b> при ошибке.
+     *
+     * @throws UnsupportedOperationException если реализация не поддерживает
+     * ожидание готовности.
+     */
+    public int waitReady(int[] handles, int[] interests, int count, int timeout) {
+        throw new UnsupportedOperationException("waitReady is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Проверка связи с устройством открытого порта. Отключение USB-адаптера
+     * оставляет handle открытым, но ввод-вывод через него невозможен.
+     * <br></br>
+     * <br>Реализация по умолчанию не умеет определять обрыв связи и
+     * возвращает true.</br>
+     *
+     * @param handle handle открытого порта.
+     *
+     * @return Метод вернёт false, если устройство порта отключено.
+     */
+    public boolean isPortConnected(int handle) {
+        return true;
+    }
+
+    /**
+     * Прерывание блокирующих операций порта перед его закрытием. Ожидающие
+     * данных вызовы чтения и записи должны вернуть ошибку, не дожидаясь
+     * таймаута. Вызывается из <b>SerialPort.closePort()</b>, после вызова
+     * порт используется только для закрытия.
+     * <br></br>
+     * <br>Реализация по умолчанию ничего не делает: закрытие порта ждёт
+     * завершения блокирующих вызовов.</br>
+     *
+     * @param handle handle открытого порта.
+     */
+    public void cancelIo(int handle) {
+        //Do nothing
+    }
+
+    /**
+     * Привязка текущего потока к процессору <b>cpu</b>. Используется циклом
+     * ожидания ивентов в режиме активного ожидания (см.
+     * <b>SerialPort.setEventThreadAffinity()</b>).
+     * <br></br>
+     * <br>Реализация по умолчанию не поддерживает привязку и возвращает
+     * <b>false</b>.</br>
+     *
+     * @param cpu номер процессора.
+     *
+     * @return Метод возвращает <b>true</b> если поток привязан к процессору.
+     */
+    public boolean setThreadAffinity(int cpu) {
+        return false;
+    }
+
+    /**
+     * Получение количества байт во входном буфере порта.
+     * <br></br>
+     * <br>Реализация по умолчанию не поддерживает этот метод и возвращает
+     * <b>-1</b>.</br>
+     *
+     * @param handle handle открытого порта.
+     *
+     * @return Метод возвращает количество байт, которые можно прочитать без
+     * ожидания, или <b>-1</b> если оно неизвестно.
+     */
+    public int getInputBufferBytesCount(int handle) {
+        return -1;
+    }
+
     /**
      * Получение списка последовательных портов в системе в неупорядоченном виде.
      *
@@ -157,6 +748,51 @@ public class SerialNativeInterface {
      */
     public native String[] getSerialPortNames();
 
+    /**
+     * Получение сведений об устройстве порта (драйвер, идентификаторы USB).
+     * <br></br>
+     * <br>Реализация по умолчанию возвращает только имя порта.</br>
+     *
+     * @param portName имя порта из списка <b>getSerialPortNames()</b>.
+     */
+    public SerialPortInfo getSerialPortInfo(String portName) {
+        return new SerialPortInfo(portName, null, -1, -1, null, null, null);
+    }
+
+    /**
+     * Начало отслеживания подключения и отключения портов (см.
+     * <b>SerialPortRegistry</b>).
+     * <br></br>
+     * <br>Реализация по умолчанию не поддерживает отслеживание и возвращает
+     * -1, в этом случае список портов перечитывается периодически.</br>
+     *
+     * @return Метод возвращает handle отслеживания или <b>-1</b> если
+     * отслеживание не поддерживается.
+     */
+    public int openPortWatch() {
+        return -1;
+    }
+
+    /**
+     * Ожидание изменения списка портов.
+     *
+     * @param watchHandle handle, полученный от <b>openPortWatch()</b>.
+     * @param timeout таймаут в миллисекундах.
+     *
+     * @return 1 если список портов мог измениться, 0 если истёк таймаут,
+     * -1 при ошибке.
+     */
+    public int waitPortWatch(int watchHandle, int timeout) {
+        return -1;
+    }
+
+    /**
+     * Завершение отслеживания списка портов.
+     */
+    public boolean closePortWatch(int watchHandle) {
+        return false;
+    }
+
     /**
      * Получение статуса линий.
      * 
@@ -25,8 +25,50 @@
 package jssc;
 
 import com.sun.jna.NativeLibrary;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.MBeanServer;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
 
 /**
+ * Последовательный порт.
+ * <br></br>
+ * <br><b>Многопоточность.</b> Методы класса можно вызывать из разных потоков
+ * без внешней синхронизации. Состояние порта (закрыт, открывается, открыт,
+ * закрывается) меняется атомарно, поэтому одновременные вызовы
+ * <b>openPort()</b> или <b>closePort()</b> успешны только в одном потоке.</br>
+ * <br>Чтение и запись не используют общих блокировок: несколько потоков могут
+ * одновременно писать и читать, а упорядочивание операций одного направления
+ * выполняет <b>SerialNativeInterface</b> (данные одного вызова
+ * <b>writeBytes</b> не перемешиваются с данными другого). Каждый вызов
+ * отмечается в счётчике, разнесённом по потокам, и <b>closePort()</b>, переведя
+ * порт в состояние закрытия, прерывает блокирующие операции через
+ * <b>SerialNativeInterface.cancelIo()</b>, ждёт завершения уже начатых
+ * вызовов и только затем закрывает handle. Прерванное закрытием чтение
+ * завершается исключением, как и вызовы, начатые после перехода в
+ * состояние закрытия (тип <b>TYPE_PORT_NOT_OPENED</b>).</br>
+ * <br>Добавление и удаление обработчика событий, а также регистрация в
+ * селекторе выполняются под отдельной блокировкой и не влияют на чтение и
+ * запись.</br>
+ * <br>Асинхронные операции (<b>readAsync</b>, <b>writeAsync</b>), цикл
+ * ожидания ивентов, <b>SerialPortSelector</b>, <b>SerialPortTransmitter</b>,
+ * <b>SerialPortPublisher</b> и <b>SerialPortGapFramer</b> также отмечают в
+ * счётчике каждое обращение к handle. Слушатели и обработчики future
+ * вызываются вне счётчика, поэтому из них можно закрывать порт.</br>
  *
  * @author scream3r
  */
@@ -34,11 +76,35 @@ public class SerialPort {
 
     private SerialNativeInterface serialInterface;
     private SerialPortEventListener eventListener;
-    private int portHandle;
+    private SerialPortChannel channel;
+    private volatile SerialPortSelectionKey selectionKey;
+    private volatile int portHandle;
+    //Номер открытия порта, отличает handle текущего открытия от прежних
+    private volatile int openGeneration = 0;
+    private final Set<SerialPortIoEngine> asyncEngines = new CopyOnWriteArraySet<SerialPortIoEngine>();
+    private final Set<SerialPortPublisher> publishers = new CopyOnWriteArraySet<SerialPortPublisher>();
     private String portName;
-    private boolean portOpened = false;
-    private boolean maskAssigned = false;
-    private boolean eventListenerAdded = false;
+    private final AtomicInteger state = new AtomicInteger(STATE_CLOSED);
+    private final AtomicLongArray calls = new AtomicLongArray(CALL_STRIPES * CALL_STRIPE_PADDING);
+    private final Object listenerLock = new Object();
+    private volatile boolean maskAssigned = false;
+    private volatile int baudRate = BAUDRATE_9600;
+    private volatile int dataBits = DATABITS_8;
+    private volatile int stopBits = STOPBITS_1;
+    private volatile int parity = PARITY_NONE;
+    private volatile boolean eventListenerAdded = false;
+
+    private static final int STATE_CLOSED = 0;
+    private static final int STATE_OPENING = 1;
+    private static final int STATE_OPENED = 2;
+    private static final int STATE_CLOSING = 3;
+    //Закрытие не дождалось завершения вызовов, handle ещё не закрыт
+    private static final int STATE_CLOSE_PENDING = 4;
+
+    //Счётчики вызовов разнесены по разным строкам кэша
+    private static final int CALL_STRIPES = 16;
+    private static final int CALL_STRIPE_PADDING = 8;
+    private static final long CLOSE_TIMEOUT = 5000000000L;
     
     
     public static final int BAUDRATE_110 = 110;
@@ -90,12 +156,32 @@ public class SerialPort {
     public static final int MASK_ERR = 128;
     public static final int MASK_RING = 256;
 
+    public static final int ERROR_RXOVER = 0x0001;
+    public static final int ERROR_OVERRUN = 0x0002;
+    public static final int ERROR_PARITY = 0x0004;
+    public static final int ERROR_FRAME = 0x0008;
+
+    /**
+     * Каталог ресурсов, в котором ищется библиотека libjssc, если для
+     * текущей платформы нет ресурса в <b>/jssc/natives/</b>. Библиотека
+     * загружается при первом создании порта, работающего через libjssc.
+     */
     public static String SERIAL_LIBRARY_SEARCH_PATH = "/SerialLibrary/Win32/";
     
     public SerialPort(String portName) {
-        
+        this(portName, SerialNativeInterface.getDefaultInterface());
+    }
+
+    /**
+     * Создание порта, работающего через указанную реализацию
+     * <b>SerialNativeInterface</b>.
+     *
+     * @param portName имя порта.
+     * @param serialInterface реализация интерфейса для работы с портом.
+     */
+    public SerialPort(String portName, SerialNativeInterface serialInterface) {
         this.portName = portName;
-        serialInterface = new SerialNativeInterface();
+        this.serialInterface = serialInterface;
     }
 
     /**
@@ -113,7 +199,26 @@ public class SerialPort {
      * @return Метод возвращает true если порт открыт и false в противном случае.
      */
     public boolean isOpened() {
-        return portOpened;
+        return state.get() == STATE_OPENED;
+    }
+
+    /**
+     * Проверка связи с устройством порта.
+     *
+     * @return Метод возвращает true если порт открыт и устройство не
+     * отключено (например, не отсоединён USB-адаптер), false в противном
+     * случае.
+     */
+    public boolean isConnected() {
+        if(!tryBeginCall()){
+            return false;
+        }
+        try {
+            return serialInterface.isPortConnected(portHandle);
+        }
+        finally {
+            endCall();
+        }
     }
 
     /**
@@ -125,17 +230,27 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public boolean openPort() throws SerialPortException {
-        if(portOpened){
+        if(!state.compareAndSet(STATE_CLOSED, STATE_OPENING)){
             throw new SerialPortException(portName, "openPort()", SerialPortException.TYPE_PORT_ALREADY_OPENED);
         }
-        portHandle = serialInterface.openPort(portName);
-        if(portHandle != -1){
-            portOpened = true;
-            return true;
+        int handle = -1;
+        try {
+            handle = serialInterface.openPort(portName);
         }
-        else {
-            return false;
+        finally {
+            if(handle != -1){
+                portHandle = handle;
+                openGeneration++;
+                state.set(STATE_OPENED);
+            }
+            else {
+                state.set(STATE_CLOSED);
+            }
+        }
+        if(handle != -1 && metrics != null){
+            updateMetricsRegistration();
         }
+        return handle != -1;
     }
 
     /**
@@ -151,14 +266,49 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public boolean setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException {
-        checkPortOpened("setParams()");
-        if(stopBits == 1){
-            stopBits = 0;
+        beginCall("setParams()");
+        try {
+            int nativeStopBits = stopBits;
+            if(stopBits == 1){
+                nativeStopBits = 0;
+            }
+            else if(stopBits == 3){
+                nativeStopBits = 1;
+            }
+            boolean returnValue = serialInterface.setParams(portHandle, baudRate, dataBits, nativeStopBits, parity);
+            if(returnValue){
+                this.baudRate = baudRate;
+                this.dataBits = dataBits;
+                this.stopBits = stopBits;
+                this.parity = parity;
+            }
+            return returnValue;
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Получение времени передачи одного символа (стартовый бит, биты данных,
+     * бит чётности и стоповые биты) при параметрах, установленных последним
+     * успешным вызовом <b>setParams</b>. До вызова <b>setParams</b>
+     * используются параметры 9600 8N1.
+     *
+     * @return Метод возвращает время передачи символа в наносекундах.
+     */
+    public long getCharacterTimeNanos() {
+        double bits = 1 + dataBits + (parity != PARITY_NONE ? 1 : 0);
+        if(stopBits == STOPBITS_1_5){
+            bits += 1.5;
         }
-        else if(stopBits == 3){
-            stopBits = 1;
+        else if(stopBits == STOPBITS_2){
+            bits += 2;
         }
-        return serialInterface.setParams(portHandle, baudRate, dataBits, stopBits, parity);
+        else {
+            bits += 1;
+        }
+        return (long)(bits * 1000000000.0 / baudRate);
     }
 
     /**
@@ -175,8 +325,13 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public boolean purgePort(int flags) throws SerialPortException {
-        checkPortOpened("purgePort()");
-        return serialInterface.purgePort(portHandle, flags);
+        beginCall("purgePort()");
+        try {
+            return serialInterface.purgePort(portHandle, flags);
+        }
+        finally {
+            endCall();
+        }
     }
 
     /**
@@ -193,18 +348,27 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public boolean setEventsMask(int mask) throws SerialPortException {
-        checkPortOpened("setEventsMask()");
-        boolean returnValue = serialInterface.setEventsMask(portHandle, mask);
-        if(!returnValue){
-            throw new SerialPortException(portName, "setEventsMask()", SerialPortException.TYPE_CANT_SET_MASK);
-        }
-        if(mask > 0){
-            maskAssigned = true;
+        beginCall("setEventsMask()");
+        try {
+            boolean returnValue = serialInterface.setEventsMask(portHandle, mask);
+            if(!returnValue){
+                throw new SerialPortException(portName, "setEventsMask()", SerialPortException.TYPE_CANT_SET_MASK);
+            }
+            if(mask > 0){
+                maskAssigned = true;
+            }
+            else {
+                maskAssigned = false;
+            }
+            eventsMask = mask;
+            if(eventListenerAdded || selectionKey != null){
+                trackLineState(mask);
+            }
+            return returnValue;
         }
-        else {
-            maskAssigned = false;
+        finally {
+            endCall();
         }
-        return returnValue;
     }
 
     /**
@@ -216,8 +380,13 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public int getEventsMask() throws SerialPortException {
-        checkPortOpened("getEventsMask()");
-        return serialInterface.getEventsMask(portHandle);
+        beginCall("getEventsMask()");
+        try {
+            return serialInterface.getEventsMask(portHandle);
+        }
+        finally {
+            endCall();
+        }
     }
 
     /**
@@ -230,8 +399,13 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public boolean setRTS(boolean enabled) throws SerialPortException {
-        checkPortOpened("setRTS()");
-        return serialInterface.setRTS(portHandle, enabled);
+        beginCall("setRTS()");
+        try {
+            return serialInterface.setRTS(portHandle, enabled);
+        }
+        finally {
+            endCall();
+        }
     }
 
     /**
@@ -244,8 +418,13 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public boolean setDTR(boolean enabled) throws SerialPortException {
-        checkPortOpened("setDTR()");
-        return serialInterface.setDTR(portHandle, enabled);
+        beginCall("setDTR()");
+        try {
+            return serialInterface.setDTR(portHandle, enabled);
+        }
+        finally {
+            endCall();
+        }
     }
 
     /**
@@ -257,8 +436,20 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public boolean writeBytes(byte[] buffer) throws SerialPortException {
-        checkPortOpened("writeBytes()");
-        return serialInterface.writeBytes(portHandle, buffer);
+        beginCall("writeBytes()");
+        try {
+            SerialPortMetrics portMetrics = metrics;
+            if(portMetrics == null){
+                return serialInterface.writeBytes(portHandle, buffer);
+            }
+            long start = System.nanoTime();
+            boolean result = serialInterface.writeBytes(portHandle, buffer);
+            portMetrics.recordWrite(System.nanoTime() - start, result ? buffer.length : 0);
+            return result;
+        }
+        finally {
+            endCall();
+        }
     }
 
     /**
@@ -270,232 +461,1567 @@ public class SerialPort {
      * @throws SerialPortException
      */
     public byte[] readBytes(int byteCount) throws SerialPortException {
-        checkPortOpened("readBytes()");
-        return serialInterface.readBytes(portHandle, byteCount);
-    }
-
-    private int[][] waitEvents() {
-        return serialInterface.waitEvents(portHandle);
+        beginCall("readBytes()");
+        try {
+            SerialPortMetrics portMetrics = metrics;
+            byte[] result;
+            if(portMetrics == null){
+                result = serialInterface.readBytes(portHandle, byteCount);
+            }
+            else {
+                long start = System.nanoTime();
+                result = serialInterface.readBytes(portHandle, byteCount);
+                portMetrics.recordRead(System.nanoTime() - start, result != null ? result.length : 0);
+            }
+            if(result == null || result.length < byteCount){
+                checkNotCancelled("readBytes()");
+            }
+            return result;
+        }
+        finally {
+            endCall();
+        }
     }
 
-    private void checkPortOpened(String methodName) throws SerialPortException {
-        if(!portOpened){
-            throw new SerialPortException("EMPTY", methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+    /**
+     * Чтение ровно <b>byteCount</b> байт с таймаутом. Ожидание данных
+     * выполняется средствами <b>SerialNativeInterface</b> (на Linux - вызовом
+     * <b>poll</b>), без циклов опроса в Java.
+     *
+     * @param byteCount количество байт для чтения.
+     * @param timeout таймаут, при значении 0 читаются только уже принятые данные.
+     * @param unit единица измерения таймаута.
+     *
+     * @return Метод возвращает массив из <b>byteCount</b> прочитанных байт или
+     * <b>null</b> если чтение не удалось.
+     *
+     * @throws SerialPortTimeoutException если таймаут истёк раньше, чем было
+     * принято <b>byteCount</b> байт. Принятая часть данных доступна через
+     * <b>getReceivedData()</b>.
+     * @throws UnsupportedOperationException если <b>SerialNativeInterface</b>
+     * не поддерживает чтение с таймаутом.
+     * @throws SerialPortException
+     */
+    public byte[] readBytes(int byteCount, long timeout, TimeUnit unit) throws SerialPortException {
+        beginCall("readBytes()");
+        try {
+            byte[] buffer = new byte[byteCount];
+            int result = readTimed(buffer, 0, byteCount, toTimeoutMillis(timeout, unit));
+            if(result < byteCount){
+                checkNotCancelled("readBytes()");
+            }
+            if(result < 0){
+                return null;
+            }
+            if(result < byteCount){
+                byte[] receivedData = new byte[result];
+                System.arraycopy(buffer, 0, receivedData, 0, result);
+                throw new SerialPortTimeoutException(portName, "readBytes()", receivedData);
+            }
+            return buffer;
+        }
+        finally {
+            endCall();
         }
     }
 
     /**
-     * Получение статуса линий. Статус линий передаётся в виде 0 - выкл. и 1 - вкл.
+     * Чтение в часть массива с таймаутом. Метод блокируется до тех пор, пока
+     * не будет прочитано <b>length</b> байт, либо до истечения таймаута.
      *
-     * @return Метод возвращает массив содержащий информацию о линиях в следующем порядке:
-     * <br><b>элемент 0</b> - статус линии <b>CTS</b></br>
-     * <br><b>элемент 1</b> - статус линии <b>DSR</b></br>
-     * <br><b>элемент 2</b> - статус линии <b>RING</b></br>
-     * <br><b>элемент 3</b> - статус линии <b>RLSD</b></br>
+     * @param buffer массив для прочитанных данных.
+     * @param offset смещение в массиве, с которого записываются данные.
+     * @param length количество байт для чтения.
+     * @param timeout таймаут, при значении 0 читаются только уже принятые данные.
+     * @param unit единица измерения таймаута.
+     *
+     * @return Метод возвращает количество прочитанных байт (меньше
+     * <b>length</b> если истёк таймаут) или <b>-1</b> если чтение не удалось.
      *
+     * @throws UnsupportedOperationException если <b>SerialNativeInterface</b>
+     * не поддерживает чтение с таймаутом.
      * @throws SerialPortException
      */
-    public int[] getLinesStatus() throws SerialPortException {
-        checkPortOpened("getLinesStatus()");
-        return serialInterface.getLinesStatus(portHandle);
+    public int readBytes(byte[] buffer, int offset, int length, long timeout, TimeUnit unit) throws SerialPortException {
+        beginCall("readBytes()");
+        try {
+            checkBounds(buffer, offset, length);
+            int result = readTimed(buffer, offset, length, toTimeoutMillis(timeout, unit));
+            if(result < length){
+                checkNotCancelled("readBytes()");
+            }
+            return result;
+        }
+        finally {
+            endCall();
+        }
     }
 
     /**
-     * Получение статуса линии CTS.
+     * Чтение всех данных, уже находящихся во входном буфере порта, без
+     * ожидания.
      *
-     * @return Если линия CTS активна метод вернёт true, в противном случае false.
+     * @return Метод возвращает массив прочитанных байт (пустой, если данных
+     * нет) или <b>null</b> если <b>SerialNativeInterface</b> не сообщает
+     * количество байт во входном буфере.
      *
      * @throws SerialPortException
      */
-    public boolean isCTS() throws SerialPortException {
-        checkPortOpened("isCTS()");
-        if(serialInterface.getLinesStatus(portHandle)[0] == 1){
-            return true;
+    public byte[] readAvailable() throws SerialPortException {
+        beginCall("readAvailable()");
+        try {
+            int count = serialInterface.getInputBufferBytesCount(portHandle);
+            if(count < 0){
+                return null;
+            }
+            byte[] buffer = new byte[count];
+            if(count == 0){
+                return buffer;
+            }
+            int result = readTimed(buffer, 0, count, 0);
+            if(result < count){
+                checkNotCancelled("readAvailable()");
+            }
+            if(result < 0){
+                return null;
+            }
+            if(result < count){
+                byte[] returnValue = new byte[result];
+                System.arraycopy(buffer, 0, returnValue, 0, result);
+                return returnValue;
+            }
+            return buffer;
         }
-        else {
-            return false;
+        finally {
+            endCall();
         }
     }
 
     /**
-     * Получение статуса линии DSR.
+     * Получение количества байт во входном буфере порта.
      *
-     * @return Если линия DSR активна метод вернёт true, в противном случае false.
+     * @return Метод возвращает количество байт или <b>-1</b> если
+     * <b>SerialNativeInterface</b> его не сообщает.
      *
      * @throws SerialPortException
      */
-    public boolean isDSR() throws SerialPortException {
-        checkPortOpened("isDSR()");
-        if(serialInterface.getLinesStatus(portHandle)[1] == 1){
-            return true;
+    public int getInputBufferBytesCount() throws SerialPortException {
+        beginCall("getInputBufferBytesCount()");
+        try {
+            return serialInterface.getInputBufferBytesCount(portHandle);
         }
-        else {
-            return false;
+        finally {
+            endCall();
+        }
+    }
+
+    private int readTimed(byte[] buffer, int offset, int length, int timeout) {
+        SerialPortMetrics portMetrics = metrics;
+        if(portMetrics == null){
+            return serialInterface.readBytes(portHandle, buffer, offset, length, timeout);
         }
+        long start = System.nanoTime();
+        int result = serialInterface.readBytes(portHandle, buffer, offset, length, timeout);
+        portMetrics.recordRead(System.nanoTime() - start, result);
+        return result;
+    }
+
+    private static int toTimeoutMillis(long timeout, TimeUnit unit) {
+        if(timeout <= 0){
+            return 0;
+        }
+        long millis = Math.max(unit.toMillis(timeout), 1);
+        return (int)Math.min(millis, Integer.MAX_VALUE);
     }
 
     /**
-     * Получение статуса линии RING.
-     * 
-     * @return Если линия RING активна метод вернёт true, в противном случае false.
+     * Запись части массива в порт. Позволяет передавать данные из общего
+     * (например, пулового) массива без копирования в массив точного размера.
+     *
+     * @param buffer массив с данными.
+     * @param offset смещение первого байта для записи.
+     * @param length количество байт для записи.
+     *
+     * @return Если операция удачно выполнена, то метод вернёт true, в
+     * противном случае false.
      *
      * @throws SerialPortException
      */
-    public boolean isRING() throws SerialPortException {
-        checkPortOpened("isRING()");
-        if(serialInterface.getLinesStatus(portHandle)[2] == 1){
-            return true;
+    public boolean writeBytes(byte[] buffer, int offset, int length) throws SerialPortException {
+        beginCall("writeBytes()");
+        try {
+            checkBounds(buffer, offset, length);
+            SerialPortMetrics portMetrics = metrics;
+            if(portMetrics == null){
+                return serialInterface.writeBytes(portHandle, buffer, offset, length);
+            }
+            long start = System.nanoTime();
+            boolean result = serialInterface.writeBytes(portHandle, buffer, offset, length);
+            portMetrics.recordWrite(System.nanoTime() - start, result ? length : 0);
+            return result;
         }
-        else {
-            return false;
+        finally {
+            endCall();
         }
     }
 
     /**
-     * Получение статуса линии RLSD.
-     * 
-     * @return Если линия RLSD активна метод вернёт true, в противном случае false.
+     * Чтение данных из порта в часть массива, принадлежащего вызывающему коду.
+     * Метод блокируется до поступления хотя бы одного байта, читает не более
+     * <b>length</b> байт и не создаёт новых массивов.
+     *
+     * @param buffer массив для прочитанных данных.
+     * @param offset смещение в массиве, с которого записываются данные.
+     * @param length максимальное количество байт для чтения.
+     *
+     * @return Метод возвращает количество прочитанных байт или <b>-1</b> если
+     * чтение не удалось.
      *
      * @throws SerialPortException
      */
-    public boolean isRLSD() throws SerialPortException {
-        checkPortOpened("isRLSD()");
-        if(serialInterface.getLinesStatus(portHandle)[3] == 1){
-            return true;
+    public int readBytes(byte[] buffer, int offset, int length) throws SerialPortException {
+        beginCall("readBytes()");
+        try {
+            checkBounds(buffer, offset, length);
+            SerialPortMetrics portMetrics = metrics;
+            int result;
+            if(portMetrics == null){
+                result = serialInterface.readBytes(portHandle, buffer, offset, length);
+            }
+            else {
+                long start = System.nanoTime();
+                result = serialInterface.readBytes(portHandle, buffer, offset, length);
+                portMetrics.recordRead(System.nanoTime() - start, result);
+            }
+            if(result < 0){
+                checkNotCancelled("readBytes()");
+            }
+            return result;
         }
-        else {
-            return false;
+        finally {
+            endCall();
         }
     }
 
     /**
-     * Добавление обработчика событий. Методу необходимо передать объект типа
-     * <b>"SerialPortEventListener"</b>. Данный объект должен быть должным образом
-     * описан, т.к. именно он будет отвечать за обработку произошедших событий. 
-     * Данный метод самостоятельно установит маску в состояние <b>"MASK_RXCHAR"</b>
-     * если она не была установлена заранее.
+     * Чтение данных из порта в буфер, аналогично <b>ReadableByteChannel</b>.
+     * Метод блокируется до поступления хотя бы одного байта, читает не более
+     * <b>buffer.remaining()</b> байт и сдвигает позицию буфера. Прямые (direct)
+     * буферы заполняются без промежуточного копирования, если это
+     * поддерживает реализация <b>SerialNativeInterface</b>.
+     *
+     * @return Метод возвращает количество прочитанных байт или <b>-1</b> если
+     * чтение не удалось.
      *
      * @throws SerialPortException
      */
-    public void addEventListener(SerialPortEventListener listener) throws SerialPortException {
-        checkPortOpened("addEventListener()");
-        if(!eventListenerAdded){
-            if(maskAssigned){
-                eventListener = listener;
-                eventThread = new EventThread();
-                eventThread.setName("EventThread " + portName);
-                eventThread.start();
-                eventListenerAdded = true;
+    public int read(ByteBuffer buffer) throws SerialPortException {
+        beginCall("read()");
+        try {
+            SerialPortMetrics portMetrics = metrics;
+            int result;
+            if(portMetrics == null){
+                result = serialInterface.readBytes(portHandle, buffer);
             }
             else {
-                setEventsMask(MASK_RXCHAR);
-                eventListener = listener;
-                eventThread = new EventThread();
-                eventThread.setName("EventThread " + portName);
-                eventThread.start();
-                eventListenerAdded = true;
+                long start = System.nanoTime();
+                result = serialInterface.readBytes(portHandle, buffer);
+                portMetrics.recordRead(System.nanoTime() - start, result);
+            }
+            if(result < 0){
+                checkNotCancelled("read()");
             }
+            return result;
         }
-        else {
-            throw new SerialPortException(portName, "addEventListener()", SerialPortException.TYPE_LISTENER_ALREADY_ADDED);
+        finally {
+            endCall();
         }
     }
 
     /**
-     * Добавление обработчика событий. Методу необходимо передать объект типа
-     * <b>"SerialPortEventListener"</b>. Данный объект должен быть должным образом
-     * описан, т.к. именно он будет отвечать за обработку произошедших событий. 
-     * Также данному методу необходимо передать маску ивентов, для этого используйте
-     * переменные с префиксом <b>"MASK_"</b> например <b>"MASK_RXCHAR"</b>.
+     * Запись данных из буфера в порт, аналогично <b>WritableByteChannel</b>.
+     * Записываются все байты между позицией и лимитом буфера, позиция
+     * сдвигается на количество записанных байт.
      *
-     * @see #setEventsMask(int) setEventsMask(int mask)
+     * @return Метод возвращает количество записанных байт или <b>-1</b> если
+     * запись не удалась.
      *
      * @throws SerialPortException
      */
-    public void addEventListener(SerialPortEventListener listener, int mask) throws SerialPortException {
-        checkPortOpened("addEventListener()");
-        if(!eventListenerAdded){
-            setEventsMask(mask);
-            eventListener = listener;
-            eventThread = new EventThread();
-            eventThread.setName("EventThread " + portName);
-            eventThread.start();
-            eventListenerAdded = true;
+    public int write(ByteBuffer buffer) throws SerialPortException {
+        beginCall("write()");
+        try {
+            SerialPortMetrics portMetrics = metrics;
+            if(portMetrics == null){
+                return serialInterface.writeBytes(portHandle, buffer);
+            }
+            long start = System.nanoTime();
+            int result = serialInterface.writeBytes(portHandle, buffer);
+            portMetrics.recordWrite(System.nanoTime() - start, result);
+            return result;
         }
-        else {
-            throw new SerialPortException(portName, "addEventListener()", SerialPortException.TYPE_LISTENER_ALREADY_ADDED);
+        finally {
+            endCall();
         }
     }
 
     /**
-     * Удаление обработчика событий. При этом маска выставляется в значение 0. Т.о.
-     * при следующем добавлении обработчика событий Вам потребуется снова установить
-     * необходимую маску ивентов.
+     * Асинхронная запись данных из буфера в порт. Запись выполняет общий
+     * движок ввода-вывода (см. <b>SerialPortIoEngine</b>), вызывающий поток
+     * не блокируется. Буфер нельзя изменять до завершения операции.
      *
-     * @return Если операция удачно выполнена, то метод вернёт true, в
-     * противном случае false.
-     * 
-     * @throws SerialPortException
+     * @return Метод возвращает future, который завершается количеством
+     * записанных байт, либо исключением <b>SerialPortException</b>
+     * (<b>UnsupportedOperationException</b>, если <b>SerialNativeInterface</b>
+     * не поддерживает запись без блокировки).
      */
-    public boolean removeEventListener() throws SerialPortException {
-        checkPortOpened("removeEventListener()");
-        if(!eventListenerAdded){
-            throw new SerialPortException(portName, "removeEventListener()", SerialPortException.TYPE_CANT_REMOVE_LISTENER);
-        }
-        eventThread.threadTerminated = true;
-        setEventsMask(0);
-        if(Thread.currentThread().getId() != eventThread.getId()){
-            if(eventThread.isAlive()){
-                try {
-                    eventThread.join(5000);
-                }
-                catch (InterruptedException ex) {
-                    throw new SerialPortException(portName, "removeEventListener()", SerialPortException.TYPE_LISTENER_THREAD_INTERRUPTED);
-                }
+    public CompletableFuture<Integer> writeAsync(ByteBuffer buffer) {
+        if(state.get() != STATE_OPENED){
+            return failedFuture(new SerialPortException(portName, "writeAsync()", SerialPortException.TYPE_PORT_NOT_OPENED));
+        }
+        return getAsyncEngine().write(this, openGeneration, buffer);
+    }
+
+    /**
+     * Асинхронное чтение ровно <b>byteCount</b> байт. Чтение выполняет общий
+     * движок ввода-вывода (см. <b>SerialPortIoEngine</b>), вызывающий поток
+     * не блокируется.
+     *
+     * @param byteCount количество байт для чтения.
+     * @param timeout таймаут операции.
+     *
+     * @return Метод возвращает future, который завершается массивом из
+     * <b>byteCount</b> байт, либо исключением: при истечении таймаута -
+     * <b>SerialPortTimeoutException</b> с принятой частью данных, при ошибке -
+     * <b>SerialPortException</b>, если <b>SerialNativeInterface</b> не
+     * поддерживает чтение без блокировки - <b>UnsupportedOperationException</b>.
+     */
+    public CompletableFuture<byte[]> readAsync(int byteCount, Duration timeout) {
+        if(state.get() != STATE_OPENED){
+            return failedFuture(new SerialPortException(portName, "readAsync()", SerialPortException.TYPE_PORT_NOT_OPENED));
+        }
+        if(byteCount < 0){
+            return failedFuture(new IllegalArgumentException("byteCount < 0"));
+        }
+        long timeoutNanos = 0;
+        if(!timeout.isNegative()){
+            timeoutNanos = Math.min(timeout.getSeconds(), MAX_ASYNC_TIMEOUT_SECONDS) * 1000000000L + timeout.getNano();
+        }
+        return getAsyncEngine().read(this, openGeneration, byteCount, timeoutNanos);
+    }
+
+    /**
+     * Установка движка ввода-вывода для <b>readAsync</b> и <b>writeAsync</b>.
+     *
+     * @param ioEngine движок или <b>null</b> для общего движка
+     * <b>SerialPortIoEngine.getDefault()</b>.
+     */
+    public void setIoEngine(SerialPortIoEngine ioEngine) {
+        this.ioEngine = ioEngine;
+    }
+
+    /**
+     * Получение движка ввода-вывода для <b>readAsync</b> и <b>writeAsync</b>.
+     */
+    public SerialPortIoEngine getIoEngine() {
+        SerialPortIoEngine engine = ioEngine;
+        return engine != null ? engine : SerialPortIoEngine.getDefault();
+    }
+
+    /**
+     * Движок для новой асинхронной операции. Движки запоминаются, чтобы
+     * <b>closePort()</b> завершил операции порта во всех движках, которые
+     * он использовал.
+     */
+    private SerialPortIoEngine getAsyncEngine() {
+        SerialPortIoEngine engine = getIoEngine();
+        asyncEngines.add(engine);
+        return engine;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    /**
+     * Получение порта в виде канала <b>ByteChannel</b>. Закрытие канала
+     * закрывает порт.
+     *
+     * @return Метод возвращает канал, связанный с данным портом.
+     */
+    public SerialPortChannel getChannel() {
+        if(channel == null){
+            channel = new SerialPortChannel(this);
+        }
+        return channel;
+    }
+
+    private static void checkBounds(byte[] buffer, int offset, int length) {
+        if(offset < 0 || length < 0 || length > buffer.length - offset){
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", buffer length: " + buffer.length);
+        }
+    }
+
+    private void checkPortOpened(String methodName) throws SerialPortException {
+        if(state.get() != STATE_OPENED){
+            throw new SerialPortException("EMPTY", methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+    }
+
+    /**
+     * Проверка после неполного чтения: если порт закрывается, чтение было
+     * прервано методом <b>closePort()</b> и должно завершиться исключением,
+     * а не вернуть часть данных.
+     */
+    private void checkNotCancelled(String methodName) throws SerialPortException {
+        if(state.get() != STATE_OPENED){
+            throw new SerialPortException(portName, methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+    }
+
+    /**
+     * Начало вызова, использующего handle порта. Пока вызов не завершён
+     * методом <b>endCall()</b>, <b>closePort()</b> не закроет handle.
+     */
+    private void beginCall(String methodName) throws SerialPortException {
+        if(!tryBeginCall()){
+            throw new SerialPortException("EMPTY", methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+    }
+
+    /**
+     * Начало вызова без исключения. Используется также классами пакета,
+     * работающими с handle порта (<b>SerialPortIoEngine</b>,
+     * <b>SerialPortTransmitter</b> и т.д.). Вызов завершается методом
+     * <b>endCall()</b> в том же потоке.
+     *
+     * @return Метод вернёт false, если порт не открыт.
+     */
+    boolean tryBeginCall() {
+        int index = callStripe();
+        calls.incrementAndGet(index);
+        if(state.get() != STATE_OPENED){
+            calls.decrementAndGet(index);
+            return false;
+        }
+        return true;
+    }
+
+    void endCall() {
+        calls.decrementAndGet(callStripe());
+    }
+
+    /**
+     * Строка счётчика вызовов определяется потоком, поэтому начало и
+     * завершение вызова всегда изменяют один и тот же счётчик.
+     */
+    private static int callStripe() {
+        return ((int)Thread.currentThread().getId() & (CALL_STRIPES - 1)) * CALL_STRIPE_PADDING;
+    }
+
+    private boolean hasCalls() {
+        for(int i = 0; i < CALL_STRIPES; i++){
+            if(calls.get(i * CALL_STRIPE_PADDING) != 0){
+                return true;
             }
         }
-        eventListenerAdded = false;
+        return false;
+    }
+
+    /**
+     * Ожидание завершения вызовов, начатых до перехода порта в состояние
+     * закрытия.
+     *
+     * @return Метод вернёт false, если вызовы не завершились за CLOSE_TIMEOUT.
+     */
+    private boolean awaitCalls() {
+        long start = System.nanoTime();
+        long parkNanos = VirtualThreadSupport.MIN_PARK_NANOS;
+        while(hasCalls()){
+            if(System.nanoTime() - start >= CLOSE_TIMEOUT){
+                return false;
+            }
+            parkNanos = VirtualThreadSupport.park(parkNanos);
+        }
         return true;
     }
 
     /**
-     * Закрытие порта. Данный метод сначала удаляет обработчик событий,
-     * затем закрывает порт.
+     * Получение статуса линий. Статус линий передаётся в виде 0 - выкл. и 1 - вкл.
+     *
+     * @return Метод возвращает массив содержащий информацию о линиях в следующем порядке:
+     * <br><b>элемент 0</b> - статус линии <b>CTS</b></br>
+     * <br><b>элемент 1</b> - статус линии <b>DSR</b></br>
+     * <br><b>элемент 2</b> - статус линии <b>RING</b></br>
+     * <br><b>элемент 3</b> - статус линии <b>RLSD</b></br>
      *
-     * @return Если операция удачно выполнена, то метод вернёт true, в
-     * противном случае false.
-     * 
      * @throws SerialPortException
      */
-    public boolean closePort() throws SerialPortException {
-        checkPortOpened("closePort()");
-        if(eventListenerAdded){
-            removeEventListener();
+    public int[] getLinesStatus() throws SerialPortException {
+        beginCall("getLinesStatus()");
+        try {
+            int[] linesStatus = serialInterface.getLinesStatus(portHandle);
+            if(linesStatus != null){
+                setLineState(LINE_MASK, toLineState(linesStatus));
+                lineStateTime = System.nanoTime();
+            }
+            return linesStatus;
         }
-        boolean returnValue = serialInterface.closePort(portHandle);
-        if(returnValue){
-            maskAssigned = false;
-            portOpened = false;
+        finally {
+            endCall();
         }
-        return returnValue;
     }
 
-    private EventThread eventThread;
-
-    private class EventThread extends Thread {
-
-        private boolean threadTerminated = false;
-        
-        @Override
+    /**
+     * Получение статуса линии CTS.
+     *
+     * @return Если линия CTS активна метод вернёт true, в противном случае false.
+     *
+     * @throws SerialPortException
+     */
+    public boolean isCTS() throws SerialPortException {
+        beginCall("isCTS()");
+        try {
+            return (readLineState(MASK_CTS) & MASK_CTS) != 0;
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Получение статуса линии DSR.
+     *
+     * @return Если линия DSR активна метод вернёт true, в противном случае false.
+     *
+     * @throws SerialPortException
+     */
+    public boolean isDSR() throws SerialPortException {
+        beginCall("isDSR()");
+        try {
+            return (readLineState(MASK_DSR) & MASK_DSR) != 0;
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Получение статуса линии RING.
+     * 
+     * @return Если линия RING активна метод вернёт true, в противном случае false.
+     *
+     * @throws SerialPortException
+     */
+    public boolean isRING() throws SerialPortException {
+        beginCall("isRING()");
+        try {
+            return (readLineState(MASK_RING) & MASK_RING) != 0;
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Получение статуса линии RLSD.
+     * 
+     * @return Если линия RLSD активна метод вернёт true, в противном случае false.
+     *
+     * @throws SerialPortException
+     */
+    public boolean isRLSD() throws SerialPortException {
+        beginCall("isRLSD()");
+        try {
+            return (readLineState(MASK_RLSD) & MASK_RLSD) != 0;
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Получение статуса всех линий одним согласованным снимком.
+     * <p>
+     * Статус линий хранится в порту. Если обработчик событий (или селектор)
+     * получает ивенты CTS, DSR, RING и RLSD, то статус соответствующих линий
+     * обновляется из ивентов без обращения к драйверу. Статус остальных линий
+     * запрашивается у драйвера, если он старше значения, заданного
+     * <b>setLineStateMaxAge()</b>.
+     *
+     * @return Метод возвращает битовую маску активных линий из констант
+     * <b>MASK_CTS</b>, <b>MASK_DSR</b>, <b>MASK_RING</b> и <b>MASK_RLSD</b>.
+     *
+     * @throws SerialPortException
+     */
+    public int getLineState() throws SerialPortException {
+        beginCall("getLineState()");
+        try {
+            return readLineState(LINE_MASK);
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Установка максимального возраста статуса линий, не отслеживаемых
+     * ивентами. По умолчанию 0 - статус таких линий запрашивается у драйвера
+     * при каждом вызове.
+     */
+    public void setLineStateMaxAge(long maxAge, TimeUnit unit) {
+        lineStateMaxAge = Math.max(unit.toNanos(maxAge), 0);
+    }
+
+    /**
+     * Ожидание заданного статуса линий. Поток ожидания паркуется: изменения
+     * линий, отслеживаемых ивентами, будят его сразу, остальные линии
+     * проверяются у драйвера раз в <b>LINE_STATE_POLL_INTERVAL</b>.
+     *
+     * @param mask маска проверяемых линий из констант <b>MASK_CTS</b>,
+     * <b>MASK_DSR</b>, <b>MASK_RING</b> и <b>MASK_RLSD</b>.
+     * @param value ожидаемый статус линий маски (бит установлен - линия
+     * активна).
+     * @param timeout таймаут, при значении 0 статус проверяется один раз.
+     * @param unit единица измерения таймаута.
+     *
+     * @return Метод вернёт true если линии пришли в заданный статус, false
+     * если истёк таймаут.
+     *
+     * @throws SerialPortException
+     */
+    public boolean awaitLineState(int mask, int value, long timeout, TimeUnit unit) throws SerialPortException {
+        mask &= LINE_MASK;
+        value &= mask;
+        if((awaitedLineState(mask) & mask) == value){
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(timeout, 0));
+        Thread thread = Thread.currentThread();
+        lineStateWaiters.add(thread);
+        try {
+            while(true){
+                if((awaitedLineState(mask) & mask) == value){
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0){
+                    return false;
+                }
+                if((mask & ~lineStateTracked) != 0){
+                    remaining = Math.min(remaining, LINE_STATE_POLL_INTERVAL);
+                }
+                LockSupport.parkNanos(this, remaining);
+                if(Thread.interrupted()){
+                    thread.interrupt();
+                    throw new SerialPortException(portName, "awaitLineState()", SerialPortException.TYPE_WAIT_INTERRUPTED);
+                }
+            }
+        }
+        finally {
+            lineStateWaiters.remove(thread);
+        }
+    }
+
+    private int awaitedLineState(int mask) throws SerialPortException {
+        beginCall("awaitLineState()");
+        try {
+            return readLineState(mask);
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    private int readLineState(int lines) {
+        if((lines & ~lineStateTracked) != 0){
+            long maxAge = lineStateMaxAge;
+            if(maxAge == 0 || System.nanoTime() - lineStateTime >= maxAge){
+                refreshLineState();
+            }
+        }
+        return lineState.get();
+    }
+
+    private void refreshLineState() {
+        int[] linesStatus = serialInterface.getLinesStatus(portHandle);
+        if(linesStatus != null){
+            setLineState(LINE_MASK, toLineState(linesStatus));
+            lineStateTime = System.nanoTime();
+        }
+    }
+
+    private static int toLineState(int[] linesStatus) {
+        int state = 0;
+        if(linesStatus[0] == 1){
+            state |= MASK_CTS;
+        }
+        if(linesStatus[1] == 1){
+            state |= MASK_DSR;
+        }
+        if(linesStatus[2] == 1){
+            state |= MASK_RING;
+        }
+        if(linesStatus[3] == 1){
+            state |= MASK_RLSD;
+        }
+        return state;
+    }
+
+    private void setLineState(int mask, int state) {
+        while(true){
+            int current = lineState.get();
+            int updated = (current & ~mask) | (state & mask);
+            if(current == updated){
+                return;
+            }
+            if(lineState.compareAndSet(current, updated)){
+                break;
+            }
+        }
+        if(!lineStateWaiters.isEmpty()){
+            for(Thread waiter : lineStateWaiters){
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * Обновление статуса линий из полученных ивентов. Вызывается циклом
+     * ожидания ивентов и селектором до передачи ивентов слушателю.
+     */
+    void updateLineState(int[] events, int count) {
+        int mask = 0;
+        int state = 0;
+        for(int i = 0; i < count; i++){
+            int eventType = events[i * 2];
+            if((eventType & LINE_MASK) != 0 && Integer.bitCount(eventType) == 1){
+                mask |= eventType;
+                if(events[i * 2 + 1] != 0){
+                    state |= eventType;
+                }
+                else {
+                    state &= ~eventType;
+                }
+            }
+        }
+        if(mask != 0){
+            setLineState(mask, state);
+        }
+    }
+
+    private void trackLineState(int mask) {
+        int tracked = mask & LINE_MASK;
+        if(tracked != 0 && state.get() == STATE_OPENED){
+            refreshLineState();
+        }
+        lineStateTracked = tracked;
+    }
+
+    /**
+     * Добавление обработчика событий. Методу необходимо передать объект типа
+     * <b>"SerialPortEventListener"</b>. Данный объект должен быть должным образом
+     * описан, т.к. именно он будет отвечать за обработку произошедших событий. 
+     * Данный метод самостоятельно установит маску в состояние <b>"MASK_RXCHAR"</b>
+     * если она не была установлена заранее.
+     *
+     * @throws SerialPortException
+     */
+    public void addEventListener(SerialPortEventListener listener) throws SerialPortException {
+        beginCall("addEventListener()");
+        try {
+            synchronized(listenerLock){
+                if(!eventListenerAdded && selectionKey == null){
+                    if(!maskAssigned){
+                        setEventsMask(MASK_RXCHAR);
+                    }
+                    startEventLoop(listener);
+                }
+                else {
+                    throw new SerialPortException(portName, "addEventListener()", SerialPortException.TYPE_LISTENER_ALREADY_ADDED);
+                }
+            }
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Добавление обработчика событий. Методу необходимо передать объект типа
+     * <b>"SerialPortEventListener"</b>. Данный объект должен быть должным образом
+     * описан, т.к. именно он будет отвечать за обработку произошедших событий. 
+     * Также данному методу необходимо передать маску ивентов, для этого используйте
+     * переменные с префиксом <b>"MASK_"</b> например <b>"MASK_RXCHAR"</b>.
+     *
+     * @see #setEventsMask(int) setEventsMask(int mask)
+     *
+     * @throws SerialPortException
+     */
+    public void addEventListener(SerialPortEventListener listener, int mask) throws SerialPortException {
+        beginCall("addEventListener()");
+        try {
+            synchronized(listenerLock){
+                if(!eventListenerAdded && selectionKey == null){
+                    setEventsMask(mask);
+                    startEventLoop(listener);
+                }
+                else {
+                    throw new SerialPortException(portName, "addEventListener()", SerialPortException.TYPE_LISTENER_ALREADY_ADDED);
+                }
+            }
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Удаление обработчика событий. При этом маска выставляется в значение 0. Т.о.
+     * при следующем добавлении обработчика событий Вам потребуется снова установить
+     * необходимую маску ивентов.
+     *
+     * @return Если операция удачно выполнена, то метод вернёт true, в
+     * противном случае false.
+     * 
+     * @throws SerialPortException
+     */
+    public boolean removeEventListener() throws SerialPortException {
+        beginCall("removeEventListener()");
+        try {
+            synchronized(listenerLock){
+                if(!eventListenerAdded){
+                    throw new SerialPortException(portName, "removeEventListener()", SerialPortException.TYPE_CANT_REMOVE_LISTENER);
+                }
+                stopEventLoop("removeEventListener()");
+                return true;
+            }
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Остановка цикла обработки ивентов. Маска сбрасывается напрямую через
+     * <b>SerialNativeInterface</b>, т.к. метод вызывается и при закрытии
+     * порта. Вызывается под <b>listenerLock</b>.
+     */
+    private void stopEventLoop(String methodName) throws SerialPortException {
+        eventLoop.terminate();
+        if(!serialInterface.setEventsMask(portHandle, 0)){
+            throw new SerialPortException(portName, methodName, SerialPortException.TYPE_CANT_SET_MASK);
+        }
+        maskAssigned = false;
+        eventsMask = 0;
+        lineStateTracked = 0;
+        try {
+            eventLoop.awaitTermination(EVENT_LOOP_STOP_TIMEOUT);
+        }
+        catch (InterruptedException ex) {
+            throw new SerialPortException(portName, methodName, SerialPortException.TYPE_LISTENER_THREAD_INTERRUPTED);
+        }
+        eventListenerAdded = false;
+    }
+
+    /**
+     * Закрытие порта. Данный метод прерывает блокирующие операции, удаляет
+     * обработчик событий, дожидается завершения вызовов, выполняющихся в
+     * других потоках, и закрывает порт.
+     * <br></br>
+     * <br>Если вызовы не завершились за 5 секунд, handle не закрывается,
+     * чтобы его не получил другой порт, пока он используется, и метод
+     * возвращает false. Порт при этом остаётся в состоянии закрытия: новые
+     * вызовы невозможны, а закрытие можно повторить.</br>
+     *
+     * @return Если операция удачно выполнена, то метод вернёт true, в
+     * противном случае false.
+     * 
+     * @throws SerialPortException
+     */
+    public boolean closePort() throws SerialPortException {
+        if(!state.compareAndSet(STATE_OPENED, STATE_CLOSING) && !state.compareAndSet(STATE_CLOSE_PENDING, STATE_CLOSING)){
+            throw new SerialPortException("EMPTY", "closePort()", SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+        int handle = portHandle;
+        boolean callsCompleted = false;
+        boolean returnValue = false;
+        try {
+            serialInterface.cancelIo(handle);
+            for(SerialPortIoEngine engine : asyncEngines){
+                engine.cancel(this);
+            }
+            for(SerialPortPublisher publisher : publishers){
+                publisher.portClosed();
+            }
+            synchronized(listenerLock){
+                if(eventListenerAdded){
+                    stopEventLoop("closePort()");
+                }
+                SerialPortSelectionKey key = selectionKey;
+                if(key != null){
+                    key.cancel();
+                    serialInterface.setEventsMask(handle, 0);
+                }
+            }
+            callsCompleted = awaitCalls();
+            if(callsCompleted){
+                returnValue = serialInterface.closePort(handle);
+            }
+        }
+        finally {
+            if(returnValue){
+                maskAssigned = false;
+                eventsMask = 0;
+                lineStateTracked = 0;
+                state.set(STATE_CLOSED);
+                updateMetricsRegistration();
+            }
+            else if(!callsCompleted){
+                state.set(STATE_CLOSE_PENDING);
+            }
+            else {
+                state.set(STATE_OPENED);
+            }
+            for(Thread waiter : lineStateWaiters){
+                LockSupport.unpark(waiter);
+            }
+        }
+        return returnValue;
+    }
+
+    /**
+     * Регистрация порта в селекторе. Вызывается из
+     * <b>SerialPortSelector.register()</b>.
+     */
+    SerialPortSelectionKey register(SerialPortSelector selector, int mask, SerialPortEventListener listener) throws SerialPortException {
+        beginCall("register()");
+        try {
+            synchronized(listenerLock){
+                if(eventListenerAdded || selectionKey != null){
+                    throw new SerialPortException(portName, "register()", SerialPortException.TYPE_LISTENER_ALREADY_ADDED);
+                }
+                setEventsMask(mask);
+                SerialPortSelectionKey key = new SerialPortSelectionKey(selector, this, portHandle, new SerialPortEventDispatcher(this, listener));
+                selectionKey = key;
+                trackLineState(mask);
+                return key;
+            }
+        }
+        finally {
+            endCall();
+        }
+    }
+
+    void deregister(SerialPortSelectionKey key) {
+        synchronized(listenerLock){
+            if(selectionKey != key){
+                return;
+            }
+            selectionKey = null;
+            lineStateTracked = 0;
+        }
+        if(tryBeginCall()){
+            try {
+                serialInterface.setEventsMask(portHandle, 0);
+                maskAssigned = false;
+                eventsMask = 0;
+            }
+            finally {
+                endCall();
+            }
+        }
+    }
+
+    SerialNativeInterface getSerialInterface() {
+        return serialInterface;
+    }
+
+    int getPortHandle() {
+        return portHandle;
+    }
+
+    int getOpenGeneration() {
+        return openGeneration;
+    }
+
+    /**
+     * Регистрация издателя с активной подпиской. Подписка, ожидающая
+     * спроса, завершается при закрытии порта.
+     */
+    void addPublisher(SerialPortPublisher publisher) {
+        publishers.add(publisher);
+    }
+
+    void removePublisher(SerialPortPublisher publisher) {
+        publishers.remove(publisher);
+    }
+
+    /**
+     * Установка фабрики потоков для цикла обработки ивентов. Фабрика
+     * используется при следующем вызове <b>addEventListener</b>. Фабрика
+     * виртуальных потоков (JDK 21+, <b>Thread.ofVirtual().factory()</b>)
+     * позволяет обслуживать тысячи портов небольшим числом потоков-носителей:
+     * в виртуальном потоке цикл не блокируется в нативном коде, а проверяет
+     * порт без ожидания и паркуется между проверками.
+     *
+     * @param threadFactory фабрика потоков или <b>null</b> для потока по умолчанию.
+     */
+    public void setEventThreadFactory(ThreadFactory threadFactory) {
+        this.eventThreadFactory = threadFactory;
+        this.eventExecutor = null;
+    }
+
+    /**
+     * Установка исполнителя (Executor) для цикла обработки ивентов. Цикл
+     * передаётся исполнителю одной задачей, которая выполняется до удаления
+     * обработчика событий, поэтому исполнитель должен иметь свободный поток на
+     * каждый порт или создавать виртуальный поток на каждую задачу
+     * (<b>Executors.newVirtualThreadPerTaskExecutor()</b>).
+     *
+     * @param executor исполнитель или <b>null</b> для потока по умолчанию.
+     */
+    public void setEventExecutor(Executor executor) {
+        this.eventExecutor = executor;
+        this.eventThreadFactory = null;
+    }
+
+    /**
+     * Установка очереди доставки ивентов (см. <b>SerialPortEventQueue</b>).
+     * Очередь используется при следующем вызове <b>addEventListener</b>:
+     * цикл ожидания ивентов помещает ивенты в очередь, а слушатель вызывается
+     * из потока очереди, поэтому медленный слушатель не задерживает опрос порта.
+     *
+     * @param eventQueue очередь или <b>null</b> для вызова слушателя прямо из
+     * цикла ожидания ивентов.
+     */
+    public void setEventQueue(SerialPortEventQueue eventQueue) {
+        this.eventQueue = eventQueue;
+    }
+
+    /**
+     * Получение очереди доставки ивентов.
+     */
+    public SerialPortEventQueue getEventQueue() {
+        return eventQueue;
+    }
+
+    /**
+     * Включение накопления ивентов <b>RXCHAR</b>. Настройка используется при
+     * следующем вызове <b>addEventListener</b>: цикл ожидания ивентов
+     * задерживает <b>RXCHAR</b>, пока во входном буфере не наберётся
+     * <b>byteThreshold</b> байт или не истечёт время ожидания, и передаёт
+     * слушателю один ивент с текущим количеством байт в буфере. Остальные
+     * ивенты (CTS, DSR, BREAK, ERR и т.д.) доставляются без задержки.
+     * <br></br>
+     * <br>Время ожидания подстраивается под скорость поступления данных:
+     * при потоке данных ивент ждёт столько, сколько нужно для набора порога
+     * при текущей скорости, но не дольше <b>maxDelay</b>. Если ивенты RXCHAR
+     * приходят реже <b>maxDelay</b> (редкие байты, интерактивный обмен),
+     * ивент доставляется сразу.</br>
+     * <br>Накопление не применяется к портам, зарегистрированным в
+     * <b>SerialPortSelector</b>.</br>
+     *
+     * @param byteThreshold порог в байтах, значение 0 выключает накопление.
+     * @param maxDelay максимальная задержка ивента.
+     * @param unit единица измерения задержки.
+     */
+    public void setEventCoalescing(int byteThreshold, long maxDelay, TimeUnit unit) {
+        this.coalescingThreshold = Math.max(byteThreshold, 0);
+        this.coalescingDelay = unit.toNanos(Math.max(maxDelay, 0));
+    }
+
+    /**
+     * Включение режима активного ожидания ивентов для портов, где важна
+     * задержка реакции (управление в замкнутом контуре). Настройка
+     * используется при следующем вызове <b>addEventListener</b>: вместо
+     * блокирующего <b>waitEvents</b>, после которого поток нужно будить,
+     * цикл ожидания ивентов непрерывно опрашивает порт с нулевым таймаутом
+     * и подсказкой процессору <b>Thread.onSpinWait()</b>.
+     * <br></br>
+     * <br>Если в течение <b>spinBudget</b> ивентов нет, цикл переходит к
+     * парковке потока на постепенно увеличивающийся интервал (от 100 мкс до
+     * 10 мс) и возвращается к активному ожиданию после первого ивента.
+     * Значение <b>Long.MAX_VALUE</b> выключает парковку: поток занимает ядро
+     * процессора всё время работы слушателя.</br>
+     * <br>Режим не применяется, если цикл ожидания ивентов выполняется в
+     * виртуальном потоке или <b>SerialNativeInterface</b> не поддерживает
+     * ожидание ивентов с ограничением времени.</br>
+     *
+     * @param spinBudget время активного ожидания без ивентов, значение 0
+     * возвращает обычное блокирующее ожидание.
+     * @param unit единица измерения времени.
+     */
+    public void setEventSpinning(long spinBudget, TimeUnit unit) {
+        this.spinBudget = spinBudget == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toNanos(Math.max(spinBudget, 0));
+    }
+
+    /**
+     * Привязка потока цикла ожидания ивентов к процессору <b>cpu</b>.
+     * Настройка используется при следующем вызове <b>addEventListener</b> и
+     * только в режиме активного ожидания (см. <b>setEventSpinning</b>):
+     * привязанный поток не переносится планировщиком между ядрами и не
+     * теряет кэш. Для лучшего результата ядро следует исключить из общего
+     * планирования (например, параметром ядра Linux <b>isolcpus</b>).
+     * Привязка не применяется, если цикл выполняется исполнителем (см.
+     * <b>setEventExecutor</b>): поток исполнителя после завершения цикла
+     * выполняет другие задачи, а привязка не снимается.
+     * <br></br>
+     * <br>Привязка поддерживается не всеми реализациями
+     * <b>SerialNativeInterface</b>; если она не удалась, цикл работает без
+     * привязки.</br>
+     *
+     * @param cpu номер процессора или <b>-1</b> для работы без привязки.
+     */
+    public void setEventThreadAffinity(int cpu) {
+        this.eventThreadAffinity = cpu;
+    }
+
+    private void startEventLoop(SerialPortEventListener listener) throws SerialPortException {
+        SerialPortEventDispatcher dispatcher = new SerialPortEventDispatcher(this, listener);
+        SerialPortEventQueue.Stage stage = null;
+        if(eventQueue != null){
+            stage = eventQueue.start(portName, dispatcher);
+            if(stage == null){
+                throw new SerialPortException(portName, "addEventListener()", SerialPortException.TYPE_LISTENER_ALREADY_ADDED);
+            }
+        }
+        eventListener = listener;
+        //Привязываются только потоки, созданные для цикла
+        int affinity = eventExecutor != null ? -1 : eventThreadAffinity;
+        eventLoop = new EventLoop(dispatcher, stage, coalescingThreshold, coalescingDelay, spinBudget, affinity);
+        if(eventExecutor != null){
+            eventExecutor.execute(eventLoop);
+        }
+        else if(eventThreadFactory != null){
+            eventThreadFactory.newThread(eventLoop).start();
+        }
+        else {
+            Thread thread = new Thread(eventLoop);
+            thread.setName("EventThread " + portName);
+            thread.start();
+        }
+        eventListenerAdded = true;
+        trackLineState(eventsMask);
+    }
+
+    /**
+     * Включение и выключение метрик порта (см. <b>SerialPortMetrics</b>).
+     * При включении создаётся новый объект метрик. Пока порт открыт, он
+     * зарегистрирован в платформенном MBeanServer с именем
+     * <b>jssc:type=SerialPort,name="имя порта"</b> (ранее зарегистрированный
+     * MBean с тем же именем заменяется). При закрытии порта MBean удаляется,
+     * а при следующем открытии регистрируется снова, счётчики при этом
+     * сохраняются. Ошибки регистрации JMX не мешают сбору метрик. При
+     * выключении MBean удаляется, а порт перестаёт выполнять какие-либо
+     * измерения.
+     *
+     * @param enabled <b>true</b> для включения метрик.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        synchronized(metricsLock){
+            if(enabled == (metrics != null)){
+                return;
+            }
+            metrics = enabled ? new SerialPortMetrics(this) : null;
+            updateMetricsRegistration();
+        }
+    }
+
+    /**
+     * Регистрация MBean метрик, если метрики включены и порт открыт, и
+     * удаление MBean в противном случае.
+     */
+    private void updateMetricsRegistration() {
+        synchronized(metricsLock){
+            SerialPortMetrics portMetrics = metrics;
+            boolean register = portMetrics != null && state.get() == STATE_OPENED;
+            if(register == metricsRegistered){
+                return;
+            }
+            metricsRegistered = register;
+            ObjectName objectName = getMetricsObjectName();
+            if(objectName == null){
+                return;
+            }
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if(register){
+                    if(server.isRegistered(objectName)){
+                        server.unregisterMBean(objectName);
+                    }
+                    server.registerMBean(portMetrics, objectName);
+                }
+                else {
+                    ObjectInstance instance = server.getObjectInstance(objectName);
+                    if(instance != null && SerialPortMetrics.class.getName().equals(instance.getClassName())){
+                        server.unregisterMBean(objectName);
+                    }
+                }
+            }
+            catch (Exception ex) {
+                //Do nothing
+            }
+        }
+    }
+
+    /**
+     * Получение метрик порта.
+     *
+     * @return Метод возвращает объект метрик или <b>null</b>, если метрики
+     * выключены.
+     */
+    public SerialPortMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Начало обращения к порту в обход методов <b>SerialPort</b> (движок
+     * ввода-вывода, очередь передачи, фреймер, издатель, селектор).
+     * Обращение учитывается в метриках методами <b>recordRead</b>,
+     * <b>recordWrite</b> и <b>recordWaitEvents</b>.
+     *
+     * @return Метод возвращает отметку времени начала или 0, если метрики
+     * выключены.
+     */
+    long metricsStart() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    void recordRead(long start, int bytes) {
+        SerialPortMetrics portMetrics = metrics;
+        if(portMetrics != null && start != 0){
+            portMetrics.recordRead(System.nanoTime() - start, bytes);
+        }
+    }
+
+    void recordWrite(long start, long bytes) {
+        SerialPortMetrics portMetrics = metrics;
+        if(portMetrics != null && start != 0){
+            portMetrics.recordWrite(System.nanoTime() - start, (int)Math.min(bytes, Integer.MAX_VALUE));
+        }
+    }
+
+    void recordWaitEvents(long start) {
+        SerialPortMetrics portMetrics = metrics;
+        if(portMetrics != null && start != 0){
+            portMetrics.recordWaitEvents(System.nanoTime() - start);
+        }
+    }
+
+    private ObjectName getMetricsObjectName() {
+        try {
+            return new ObjectName("jssc:type=SerialPort,name=" + ObjectName.quote(portName));
+        }
+        catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static final long MAX_ASYNC_TIMEOUT_SECONDS = 1L << 32;
+    private static final int EVENT_WAIT_TIMEOUT = 100;
+    private static final double RX_RATE_WEIGHT = 0.25;
+    private static final long EVENT_LOOP_STOP_TIMEOUT = 5000;
+    private static final int LINE_MASK = MASK_CTS | MASK_DSR | MASK_RING | MASK_RLSD;
+    private static final long LINE_STATE_POLL_INTERVAL = 1000000L;
+
+    private EventLoop eventLoop;
+    private ThreadFactory eventThreadFactory;
+    private Executor eventExecutor;
+    private SerialPortEventQueue eventQueue;
+    private int coalescingThreshold = 0;
+    private long coalescingDelay = 0;
+    private long spinBudget = 0;
+    private int eventThreadAffinity = -1;
+    private volatile SerialPortIoEngine ioEngine;
+    private volatile SerialPortMetrics metrics;
+    private final Object metricsLock = new Object();
+    private boolean metricsRegistered = false;
+    private final AtomicInteger lineState = new AtomicInteger();
+    private final Queue<Thread> lineStateWaiters = new ConcurrentLinkedQueue<Thread>();
+    private volatile int lineStateTracked = 0;
+    private volatile long lineStateTime;
+    private volatile long lineStateMaxAge = 0;
+    private int eventsMask = 0;
+
+    /**
+     * Цикл ожидания и доставки ивентов. В платформенном потоке ожидание
+     * выполняется в нативном коде с таймаутом, чтобы флаг завершения
+     * проверялся регулярно. В виртуальном потоке порт проверяется без
+     * ожидания, а между проверками поток паркуется с нарастающим интервалом.
+     */
+    private class EventLoop implements Runnable {
+
+        private volatile boolean terminated = false;
+        private volatile Thread thread;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final int[] events = new int[SerialNativeInterface.MAX_EVENTS * 2];
+        private final SerialPortEventDispatcher dispatcher;
+        private final SerialPortEventQueue.Stage stage;
+        private final SerialPortEventQueue queue = eventQueue;
+        private final int rxThreshold;
+        private final long rxMaxDelay;
+        private int rxPending = 0;
+        private long rxPendingSince;
+        private long rxBudget = 0;
+        private int rxLastValue = 0;
+        private long rxLastTime = 0;
+        private long rxInterval = 0;
+        private double rxRate = 0;
+        private final long spinBudget;
+        private final int affinity;
+        private boolean timedWait = true;
+
+        private EventLoop(SerialPortEventDispatcher dispatcher, SerialPortEventQueue.Stage stage, int rxThreshold, long rxMaxDelay, long spinBudget, int affinity) {
+            this.dispatcher = dispatcher;
+            this.stage = stage;
+            this.rxThreshold = rxMaxDelay > 0 ? rxThreshold : 0;
+            this.rxMaxDelay = rxMaxDelay;
+            this.spinBudget = spinBudget;
+            this.affinity = affinity;
+        }
+
+        @Override
         public void run() {
-            while(!threadTerminated){
-                int[][] eventArray = waitEvents();
-                for(int i = 0; i < eventArray.length; i++){
-                    if(eventArray[i][0] > 0 && !threadTerminated){
-                        eventListener.serialEvent(new SerialPortEvent(portName, eventArray[i][0], eventArray[i][1]));
+            thread = Thread.currentThread();
+            try {
+                if(VirtualThreadSupport.isVirtual(thread)){
+                    runParking();
+                }
+                else if(spinBudget > 0){
+                    if(affinity >= 0){
+                        serialInterface.setThreadAffinity(affinity);
+                    }
+                    runSpinning();
+                }
+                else {
+                    while(!terminated){
+                        deliver(waitEvents(getWaitTimeout()));
+                    }
+                }
+            }
+            finally {
+                finished.countDown();
+            }
+        }
+
+        private void runParking() {
+            long parkNanos = VirtualThreadSupport.MIN_PARK_NANOS;
+            while(!terminated){
+                int count = waitEvents(0);
+                if(count > 0){
+                    deliver(count);
+                    parkNanos = VirtualThreadSupport.MIN_PARK_NANOS;
+                }
+                else {
+                    if(rxPending != 0){
+                        deliver(0);
+                    }
+                    long delay = getPendingDelay();
+                    if(delay >= 0 && delay < parkNanos){
+                        LockSupport.parkNanos(Math.max(delay, VirtualThreadSupport.MIN_PARK_NANOS));
+                    }
+                    else {
+                        parkNanos = VirtualThreadSupport.park(parkNanos);
                     }
                 }
             }
         }
+
+        /**
+         * Активное ожидание ивентов. Порт опрашивается без таймаута, а после
+         * <b>spinBudget</b> наносекунд без ивентов поток паркуется, как в
+         * <b>runParking</b>, до следующего ивента.
+         */
+        private void runSpinning() {
+            long idleSince = System.nanoTime();
+            long parkNanos = VirtualThreadSupport.MIN_PARK_NANOS;
+            while(!terminated){
+                int count = waitEvents(0);
+                if(count > 0){
+                    deliver(count);
+                    idleSince = System.nanoTime();
+                    parkNanos = VirtualThreadSupport.MIN_PARK_NANOS;
+                }
+                else {
+                    if(rxPending != 0){
+                        deliver(0);
+                    }
+                    if(spinBudget == Long.MAX_VALUE || System.nanoTime() - idleSince < spinBudget){
+                        SpinWaitSupport.onSpinWait();
+                    }
+                    else {
+                        long delay = getPendingDelay();
+                        if(delay >= 0 && delay < parkNanos){
+                            LockSupport.parkNanos(Math.max(delay, VirtualThreadSupport.MIN_PARK_NANOS));
+                        }
+                        else {
+                            parkNanos = VirtualThreadSupport.park(parkNanos);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Ожидание ивентов не дольше <b>timeout</b> мс. Ожидание отмечается в
+         * счётчике вызовов порта, а доставка ивентов - нет, поэтому слушатель
+         * может закрыть порт.
+         */
+        private int waitEvents(int timeout) {
+            if(!tryBeginCall()){
+                //Порт закрывается, цикл остановит closePort()
+                LockSupport.parkNanos(VirtualThreadSupport.MIN_PARK_NANOS);
+                return 0;
+            }
+            long start = metricsStart();
+            try {
+                return waitEventsCounted(timeout);
+            }
+            finally {
+                endCall();
+                recordWaitEvents(start);
+            }
+        }
+
+        /**
+         * Если реализация <b>SerialNativeInterface</b> не поддерживает
+         * ограничение времени, ивенты ожидаются без него.
+         */
+        private int waitEventsCounted(int timeout) {
+            if(timedWait){
+                try {
+                    return serialInterface.waitEvents(portHandle, events, timeout);
+                }
+                catch (UnsupportedOperationException ex) {
+                    timedWait = false;
+                }
+            }
+            return serialInterface.waitEvents(portHandle, events);
+        }
+
+        private void deliver(int count) {
+            if(rxThreshold > 0){
+                count = coalesce(count, System.nanoTime());
+            }
+            if(count > 0){
+                updateLineState(events, count);
+            }
+            if(stage != null){
+                stage.offer(events, count);
+            }
+            else {
+                dispatcher.dispatch(events, count);
+            }
+        }
+
+        /**
+         * Накопление ивента RXCHAR. Ивент RXCHAR из <b>events</b> запоминается,
+         * а в начало массива ивент добавляется, только когда в буфере
+         * набрался порог байт или истекло время ожидания.
+         *
+         * @return Метод возвращает количество ивентов для доставки.
+         */
+        private int coalesce(int count, long now) {
+            for(int i = 0; i < count; i++){
+                if(events[i * 2] == SerialPortEvent.RXCHAR){
+                    int value = events[i * 2 + 1];
+                    System.arraycopy(events, (i + 1) * 2, events, i * 2, (count - i - 1) * 2);
+                    count--;
+                    updateRxRate(value, now);
+                    if(rxPending == 0){
+                        rxPendingSince = now;
+                    }
+                    rxPending = value;
+                    break;
+                }
+            }
+            if(rxPending != 0 && (rxPending >= rxThreshold || now - rxPendingSince >= rxBudget)){
+                System.arraycopy(events, 0, events, 2, count * 2);
+                events[0] = SerialPortEvent.RXCHAR;
+                events[1] = rxPending;
+                rxPending = 0;
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Оценка скорости поступления данных и интервала между ивентами RXCHAR
+         * (скользящие средние) и расчёт времени ожидания. Если ивенты
+         * приходят чаще rxMaxDelay, ожидание объединит несколько ивентов:
+         * ивент ждёт, пока при текущей скорости не наберётся порог, но не
+         * дольше rxMaxDelay. Редкие ивенты доставляются сразу.
+         */
+        private void updateRxRate(int value, long now) {
+            long elapsed = now - rxLastTime;
+            int received = value >= rxLastValue ? value - rxLastValue : value;
+            if(rxLastTime != 0 && elapsed > 0 && elapsed < rxMaxDelay){
+                double rate = (double)received / elapsed;
+                rxRate = rxRate == 0 ? rate : rxRate + (rate - rxRate) * RX_RATE_WEIGHT;
+                rxInterval = rxInterval == 0 ? elapsed : rxInterval + (long)((elapsed - rxInterval) * RX_RATE_WEIGHT);
+            }
+            else {
+                rxRate = 0;
+                rxInterval = 0;
+            }
+            rxLastValue = value;
+            rxLastTime = now;
+            if(rxRate > 0 && rxInterval < rxMaxDelay){
+                rxBudget = (long)Math.min(rxThreshold / rxRate, rxMaxDelay);
+            }
+            else {
+                rxBudget = 0;
+            }
+        }
+
+        /**
+         * Время до истечения ожидания накопленного RXCHAR в наносекундах или
+         * -1, если ивент не накапливается.
+         */
+        private long getPendingDelay() {
+            if(rxPending == 0){
+                return -1;
+            }
+            return Math.max(rxBudget - (System.nanoTime() - rxPendingSince), 0);
+        }
+
+        private int getWaitTimeout() {
+            long delay = getPendingDelay();
+            if(delay < 0){
+                return EVENT_WAIT_TIMEOUT;
+            }
+            return (int)Math.min((delay + 999999) / 1000000, EVENT_WAIT_TIMEOUT);
+        }
+
+        private void terminate() {
+            terminated = true;
+            dispatcher.cancel();
+            if(stage != null){
+                queue.stop(stage);
+            }
+            Thread loopThread = thread;
+            if(loopThread != null){
+                LockSupport.unpark(loopThread);
+            }
+        }
+
+        /**
+         * Ожидание завершения цикла и потока доставки ивентов из очереди,
+         * после которого слушатель больше не вызывается. Поток, из которого
+         * вызывается слушатель, не ждёт сам себя.
+         */
+        private void awaitTermination(long timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            Thread current = Thread.currentThread();
+            if(thread != current){
+                finished.await(timeout, TimeUnit.MILLISECONDS);
+            }
+            if(stage != null && !stage.isConsumerThread(current)){
+                stage.awaitTermination(Math.max(deadline - System.nanoTime(), 0));
+            }
+        }
     }
 }
@@ -0,0 +1,251 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Запись трафика портов в файл захвата (см.
+ * <b>CaptureSerialNativeInterface</b>, <b>ReplaySerialNativeInterface</b>).
+ * Файл заданного размера отображается в память (<b>FileChannel.map</b>),
+ * место под запись резервируется атомарным сдвигом позиции, а данные
+ * копируются прямо в отображение, поэтому запись не требует блокировок и
+ * системных вызовов. Записи, не поместившиеся в файл, отбрасываются и
+ * учитываются счётчиком <b>getDroppedCount()</b>.
+ * <p>
+ * Формат файла (little-endian): заголовок <b>HEADER_SIZE</b> байт - сигнатура
+ * <b>"JSSCCAP1"</b>, время начала захвата в миллисекундах эпохи и размер
+ * записанных данных (заполняется при закрытии). Далее идут записи:
+ * длина данных плюс один (int, записывается последней, ненулевое значение
+ * служит признаком завершённой записи), тип записи (byte), резерв (3 byte),
+ * канал - handle порта (int), время от начала захвата в наносекундах (long)
+ * и данные записи.
+ *
+ * @author scream3r
+ */
+public class SerialPortCaptureWriter {
+
+    public static final int RECORD_OPEN = 1;
+    public static final int RECORD_CLOSE = 2;
+    public static final int RECORD_RX = 3;
+    public static final int RECORD_TX = 4;
+    public static final int RECORD_EVENT = 5;
+    public static final int RECORD_PARAMS = 6;
+
+    public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+    static final byte[] MAGIC = {'J', 'S', 'S', 'C', 'C', 'A', 'P', '1'};
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_HEADER_SIZE = 20;
+    static final int RECORD_TYPE = 4;
+    static final int RECORD_CHANNEL = 8;
+    static final int RECORD_TIME = 12;
+    static final int HEADER_START_TIME = 8;
+    static final int HEADER_LENGTH = 16;
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong position = new AtomicLong(HEADER_SIZE);
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicInteger writers = new AtomicInteger();
+    private final ThreadLocal<ByteBuffer> views = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    };
+    private volatile boolean closed = false;
+
+    public SerialPortCaptureWriter(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param file файл захвата, существующий файл перезаписывается.
+     * @param capacity максимальный размер файла в байтах (не более 2 ГБ).
+     */
+    public SerialPortCaptureWriter(File file, long capacity) throws IOException {
+        if(capacity < HEADER_SIZE || capacity > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Capacity must be between " + HEADER_SIZE + " and " + Integer.MAX_VALUE);
+        }
+        this.capacity = capacity;
+        this.file = new RandomAccessFile(file, "rw");
+        try {
+            this.file.setLength(0);
+            buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        catch (IOException ex) {
+            this.file.close();
+            throw ex;
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putLong(HEADER_START_TIME, System.currentTimeMillis());
+    }
+
+    /**
+     * Запись данных из части массива.
+     */
+    public void record(int type, int channel, byte[] data, int offset, int length) {
+        if(offset < 0 || length < 0 || offset + length > data.length){
+            throw new IndexOutOfBoundsException();
+        }
+        ByteBuffer view = reserve(type, channel, length);
+        if(view != null){
+            int start = view.position();
+            view.put(data, offset, length);
+            commit(view, start, length);
+        }
+    }
+
+    /**
+     * Запись данных между позицией и лимитом буфера. Позиция буфера не
+     * изменяется.
+     */
+    public void record(int type, int channel, ByteBuffer data) {
+        int length = data.remaining();
+        ByteBuffer view = reserve(type, channel, length);
+        if(view != null){
+            int start = view.position();
+            view.put(data.duplicate());
+            commit(view, start, length);
+        }
+    }
+
+    /**
+     * Запись ивента порта.
+     */
+    public void recordEvent(int channel, int eventType, int eventValue) {
+        ByteBuffer view = reserve(RECORD_EVENT, channel, 8);
+        if(view != null){
+            int start = view.position();
+            view.putInt(eventType);
+            view.putInt(eventValue);
+            commit(view, start, 8);
+        }
+    }
+
+    /**
+     * Запись параметров порта.
+     */
+    public void recordParams(int channel, int baudRate, int dataBits, int stopBits, int parity) {
+        ByteBuffer view = reserve(RECORD_PARAMS, channel, 16);
+        if(view != null){
+            int start = view.position();
+            view.putInt(baudRate);
+            view.putInt(dataBits);
+            view.putInt(stopBits);
+            view.putInt(parity);
+            commit(view, start, 16);
+        }
+    }
+
+    /**
+     * Получение количества отброшенных записей.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Получение объёма записанных данных вместе с заголовком.
+     */
+    public long getSize() {
+        return Math.min(position.get(), capacity);
+    }
+
+    /**
+     * Закрытие файла захвата. Закрытие дожидается записей, начатых другими
+     * потоками, после чего файл усекается до объёма записанных данных.
+     * Записи, начатые после закрытия, отбрасываются.
+     */
+    public synchronized void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        long size = position.getAndSet(capacity + 1);
+        size = Math.min(size, capacity);
+        while(writers.get() != 0){
+            Thread.yield();
+        }
+        buffer.putLong(HEADER_LENGTH, size);
+        buffer.force();
+        try {
+            file.getChannel().truncate(size);
+        }
+        catch (IOException ex) {
+            //Do nothing, the file keeps its mapped length
+        }
+        file.close();
+    }
+
+    /**
+     * Резервирование места под запись. Зарезервированная запись учитывается
+     * счётчиком <b>writers</b> до вызова <b>commit</b>, чтобы <b>close</b> не
+     * усёк файл под незавершённой записью.
+     */
+    private ByteBuffer reserve(int type, int channel, int length) {
+        writers.incrementAndGet();
+        if(closed){
+            writers.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return null;
+        }
+        long size = RECORD_HEADER_SIZE + length;
+        long start = position.getAndAdd(size);
+        if(start + size > capacity){
+            writers.decrementAndGet();
+            droppedCount.incrementAndGet();
+            return null;
+        }
+        ByteBuffer view = views.get();
+        view.limit((int)(start + size));
+        view.position((int)start + RECORD_TYPE);
+        view.put((byte)type);
+        view.put((byte)0);
+        view.putShort((short)0);
+        view.putInt(channel);
+        view.putLong(System.nanoTime() - startNanos);
+        return view;
+    }
+
+    private void commit(ByteBuffer view, int start, int length) {
+        view.putInt(start - RECORD_HEADER_SIZE, length + 1);
+        writers.decrementAndGet();
+    }
+}
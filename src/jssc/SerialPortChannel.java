@@ -0,0 +1,104 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * Представление открытого порта в виде <b>ByteChannel</b>. Канал работает в
+ * блокирующем режиме: чтение ожидает хотя бы один байт, запись передаёт все
+ * байты буфера. Исключения <b>SerialPortException</b> передаются как причина
+ * <b>IOException</b>.
+ *
+ * @author scream3r
+ */
+public class SerialPortChannel implements ByteChannel {
+
+    private final SerialPort serialPort;
+
+    SerialPortChannel(SerialPort serialPort) {
+        this.serialPort = serialPort;
+    }
+
+    /**
+     * Получение порта, с которым связан канал.
+     */
+    public SerialPort getSerialPort() {
+        return serialPort;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        checkOpen();
+        try {
+            return serialPort.read(buffer);
+        }
+        catch (SerialPortException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer buffer) throws IOException {
+        checkOpen();
+        int returnValue;
+        try {
+            returnValue = serialPort.write(buffer);
+        }
+        catch (SerialPortException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        if(returnValue == -1){
+            throw new IOException("Port name - " + serialPort.getPortName() + "; Write failed.");
+        }
+        return returnValue;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serialPort.isOpened();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(serialPort.isOpened()){
+            try {
+                serialPort.closePort();
+            }
+            catch (SerialPortException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if(!serialPort.isOpened()){
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -50,6 +50,16 @@ public class SerialPortEvent {
         this.eventValue = eventValue;
     }
 
+    /**
+     * Изменение типа и значения ивента. Используется для повторного
+     * использования одного объекта при доставке ивентов слушателям
+     * <b>SerialPortPrimitiveListener</b>.
+     */
+    void setEvent(int eventType, int eventValue) {
+        this.eventType = eventType;
+        this.eventValue = eventValue;
+    }
+
     /**
      * Получение имени порта от которого пришёл ивент.
      */
@@ -75,6 +85,7 @@ public class SerialPortEvent {
      * <br><b>DSR</b> - состояние линии DSR (0 - выкл., 1 - вкл.).</br>
      * <br><b>RLSD</b> - состояние линии RLSD (0 - выкл., 1 - вкл.).</br>
      * <br><b>BREAK</b> - 0.</br>
+     * <br><b>ERR</b> - маска ошибок (константы <b>SerialPort.ERROR_*</b>).</br>
      * <br><b>RING</b> - состояние линии RING (0 - выкл., 1 - вкл.).</br>
      * 
      */
@@ -0,0 +1,127 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+/**
+ * Доставка упакованных ивентов (см. <b>SerialNativeInterface.waitEvents(int, int[])</b>)
+ * слушателю порта. Используется потоком ивентов порта и
+ * <b>SerialPortSelector</b>.
+ *
+ * @author scream3r
+ */
+final class SerialPortEventDispatcher {
+
+    private final SerialPort serialPort;
+    private final String portName;
+    private final SerialPortEventListener listener;
+    private final SerialPortPrimitiveListener primitiveListener;
+    private final SerialPortEvent event;
+    private volatile boolean cancelled = false;
+
+    SerialPortEventDispatcher(SerialPort serialPort, SerialPortEventListener listener) {
+        this.serialPort = serialPort;
+        this.portName = serialPort.getPortName();
+        this.listener = listener;
+        if(listener instanceof SerialPortPrimitiveListener){
+            primitiveListener = (SerialPortPrimitiveListener)listener;
+        }
+        else {
+            primitiveListener = null;
+        }
+        event = new SerialPortEvent(portName, 0, 0);
+    }
+
+    SerialPortEventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Прекращение доставки. Ивенты, ещё не переданные слушателю, отбрасываются.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void dispatch(int[] events, int count) {
+        SerialPortMetrics metrics = serialPort.getMetrics();
+        if(metrics == null){
+            dispatchEvents(events, count);
+        }
+        else {
+            long start = System.nanoTime();
+            dispatchEvents(events, count);
+            metrics.recordDispatch(System.nanoTime() - start, events, count);
+        }
+    }
+
+    private void dispatchEvents(int[] events, int count) {
+        if(primitiveListener != null){
+            dispatchPrimitive(events, count);
+        }
+        else {
+            for(int i = 0; i < count && !cancelled; i++){
+                if(events[i * 2] > 0){
+                    listener.serialEvent(new SerialPortEvent(portName, events[i * 2], events[i * 2 + 1]));
+                }
+            }
+        }
+    }
+
+    private void dispatchPrimitive(int[] events, int count) {
+        int lineMask = 0;
+        int lineState = 0;
+        for(int i = 0; i < count && !cancelled; i++){
+            int eventType = events[i * 2];
+            int eventValue = events[i * 2 + 1];
+            switch(eventType){
+                case SerialPortEvent.RXCHAR:
+                    primitiveListener.onRxChar(eventValue);
+                    break;
+                case SerialPortEvent.CTS:
+                case SerialPortEvent.DSR:
+                case SerialPortEvent.RLSD:
+                case SerialPortEvent.RING:
+                    lineMask |= eventType;
+                    if(eventValue != 0){
+                        lineState |= eventType;
+                    }
+                    break;
+                default:
+                    if(eventType > 0){
+                        event.setEvent(eventType, eventValue);
+                        primitiveListener.serialEvent(event);
+                    }
+                    break;
+            }
+        }
+        if(lineMask != 0 && !cancelled){
+            primitiveListener.onLineChange(lineMask, lineState);
+        }
+    }
+}
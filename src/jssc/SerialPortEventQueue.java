@@ -0,0 +1,337 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Очередь доставки ивентов между циклом ожидания ивентов порта и слушателем.
+ * Без очереди слушатель вызывается прямо из цикла ожидания, и медленный
+ * слушатель задерживает следующий вызов <b>waitEvents</b>. С очередью цикл
+ * ожидания только помещает ивенты в кольцевой буфер фиксированного размера
+ * (один писатель, один читатель, без блокировок), а слушатель вызывается из
+ * отдельного потока или исполнителя (Executor).
+ * <p>
+ * Поведение при заполненном буфере задаётся политикой:
+ * <ul>
+ * <li><b>POLICY_BLOCK</b> - цикл ожидания ждёт освобождения места;</li>
+ * <li><b>POLICY_DROP_OLDEST</b> - самый старый ивент в буфере отбрасывается;</li>
+ * <li><b>POLICY_COALESCE_RXCHAR</b> - ивенты RXCHAR не занимают место в буфере:
+ * хранится только последний из ещё не доставленных (его значение - текущее
+ * число байт во входном буфере), остальные ивенты ждут освобождения места.
+ * Порядок ивентов при этом не сохраняется: накопленный RXCHAR доставляется
+ * после ивентов буфера, в том числе поступивших позже него.</li>
+ * </ul>
+ * Очередь обслуживает один порт: передайте её в
+ * <b>SerialPort.setEventQueue()</b> до вызова <b>addEventListener</b>.
+ * <b>removeEventListener</b> ждёт завершения потока доставки, после возврата
+ * слушатель больше не вызывается.
+ * Счётчики отброшенных и объединённых ивентов накапливаются за всё время
+ * жизни очереди.
+ *
+ * @author scream3r
+ */
+public class SerialPortEventQueue {
+
+    public static final int POLICY_BLOCK = 0;
+    public static final int POLICY_DROP_OLDEST = 1;
+    public static final int POLICY_COALESCE_RXCHAR = 2;
+
+    private static final long PRODUCER_PARK_NANOS = 1000000;
+
+    private final int capacity;
+    private final int policy;
+    private final Executor executor;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private volatile Stage stage;
+
+    /**
+     * Создание очереди, слушатель вызывается из отдельного потока.
+     *
+     * @param capacity ёмкость буфера в ивентах (округляется вверх до степени двойки).
+     * @param policy политика при заполненном буфере (константы <b>POLICY_</b>).
+     */
+    public SerialPortEventQueue(int capacity, int policy) {
+        this(capacity, policy, null);
+    }
+
+    /**
+     * Создание очереди, слушатель вызывается задачей, переданной исполнителю.
+     * Задача выполняется до удаления слушателя, поэтому исполнитель должен
+     * иметь для неё свободный поток.
+     *
+     * @param capacity ёмкость буфера в ивентах (округляется вверх до степени двойки).
+     * @param policy политика при заполненном буфере (константы <b>POLICY_</b>).
+     * @param executor исполнитель или <b>null</b> для отдельного потока.
+     */
+    public SerialPortEventQueue(int capacity, int policy, Executor executor) {
+        if(capacity < 1){
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        if(policy < POLICY_BLOCK || policy > POLICY_COALESCE_RXCHAR){
+            throw new IllegalArgumentException("Unknown policy: " + policy);
+        }
+        int size = 1;
+        while(size < capacity){
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.policy = policy;
+        this.executor = executor;
+    }
+
+    /**
+     * Получение ёмкости буфера.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Получение политики при заполненном буфере.
+     */
+    public int getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Число ивентов, отброшенных политикой <b>POLICY_DROP_OLDEST</b>.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Число ивентов RXCHAR, объединённых политикой <b>POLICY_COALESCE_RXCHAR</b>.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Число ивентов, ожидающих доставки слушателю.
+     */
+    public int size() {
+        Stage currentStage = stage;
+        return currentStage != null ? currentStage.size() : 0;
+    }
+
+    /**
+     * Запуск доставки ивентов слушателю. Возвращает null если очередь уже
+     * используется другим портом.
+     */
+    synchronized Stage start(String portName, SerialPortEventDispatcher dispatcher) {
+        if(stage != null){
+            return null;
+        }
+        Stage newStage = new Stage(dispatcher);
+        stage = newStage;
+        if(executor != null){
+            executor.execute(newStage);
+        }
+        else {
+            Thread thread = new Thread(newStage);
+            thread.setName("EventDispatcher " + portName);
+            thread.start();
+        }
+        return newStage;
+    }
+
+    synchronized void stop(Stage stoppedStage) {
+        stoppedStage.stop();
+        if(stage == stoppedStage){
+            stage = null;
+        }
+    }
+
+    /**
+     * Кольцевой буфер одного цикла доставки. Писатель - цикл ожидания ивентов
+     * порта, читатель - поток доставки. Ивент хранится в одной ячейке
+     * long: тип в старших 32 битах, значение в младших. Индекс начала может
+     * сдвигать и писатель (при отбрасывании старого ивента), поэтому читатель
+     * забирает ячейку через compareAndSet и повторяет попытку при неудаче.
+     */
+    final class Stage implements Runnable {
+
+        private final SerialPortEventDispatcher dispatcher;
+        private final long[] ring = new long[capacity];
+        private final int mask = capacity - 1;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong pendingRxChar = new AtomicLong(-1);
+        private final int[] batch = new int[SerialNativeInterface.MAX_EVENTS * 2];
+        private volatile boolean running = true;
+        private volatile boolean consumerParked = false;
+        private volatile boolean producerParked = false;
+        private volatile Thread consumerThread;
+        private volatile Thread producerThread;
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private Stage(SerialPortEventDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+        }
+
+        /**
+         * Помещение упакованных ивентов в буфер. Вызывается только циклом
+         * ожидания ивентов порта.
+         */
+        void offer(int[] events, int count) {
+            boolean published = false;
+            for(int i = 0; i < count && running; i++){
+                int eventType = events[i * 2];
+                int eventValue = events[i * 2 + 1];
+                if(eventType <= 0){
+                    continue;
+                }
+                if(policy == POLICY_COALESCE_RXCHAR && eventType == SerialPortEvent.RXCHAR){
+                    if(pendingRxChar.getAndSet(eventValue & 0xFFFFFFFFL) >= 0){
+                        coalescedCount.incrementAndGet();
+                    }
+                    published = true;
+                    continue;
+                }
+                long t = tail.get();
+                if(t - head.get() >= capacity){
+                    if(policy == POLICY_DROP_OLDEST){
+                        long h = head.get();
+                        if(t - h >= capacity && head.compareAndSet(h, h + 1)){
+                            droppedCount.incrementAndGet();
+                        }
+                    }
+                    else if(!awaitSpace(t)){
+                        break;
+                    }
+                }
+                ring[(int)t & mask] = ((long)eventType << 32) | (eventValue & 0xFFFFFFFFL);
+                tail.set(t + 1);
+                published = true;
+            }
+            if(published && consumerParked){
+                LockSupport.unpark(consumerThread);
+            }
+        }
+
+        private boolean awaitSpace(long t) {
+            producerThread = Thread.currentThread();
+            if(consumerParked){
+                LockSupport.unpark(consumerThread);
+            }
+            while(running && t - head.get() >= capacity){
+                producerParked = true;
+                if(t - head.get() >= capacity){
+                    LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+                }
+                producerParked = false;
+            }
+            return running;
+        }
+
+        @Override
+        public void run() {
+            consumerThread = Thread.currentThread();
+            try {
+                while(running){
+                    int count = drain();
+                    if(count > 0){
+                        dispatcher.dispatch(batch, count);
+                    }
+                    else {
+                        consumerParked = true;
+                        if(running && isEmpty()){
+                            LockSupport.park(this);
+                        }
+                        consumerParked = false;
+                    }
+                }
+            }
+            finally {
+                finished.countDown();
+            }
+        }
+
+        boolean isConsumerThread(Thread thread) {
+            return consumerThread == thread;
+        }
+
+        void awaitTermination(long timeoutNanos) throws InterruptedException {
+            finished.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private int drain() {
+            int count = 0;
+            while(count < SerialNativeInterface.MAX_EVENTS){
+                long h = head.get();
+                if(h == tail.get()){
+                    break;
+                }
+                long value = ring[(int)h & mask];
+                if(head.compareAndSet(h, h + 1)){
+                    batch[count * 2] = (int)(value >>> 32);
+                    batch[count * 2 + 1] = (int)value;
+                    count++;
+                }
+            }
+            if(count > 0 && producerParked){
+                LockSupport.unpark(producerThread);
+            }
+            if(count < SerialNativeInterface.MAX_EVENTS){
+                long rxChar = pendingRxChar.getAndSet(-1);
+                if(rxChar >= 0){
+                    batch[count * 2] = SerialPortEvent.RXCHAR;
+                    batch[count * 2 + 1] = (int)rxChar;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private boolean isEmpty() {
+            return head.get() == tail.get() && pendingRxChar.get() < 0;
+        }
+
+        int size() {
+            int queued = (int)Math.max(0, tail.get() - head.get());
+            return queued + (pendingRxChar.get() >= 0 ? 1 : 0);
+        }
+
+        private void stop() {
+            running = false;
+            dispatcher.cancel();
+            Thread thread = consumerThread;
+            if(thread != null){
+                LockSupport.unpark(thread);
+            }
+            thread = producerThread;
+            if(thread != null){
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+}
@@ -36,6 +36,11 @@ public class SerialPortException extends Exception {
     final public static String TYPE_LISTENER_ALREADY_ADDED = "Event listener already added";
     final public static String TYPE_LISTENER_THREAD_INTERRUPTED = "Event listener thread interrupted";
     final public static String TYPE_CANT_REMOVE_LISTENER = "Can't remove event listener, because listener not added";
+    final public static String TYPE_READ_TIMEOUT = "Read timeout";
+    final public static String TYPE_IO_ERROR = "Input/output error";
+    final public static String TYPE_WAIT_INTERRUPTED = "Wait interrupted";
+    final public static String TYPE_CANT_OPEN_PORT = "Can't open port";
+    final public static String TYPE_PORT_DISCONNECTED = "Port disconnected";
 
     private String portName;
     private String methodName;
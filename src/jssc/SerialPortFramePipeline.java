@@ -0,0 +1,212 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Конвейер приёма кадров. Конвейер является слушателем ивентов порта: по
+ * ивенту <b>RXCHAR</b> он читает принятые байты во внутренний буфер
+ * многократного использования и передаёт их цепочке декодеров
+ * <b>FrameDecoder</b>. Первый декодер выделяет кадры из потока байт, каждый
+ * следующий получает кадры предыдущего по одному (незавершённые данные
+ * внутри кадра отбрасываются). Кадры последнего декодера передаются
+ * получателю <b>FrameHandler</b> без копирования.
+ * <p>
+ * Пример:
+ * <pre>
+ * SerialPortFramePipeline pipeline = new SerialPortFramePipeline(serialPort, handler,
+ *         new DelimiterFrameDecoder(new byte[]{'\r', '\n'}, true));
+ * serialPort.addEventListener(pipeline, SerialPort.MASK_RXCHAR);
+ * </pre>
+ * Если незавершённый кадр заполняет весь внутренний буфер (кадр длиннее
+ * <b>maxFrameSize</b>), накопленные данные отбрасываются, а декодеры
+ * сбрасываются. Окончание такого кадра декодер может принять за отдельный
+ * кадр, поэтому получателю следует проверять кадры (длина, контрольная
+ * сумма), если возможны кадры длиннее <b>maxFrameSize</b>.
+ *
+ * @author scream3r
+ */
+public class SerialPortFramePipeline implements SerialPortPrimitiveListener {
+
+    public static final int DEFAULT_MAX_FRAME_SIZE = 4096;
+
+    private final SerialPort serialPort;
+    private final FrameHandler handler;
+    private final FrameDecoder[] decoders;
+    private final FrameHandler[] outputs;
+    private final ByteBuffer buffer;
+    private volatile long frameCount = 0;
+    private volatile long discardedCount = 0;
+    private volatile long lastReceiveTime = 0;
+
+    public SerialPortFramePipeline(SerialPort serialPort, FrameHandler handler, FrameDecoder... decoders) {
+        this(serialPort, DEFAULT_MAX_FRAME_SIZE, handler, decoders);
+    }
+
+    /**
+     * @param serialPort порт, из которого читаются данные.
+     * @param maxFrameSize максимальный размер кадра в байтах вместе с
+     * байтами разметки (разделителями, экранированием).
+     * @param handler получатель кадров.
+     * @param decoders цепочка декодеров, не менее одного.
+     */
+    public SerialPortFramePipeline(SerialPort serialPort, int maxFrameSize, FrameHandler handler, FrameDecoder... decoders) {
+        if(decoders.length == 0){
+            throw new IllegalArgumentException("No decoders");
+        }
+        if(maxFrameSize < 1){
+            throw new IllegalArgumentException("maxFrameSize < 1");
+        }
+        this.serialPort = serialPort;
+        this.handler = handler;
+        this.decoders = decoders.clone();
+        this.buffer = ByteBuffer.allocate(maxFrameSize);
+        outputs = new FrameHandler[decoders.length];
+        for(int i = 0; i < decoders.length; i++){
+            outputs[i] = new StageOutput(i + 1);
+        }
+    }
+
+    @Override
+    public void serialEvent(SerialPortEvent serialPortEvent) {
+        if(serialPortEvent.isRXCHAR()){
+            onRxChar(serialPortEvent.getEventValue());
+        }
+    }
+
+    @Override
+    public synchronized void onRxChar(int bytesAvailable) {
+        int remaining = bytesAvailable;
+        while(remaining > 0){
+            int length = Math.min(remaining, buffer.remaining());
+            int result;
+            try {
+                result = serialPort.readBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), length, 0, TimeUnit.MILLISECONDS);
+            }
+            catch (SerialPortException ex) {
+                return;
+            }
+            if(result <= 0){
+                return;
+            }
+            lastReceiveTime = System.nanoTime();
+            buffer.position(buffer.position() + result);
+            remaining -= result;
+            decode();
+        }
+    }
+
+    @Override
+    public void onLineChange(int mask, int state) {
+    }
+
+    /**
+     * Передача данных конвейеру напрямую, минуя чтение из порта (например,
+     * данных, полученных через <b>SerialPort.readAsync()</b>). Данные между
+     * позицией и лимитом буфера копируются во внутренний буфер, позиция
+     * <b>data</b> сдвигается до лимита.
+     */
+    public synchronized void process(ByteBuffer data) {
+        while(data.hasRemaining()){
+            int length = Math.min(data.remaining(), buffer.remaining());
+            ByteBuffer chunk = data.duplicate();
+            chunk.limit(chunk.position() + length);
+            buffer.put(chunk);
+            data.position(data.position() + length);
+            decode();
+        }
+    }
+
+    /**
+     * Сброс конвейера: накопленные данные отбрасываются, декодеры
+     * сбрасываются.
+     */
+    public synchronized void reset() {
+        buffer.clear();
+        for(FrameDecoder decoder : decoders){
+            decoder.reset();
+        }
+    }
+
+    /**
+     * Получение отметки времени (<b>System.nanoTime()</b>) возврата из
+     * последнего чтения порта. Во время вызова получателя кадров - время
+     * приёма порции данных, завершившей кадр.
+     */
+    public long getLastReceiveTime() {
+        return lastReceiveTime;
+    }
+
+    /**
+     * Количество кадров, переданных получателю.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Количество случаев, когда незавершённый кадр превысил
+     * <b>maxFrameSize</b> и был отброшен.
+     */
+    public long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    private void decode() {
+        buffer.flip();
+        decoders[0].decode(buffer, outputs[0]);
+        buffer.compact();
+        if(!buffer.hasRemaining()){
+            reset();
+            discardedCount++;
+        }
+    }
+
+    private class StageOutput implements FrameHandler {
+
+        private final int nextStage;
+
+        private StageOutput(int nextStage) {
+            this.nextStage = nextStage;
+        }
+
+        @Override
+        public void frameReceived(ByteBuffer frame) {
+            if(nextStage < decoders.length){
+                decoders[nextStage].decode(frame, outputs[nextStage]);
+                if(frame.hasRemaining()){
+                    //Незавершённый вложенный кадр не переходит в следующий кадр
+                    decoders[nextStage].reset();
+                }
+            }
+            else {
+                frameCount++;
+                handler.frameReceived(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выделение кадров по паузе между символами, как в Modbus RTU: кадр
+ * завершается, если после последнего принятого байта линия молчит дольше
+ * порога. Порог задаётся в символах (по умолчанию 3.5) и пересчитывается
+ * при каждом вызове <b>readFrame</b> из текущих параметров порта (см.
+ * <b>SerialPort.getCharacterTimeNanos()</b>). Для Modbus RTU на скоростях
+ * выше 19200 бод спецификация фиксирует порог 1.75 мс, его можно задать
+ * через <b>setMinGap</b>.
+ * <p>
+ * Каждая порция данных помечается значением <b>System.nanoTime()</b> в
+ * момент возврата из нативного чтения, паузы ожидаются вызовом
+ * <b>SerialNativeInterface.waitInput</b> с наносекундным таймаутом (на Linux
+ * - <b>ppoll</b>). Точность ограничена тем, как драйвер передаёт принятые
+ * байты: UART с FIFO может задерживать последние байты кадра на несколько
+ * символов.
+ * <p>
+ * Объект предназначен для использования одним потоком.
+ *
+ * @author scream3r
+ */
+public class SerialPortGapFramer {
+
+    public static final double DEFAULT_GAP_CHARACTERS = 3.5;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 256;
+
+    private final SerialPort serialPort;
+    private final byte[] buffer;
+    private final ByteBuffer frame;
+    private double gapCharacters = DEFAULT_GAP_CHARACTERS;
+    private long minGapNanos = 0;
+    private long frameStartTime;
+    private long frameEndTime;
+    private long discardedCount = 0;
+
+    public SerialPortGapFramer(SerialPort serialPort) {
+        this(serialPort, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * @param serialPort порт, из которого читаются кадры.
+     * @param maxFrameSize максимальный размер кадра. Более длинные кадры
+     * отбрасываются целиком.
+     */
+    public SerialPortGapFramer(SerialPort serialPort, int maxFrameSize) {
+        if(maxFrameSize < 1){
+            throw new IllegalArgumentException("maxFrameSize < 1");
+        }
+        this.serialPort = serialPort;
+        this.buffer = new byte[maxFrameSize];
+        this.frame = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Установка порога паузы в символах.
+     */
+    public void setGapCharacters(double gapCharacters) {
+        if(!(gapCharacters > 0)){
+            throw new IllegalArgumentException("gapCharacters must be positive");
+        }
+        this.gapCharacters = gapCharacters;
+    }
+
+    public double getGapCharacters() {
+        return gapCharacters;
+    }
+
+    /**
+     * Установка минимального порога паузы, независимого от скорости порта.
+     */
+    public void setMinGap(long minGap, TimeUnit unit) {
+        this.minGapNanos = Math.max(unit.toNanos(minGap), 0);
+    }
+
+    /**
+     * Получение действующего порога паузы в наносекундах.
+     */
+    public long getGapNanos() {
+        return Math.max((long)(gapCharacters * serialPort.getCharacterTimeNanos()), minGapNanos);
+    }
+
+    /**
+     * Чтение кадра. Метод ожидает первый байт кадра не дольше
+     * <b>timeout</b>, после чего читает данные до паузы длиннее порога.
+     * Слишком длинные кадры отбрасываются, и ожидание продолжается до
+     * истечения <b>timeout</b>.
+     *
+     * @return Метод возвращает кадр (данные между позицией и лимитом
+     * буфера) или <b>null</b>, если за время <b>timeout</b> кадр не начался.
+     * Буфер используется повторно и действителен до следующего вызова.
+     *
+     * @throws SerialPortException
+     */
+    public ByteBuffer readFrame(long timeout, TimeUnit unit) throws SerialPortException {
+        if(!serialPort.tryBeginCall()){
+            throw new SerialPortException(serialPort.getPortName(), "readFrame()", SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+        try {
+            SerialNativeInterface serialInterface = serialPort.getSerialInterface();
+            int handle = serialPort.getPortHandle();
+            long gapNanos = getGapNanos();
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while(true){
+                int available = checkResult(serialInterface.waitInput(handle, deadline - System.nanoTime()));
+                if(available == 0){
+                    return null;
+                }
+                int length = 0;
+                boolean overflow = false;
+                frameStartTime = 0;
+                while(available > 0){
+                    int count = Math.min(available, buffer.length - length);
+                    if(count == 0){
+                        overflow = true;
+                        length = 0;
+                        count = Math.min(available, buffer.length);
+                    }
+                    long start = serialPort.metricsStart();
+                    int result = serialInterface.readBytes(handle, buffer, length, count, 0);
+                    serialPort.recordRead(start, result);
+                    checkResult(result);
+                    long now = System.nanoTime();
+                    if(length == 0 && !overflow){
+                        frameStartTime = now;
+                    }
+                    frameEndTime = now;
+                    length += result;
+                    available = checkResult(serialInterface.waitInput(handle, gapNanos - (System.nanoTime() - frameEndTime)));
+                }
+                if(!overflow){
+                    frame.limit(length);
+                    frame.position(0);
+                    return frame;
+                }
+                discardedCount++;
+            }
+        }
+        finally {
+            serialPort.endCall();
+        }
+    }
+
+    /**
+     * Получение отметки времени (<b>System.nanoTime()</b>) первой порции
+     * данных последнего кадра.
+     */
+    public long getFrameStartTime() {
+        return frameStartTime;
+    }
+
+    /**
+     * Получение отметки времени (<b>System.nanoTime()</b>) последней порции
+     * данных последнего кадра.
+     */
+    public long getFrameEndTime() {
+        return frameEndTime;
+    }
+
+    /**
+     * Количество кадров, отброшенных из-за превышения максимального размера.
+     */
+    public long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    private int checkResult(int result) throws SerialPortException {
+        if(result < 0){
+            //Если порт закрывается, чтение прервано методом closePort()
+            String type = serialPort.isOpened() ? SerialPortException.TYPE_IO_ERROR : SerialPortException.TYPE_PORT_NOT_OPENED;
+            throw new SerialPortException(serialPort.getPortName(), "readFrame()", type);
+        }
+        return result;
+    }
+}
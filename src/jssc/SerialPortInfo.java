@@ -0,0 +1,125 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+/**
+ * Сведения о последовательном порте системы: имя, драйвер и, для
+ * USB-адаптеров, идентификаторы производителя и продукта, серийный номер и
+ * строковые описания устройства. Неизвестные поля имеют значение
+ * <b>null</b> (для идентификаторов - <b>-1</b>).
+ *
+ * @author scream3r
+ */
+public final class SerialPortInfo {
+
+    private final String portName;
+    private final String driver;
+    private final int vendorId;
+    private final int productId;
+    private final String serialNumber;
+    private final String manufacturer;
+    private final String product;
+
+    public SerialPortInfo(String portName, String driver, int vendorId, int productId, String serialNumber, String manufacturer, String product) {
+        this.portName = portName;
+        this.driver = driver;
+        this.vendorId = vendorId;
+        this.productId = productId;
+        this.serialNumber = serialNumber;
+        this.manufacturer = manufacturer;
+        this.product = product;
+    }
+
+    /**
+     * Получение имени порта.
+     */
+    public String getPortName() {
+        return portName;
+    }
+
+    /**
+     * Получение имени драйвера порта.
+     */
+    public String getDriver() {
+        return driver;
+    }
+
+    /**
+     * Получение идентификатора производителя USB (VID) или -1.
+     */
+    public int getVendorId() {
+        return vendorId;
+    }
+
+    /**
+     * Получение идентификатора продукта USB (PID) или -1.
+     */
+    public int getProductId() {
+        return productId;
+    }
+
+    /**
+     * Получение серийного номера USB-устройства.
+     */
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    /**
+     * Получение названия производителя USB-устройства.
+     */
+    public String getManufacturer() {
+        return manufacturer;
+    }
+
+    /**
+     * Получение названия USB-устройства.
+     */
+    public String getProduct() {
+        return product;
+    }
+
+    /**
+     * Проверка, является ли порт USB-адаптером.
+     */
+    public boolean isUsb() {
+        return vendorId != -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(portName);
+        if(driver != null){
+            builder.append(" (").append(driver).append(')');
+        }
+        if(vendorId != -1){
+            builder.append(String.format(" [%04x:%04x]", vendorId, productId));
+        }
+        if(serialNumber != null){
+            builder.append(" S/N ").append(serialNumber);
+        }
+        return builder.toString();
+    }
+}
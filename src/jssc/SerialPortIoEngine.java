@@ -0,0 +1,462 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Общий движок асинхронного ввода-вывода для <b>SerialPort.readAsync()</b> и
+ * <b>SerialPort.writeAsync()</b>. Один поток движка обслуживает операции всех
+ * портов: операции выполняются без ожидания, а готовность портов ожидается
+ * одним вызовом <b>SerialNativeInterface.waitReady()</b>. Если реализация
+ * <b>SerialNativeInterface</b> не поддерживает <b>waitReady</b>, поток движка
+ * повторяет операции с нарастающим интервалом от 0.1 до 1 мс.
+ * <p>
+ * Операции выполняются вызовами <b>readBytes</b> и <b>writeBytes</b> с
+ * нулевым таймаутом, которые не блокируют поток движка. Если реализация не
+ * поддерживает такие вызовы (например, libjssc не поддерживает запись с
+ * таймаутом), операция завершается исключением
+ * <b>UnsupportedOperationException</b>, а не блокирует все порты движка.
+ * <p>
+ * Каждое обращение к порту, включая ожидание готовности, отмечается в
+ * счётчике вызовов порта, поэтому <b>SerialPort.closePort()</b> не закроет
+ * handle во время операции. Future завершаются вне счётчика. Handle порта
+ * читается при каждой попытке, а операция, начатая до закрытия порта,
+ * завершается исключением и не выполняется после его повторного открытия.
+ * <p>
+ * Операции чтения одного порта выполняются в порядке вызова, операции
+ * записи - тоже. Поток движка запускается при первой операции и является
+ * демоном.
+ *
+ * @author scream3r
+ */
+public final class SerialPortIoEngine {
+
+    private static final int WAIT_INTERVAL = 10;
+    private static final long MIN_PARK_NANOS = 100000;
+    private static final long MAX_PARK_NANOS = 1000000;
+
+    private static SerialPortIoEngine defaultEngine;
+
+    private final String name;
+    private final ConcurrentLinkedQueue<Operation<?>> submitted = new ConcurrentLinkedQueue<Operation<?>>();
+    private final Set<Operation<?>> active = Collections.newSetFromMap(new ConcurrentHashMap<Operation<?>, Boolean>());
+    private volatile Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * Создание движка с собственным потоком.
+     *
+     * @param name имя потока движка.
+     */
+    public SerialPortIoEngine(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Получение движка, общего для всех портов, у которых не задан свой
+     * движок (см. <b>SerialPort.setIoEngine()</b>).
+     */
+    public static synchronized SerialPortIoEngine getDefault() {
+        if(defaultEngine == null){
+            defaultEngine = new SerialPortIoEngine("SerialPortIoEngine");
+        }
+        return defaultEngine;
+    }
+
+    /**
+     * Остановка движка. Незавершённые операции отменяются, новые операции
+     * завершаются с исключением <b>IllegalStateException</b>.
+     */
+    public void close() {
+        closed = true;
+        Thread engineThread = thread;
+        if(engineThread != null){
+            LockSupport.unpark(engineThread);
+        }
+        cancelSubmitted();
+    }
+
+    /**
+     * Метод возвращает true если движок не остановлен.
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    CompletableFuture<byte[]> read(SerialPort serialPort, int generation, int byteCount, long timeoutNanos) {
+        return submit(new ReadOperation(serialPort, generation, byteCount, System.nanoTime() + timeoutNanos));
+    }
+
+    CompletableFuture<Integer> write(SerialPort serialPort, int generation, ByteBuffer buffer) {
+        return submit(new WriteOperation(serialPort, generation, buffer));
+    }
+
+    /**
+     * Завершение исключением всех незавершённых операций порта. Вызывается
+     * из <b>SerialPort.closePort()</b>.
+     */
+    void cancel(SerialPort serialPort) {
+        for(Operation<?> operation : active){
+            if(operation.serialPort == serialPort){
+                operation.future.completeExceptionally(new SerialPortException(serialPort.getPortName(), operation.methodName, SerialPortException.TYPE_PORT_NOT_OPENED));
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        if(closed){
+            operation.future.completeExceptionally(new IllegalStateException("SerialPortIoEngine is closed"));
+            return operation.future;
+        }
+        active.add(operation);
+        submitted.add(operation);
+        Thread engineThread = thread;
+        if(engineThread == null){
+            engineThread = start();
+        }
+        LockSupport.unpark(engineThread);
+        if(closed){
+            cancelSubmitted();
+        }
+        return operation.future;
+    }
+
+    private synchronized Thread start() {
+        if(thread == null){
+            Thread engineThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runEngine();
+                }
+            });
+            engineThread.setName(name);
+            engineThread.setDaemon(true);
+            engineThread.start();
+            thread = engineThread;
+        }
+        return thread;
+    }
+
+    private void cancelSubmitted() {
+        Operation<?> operation;
+        while((operation = submitted.poll()) != null){
+            active.remove(operation);
+            operation.future.cancel(false);
+        }
+    }
+
+    private void runEngine() {
+        List<Operation<?>> pending = new ArrayList<Operation<?>>();
+        Set<SerialPort> blockedReads = new HashSet<SerialPort>();
+        Set<SerialPort> blockedWrites = new HashSet<SerialPort>();
+        int[] handles = new int[16];
+        int[] interests = new int[16];
+        Operation<?>[] waiting = new Operation<?>[16];
+        Set<SerialNativeInterface> unsupportedInterfaces = new HashSet<SerialNativeInterface>();
+        long parkNanos = MIN_PARK_NANOS;
+        while(!closed){
+            Operation<?> operation;
+            while((operation = submitted.poll()) != null){
+                pending.add(operation);
+            }
+            blockedReads.clear();
+            blockedWrites.clear();
+            boolean progress = false;
+            SerialNativeInterface waitInterface = null;
+            boolean sameInterface = true;
+            int count = 0;
+            long now = System.nanoTime();
+            long timeoutNanos = WAIT_INTERVAL * 1000000L;
+            for(int i = 0; i < pending.size(); i++){
+                operation = pending.get(i);
+                Set<SerialPort> blocked = operation.interest == SerialNativeInterface.READY_WRITE ? blockedWrites : blockedReads;
+                if(blocked.contains(operation.serialPort)){
+                    continue;
+                }
+                if(operation.future.isDone() || attempt(operation)){
+                    pending.remove(i--);
+                    active.remove(operation);
+                    progress = true;
+                    continue;
+                }
+                blocked.add(operation.serialPort);
+                SerialNativeInterface serialInterface = operation.serialPort.getSerialInterface();
+                if(waitInterface == null){
+                    waitInterface = serialInterface;
+                }
+                else if(waitInterface != serialInterface){
+                    sameInterface = false;
+                }
+                if(count == handles.length){
+                    handles = grow(handles);
+                    interests = grow(interests);
+                    Operation<?>[] newWaiting = new Operation<?>[count * 2];
+                    System.arraycopy(waiting, 0, newWaiting, 0, count);
+                    waiting = newWaiting;
+                }
+                handles[count] = operation.handle;
+                interests[count] = operation.interest;
+                waiting[count] = operation;
+                count++;
+                if(operation.timed){
+                    timeoutNanos = Math.min(timeoutNanos, operation.deadline - now);
+                }
+            }
+            if(progress){
+                parkNanos = MIN_PARK_NANOS;
+                continue;
+            }
+            if(pending.isEmpty()){
+                if(submitted.isEmpty() && !closed){
+                    LockSupport.park(this);
+                }
+                continue;
+            }
+            timeoutNanos = Math.max(timeoutNanos, 0);
+            if(sameInterface && !unsupportedInterfaces.contains(waitInterface)){
+                if(!beginCalls(waiting, count)){
+                    //Операции закрываемого порта завершатся при следующей попытке
+                    continue;
+                }
+                try {
+                    waitInterface.waitReady(handles, interests, count, (int)((timeoutNanos + 999999) / 1000000));
+                    continue;
+                }
+                catch (UnsupportedOperationException ex) {
+                    unsupportedInterfaces.add(waitInterface);
+                }
+                finally {
+                    endCalls(waiting, count);
+                }
+            }
+            LockSupport.parkNanos(this, Math.min(parkNanos, timeoutNanos));
+            parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+        }
+        for(Operation<?> operation : pending){
+            active.remove(operation);
+            operation.future.cancel(false);
+        }
+        cancelSubmitted();
+    }
+
+    /**
+     * Отметка ожидания в счётчиках вызовов портов. Handle, полученный
+     * операцией при последней попытке, действителен, только если порт не
+     * переоткрывался.
+     */
+    private static boolean beginCalls(Operation<?>[] operations, int count) {
+        for(int i = 0; i < count; i++){
+            if(!operations[i].serialPort.tryBeginCall()){
+                endCalls(operations, i);
+                return false;
+            }
+            if(operations[i].serialPort.getOpenGeneration() != operations[i].generation){
+                endCalls(operations, i + 1);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void endCalls(Operation<?>[] operations, int count) {
+        for(int i = 0; i < count; i++){
+            operations[i].serialPort.endCall();
+        }
+    }
+
+    private static boolean attempt(Operation<?> operation) {
+        try {
+            return operation.attempt(System.nanoTime());
+        }
+        catch (UnsupportedOperationException ex) {
+            operation.future.completeExceptionally(ex);
+            return true;
+        }
+    }
+
+    private static int[] grow(int[] array) {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private static abstract class Operation<T> {
+
+        final SerialPort serialPort;
+        final String methodName;
+        final int generation;
+        final int interest;
+        final boolean timed;
+        final long deadline;
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        //Handle порта при последней попытке, используется для ожидания готовности
+        int handle = -1;
+
+        Operation(SerialPort serialPort, String methodName, int generation, int interest, boolean timed, long deadline) {
+            this.serialPort = serialPort;
+            this.methodName = methodName;
+            this.generation = generation;
+            this.interest = interest;
+            this.timed = timed;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Выполнение операции без ожидания. Возвращает true если операция
+         * завершена (future выставлен).
+         */
+        final boolean attempt(long now) {
+            if(!serialPort.tryBeginCall()){
+                future.completeExceptionally(new SerialPortException(serialPort.getPortName(), methodName, SerialPortException.TYPE_PORT_NOT_OPENED));
+                return true;
+            }
+            int result;
+            try {
+                if(serialPort.getOpenGeneration() != generation){
+                    //Порт закрыт и открыт снова: handle может принадлежать другому устройству
+                    future.completeExceptionally(new SerialPortException(serialPort.getPortName(), methodName, SerialPortException.TYPE_PORT_NOT_OPENED));
+                    return true;
+                }
+                handle = serialPort.getPortHandle();
+                result = transfer();
+            }
+            finally {
+                serialPort.endCall();
+            }
+            return complete(result, now);
+        }
+
+        /**
+         * Чтение или запись без ожидания по handle <b>handle</b>.
+         * Вызывается в счётчике вызовов порта.
+         *
+         * @return Количество переданных байт или -1 при ошибке.
+         */
+        abstract int transfer();
+
+        /**
+         * Учёт результата <b>transfer()</b> и, если операция завершена,
+         * выставление future.
+         */
+        abstract boolean complete(int result, long now);
+
+        /**
+         * Завершение операции после ошибки. Если порт закрывается, ошибку
+         * вызвало прерывание операции методом <b>closePort()</b>.
+         */
+        void fail() {
+            String type = serialPort.isOpened() ? SerialPortException.TYPE_IO_ERROR : SerialPortException.TYPE_PORT_NOT_OPENED;
+            future.completeExceptionally(new SerialPortException(serialPort.getPortName(), methodName, type));
+        }
+    }
+
+    private static class ReadOperation extends Operation<byte[]> {
+
+        private final byte[] buffer;
+        private int offset = 0;
+
+        ReadOperation(SerialPort serialPort, int generation, int byteCount, long deadline) {
+            super(serialPort, "readAsync()", generation, SerialNativeInterface.READY_READ, true, deadline);
+            buffer = new byte[byteCount];
+        }
+
+        @Override
+        int transfer() {
+            if(offset == buffer.length){
+                return 0;
+            }
+            long start = serialPort.metricsStart();
+            int result = serialPort.getSerialInterface().readBytes(handle, buffer, offset, buffer.length - offset, 0);
+            serialPort.recordRead(start, result);
+            return result;
+        }
+
+        @Override
+        boolean complete(int result, long now) {
+            if(result < 0){
+                fail();
+                return true;
+            }
+            offset += result;
+            if(offset == buffer.length){
+                future.complete(buffer);
+                return true;
+            }
+            if(now - deadline >= 0){
+                byte[] receivedData = new byte[offset];
+                System.arraycopy(buffer, 0, receivedData, 0, offset);
+                future.completeExceptionally(new SerialPortTimeoutException(serialPort.getPortName(), methodName, receivedData));
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static class WriteOperation extends Operation<Integer> {
+
+        private final ByteBuffer buffer;
+        private int written = 0;
+
+        WriteOperation(SerialPort serialPort, int generation, ByteBuffer buffer) {
+            super(serialPort, "writeAsync()", generation, SerialNativeInterface.READY_WRITE, false, 0);
+            this.buffer = buffer;
+        }
+
+        @Override
+        int transfer() {
+            if(!buffer.hasRemaining()){
+                return 0;
+            }
+            long start = serialPort.metricsStart();
+            int result = serialPort.getSerialInterface().writeBytes(handle, buffer, 0);
+            serialPort.recordWrite(start, result);
+            return result;
+        }
+
+        @Override
+        boolean complete(int result, long now) {
+            if(result < 0){
+                fail();
+                return true;
+            }
+            written += result;
+            if(!buffer.hasRemaining()){
+                future.complete(Integer.valueOf(written));
+                return true;
+            }
+            return false;
+        }
+    }
+}
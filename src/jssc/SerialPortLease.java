@@ -0,0 +1,176 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Аренда общего порта, выданная <b>SerialPortManager.acquire()</b>.
+ * Параметры порта, заданные через аренду, запоминаются менеджером и
+ * восстанавливаются после переоткрытия порта. Параметры общие для всех
+ * аренд порта: действует последнее установленное значение.
+ * <p>
+ * После вызова <b>release()</b> аренда становится недействительной, а её
+ * слушатели удаляются.
+ *
+ * @author scream3r
+ */
+public class SerialPortLease {
+
+    private final SerialPortManager.ManagedPort managedPort;
+    private volatile boolean released = false;
+
+    SerialPortLease(SerialPortManager.ManagedPort managedPort) {
+        this.managedPort = managedPort;
+    }
+
+    /**
+     * Получение имени порта.
+     */
+    public String getPortName() {
+        return managedPort.getPortName();
+    }
+
+    /**
+     * Проверка связи с устройством порта.
+     *
+     * @return Метод вернёт false во время обрыва связи и после освобождения
+     * аренды.
+     */
+    public boolean isConnected() {
+        return !released && managedPort.isConnected();
+    }
+
+    /**
+     * Получение количества восстановлений порта после обрыва связи.
+     */
+    public int getReconnectCount() {
+        return managedPort.getReconnectCount();
+    }
+
+    /**
+     * Установка параметров порта (см. <b>SerialPort.setParams()</b>). Во время
+     * обрыва связи параметры только запоминаются.
+     *
+     * @throws SerialPortException
+     */
+    public boolean setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException {
+        checkReleased("setParams()");
+        return managedPort.setParams(baudRate, dataBits, stopBits, parity);
+    }
+
+    /**
+     * Установка линии RTS.
+     *
+     * @throws SerialPortException
+     */
+    public boolean setRTS(boolean enabled) throws SerialPortException {
+        checkReleased("setRTS()");
+        return managedPort.setRTS(enabled);
+    }
+
+    /**
+     * Установка линии DTR.
+     *
+     * @throws SerialPortException
+     */
+    public boolean setDTR(boolean enabled) throws SerialPortException {
+        checkReleased("setDTR()");
+        return managedPort.setDTR(enabled);
+    }
+
+    /**
+     * Добавление слушателя ивентов. Маска ивентов порта - объединение масок
+     * слушателей всех аренд, слушатель получает только ивенты своей маски.
+     *
+     * @throws SerialPortException
+     */
+    public void addEventListener(SerialPortEventListener listener, int mask) throws SerialPortException {
+        checkReleased("addEventListener()");
+        managedPort.addListener(this, listener, mask);
+    }
+
+    /**
+     * Удаление слушателя ивентов, добавленного через эту аренду.
+     *
+     * @throws SerialPortException
+     */
+    public void removeEventListener(SerialPortEventListener listener) throws SerialPortException {
+        checkReleased("removeEventListener()");
+        managedPort.removeListeners(this, listener);
+    }
+
+    /**
+     * Запись данных в порт. Во время обрыва связи данные накапливаются и
+     * будут отправлены после восстановления порта.
+     *
+     * @return Метод вернёт true если данные записаны или поставлены в
+     * очередь, false если запись не удалась или буфер обрыва переполнен.
+     *
+     * @throws SerialPortException
+     */
+    public boolean writeBytes(byte[] buffer) throws SerialPortException {
+        checkReleased("writeBytes()");
+        return managedPort.writeBytes(buffer);
+    }
+
+    /**
+     * Чтение в часть массива с таймаутом (см.
+     * <b>SerialPort.readBytes(byte[], int, int, long, TimeUnit)</b>).
+     *
+     * @throws SerialPortException с типом <b>TYPE_PORT_DISCONNECTED</b> во
+     * время обрыва связи.
+     */
+    public int readBytes(byte[] buffer, int offset, int length, long timeout, TimeUnit unit) throws SerialPortException {
+        checkReleased("readBytes()");
+        return managedPort.readBytes(buffer, offset, length, timeout, unit);
+    }
+
+    /**
+     * Освобождение аренды. Порт закрывается после освобождения последней
+     * аренды. Повторный вызов ничего не делает.
+     */
+    public void release() {
+        synchronized(this){
+            if(released){
+                return;
+            }
+            released = true;
+        }
+        try {
+            managedPort.removeListeners(this, null);
+        }
+        catch (SerialPortException ex) {
+            //Do nothing
+        }
+        managedPort.release();
+    }
+
+    private void checkReleased(String methodName) throws SerialPortException {
+        if(released){
+            throw new SerialPortException(getPortName(), methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+    }
+}
@@ -25,8 +25,6 @@
 package jssc;
 
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.TreeSet;
 
 /**
  *
@@ -34,39 +32,70 @@ import java.util.TreeSet;
  */
 public class SerialPortList {
 
-    private static SerialNativeInterface serialInterface;
-    private static Comparator<String> comparator = new Comparator<String>() {
-        @Override
-        public int compare(String valueA, String valueB) {
-            int result = 0;
-            if(valueA.toLowerCase().contains("com") && valueB.toLowerCase().contains("com")){
+    /**
+     * Получение списка последовательных портов в системе в упорядоченном виде.
+     * Список каждый раз запрашивается у <b>SerialNativeInterface</b>, для
+     * частых запросов используйте <b>SerialPortRegistry</b>.
+     */
+    public static String[] getPortNames() {
+        return sortPortNames(SerialNativeInterface.getDefaultInterface().getSerialPortNames());
+    }
+
+    /**
+     * Сортировка имён портов: сначала порты вида "COMn" по номеру, затем
+     * остальные по имени без учёта регистра. Ключи сравнения вычисляются
+     * один раз для каждого имени, повторяющиеся имена (с одинаковым номером
+     * или отличающиеся только регистром) отбрасываются.
+     */
+    static String[] sortPortNames(String[] portNames) {
+        PortNameKey[] keys = new PortNameKey[portNames.length];
+        for(int i = 0; i < portNames.length; i++){
+            keys[i] = new PortNameKey(portNames[i]);
+        }
+        Arrays.sort(keys);
+        String[] returnValue = new String[keys.length];
+        int count = 0;
+        for(int i = 0; i < keys.length; i++){
+            if(i == 0 || keys[i].compareTo(keys[i - 1]) != 0){
+                returnValue[count++] = keys[i].name;
+            }
+        }
+        return count == returnValue.length ? returnValue : Arrays.copyOf(returnValue, count);
+    }
+
+    private static class PortNameKey implements Comparable<PortNameKey> {
+
+        private final String name;
+        private final boolean numbered;
+        private final int number;
+
+        private PortNameKey(String name) {
+            this.name = name;
+            String lowerCaseName = name.toLowerCase();
+            boolean parsed = false;
+            int value = 0;
+            if(lowerCaseName.contains("com")){
                 try {
-                    int index1 = Integer.valueOf(valueA.toLowerCase().replace("com", ""));
-                    int index2 = Integer.valueOf(valueB.toLowerCase().replace("com", ""));
-                    result = index1 - index2;
+                    value = Integer.parseInt(lowerCaseName.replace("com", ""));
+                    parsed = true;
                 }
-                catch (Exception ex) {
-                    result = valueA.compareToIgnoreCase(valueB);
+                catch (NumberFormatException ex) {
+                    //Do nothing
                 }
-            } 
-            else {
-                result = valueA.compareToIgnoreCase(valueB);
             }
-            return result;
+            numbered = parsed;
+            number = value;
         }
-    };
 
-    static {
-        serialInterface = new SerialNativeInterface();
-    }
-
-    /**
-     * Получение списка последовательных портов в системе в упорядоченном виде.
-     */
-    public static String[] getPortNames() {
-        String[] portNames = serialInterface.getSerialPortNames();
-        TreeSet<String> ports = new TreeSet<String>(comparator);
-        ports.addAll(Arrays.asList(portNames));
-        return ports.toArray(new String[ports.size()]);
+        @Override
+        public int compareTo(PortNameKey key) {
+            if(numbered != key.numbered){
+                return numbered ? -1 : 1;
+            }
+            if(numbered){
+                return number < key.number ? -1 : (number == key.number ? 0 : 1);
+            }
+            return name.compareToIgnoreCase(key.name);
+        }
     }
 }
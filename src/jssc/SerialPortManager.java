@@ -0,0 +1,632 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Менеджер общих портов. Несколько подсистем приложения могут работать с
+ * одним портом одновременно: каждая получает аренду (<b>SerialPortLease</b>)
+ * методом <b>acquire()</b>, порт открывается при выдаче первой аренды и
+ * закрывается после освобождения последней. Слушатели ивентов всех аренд
+ * обслуживаются одним обработчиком событий порта.
+ * <p>
+ * Поток контроля менеджера проверяет связь с устройствами портов
+ * (<b>SerialPort.isConnected()</b>) раз в <b>setCheckInterval()</b>. При
+ * обрыве связи порт закрывается и открывается заново с нарастающей
+ * задержкой между попытками (от <b>setReconnectDelay()</b>), после чего
+ * восстанавливаются параметры, заданные через аренды (setParams, маска
+ * ивентов, RTS и DTR). Данные, записанные во время обрыва, накапливаются
+ * (не более <b>setWriteBufferSize()</b> байт) и отправляются сразу после
+ * восстановления. Если задан реестр портов, подключение нового устройства
+ * вызывает немедленную попытку восстановления. Поток контроля и слушатель
+ * реестра работают, пока у менеджера есть открытые порты.
+ *
+ * @author scream3r
+ */
+public class SerialPortManager {
+
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 65536;
+
+    private static final long DEFAULT_CHECK_INTERVAL = 100;
+    private static final long DEFAULT_MIN_RECONNECT_DELAY = 50;
+    private static final long DEFAULT_MAX_RECONNECT_DELAY = 5000;
+
+    private static SerialPortManager defaultManager;
+
+    private final SerialNativeInterface serialInterface;
+    private final SerialPortRegistry registry;
+    private final Map<String, ManagedPort> ports = new HashMap<String, ManagedPort>();
+    private volatile long checkInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CHECK_INTERVAL);
+    private volatile long minReconnectDelay = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_RECONNECT_DELAY);
+    private volatile long maxReconnectDelay = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_RECONNECT_DELAY);
+    private volatile int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
+    private Thread supervisor;
+    private SerialPortRegistryListener registryListener;
+
+    /**
+     * Получение менеджера для <b>SerialNativeInterface</b> и реестра портов
+     * по умолчанию.
+     */
+    public static synchronized SerialPortManager getDefault() {
+        if(defaultManager == null){
+            defaultManager = new SerialPortManager(SerialNativeInterface.getDefaultInterface(), SerialPortRegistry.getDefault());
+        }
+        return defaultManager;
+    }
+
+    public SerialPortManager(SerialNativeInterface serialInterface) {
+        this(serialInterface, null);
+    }
+
+    /**
+     * @param serialInterface интерфейс для работы с портами.
+     * @param registry реестр портов, уведомления которого о подключении
+     * устройств ускоряют восстановление, или <b>null</b>.
+     */
+    public SerialPortManager(SerialNativeInterface serialInterface, SerialPortRegistry registry) {
+        this.serialInterface = serialInterface;
+        this.registry = registry;
+    }
+
+    /**
+     * Получение аренды порта. Если порт ещё не открыт менеджером, он
+     * открывается.
+     *
+     * @throws SerialPortException если порт не удалось открыть.
+     */
+    public synchronized SerialPortLease acquire(String portName) throws SerialPortException {
+        ManagedPort managedPort = ports.get(portName);
+        if(managedPort == null){
+            managedPort = new ManagedPort(portName);
+            managedPort.open();
+            ports.put(portName, managedPort);
+            startSupervisor();
+        }
+        managedPort.leases++;
+        return new SerialPortLease(managedPort);
+    }
+
+    /**
+     * Установка интервала проверки связи с устройствами портов.
+     */
+    public void setCheckInterval(long interval, TimeUnit unit) {
+        checkInterval = Math.max(unit.toNanos(interval), 1);
+    }
+
+    /**
+     * Установка задержки между попытками восстановления: первая попытка
+     * выполняется через <b>minDelay</b>, каждая следующая - с удвоенной
+     * задержкой, но не более <b>maxDelay</b>.
+     */
+    public void setReconnectDelay(long minDelay, long maxDelay, TimeUnit unit) {
+        minReconnectDelay = Math.max(unit.toNanos(minDelay), 0);
+        maxReconnectDelay = Math.max(unit.toNanos(maxDelay), minReconnectDelay);
+    }
+
+    /**
+     * Установка максимального объёма данных, накапливаемых во время обрыва
+     * связи. Запись, превышающая остаток буфера, отклоняется.
+     */
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = Math.max(writeBufferSize, 0);
+    }
+
+    /**
+     * Освобождение аренды. Порт закрывается вне монитора менеджера: закрытие
+     * ждёт завершения потока ивентов, слушатель которого может сам
+     * обращаться к менеджеру.
+     */
+    private void release(ManagedPort managedPort) {
+        synchronized(this){
+            managedPort.leases--;
+            if(managedPort.leases != 0){
+                return;
+            }
+            ports.remove(managedPort.portName);
+            if(ports.isEmpty()){
+                stopSupervisor();
+            }
+        }
+        managedPort.close();
+    }
+
+    private void startSupervisor() {
+        if(supervisor != null){
+            return;
+        }
+        if(registry != null){
+            registryListener = new SerialPortRegistryListener() {
+                @Override
+                public void portAdded(SerialPortInfo portInfo) {
+                    for(ManagedPort managedPort : getPorts()){
+                        managedPort.retryNow();
+                    }
+                    wakeUp();
+                }
+
+                @Override
+                public void portRemoved(SerialPortInfo portInfo) {
+                    wakeUp();
+                }
+            };
+            registry.addListener(registryListener);
+        }
+        supervisor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                supervise(Thread.currentThread());
+            }
+        });
+        supervisor.setName("SerialPortManager");
+        supervisor.setDaemon(true);
+        supervisor.start();
+    }
+
+    /**
+     * Остановка потока контроля и удаление слушателя реестра после
+     * освобождения последнего порта. Следующий <b>acquire()</b> запустит их
+     * снова. Вызывается в мониторе менеджера.
+     */
+    private void stopSupervisor() {
+        if(registryListener != null){
+            registry.removeListener(registryListener);
+            registryListener = null;
+        }
+        if(supervisor != null){
+            LockSupport.unpark(supervisor);
+            supervisor = null;
+        }
+    }
+
+    private synchronized boolean isSupervisor(Thread thread) {
+        return supervisor == thread;
+    }
+
+    private synchronized void wakeUp() {
+        if(supervisor != null){
+            LockSupport.unpark(supervisor);
+        }
+    }
+
+    private synchronized List<ManagedPort> getPorts() {
+        return new ArrayList<ManagedPort>(ports.values());
+    }
+
+    private void supervise(Thread thread) {
+        while(isSupervisor(thread)){
+            long now = System.nanoTime();
+            long parkNanos = checkInterval;
+            for(ManagedPort managedPort : getPorts()){
+                if(managedPort.isClosed()){
+                    continue;
+                }
+                if(managedPort.isConnected()){
+                    managedPort.check();
+                }
+                if(!managedPort.isConnected()){
+                    long wait = managedPort.nextAttempt - now;
+                    if(wait <= 0){
+                        managedPort.reconnect();
+                    }
+                    else {
+                        parkNanos = Math.min(parkNanos, wait);
+                    }
+                }
+            }
+            LockSupport.parkNanos(this, parkNanos);
+        }
+    }
+
+    /**
+     * Порт, открытый менеджером, и параметры, которые восстанавливаются после
+     * переоткрытия.
+     */
+    final class ManagedPort {
+
+        private final String portName;
+        private final List<ListenerEntry> listeners = new CopyOnWriteArrayList<ListenerEntry>();
+        private final List<byte[]> pendingWrites = new ArrayList<byte[]>();
+        private final Object maskLock = new Object();
+        private final SerialPortEventListener multiplexer = new SerialPortEventListener() {
+            @Override
+            public void serialEvent(SerialPortEvent serialPortEvent) {
+                int eventType = serialPortEvent.getEventType();
+                for(ListenerEntry entry : listeners){
+                    if((entry.mask & eventType) != 0){
+                        entry.listener.serialEvent(serialPortEvent);
+                    }
+                }
+            }
+        };
+        private volatile SerialPort serialPort;
+        private volatile boolean connected = false;
+        private volatile long nextAttempt;
+        private volatile int reconnectCount = 0;
+        private int leases = 0;
+        private volatile boolean closed = false;
+        private boolean flushing = false;
+        private boolean paramsAssigned = false;
+        private int baudRate;
+        private int dataBits;
+        private int stopBits;
+        private int parity;
+        private Boolean rts;
+        private Boolean dtr;
+        private int mask = 0;
+        private int pendingBytes = 0;
+        private long reconnectDelay = minReconnectDelay;
+
+        private ManagedPort(String portName) {
+            this.portName = portName;
+        }
+
+        String getPortName() {
+            return portName;
+        }
+
+        boolean isConnected() {
+            return connected;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        int getReconnectCount() {
+            return reconnectCount;
+        }
+
+        void release() {
+            SerialPortManager.this.release(this);
+        }
+
+        private void open() throws SerialPortException {
+            SerialPort port = new SerialPort(portName, serialInterface);
+            if(!port.openPort()){
+                throw new SerialPortException(portName, "acquire()", SerialPortException.TYPE_CANT_OPEN_PORT);
+            }
+            serialPort = port;
+            connected = true;
+        }
+
+        private void close() {
+            SerialPort port;
+            synchronized(this){
+                closed = true;
+                connected = false;
+                port = serialPort;
+                serialPort = null;
+                pendingWrites.clear();
+                pendingBytes = 0;
+            }
+            closeQuietly(port);
+        }
+
+        private void check() {
+            SerialPort port = serialPort;
+            if(port != null && !port.isConnected()){
+                disconnect(port);
+            }
+        }
+
+        /**
+         * Перевод порта в состояние обрыва связи, если <b>port</b> всё ещё
+         * является текущим. Порт закрывается вне монитора, чтобы не ждать
+         * завершения потока ивентов, слушатель которого может обращаться к
+         * аренде.
+         */
+        private void disconnect(SerialPort port) {
+            if(markDisconnected(port)){
+                closeQuietly(port);
+                wakeUp();
+            }
+        }
+
+        private synchronized boolean markDisconnected(SerialPort port) {
+            if(serialPort != port || !connected){
+                return false;
+            }
+            connected = false;
+            serialPort = null;
+            reconnectDelay = minReconnectDelay;
+            nextAttempt = System.nanoTime();
+            return true;
+        }
+
+        private void retryNow() {
+            synchronized(this){
+                if(connected || closed){
+                    return;
+                }
+                nextAttempt = System.nanoTime();
+            }
+        }
+
+        /**
+         * Переоткрытие порта. Накопленные данные отправляются вне монитора;
+         * пока они отправляются, новые записи тоже накапливаются, чтобы
+         * сохранить порядок данных.
+         */
+        private void reconnect() {
+            if(closed){
+                return;
+            }
+            SerialPort port = new SerialPort(portName, serialInterface);
+            try {
+                if(port.openPort()){
+                    boolean restored = false;
+                    synchronized(this){
+                        if(!closed && !connected){
+                            restore(port);
+                            serialPort = port;
+                            connected = true;
+                            flushing = !pendingWrites.isEmpty();
+                            reconnectCount++;
+                            reconnectDelay = minReconnectDelay;
+                            restored = true;
+                        }
+                    }
+                    if(!restored){
+                        closeQuietly(port);
+                    }
+                    else if(!flushPending(port)){
+                        disconnect(port);
+                    }
+                    return;
+                }
+            }
+            catch (SerialPortException ex) {
+                closeQuietly(port);
+            }
+            synchronized(this){
+                nextAttempt = System.nanoTime() + reconnectDelay;
+                reconnectDelay = Math.min(Math.max(reconnectDelay * 2, 1), maxReconnectDelay);
+            }
+        }
+
+        private void restore(SerialPort port) throws SerialPortException {
+            if(paramsAssigned && !port.setParams(baudRate, dataBits, stopBits, parity)){
+                throw new SerialPortException(portName, "setParams()", SerialPortException.TYPE_CANT_OPEN_PORT);
+            }
+            if(rts != null){
+                port.setRTS(rts);
+            }
+            if(dtr != null){
+                port.setDTR(dtr);
+            }
+            if(mask != 0){
+                port.addEventListener(multiplexer, mask);
+            }
+        }
+
+        /**
+         * Отправка данных, накопленных во время обрыва связи.
+         *
+         * @return Метод возвращает false при ошибке записи.
+         */
+        private boolean flushPending(SerialPort port) {
+            while(true){
+                byte[] data;
+                synchronized(this){
+                    if(serialPort != port || pendingWrites.isEmpty()){
+                        flushing = false;
+                        return true;
+                    }
+                    data = pendingWrites.get(0);
+                }
+                boolean written;
+                try {
+                    written = port.writeBytes(data);
+                }
+                catch (SerialPortException ex) {
+                    written = false;
+                }
+                synchronized(this){
+                    if(!written){
+                        flushing = false;
+                        return false;
+                    }
+                    if(!pendingWrites.isEmpty() && pendingWrites.get(0) == data){
+                        pendingWrites.remove(0);
+                        pendingBytes -= data.length;
+                    }
+                }
+            }
+        }
+
+        synchronized boolean setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException {
+            SerialPort port = serialPort;
+            if(connected && !port.setParams(baudRate, dataBits, stopBits, parity)){
+                return false;
+            }
+            this.baudRate = baudRate;
+            this.dataBits = dataBits;
+            this.stopBits = stopBits;
+            this.parity = parity;
+            paramsAssigned = true;
+            return true;
+        }
+
+        synchronized boolean setRTS(boolean enabled) throws SerialPortException {
+            rts = enabled;
+            return !connected || serialPort.setRTS(enabled);
+        }
+
+        synchronized boolean setDTR(boolean enabled) throws SerialPortException {
+            dtr = enabled;
+            return !connected || serialPort.setDTR(enabled);
+        }
+
+        void addListener(SerialPortLease lease, SerialPortEventListener listener, int listenerMask) throws SerialPortException {
+            synchronized(maskLock){
+                listeners.add(new ListenerEntry(lease, listener, listenerMask));
+                updateMask();
+            }
+        }
+
+        void removeListeners(SerialPortLease lease, SerialPortEventListener listener) throws SerialPortException {
+            synchronized(maskLock){
+                for(ListenerEntry entry : listeners){
+                    if(entry.lease == lease && (listener == null || entry.listener == listener)){
+                        listeners.remove(entry);
+                    }
+                }
+                updateMask();
+            }
+        }
+
+        /**
+         * Применение объединённой маски слушателей. Изменения маски
+         * упорядочиваются через <b>maskLock</b>, а обработчик событий порта
+         * меняется вне монитора аренды: удаление обработчика ждёт
+         * завершения потока ивентов, слушатель которого может обращаться к
+         * аренде.
+         */
+        private void updateMask() throws SerialPortException {
+            int newMask = 0;
+            for(ListenerEntry entry : listeners){
+                newMask |= entry.mask;
+            }
+            int oldMask;
+            SerialPort port;
+            synchronized(this){
+                if(newMask == mask){
+                    return;
+                }
+                oldMask = mask;
+                mask = newMask;
+                if(!connected){
+                    return;
+                }
+                port = serialPort;
+            }
+            if(oldMask == 0){
+                port.addEventListener(multiplexer, newMask);
+            }
+            else if(newMask == 0){
+                port.removeEventListener();
+            }
+            else {
+                port.setEventsMask(newMask);
+            }
+        }
+
+        /**
+         * Запись данных. Во время обрыва связи, а также при ошибке записи,
+         * вызванной отключением устройства, данные накапливаются. Запись в
+         * порт выполняется вне монитора, чтобы медленная запись не
+         * задерживала другие аренды.
+         */
+        boolean writeBytes(byte[] buffer) {
+            SerialPort port;
+            synchronized(this){
+                if(closed){
+                    return false;
+                }
+                if(!connected || flushing){
+                    return queue(buffer);
+                }
+                port = serialPort;
+            }
+            boolean result;
+            try {
+                result = port.writeBytes(buffer);
+            }
+            catch (SerialPortException ex) {
+                result = false;
+            }
+            if(result || port.isConnected()){
+                return result;
+            }
+            synchronized(this){
+                if(closed){
+                    return false;
+                }
+                result = queue(buffer);
+            }
+            disconnect(port);
+            return result;
+        }
+
+        private boolean queue(byte[] buffer) {
+            if(pendingBytes + buffer.length > writeBufferSize){
+                return false;
+            }
+            pendingWrites.add(buffer.clone());
+            pendingBytes += buffer.length;
+            return true;
+        }
+
+        int readBytes(byte[] buffer, int offset, int length, long timeout, TimeUnit unit) throws SerialPortException {
+            SerialPort port = serialPort;
+            if(!connected || port == null){
+                throw new SerialPortException(portName, "readBytes()", SerialPortException.TYPE_PORT_DISCONNECTED);
+            }
+            int result;
+            try {
+                result = port.readBytes(buffer, offset, length, timeout, unit);
+            }
+            catch (SerialPortException ex) {
+                check();
+                throw ex;
+            }
+            if(result < 0){
+                check();
+            }
+            return result;
+        }
+
+        private void closeQuietly(SerialPort port) {
+            if(port != null && port.isOpened()){
+                try {
+                    port.closePort();
+                }
+                catch (SerialPortException ex) {
+                    //Do nothing
+                }
+            }
+        }
+    }
+
+    private static class ListenerEntry {
+
+        private final SerialPortLease lease;
+        private final SerialPortEventListener listener;
+        private final int mask;
+
+        private ListenerEntry(SerialPortLease lease, SerialPortEventListener listener, int mask) {
+            this.lease = lease;
+            this.listener = listener;
+            this.mask = mask;
+        }
+    }
+}
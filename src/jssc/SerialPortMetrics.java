@@ -0,0 +1,286 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики порта: количество байт и вызовов чтения и записи, длительность
+ * нативных вызовов <b>readBytes</b>, <b>writeBytes</b> и <b>waitEvents</b>,
+ * количество ивентов каждого типа, время работы слушателя и размер очереди
+ * доставки ивентов. Счётчики построены на <b>LongAdder</b>, длительности -
+ * на <b>LatencyHistogram</b>.
+ * <p>
+ * Метрики включаются вызовом <b>SerialPort.setMetricsEnabled(true)</b>,
+ * при этом объект регистрируется как MBean с именем
+ * <b>jssc:type=SerialPort,name="имя порта"</b>. Пока метрики выключены,
+ * порт не выполняет никаких измерений.
+ *
+ * @author scream3r
+ */
+public class SerialPortMetrics implements SerialPortMetricsMBean {
+
+    private static final int EVENT_TYPES = 9;
+
+    private final SerialPort serialPort;
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder readCalls = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder writeCalls = new LongAdder();
+    private final LongAdder[] events = new LongAdder[EVENT_TYPES];
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram waitEventsLatency = new LatencyHistogram();
+    private final LatencyHistogram dispatchTime = new LatencyHistogram();
+
+    SerialPortMetrics(SerialPort serialPort) {
+        this.serialPort = serialPort;
+        for(int i = 0; i < EVENT_TYPES; i++){
+            events[i] = new LongAdder();
+        }
+    }
+
+    void recordRead(long nanos, int bytes) {
+        readCalls.increment();
+        if(bytes > 0){
+            bytesRead.add(bytes);
+        }
+        readLatency.record(nanos);
+    }
+
+    void recordWrite(long nanos, int bytes) {
+        writeCalls.increment();
+        if(bytes > 0){
+            bytesWritten.add(bytes);
+        }
+        writeLatency.record(nanos);
+    }
+
+    void recordWaitEvents(long nanos) {
+        waitEventsLatency.record(nanos);
+    }
+
+    void recordDispatch(long nanos, int[] packedEvents, int count) {
+        dispatchTime.record(nanos);
+        for(int i = 0; i < count; i++){
+            int eventType = packedEvents[i * 2];
+            if(eventType > 0){
+                int index = Integer.numberOfTrailingZeros(eventType);
+                if(index < EVENT_TYPES){
+                    events[index].increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Получение количества ивентов заданного типа.
+     *
+     * @param eventType тип ивента, константа класса <b>SerialPortEvent</b>.
+     */
+    public long getEventCount(int eventType) {
+        int index = Integer.numberOfTrailingZeros(eventType);
+        return index < EVENT_TYPES ? events[index].sum() : 0;
+    }
+
+    public LatencyHistogram getReadLatency() {
+        return readLatency;
+    }
+
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    public LatencyHistogram getWaitEventsLatency() {
+        return waitEventsLatency;
+    }
+
+    public LatencyHistogram getDispatchTime() {
+        return dispatchTime;
+    }
+
+    @Override
+    public String getPortName() {
+        return serialPort.getPortName();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getReadCalls() {
+        return readCalls.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getWriteCalls() {
+        return writeCalls.sum();
+    }
+
+    @Override
+    public long getReadLatencyMean() {
+        return readLatency.getMean();
+    }
+
+    @Override
+    public long getReadLatency99() {
+        return readLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getReadLatencyMax() {
+        return readLatency.getMax();
+    }
+
+    @Override
+    public long getWriteLatencyMean() {
+        return writeLatency.getMean();
+    }
+
+    @Override
+    public long getWriteLatency99() {
+        return writeLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getWriteLatencyMax() {
+        return writeLatency.getMax();
+    }
+
+    @Override
+    public long getWaitEventsLatencyMean() {
+        return waitEventsLatency.getMean();
+    }
+
+    @Override
+    public long getWaitEventsLatency99() {
+        return waitEventsLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getWaitEventsLatencyMax() {
+        return waitEventsLatency.getMax();
+    }
+
+    @Override
+    public long getDispatchTimeMean() {
+        return dispatchTime.getMean();
+    }
+
+    @Override
+    public long getDispatchTime99() {
+        return dispatchTime.getPercentile(99);
+    }
+
+    @Override
+    public long getDispatchTimeMax() {
+        return dispatchTime.getMax();
+    }
+
+    @Override
+    public long getRxcharEvents() {
+        return getEventCount(SerialPortEvent.RXCHAR);
+    }
+
+    @Override
+    public long getRxflagEvents() {
+        return getEventCount(SerialPortEvent.RXFLAG);
+    }
+
+    @Override
+    public long getTxemptyEvents() {
+        return getEventCount(SerialPortEvent.TXEMPTY);
+    }
+
+    @Override
+    public long getCtsEvents() {
+        return getEventCount(SerialPortEvent.CTS);
+    }
+
+    @Override
+    public long getDsrEvents() {
+        return getEventCount(SerialPortEvent.DSR);
+    }
+
+    @Override
+    public long getRlsdEvents() {
+        return getEventCount(SerialPortEvent.RLSD);
+    }
+
+    @Override
+    public long getBreakEvents() {
+        return getEventCount(SerialPortEvent.BREAK);
+    }
+
+    @Override
+    public long getErrEvents() {
+        return getEventCount(SerialPortEvent.ERR);
+    }
+
+    @Override
+    public long getRingEvents() {
+        return getEventCount(SerialPortEvent.RING);
+    }
+
+    @Override
+    public int getEventQueueSize() {
+        SerialPortEventQueue eventQueue = serialPort.getEventQueue();
+        return eventQueue != null ? eventQueue.size() : 0;
+    }
+
+    @Override
+    public long getEventQueueDropped() {
+        SerialPortEventQueue eventQueue = serialPort.getEventQueue();
+        return eventQueue != null ? eventQueue.getDroppedCount() : 0;
+    }
+
+    @Override
+    public long getEventQueueCoalesced() {
+        SerialPortEventQueue eventQueue = serialPort.getEventQueue();
+        return eventQueue != null ? eventQueue.getCoalescedCount() : 0;
+    }
+
+    @Override
+    public void reset() {
+        bytesRead.reset();
+        readCalls.reset();
+        bytesWritten.reset();
+        writeCalls.reset();
+        for(LongAdder counter : events){
+            counter.reset();
+        }
+        readLatency.reset();
+        writeLatency.reset();
+        waitEventsLatency.reset();
+        dispatchTime.reset();
+    }
+}
@@ -0,0 +1,94 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+/**
+ * Интерфейс JMX MBean метрик порта (см. <b>SerialPortMetrics</b>). Все
+ * длительности - в наносекундах.
+ *
+ * @author scream3r
+ */
+public interface SerialPortMetricsMBean {
+
+    public abstract String getPortName();
+
+    public abstract long getBytesRead();
+
+    public abstract long getReadCalls();
+
+    public abstract long getBytesWritten();
+
+    public abstract long getWriteCalls();
+
+    public abstract long getReadLatencyMean();
+
+    public abstract long getReadLatency99();
+
+    public abstract long getReadLatencyMax();
+
+    public abstract long getWriteLatencyMean();
+
+    public abstract long getWriteLatency99();
+
+    public abstract long getWriteLatencyMax();
+
+    public abstract long getWaitEventsLatencyMean();
+
+    public abstract long getWaitEventsLatency99();
+
+    public abstract long getWaitEventsLatencyMax();
+
+    public abstract long getDispatchTimeMean();
+
+    public abstract long getDispatchTime99();
+
+    public abstract long getDispatchTimeMax();
+
+    public abstract long getRxcharEvents();
+
+    public abstract long getRxflagEvents();
+
+    public abstract long getTxemptyEvents();
+
+    public abstract long getCtsEvents();
+
+    public abstract long getDsrEvents();
+
+    public abstract long getRlsdEvents();
+
+    public abstract long getBreakEvents();
+
+    public abstract long getErrEvents();
+
+    public abstract long getRingEvents();
+
+    public abstract int getEventQueueSize();
+
+    public abstract long getEventQueueDropped();
+
+    public abstract long getEventQueueCoalesced();
+
+    public abstract void reset();
+}
@@ -0,0 +1,56 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+/**
+ * Слушатель ивентов без создания объектов на каждый ивент. Данные о
+ * поступлении байт и изменении линий передаются примитивными параметрами,
+ * остальные ивенты (<b>RXFLAG</b>, <b>TXEMPTY</b>, <b>BREAK</b>, <b>ERR</b>)
+ * передаются методу <b>serialEvent</b> через один и тот же объект
+ * <b>SerialPortEvent</b>, который изменяется при каждом вызове и не должен
+ * сохраняться слушателем.
+ *
+ * @author scream3r
+ */
+public interface SerialPortPrimitiveListener extends SerialPortEventListener {
+
+    /**
+     * Ивент <b>RXCHAR</b>.
+     *
+     * @param bytesAvailable количество байт во входящем буфере.
+     */
+    public abstract void onRxChar(int bytesAvailable);
+
+    /**
+     * Изменение состояния линий. Все изменения, полученные за одно ожидание
+     * ивентов, передаются одним вызовом.
+     *
+     * @param mask линии, изменившие состояние, в виде суммы констант
+     * <b>SerialPort.MASK_CTS</b>, <b>MASK_DSR</b>, <b>MASK_RLSD</b>, <b>MASK_RING</b>.
+     * @param state текущее состояние этих линий: бит линии установлен, если
+     * линия активна.
+     */
+    public abstract void onLineChange(int mask, int state);
+}
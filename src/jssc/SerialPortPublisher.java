@@ -0,0 +1,263 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Принятые портом данные в виде <b>Flow.Publisher</b> (JDK 9+). Каждый
+ * элемент - новый буфер с порцией принятых байт (не больше
+ * <b>chunkSize</b>). Данные читаются из драйвера только при наличии спроса
+ * подписчика: пока спрос не выставлен через <b>Subscription.request</b>,
+ * принятые байты остаются во входном буфере порта, и при его переполнении
+ * срабатывает управление потоком порта (если оно включено).
+ * <p>
+ * Последовательный порт - один поток данных, поэтому у издателя может быть
+ * только один подписчик одновременно. Повторная подписка до отмены текущей
+ * завершается <b>onError(IllegalStateException)</b>. Закрытие порта
+ * завершает поток вызовом <b>onComplete</b>, ошибка чтения -
+ * <b>onError(SerialPortException)</b>.
+ * <p>
+ * Ожидание данных выполняется через
+ * <b>SerialNativeInterface.waitInput</b>, поэтому реализация
+ * <b>SerialNativeInterface</b> должна сообщать количество байт во входном
+ * буфере. Если она этого не делает, подписка сразу завершается
+ * <b>onError(UnsupportedOperationException)</b>.
+ *
+ * @author scream3r
+ */
+public class SerialPortPublisher implements Flow.Publisher<ByteBuffer> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final long WAIT_INTERVAL = 100000000L;
+
+    private final SerialPort serialPort;
+    private final int chunkSize;
+    private final Executor executor;
+    private final AtomicReference<PortSubscription> subscription = new AtomicReference<PortSubscription>();
+
+    public SerialPortPublisher(SerialPort serialPort) {
+        this(serialPort, DEFAULT_CHUNK_SIZE, null);
+    }
+
+    /**
+     * @param serialPort порт, данные которого публикуются.
+     * @param chunkSize максимальный размер одного элемента.
+     * @param executor исполнитель, которому передаётся цикл чтения подписки,
+     * или <b>null</b> для отдельного потока на каждую подписку.
+     */
+    public SerialPortPublisher(SerialPort serialPort, int chunkSize, Executor executor) {
+        if(chunkSize < 1){
+            throw new IllegalArgumentException("chunkSize < 1");
+        }
+        this.serialPort = serialPort;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if(subscriber == null){
+            throw new NullPointerException("subscriber");
+        }
+        if(!isWaitSupported()){
+            reject(subscriber, new UnsupportedOperationException("SerialPortPublisher requires getInputBufferBytesCount support in " + serialPort.getSerialInterface().getClass().getName()));
+            return;
+        }
+        PortSubscription newSubscription = new PortSubscription(subscriber);
+        if(!subscription.compareAndSet(null, newSubscription)){
+            reject(subscriber, new IllegalStateException("SerialPortPublisher already has a subscriber"));
+            return;
+        }
+        serialPort.addPublisher(this);
+        if(executor != null){
+            executor.execute(newSubscription);
+        }
+        else {
+            Thread thread = new Thread(newSubscription);
+            thread.setName("Publisher " + serialPort.getPortName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Вызывается из <b>SerialPort.closePort()</b>: подписка без спроса
+     * ожидает его, не обращаясь к порту, и должна узнать о закрытии.
+     */
+    void portClosed() {
+        PortSubscription current = subscription.get();
+        if(current != null){
+            current.unpark();
+        }
+    }
+
+    /**
+     * Проверка поддержки <b>waitInput</b>: реализация по умолчанию опрашивает
+     * <b>getInputBufferBytesCount</b>. Закрытый порт проверять не нужно,
+     * подписка на него сразу завершается <b>onComplete</b>.
+     */
+    private boolean isWaitSupported() {
+        if(!serialPort.tryBeginCall()){
+            return true;
+        }
+        try {
+            return serialPort.getSerialInterface().getInputBufferBytesCount(serialPort.getPortHandle()) >= 0;
+        }
+        finally {
+            serialPort.endCall();
+        }
+    }
+
+    private static void reject(Flow.Subscriber<? super ByteBuffer> subscriber, Throwable error) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(error);
+    }
+
+    private class PortSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private volatile boolean cancelled = false;
+        private volatile Throwable requestError;
+        private volatile Thread thread;
+
+        private PortSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0){
+                requestError = new IllegalArgumentException("Non-positive request: " + n);
+            }
+            else {
+                long current;
+                do {
+                    current = demand.get();
+                }
+                while(!demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            }
+            unpark();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            unpark();
+        }
+
+        private void unpark() {
+            Thread readerThread = thread;
+            if(readerThread != null){
+                LockSupport.unpark(readerThread);
+            }
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                subscriber.onSubscribe(this);
+                Throwable error = readLoop();
+                if(!cancelled){
+                    if(error != null){
+                        subscriber.onError(error);
+                    }
+                    else {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+            finally {
+                //Новая подписка регистрирует издателя после освобождения
+                serialPort.removePublisher(SerialPortPublisher.this);
+                subscription.compareAndSet(this, null);
+            }
+        }
+
+        private Throwable readLoop() {
+            SerialNativeInterface serialInterface = serialPort.getSerialInterface();
+            while(!cancelled){
+                if(requestError != null){
+                    cancelled = true;
+                    subscriber.onError(requestError);
+                    return null;
+                }
+                if(demand.get() == 0){
+                    if(!serialPort.isOpened()){
+                        return null;
+                    }
+                    LockSupport.park(this);
+                    continue;
+                }
+                //onNext вызывается вне счётчика вызовов порта, чтобы
+                //подписчик мог закрыть порт
+                if(!serialPort.tryBeginCall()){
+                    return null;
+                }
+                byte[] data = null;
+                int result;
+                try {
+                    int handle = serialPort.getPortHandle();
+                    result = serialInterface.waitInput(handle, WAIT_INTERVAL);
+                    if(result > 0){
+                        data = new byte[Math.min(result, chunkSize)];
+                        long start = serialPort.metricsStart();
+                        result = serialInterface.readBytes(handle, data, 0, data.length, 0);
+                        serialPort.recordRead(start, result);
+                    }
+                }
+                finally {
+                    serialPort.endCall();
+                }
+                if(result < 0){
+                    return serialPort.isOpened() ? new SerialPortException(serialPort.getPortName(), "subscribe()", SerialPortException.TYPE_IO_ERROR) : null;
+                }
+                if(result > 0){
+                    if(demand.get() != Long.MAX_VALUE){
+                        demand.decrementAndGet();
+                    }
+                    subscriber.onNext(ByteBuffer.wrap(data, 0, result));
+                }
+            }
+            return null;
+        }
+    }
+}
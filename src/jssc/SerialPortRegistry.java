@@ -0,0 +1,257 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Кэшируемый реестр последовательных портов системы. В отличие от
+ * <b>SerialPortList.getPortNames()</b>, список не запрашивается у драйвера
+ * при каждом вызове: поток отслеживания реестра ожидает уведомлений об
+ * изменении списка портов (<b>SerialNativeInterface.waitPortWatch()</b>, на
+ * Linux - inotify) и перечитывает список только после них. Если
+ * отслеживание не поддерживается, список перечитывается раз в
+ * <b>POLL_INTERVAL</b> миллисекунд.
+ * <p>
+ * Для каждого порта хранятся сведения об устройстве
+ * (<b>SerialPortInfo</b>), слушатели <b>SerialPortRegistryListener</b>
+ * получают уведомления о подключении и отключении портов.
+ *
+ * @author scream3r
+ */
+public class SerialPortRegistry {
+
+    /**
+     * Интервал перечитывания списка портов, если отслеживание изменений не
+     * поддерживается, в миллисекундах.
+     */
+    public static final int POLL_INTERVAL = 1000;
+
+    private static final int WATCH_TIMEOUT = 500;
+    private static final int SETTLE_TIMEOUT = 50;
+
+    private static SerialPortRegistry defaultRegistry;
+
+    private final SerialNativeInterface serialInterface;
+    private final List<SerialPortRegistryListener> listeners = new CopyOnWriteArrayList<SerialPortRegistryListener>();
+    private final Object scanLock = new Object();
+    private volatile String[] portNames;
+    private volatile Map<String, SerialPortInfo> ports;
+    private volatile boolean closed = false;
+    private Thread watchThread;
+
+    /**
+     * Получение реестра портов для <b>SerialNativeInterface</b> по умолчанию.
+     */
+    public static synchronized SerialPortRegistry getDefault() {
+        if(defaultRegistry == null){
+            defaultRegistry = new SerialPortRegistry(SerialNativeInterface.getDefaultInterface());
+        }
+        return defaultRegistry;
+    }
+
+    public SerialPortRegistry(SerialNativeInterface serialInterface) {
+        this.serialInterface = serialInterface;
+    }
+
+    /**
+     * Получение упорядоченного списка портов (порядок тот же, что и у
+     * <b>SerialPortList.getPortNames()</b>). При первом вызове список
+     * читается сразу и запускается поток отслеживания.
+     */
+    public String[] getPortNames() {
+        start();
+        return portNames.clone();
+    }
+
+    /**
+     * Получение сведений о порте.
+     *
+     * @return Метод возвращает сведения о порте или <b>null</b>, если порта
+     * нет в реестре.
+     */
+    public SerialPortInfo getPortInfo(String portName) {
+        start();
+        return ports.get(portName);
+    }
+
+    /**
+     * Получение сведений обо всех портах в порядке <b>getPortNames()</b>.
+     */
+    public SerialPortInfo[] getPorts() {
+        start();
+        String[] names = portNames;
+        Map<String, SerialPortInfo> infos = ports;
+        SerialPortInfo[] returnValue = new SerialPortInfo[names.length];
+        for(int i = 0; i < names.length; i++){
+            returnValue[i] = infos.get(names[i]);
+        }
+        return returnValue;
+    }
+
+    /**
+     * Добавление слушателя подключения и отключения портов. Запускает
+     * поток отслеживания, если он ещё не запущен.
+     */
+    public void addListener(SerialPortRegistryListener listener) {
+        listeners.add(listener);
+        start();
+    }
+
+    public void removeListener(SerialPortRegistryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Немедленное перечитывание списка портов. Слушатели уведомляются об
+     * изменениях из вызывающего потока.
+     */
+    public void refresh() {
+        start();
+        scan();
+    }
+
+    /**
+     * Остановка потока отслеживания. После остановки реестр возвращает
+     * последний прочитанный список.
+     */
+    public void close() {
+        Thread thread;
+        synchronized(this){
+            closed = true;
+            thread = watchThread;
+        }
+        if(thread != null){
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private synchronized void start() {
+        if(watchThread != null || closed){
+            if(portNames == null){
+                scan();
+            }
+            return;
+        }
+        final int watchHandle = serialInterface.openPortWatch();
+        scan();
+        watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(watchHandle);
+            }
+        });
+        watchThread.setName("SerialPortRegistry");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watch(int watchHandle) {
+        try {
+            while(!closed){
+                if(watchHandle != -1){
+                    int result = serialInterface.waitPortWatch(watchHandle, WATCH_TIMEOUT);
+                    if(result < 0){
+                        serialInterface.closePortWatch(watchHandle);
+                        watchHandle = -1;
+                        continue;
+                    }
+                    if(result == 0){
+                        continue;
+                    }
+                    while(!closed && serialInterface.waitPortWatch(watchHandle, SETTLE_TIMEOUT) > 0){
+                        //Wait until device nodes settle
+                    }
+                }
+                else {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL));
+                }
+                if(!closed){
+                    scan();
+                }
+            }
+        }
+        finally {
+            if(watchHandle != -1){
+                serialInterface.closePortWatch(watchHandle);
+            }
+        }
+    }
+
+    private void scan() {
+        List<SerialPortInfo> added = new ArrayList<SerialPortInfo>();
+        List<SerialPortInfo> removed = new ArrayList<SerialPortInfo>();
+        synchronized(scanLock){
+            String[] names = SerialPortList.sortPortNames(serialInterface.getSerialPortNames());
+            Map<String, SerialPortInfo> previous = ports;
+            Map<String, SerialPortInfo> current = new HashMap<String, SerialPortInfo>();
+            for(String name : names){
+                SerialPortInfo portInfo = previous != null ? previous.get(name) : null;
+                if(portInfo == null){
+                    portInfo = serialInterface.getSerialPortInfo(name);
+                    if(previous != null){
+                        added.add(portInfo);
+                    }
+                }
+                current.put(name, portInfo);
+            }
+            if(previous != null){
+                for(String name : portNames){
+                    if(!current.containsKey(name)){
+                        removed.add(previous.get(name));
+                    }
+                }
+            }
+            ports = current;
+            portNames = names;
+        }
+        for(SerialPortInfo portInfo : removed){
+            for(SerialPortRegistryListener listener : listeners){
+                try {
+                    listener.portRemoved(portInfo);
+                }
+                catch (RuntimeException ex) {
+                    //Do nothing
+                }
+            }
+        }
+        for(SerialPortInfo portInfo : added){
+            for(SerialPortRegistryListener listener : listeners){
+                try {
+                    listener.portAdded(portInfo);
+                }
+                catch (RuntimeException ex) {
+                    //Do nothing
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+/**
+ * Регистрация порта в <b>SerialPortSelector</b>. Аналог
+ * <b>java.nio.channels.SelectionKey</b>: ключ действителен до вызова
+ * <b>cancel()</b>, закрытия порта или закрытия селектора.
+ *
+ * @author scream3r
+ */
+public class SerialPortSelectionKey {
+
+    private final SerialPortSelector selector;
+    private final SerialPort serialPort;
+    private final int portHandle;
+    private final SerialPortEventDispatcher dispatcher;
+    private volatile boolean valid = true;
+
+    SerialPortSelectionKey(SerialPortSelector selector, SerialPort serialPort, int portHandle, SerialPortEventDispatcher dispatcher) {
+        this.selector = selector;
+        this.serialPort = serialPort;
+        this.portHandle = portHandle;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Получение селектора, в котором зарегистрирован порт.
+     */
+    public SerialPortSelector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Получение зарегистрированного порта.
+     */
+    public SerialPort getSerialPort() {
+        return serialPort;
+    }
+
+    /**
+     * Получение слушателя, которому доставляются ивенты порта.
+     */
+    public SerialPortEventListener getListener() {
+        return dispatcher.getListener();
+    }
+
+    /**
+     * Получение маски ивентов, на которые подписан порт.
+     *
+     * @throws SerialPortException
+     */
+    public int getInterestMask() throws SerialPortException {
+        return serialPort.getEventsMask();
+    }
+
+    /**
+     * Изменение маски ивентов, на которые подписан порт. В качестве маски
+     * используйте константы с префиксом <b>"MASK_"</b> класса <b>SerialPort</b>.
+     *
+     * @throws SerialPortException
+     */
+    public boolean setInterestMask(int mask) throws SerialPortException {
+        return serialPort.setEventsMask(mask);
+    }
+
+    /**
+     * Метод возвращает true если ключ действителен.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Отмена регистрации порта. Маска ивентов порта выставляется в 0, ивенты,
+     * ещё не доставленные слушателю, отбрасываются.
+     */
+    public void cancel() {
+        if(valid){
+            valid = false;
+            dispatcher.cancel();
+            serialPort.deregister(this);
+            selector.deregister(this);
+        }
+    }
+
+    int getPortHandle() {
+        return portHandle;
+    }
+
+    void dispatch(int[] events, int count) {
+        serialPort.updateLineState(events, count);
+        dispatcher.dispatch(events, count);
+    }
+}
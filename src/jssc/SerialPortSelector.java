@@ -0,0 +1,308 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Обслуживание ивентов множества портов одним потоком, по аналогии с
+ * <b>java.nio.channels.Selector</b>. Вместо отдельного потока
+ * <b>EventThread</b> на каждый порт, селектор ожидает ивенты всех
+ * зарегистрированных портов одним вызовом
+ * <b>SerialNativeInterface.waitEvents(int[], int[][], int[], int, int)</b>
+ * (на Linux - одним <b>poll</b>) и доставляет их слушателям в потоке,
+ * вызвавшем <b>select</b>.
+ * <br></br>
+ * <br>Метод <b>select</b> должен вызываться одним потоком. Для обслуживания
+ * большого количества портов несколькими потоками создайте несколько
+ * селекторов. Все порты селектора должны использовать тот же
+ * <b>SerialNativeInterface</b>, что и сам селектор.</br>
+ *
+ * @author scream3r
+ */
+public class SerialPortSelector {
+
+    private static final int SELECT_INTERVAL = 100;
+
+    private final SerialNativeInterface serialInterface;
+    private final List<SerialPortSelectionKey> keys = new ArrayList<SerialPortSelectionKey>();
+    private volatile boolean keysChanged = false;
+    private volatile boolean wakeupRequested = false;
+    private volatile boolean closed = false;
+    private SerialPortSelectionKey[] selectedKeys = new SerialPortSelectionKey[0];
+    private int[] handles = new int[0];
+    private int[][] events = new int[0][];
+    private int[] eventCounts = new int[0];
+    private Thread selectorThread;
+
+    public SerialPortSelector() {
+        this(SerialNativeInterface.getDefaultInterface());
+    }
+
+    public SerialPortSelector(SerialNativeInterface serialInterface) {
+        this.serialInterface = serialInterface;
+    }
+
+    /**
+     * Регистрация открытого порта. Порт не должен иметь собственного
+     * обработчика событий (см. <b>SerialPort.addEventListener</b>).
+     *
+     * @param serialPort открытый порт.
+     * @param mask маска ивентов, константы с префиксом <b>"MASK_"</b>.
+     * @param listener слушатель ивентов порта.
+     *
+     * @return Метод возвращает ключ регистрации.
+     *
+     * @throws SerialPortException
+     */
+    public SerialPortSelectionKey register(SerialPort serialPort, int mask, SerialPortEventListener listener) throws SerialPortException {
+        if(closed){
+            throw new IllegalStateException("Selector closed");
+        }
+        if(serialPort.getSerialInterface() != serialInterface){
+            throw new IllegalArgumentException("Port " + serialPort.getPortName() + " uses another SerialNativeInterface");
+        }
+        SerialPortSelectionKey key = serialPort.register(this, mask, listener);
+        synchronized(keys){
+            keys.add(key);
+            keysChanged = true;
+            keys.notifyAll();
+        }
+        return key;
+    }
+
+    /**
+     * Получение списка действительных ключей селектора.
+     */
+    public List<SerialPortSelectionKey> keys() {
+        synchronized(keys){
+            return new ArrayList<SerialPortSelectionKey>(keys);
+        }
+    }
+
+    /**
+     * Ожидание ивентов на зарегистрированных портах и доставка их слушателям.
+     * Метод возвращается после доставки ивентов, вызова <b>wakeup()</b>,
+     * закрытия селектора или истечения таймаута.
+     *
+     * @param timeout время ожидания в миллисекундах, <b>0</b> - без ограничения.
+     *
+     * @return Метод возвращает количество портов, ивенты которых были доставлены.
+     */
+    public int select(long timeout) {
+        if(timeout < 0){
+            throw new IllegalArgumentException("Negative timeout");
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        while(!closed){
+            int interval = SELECT_INTERVAL;
+            if(timeout > 0){
+                long remaining = deadline - System.currentTimeMillis();
+                if(remaining <= 0){
+                    return 0;
+                }
+                interval = (int)Math.min(interval, remaining);
+            }
+            int ready = selectOnce(interval);
+            if(ready > 0){
+                return ready;
+            }
+            if(wakeupRequested){
+                wakeupRequested = false;
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Проверка ивентов на зарегистрированных портах без ожидания и доставка
+     * их слушателям.
+     *
+     * @return Метод возвращает количество портов, ивенты которых были доставлены.
+     */
+    public int selectNow() {
+        if(closed){
+            return 0;
+        }
+        return selectOnce(0);
+    }
+
+    /**
+     * Прерывание ожидания в <b>select</b>. Если в данный момент ожидание не
+     * выполняется, прервано будет следующее. Ожидание прерывается не позже,
+     * чем через 100 мс.
+     */
+    public void wakeup() {
+        wakeupRequested = true;
+        synchronized(keys){
+            keys.notifyAll();
+        }
+    }
+
+    /**
+     * Запуск потока, вызывающего <b>select</b> до закрытия селектора.
+     */
+    public synchronized void start() {
+        if(closed){
+            throw new IllegalStateException("Selector closed");
+        }
+        if(selectorThread == null){
+            selectorThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while(!closed){
+                        select(0);
+                    }
+                }
+            });
+            selectorThread.setName("SerialPortSelector");
+            selectorThread.start();
+        }
+    }
+
+    /**
+     * Закрытие селектора. Все ключи отменяются, поток, запущенный методом
+     * <b>start()</b>, завершается. Порты при этом не закрываются.
+     */
+    public void close() {
+        closed = true;
+        for(SerialPortSelectionKey key : keys()){
+            key.cancel();
+        }
+        wakeup();
+        Thread thread;
+        synchronized(this){
+            thread = selectorThread;
+        }
+        if(thread != null && thread != Thread.currentThread()){
+            try {
+                thread.join(5000);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Метод возвращает true если селектор открыт.
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    void deregister(SerialPortSelectionKey key) {
+        synchronized(keys){
+            keys.remove(key);
+            keysChanged = true;
+        }
+    }
+
+    private int selectOnce(int timeout) {
+        if(keysChanged){
+            prepareKeys();
+        }
+        int count = selectedKeys.length;
+        if(count == 0){
+            if(timeout > 0){
+                synchronized(keys){
+                    if(!keysChanged && !wakeupRequested){
+                        try {
+                            keys.wait(timeout);
+                        }
+                        catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+            return 0;
+        }
+        //Ожидание отмечается в счётчиках вызовов портов, чтобы closePort() не
+        //закрыл handle во время ожидания. Ключ закрываемого порта будет
+        //отменён, а ивенты доставляются вне счётчиков.
+        if(!beginCalls(count)){
+            Thread.yield();
+            return 0;
+        }
+        long start = System.nanoTime();
+        int ready;
+        try {
+            ready = serialInterface.waitEvents(handles, events, eventCounts, count, timeout);
+        }
+        finally {
+            endCalls(count);
+        }
+        for(int i = 0; i < count; i++){
+            selectedKeys[i].getSerialPort().recordWaitEvents(start);
+        }
+        if(ready > 0){
+            for(int i = 0; i < count; i++){
+                if(eventCounts[i] > 0){
+                    selectedKeys[i].dispatch(events[i], eventCounts[i]);
+                }
+            }
+        }
+        return ready;
+    }
+
+    private boolean beginCalls(int count) {
+        for(int i = 0; i < count; i++){
+            if(!selectedKeys[i].getSerialPort().tryBeginCall()){
+                endCalls(i);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void endCalls(int count) {
+        for(int i = 0; i < count; i++){
+            selectedKeys[i].getSerialPort().endCall();
+        }
+    }
+
+    private void prepareKeys() {
+        synchronized(keys){
+            keysChanged = false;
+            int count = keys.size();
+            selectedKeys = keys.toArray(new SerialPortSelectionKey[count]);
+            if(handles.length != count){
+                handles = new int[count];
+                eventCounts = new int[count];
+                int[][] newEvents = new int[count][];
+                for(int i = 0; i < count; i++){
+                    newEvents[i] = i < events.length ? events[i] : new int[SerialNativeInterface.MAX_EVENTS * 2];
+                }
+                events = newEvents;
+            }
+            for(int i = 0; i < count; i++){
+                handles[i] = selectedKeys[i].getPortHandle();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Передача в порт данных из <b>Flow.Publisher</b> (JDK 9+). Каждый
+ * полученный буфер записывается через <b>SerialPort.writeAsync()</b>, новые
+ * элементы запрашиваются по мере завершения записи, поэтому одновременно в
+ * очереди записи находится не более <b>prefetch</b> буферов. Буферы нельзя
+ * изменять после передачи подписчику.
+ * <p>
+ * Результат доступен через <b>getCompletion()</b>: future завершается после
+ * записи последнего буфера, либо исключением при ошибке записи или ошибке
+ * издателя. При ошибке записи подписка отменяется.
+ *
+ * @author scream3r
+ */
+public class SerialPortSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+    public static final int DEFAULT_PREFETCH = 4;
+
+    private final SerialPort serialPort;
+    private final int prefetch;
+    private final CompletableFuture<Void> completion = new CompletableFuture<Void>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean upstreamDone = false;
+    private final BiConsumer<Integer, Throwable> writeCompleted = new BiConsumer<Integer, Throwable>() {
+        @Override
+        public void accept(Integer written, Throwable error) {
+            if(error != null){
+                fail(error);
+                return;
+            }
+            if(inFlight.decrementAndGet() == 0 && upstreamDone){
+                completion.complete(null);
+            }
+            else if(!upstreamDone){
+                subscription.request(1);
+            }
+        }
+    };
+
+    public SerialPortSubscriber(SerialPort serialPort) {
+        this(serialPort, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param serialPort порт, в который записываются данные.
+     * @param prefetch максимальное количество буферов в очереди записи.
+     */
+    public SerialPortSubscriber(SerialPort serialPort, int prefetch) {
+        if(prefetch < 1){
+            throw new IllegalArgumentException("prefetch < 1");
+        }
+        this.serialPort = serialPort;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Получение future, завершающегося после записи всех данных издателя.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if(this.subscription != null){
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        if(completion.isDone()){
+            return;
+        }
+        inFlight.incrementAndGet();
+        serialPort.writeAsync(item).whenComplete(writeCompleted);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamDone = true;
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        if(inFlight.get() == 0){
+            completion.complete(null);
+        }
+    }
+
+    private void fail(Throwable error) {
+        if(completion.completeExceptionally(error)){
+            subscription.cancel();
+        }
+    }
+}
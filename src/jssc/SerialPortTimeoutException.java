@@ -0,0 +1,48 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+/**
+ * Исключительная ситуация при истечении таймаута чтения. Данные, принятые
+ * до истечения таймаута, доступны через <b>getReceivedData()</b>.
+ *
+ * @author scream3r
+ */
+public class SerialPortTimeoutException extends SerialPortException {
+
+    private byte[] receivedData;
+
+    public SerialPortTimeoutException(String portName, String methodName, byte[] receivedData){
+        super(portName, methodName, TYPE_READ_TIMEOUT);
+        this.receivedData = receivedData;
+    }
+
+    /**
+     * Получение данных, принятых до истечения таймаута.
+     */
+    public byte[] getReceivedData(){
+        return receivedData;
+    }
+}
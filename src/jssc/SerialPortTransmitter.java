@@ -0,0 +1,307 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Очередь передачи порта. Сообщения из любых потоков помещаются в
+ * неблокирующую очередь и передаются в порт одним потоком-писателем в
+ * порядке постановки в очередь. Писатель собирает накопившиеся сообщения в
+ * пакет и передаёт его одним вызовом
+ * <b>SerialNativeInterface.writeBytes(int, ByteBuffer[], int, int)</b> (на
+ * Linux - одним <b>writev</b>), что уменьшает число системных вызовов при
+ * большом количестве мелких сообщений.
+ * <p>
+ * Пакет отправляется, когда его размер достигает <b>maxBatchBytes</b>, либо
+ * когда с момента постановки в очередь первого сообщения пакета прошло время
+ * <b>linger</b>. При нулевом <b>linger</b> пакет составляют сообщения,
+ * накопившиеся за время предыдущей записи.
+ * <p>
+ * Future каждого сообщения завершается в потоке-писателе, поэтому тяжёлые
+ * зависимые действия следует выполнять через <b>...Async</b> методы
+ * <b>CompletableFuture</b>.
+ *
+ * @author scream3r
+ */
+public class SerialPortTransmitter {
+
+    public static final int DEFAULT_MAX_BATCH_BYTES = 4096;
+
+    private static final int MAX_BATCH_MESSAGES = 64;
+
+    private final SerialPort serialPort;
+    private final int maxBatchBytes;
+    private final long lingerNanos;
+    private final ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<Message>();
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+    private volatile Thread writerThread;
+    private volatile boolean writerParked = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Создание очереди передачи без задержки накопления пакета.
+     */
+    public SerialPortTransmitter(SerialPort serialPort) {
+        this(serialPort, DEFAULT_MAX_BATCH_BYTES, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Создание очереди передачи.
+     *
+     * @param serialPort порт, в который передаются сообщения.
+     * @param maxBatchBytes размер пакета, при достижении которого пакет
+     * отправляется без ожидания. Сообщения не разбиваются: сообщение больше
+     * <b>maxBatchBytes</b> отправляется отдельным пакетом.
+     * @param linger максимальное время накопления пакета.
+     * @param unit единица измерения <b>linger</b>.
+     */
+    public SerialPortTransmitter(SerialPort serialPort, int maxBatchBytes, long linger, TimeUnit unit) {
+        if(maxBatchBytes < 1){
+            throw new IllegalArgumentException("maxBatchBytes < 1");
+        }
+        this.serialPort = serialPort;
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerNanos = Math.max(unit.toNanos(linger), 0);
+    }
+
+    /**
+     * Постановка сообщения в очередь передачи. Массив нельзя изменять до
+     * завершения возвращённого future.
+     *
+     * @return Метод возвращает future, который завершается длиной сообщения
+     * после его передачи в порт, либо исключением <b>SerialPortException</b>.
+     */
+    public CompletableFuture<Integer> send(byte[] data) {
+        return send(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Постановка в очередь передачи данных между позицией и лимитом буфера.
+     * Буфер нельзя изменять до завершения возвращённого future.
+     *
+     * @return Метод возвращает future, который завершается количеством
+     * переданных байт, либо исключением <b>SerialPortException</b>.
+     */
+    public CompletableFuture<Integer> send(ByteBuffer buffer) {
+        Message message = new Message(buffer, lingerNanos > 0 ? System.nanoTime() : 0);
+        if(closed){
+            message.future.completeExceptionally(newClosedException());
+            return message.future;
+        }
+        queue.add(message);
+        if(closed && queue.remove(message)){
+            //Писатель мог завершиться, не увидев сообщения
+            message.future.completeExceptionally(newClosedException());
+            return message.future;
+        }
+        Thread thread = writerThread;
+        if(thread == null){
+            thread = start();
+        }
+        if(writerParked){
+            LockSupport.unpark(thread);
+        }
+        return message.future;
+    }
+
+    /**
+     * Закрытие очереди передачи. Сообщения, уже поставленные в очередь,
+     * передаются, новые сообщения завершаются с исключением
+     * <b>IllegalStateException</b>.
+     */
+    public void close() {
+        closed = true;
+        Thread thread = writerThread;
+        if(thread != null){
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Получение порта очереди передачи.
+     */
+    public SerialPort getSerialPort() {
+        return serialPort;
+    }
+
+    /**
+     * Количество переданных сообщений.
+     */
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    /**
+     * Количество вызовов записи в порт. Отношение
+     * <b>getMessageCount() / getWriteCount()</b> показывает средний размер
+     * пакета в сообщениях.
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    private synchronized Thread start() {
+        if(writerThread == null){
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWriter();
+                }
+            });
+            thread.setName("Transmitter " + serialPort.getPortName());
+            thread.setDaemon(true);
+            thread.start();
+            writerThread = thread;
+        }
+        return writerThread;
+    }
+
+    private void runWriter() {
+        Message[] batch = new Message[MAX_BATCH_MESSAGES];
+        ByteBuffer[] buffers = new ByteBuffer[MAX_BATCH_MESSAGES];
+        Message carried = null;
+        while(true){
+            Message first = carried != null ? carried : queue.poll();
+            carried = null;
+            if(first == null){
+                if(closed){
+                    failQueued();
+                    break;
+                }
+                writerParked = true;
+                if(queue.isEmpty() && !closed){
+                    LockSupport.park(this);
+                }
+                writerParked = false;
+                continue;
+            }
+            int count = 0;
+            long bytes = first.length;
+            batch[count++] = first;
+            while(count < MAX_BATCH_MESSAGES && bytes < maxBatchBytes){
+                Message next = queue.poll();
+                if(next == null){
+                    long remaining = first.enqueued + lingerNanos - System.nanoTime();
+                    if(lingerNanos == 0 || remaining <= 0 || closed){
+                        break;
+                    }
+                    writerParked = true;
+                    if(queue.isEmpty()){
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                    writerParked = false;
+                    continue;
+                }
+                if(bytes + next.length > maxBatchBytes){
+                    carried = next;
+                    break;
+                }
+                batch[count++] = next;
+                bytes += next.length;
+            }
+            write(batch, buffers, count);
+        }
+    }
+
+    private void failQueued() {
+        Message message;
+        while((message = queue.poll()) != null){
+            message.future.completeExceptionally(newClosedException());
+        }
+    }
+
+    private static IllegalStateException newClosedException() {
+        return new IllegalStateException("SerialPortTransmitter is closed");
+    }
+
+    private void write(Message[] batch, ByteBuffer[] buffers, int count) {
+        for(int i = 0; i < count; i++){
+            buffers[i] = batch[i].buffer;
+        }
+        //Future завершаются вне счётчика вызовов, чтобы из их обработчиков
+        //можно было закрыть порт
+        boolean opened = serialPort.tryBeginCall();
+        if(opened){
+            try {
+                SerialNativeInterface serialInterface = serialPort.getSerialInterface();
+                int handle = serialPort.getPortHandle();
+                int index = 0;
+                while(true){
+                    while(index < count && !buffers[index].hasRemaining()){
+                        index++;
+                    }
+                    if(index == count){
+                        break;
+                    }
+                    long start = serialPort.metricsStart();
+                    long result = serialInterface.writeBytes(handle, buffers, index, count - index);
+                    serialPort.recordWrite(start, result);
+                    writeCount.incrementAndGet();
+                    if(result <= 0){
+                        break;
+                    }
+                }
+            }
+            finally {
+                serialPort.endCall();
+            }
+        }
+        int index = 0;
+        while(opened && index < count && !buffers[index].hasRemaining()){
+            messageCount.incrementAndGet();
+            batch[index].future.complete(Integer.valueOf(batch[index].length));
+            index++;
+        }
+        String type = opened && serialPort.isOpened() ? SerialPortException.TYPE_IO_ERROR : SerialPortException.TYPE_PORT_NOT_OPENED;
+        for(int i = index; i < count; i++){
+            batch[i].future.completeExceptionally(new SerialPortException(serialPort.getPortName(), "send()", type));
+        }
+        for(int i = 0; i < count; i++){
+            batch[i] = null;
+            buffers[i] = null;
+        }
+    }
+
+    private static class Message {
+
+        private final ByteBuffer buffer;
+        private final int length;
+        private final long enqueued;
+        private final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+
+        private Message(ByteBuffer buffer, long enqueued) {
+            this.buffer = buffer;
+            this.length = buffer.remaining();
+            this.enqueued = enqueued;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Декодер кадров SLIP (RFC 1055). Кадр завершается байтом <b>END</b>
+ * (0xC0), экранирование декодируется на месте. Пустые кадры (несколько
+ * <b>END</b> подряд) пропускаются.
+ *
+ * @author scream3r
+ */
+public class SlipFrameDecoder extends AbstractFrameDecoder {
+
+    public static final byte END = (byte)0xC0;
+    public static final byte ESC = (byte)0xDB;
+    public static final byte ESC_END = (byte)0xDC;
+    public static final byte ESC_ESC = (byte)0xDD;
+
+    @Override
+    public void decode(ByteBuffer buffer, FrameHandler output) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        for(int i = start + getScanned(buffer); i < limit; i++){
+            if(buffer.get(i) == END){
+                int end = unescape(buffer, start, i);
+                if(end > start){
+                    emit(buffer, start, end, output);
+                }
+                start = i + 1;
+            }
+        }
+        buffer.position(start);
+        setScanned(limit - start);
+    }
+
+    private static int unescape(ByteBuffer buffer, int start, int end) {
+        int write = start;
+        for(int read = start; read < end; read++){
+            byte value = buffer.get(read);
+            if(value == ESC && read + 1 < end){
+                byte escaped = buffer.get(++read);
+                if(escaped == ESC_END){
+                    value = END;
+                }
+                else if(escaped == ESC_ESC){
+                    value = ESC;
+                }
+                else {
+                    value = escaped;
+                }
+            }
+            buffer.put(write++, value);
+        }
+        return write;
+    }
+}
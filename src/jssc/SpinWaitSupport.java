@@ -0,0 +1,69 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Подсказка процессору об активном ожидании (<b>Thread.onSpinWait()</b>,
+ * JDK 9+). На x86 вызов превращается в инструкцию PAUSE, которая снижает
+ * потребление энергии и освобождает ресурсы ядра для соседнего
+ * гиперпотока. Класс компилируется и работает на старых JDK, где вызов
+ * ничего не делает.
+ *
+ * @author scream3r
+ */
+final class SpinWaitSupport {
+
+    private static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+
+    private SpinWaitSupport() {
+    }
+
+    private static MethodHandle findOnSpinWait() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        }
+        catch (NoSuchMethodException ex) {
+            return null;
+        }
+        catch (IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    static void onSpinWait() {
+        if(ON_SPIN_WAIT != null){
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            }
+            catch (Throwable ex) {
+                //Do nothing
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Декодер кадров, ограниченных начальным и конечным байтом (по умолчанию
+ * STX (0x02) и ETX (0x03)). Ограничители не включаются в кадр, байты вне
+ * кадров отбрасываются. Начальный байт внутри кадра начинает кадр заново.
+ *
+ * @author scream3r
+ */
+public class StxEtxFrameDecoder extends AbstractFrameDecoder {
+
+    public static final byte STX = 0x02;
+    public static final byte ETX = 0x03;
+
+    private final byte startByte;
+    private final byte endByte;
+
+    public StxEtxFrameDecoder() {
+        this(STX, ETX);
+    }
+
+    public StxEtxFrameDecoder(byte startByte, byte endByte) {
+        this.startByte = startByte;
+        this.endByte = endByte;
+    }
+
+    @Override
+    public void decode(ByteBuffer buffer, FrameHandler output) {
+        int limit = buffer.limit();
+        int scanned = getScanned(buffer);
+        //Незавершённый кадр остаётся в буфере вместе с начальным байтом
+        int frameStart = scanned > 0 ? buffer.position() + 1 : -1;
+        for(int i = buffer.position() + scanned; i < limit; i++){
+            byte value = buffer.get(i);
+            if(value == startByte){
+                frameStart = i + 1;
+            }
+            else if(value == endByte && frameStart >= 0){
+                emit(buffer, frameStart, i, output);
+                frameStart = -1;
+            }
+        }
+        buffer.position(frameStart >= 0 ? frameStart - 1 : limit);
+        setScanned(limit - buffer.position());
+    }
+}
@@ -0,0 +1,89 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Поддержка виртуальных потоков (JDK 21+). Нативный вызов, блокирующийся в
+ * виртуальном потоке, занимает поток-носитель (carrier) на всё время
+ * ожидания, поэтому в виртуальных потоках ожидание выполняется как
+ * неблокирующая проверка с последующей парковкой потока на постепенно
+ * увеличивающийся интервал. Класс компилируется и работает на старых JDK,
+ * где все потоки считаются платформенными.
+ *
+ * @author scream3r
+ */
+final class VirtualThreadSupport {
+
+    static final long MIN_PARK_NANOS = 100000L;
+    static final long MAX_PARK_NANOS = 10000000L;
+
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private VirtualThreadSupport() {
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        }
+        catch (NoSuchMethodException ex) {
+            return null;
+        }
+        catch (IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    static boolean isVirtual(Thread thread) {
+        if(IS_VIRTUAL == null){
+            return false;
+        }
+        try {
+            return (boolean)IS_VIRTUAL.invokeExact(thread);
+        }
+        catch (Throwable ex) {
+            return false;
+        }
+    }
+
+    static boolean isCurrentThreadVirtual() {
+        return isVirtual(Thread.currentThread());
+    }
+
+    /**
+     * Парковка потока на <b>parkNanos</b> наносекунд.
+     *
+     * @return Метод возвращает интервал для следующей парковки.
+     */
+    static long park(long parkNanos) {
+        LockSupport.parkNanos(parkNanos);
+        return Math.min(parkNanos * 2, MAX_PARK_NANOS);
+    }
+}
@@ -0,0 +1,59 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Все тесты jSSC. Тесты используют <b>LoopbackSerialNativeInterface</b> и,
+ * на Linux, псевдотерминалы, поэтому оборудование не требуется. На других
+ * системах тесты псевдотерминалов пропускаются.
+ * <p>
+ * Тесты компилируются вместе с jssc и JUnit 4 из <b>lib/JUnitLibrary</b>:</br>
+ * <b>javac -cp jssc.jar:lib/JUnitLibrary/junit-4.13.2.jar -d test-out test/jssc/*.java</b></br>
+ * <b>java -cp jssc.jar:lib/JNALibrary/jna.jar:lib/JUnitLibrary/junit-4.13.2.jar:lib/JUnitLibrary/hamcrest-core-1.3.jar:test-out org.junit.runner.JUnitCore jssc.AllTests</b>
+ *
+ * @author scream3r
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+    FrameDecoderTest.class,
+    SerialPortEventPingPongTest.class,
+    SerialPortListTest.class,
+    SerialPortTransmitterTest.class,
+    CaptureReplayTest.class,
+    SerialPortCloseTest.class,
+    SerialPortIoEngineTest.class,
+    SerialNativeInterfaceTest.class,
+    SerialPortMetricsTest.class,
+    SerialPortPublisherTest.class,
+    SerialPortManagerTest.class,
+    SerialPortEventThreadTest.class,
+    SerialPortEventQueueTest.class,
+    SerialPortGapFramerTest.class
+})
+public class AllTests {
+}
@@ -0,0 +1,140 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Запись обмена через <b>CaptureSerialNativeInterface</b> и его
+ * воспроизведение через <b>ReplaySerialNativeInterface</b>.
+ *
+ * @author scream3r
+ */
+public class CaptureReplayTest {
+
+    private static final long READ_TIMEOUT = 2000;
+
+    private File captureFile;
+
+    @Before
+    public void setUp() throws IOException {
+        captureFile = File.createTempFile("jssc", ".cap");
+    }
+
+    @After
+    public void tearDown() {
+        captureFile.delete();
+    }
+
+    @Test(timeout = 20000)
+    public void replaysCapturedSession() throws Exception {
+        SerialPortCaptureWriter writer = new SerialPortCaptureWriter(captureFile, 1 << 20);
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B");
+        loopback.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        SerialPort remote = new SerialPort("A", loopback);
+        final SerialPort port = new SerialPort("B", new CaptureSerialNativeInterface(loopback, writer));
+        assertTrue(remote.openPort());
+        assertTrue(port.openPort());
+        final StringBuilder received = new StringBuilder();
+        final CountDownLatch done = new CountDownLatch(1);
+        port.addEventListener(new SerialPortEventListener() {
+            @Override
+            public void serialEvent(SerialPortEvent serialPortEvent) {
+                try {
+                    if(serialPortEvent.isRXCHAR()){
+                        received.append(new String(port.readBytes(serialPortEvent.getEventValue()), "US-ASCII"));
+                        if(received.length() == 20){
+                            done.countDown();
+                        }
+                    }
+                }
+                catch (Exception ex) {
+                    //Do nothing
+                }
+            }
+        });
+        for(int i = 0; i < 5; i++){
+            remote.writeBytes(("msg" + i + ";").getBytes("US-ASCII"));
+            Thread.sleep(20);
+        }
+        assertTrue(done.await(READ_TIMEOUT, TimeUnit.MILLISECONDS));
+        port.writeBytes("reply".getBytes("US-ASCII"));
+        assertTrue(port.closePort());
+        assertTrue(remote.closePort());
+        writer.close();
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals("msg0;msg1;msg2;msg3;msg4;", received.toString());
+
+        ReplaySerialNativeInterface replay = new ReplaySerialNativeInterface(captureFile, ReplaySerialNativeInterface.SPEED_UNLIMITED);
+        assertArrayEquals(new String[]{"B"}, replay.getSerialPortNames());
+        SerialPort replayed = new SerialPort("B", replay);
+        assertTrue(replayed.openPort());
+        byte[] data = replayed.readBytes(received.length(), READ_TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(received.toString(), new String(data, "US-ASCII"));
+        replayed.writeBytes("reply".getBytes("US-ASCII"));
+        assertEquals(5, replay.getBytesWritten());
+        assertTrue(replayed.closePort());
+    }
+
+    @Test(timeout = 10000)
+    public void keepsChannelsAboveShortRange() throws Exception {
+        //Каналы отличаются на 65536: при записи канала в short они совпадут
+        int first = 40000;
+        int second = first + 65536;
+        SerialPortCaptureWriter writer = new SerialPortCaptureWriter(captureFile, 1 << 16);
+        record(writer, SerialPortCaptureWriter.RECORD_OPEN, first, "P1");
+        record(writer, SerialPortCaptureWriter.RECORD_OPEN, second, "P2");
+        record(writer, SerialPortCaptureWriter.RECORD_RX, first, "one");
+        record(writer, SerialPortCaptureWriter.RECORD_RX, second, "two");
+        record(writer, SerialPortCaptureWriter.RECORD_CLOSE, first, "");
+        record(writer, SerialPortCaptureWriter.RECORD_CLOSE, second, "");
+        writer.close();
+
+        ReplaySerialNativeInterface replay = new ReplaySerialNativeInterface(captureFile, ReplaySerialNativeInterface.SPEED_UNLIMITED);
+        SerialPort port1 = new SerialPort("P1", replay);
+        SerialPort port2 = new SerialPort("P2", replay);
+        assertTrue(port1.openPort());
+        assertTrue(port2.openPort());
+        assertEquals("one", new String(port1.readBytes(3, READ_TIMEOUT, TimeUnit.MILLISECONDS), "US-ASCII"));
+        assertEquals("two", new String(port2.readBytes(3, READ_TIMEOUT, TimeUnit.MILLISECONDS), "US-ASCII"));
+        assertTrue(port1.closePort());
+        assertTrue(port2.closePort());
+    }
+
+    private static void record(SerialPortCaptureWriter writer, int type, int channel, String data) throws IOException {
+        byte[] bytes = data.getBytes("US-ASCII");
+        writer.record(type, channel, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,148 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Декодеры кадров в <b>SerialPortFramePipeline</b>. Данные передаются как
+ * одной порцией, так и по одному байту, чтобы кадры и разделители
+ * оказывались на границах порций.
+ *
+ * @author scream3r
+ */
+public class FrameDecoderTest {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    @Test
+    public void delimiter() {
+        byte[] data = bytes("ab\r\n\r\ncd\r\r\nef");
+        List<String> expected = Arrays.asList("ab", "", "cd\r");
+        assertEquals(expected, strings(decode(data, data.length, new DelimiterFrameDecoder(CRLF, true))));
+        assertEquals(expected, strings(decode(data, 1, new DelimiterFrameDecoder(CRLF, true))));
+        assertEquals(expected, strings(decode(data, 3, new DelimiterFrameDecoder(CRLF, true))));
+        assertEquals(Arrays.asList("ab\r\n", "\r\n", "cd\r\r\n"), strings(decode(data, 1, new DelimiterFrameDecoder(CRLF, false))));
+    }
+
+    @Test
+    public void slip() {
+        byte[] data = {(byte)0xC0, 1, (byte)0xDB, (byte)0xDC, 2, (byte)0xC0, (byte)0xC0, (byte)0xDB, (byte)0xDD, (byte)0xC0, 3};
+        List<String> expected = Arrays.asList("[1, -64, 2]", "[-37]");
+        assertEquals(expected, arrays(decode(data, data.length, new SlipFrameDecoder())));
+        assertEquals(expected, arrays(decode(data, 1, new SlipFrameDecoder())));
+    }
+
+    @Test
+    public void cobs() {
+        byte[] data = {0x03, 0x11, 0x22, 0x02, 0x33, 0x00, 0x01, 0x01, 0x00, 0x05, 0x00, 0x01};
+        List<String> expected = Arrays.asList("[17, 34, 0, 51]", "[0]");
+        assertEquals(expected, arrays(decode(data, data.length, new CobsFrameDecoder())));
+        assertEquals(expected, arrays(decode(data, 1, new CobsFrameDecoder())));
+    }
+
+    @Test
+    public void lengthField() {
+        byte[] data = {0, 3, 'a', 'b', 'c', 0, 0, 0, 2, 'd'};
+        List<String> expected = Arrays.asList("abc", "");
+        assertEquals(expected, strings(decode(data, data.length, new LengthFieldFrameDecoder(2, true, 0, true))));
+        assertEquals(expected, strings(decode(data, 1, new LengthFieldFrameDecoder(2, true, 0, true))));
+        assertEquals(Arrays.asList("[3, 0, 97, 98, 99]"), arrays(decode(new byte[]{3, 0, 'a', 'b', 'c'}, 1, new LengthFieldFrameDecoder(2, false, 0, false))));
+    }
+
+    @Test
+    public void stxEtx() {
+        byte[] data = bytes("x\u0002ab\u0003y\u0002lost\u0002cd\u0003\u0002e");
+        List<String> expected = Arrays.asList("ab", "cd");
+        assertEquals(expected, strings(decode(data, data.length, new StxEtxFrameDecoder())));
+        assertEquals(expected, strings(decode(data, 1, new StxEtxFrameDecoder())));
+        assertEquals(expected, strings(decode(data, 4, new StxEtxFrameDecoder())));
+    }
+
+    @Test
+    public void nestedStageStartsEachFrameAfresh() {
+        byte[] data = bytes("a,b\nc,\n");
+        List<String> expected = Arrays.asList("a", "c");
+        assertEquals(expected, strings(decode(data, 1, new DelimiterFrameDecoder(bytes("\n"), true), new DelimiterFrameDecoder(bytes(","), true))));
+    }
+
+    /**
+     * Кадр, принятый по одному байту, просматривается один раз, а не заново
+     * при каждом байте.
+     */
+    @Test(timeout = 5000)
+    public void longFrame() {
+        byte[] data = new byte[300000];
+        Arrays.fill(data, (byte)'a');
+        data[data.length - 2] = '\r';
+        data[data.length - 1] = '\n';
+        List<byte[]> frames = decode(data, 1, new DelimiterFrameDecoder(CRLF, true));
+        assertEquals(1, frames.size());
+        assertEquals(data.length - 2, frames.get(0).length);
+    }
+
+    private static List<byte[]> decode(byte[] data, int chunkSize, FrameDecoder... decoders) {
+        final List<byte[]> frames = new ArrayList<byte[]>();
+        SerialPortFramePipeline pipeline = new SerialPortFramePipeline(null, data.length + 1, new FrameHandler() {
+            @Override
+            public void frameReceived(ByteBuffer frame) {
+                byte[] copy = new byte[frame.remaining()];
+                frame.get(copy);
+                frames.add(copy);
+            }
+        }, decoders);
+        for(int offset = 0; offset < data.length; offset += chunkSize){
+            pipeline.process(ByteBuffer.wrap(data, offset, Math.min(chunkSize, data.length - offset)));
+        }
+        return frames;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static List<String> strings(List<byte[]> frames) {
+        List<String> values = new ArrayList<String>();
+        for(byte[] frame : frames){
+            values.add(new String(frame, StandardCharsets.ISO_8859_1));
+        }
+        return values;
+    }
+
+    private static List<String> arrays(List<byte[]> frames) {
+        List<String> values = new ArrayList<String>();
+        for(byte[] frame : frames){
+            values.add(Arrays.toString(frame));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,97 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Реализации методов <b>SerialNativeInterface</b> по умолчанию.
+ *
+ * @author scream3r
+ */
+public class SerialNativeInterfaceTest {
+
+    @Test
+    public void bufferReadWaitsForOneByteWhenCountIsUnknown() {
+        Received received = new Received(false, 3);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertEquals(1, received.readBytes(1, buffer));
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void bufferReadTakesReceivedBytes() {
+        Received received = new Received(true, 3);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertEquals(3, received.readBytes(1, buffer));
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void arrayReadReturnsWithoutFillingArray() {
+        Received received = new Received(true, 5);
+        byte[] buffer = new byte[64];
+        assertEquals(5, received.readBytes(1, buffer, 10, 54));
+        assertEquals(4, buffer[14]);
+    }
+
+    /**
+     * Порт с заданным количеством принятых байт. Запрос большего количества
+     * заблокировал бы настоящий порт, поэтому считается ошибкой теста.
+     */
+    private static class Received extends SerialNativeInterface {
+
+        private final boolean countSupported;
+        private int available;
+        private byte next = 0;
+
+        private Received(boolean countSupported, int available) {
+            super(false);
+            this.countSupported = countSupported;
+            this.available = available;
+        }
+
+        @Override
+        public byte[] readBytes(int handle, int byteCount) {
+            if(byteCount > available){
+                throw new AssertionError("read of " + byteCount + " bytes would block, " + available + " received");
+            }
+            available -= byteCount;
+            byte[] data = new byte[byteCount];
+            for(int i = 0; i < byteCount; i++){
+                data[i] = next++;
+            }
+            return data;
+        }
+
+        @Override
+        public int getInputBufferBytesCount(int handle) {
+            return countSupported ? available : -1;
+        }
+    }
+}
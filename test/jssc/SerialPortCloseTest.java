@@ -0,0 +1,197 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Закрытие порта при выполняющихся в других потоках вызовах: блокирующее
+ * чтение прерывается и завершается исключением, а handle не закрывается,
+ * пока вызов не завершён.
+ *
+ * @author scream3r
+ */
+public class SerialPortCloseTest {
+
+    private static final long JOIN_TIMEOUT = 5000;
+
+    private LinuxSerialNativeInterface linuxInterface;
+    private int master = -1;
+
+    @After
+    public void tearDown() {
+        if(master != -1){
+            linuxInterface.closePort(master);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void closeInterruptsLoopbackRead() throws Exception {
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B");
+        SerialPort port = new SerialPort("B", loopback);
+        assertTrue(port.openPort());
+        assertReadFailsOnClose(port);
+        assertTrue(port.openPort());
+        assertTrue(port.closePort());
+    }
+
+    @Test(timeout = 10000)
+    public void closeInterruptsPtyRead() throws Exception {
+        SerialPort port = openPty();
+        assertReadFailsOnClose(port);
+        assertTrue(port.openPort());
+        linuxInterface.writeBytes(master, new byte[]{1, 2, 3});
+        assertEquals(3, port.readBytes(3, 1, TimeUnit.SECONDS).length);
+        assertTrue(port.closePort());
+    }
+
+    @Test(timeout = 20000)
+    public void closeKeepsHandleOfStuckCall() throws Exception {
+        final AtomicBoolean stuck = new AtomicBoolean(true);
+        final CountDownLatch started = new CountDownLatch(1);
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B") {
+            @Override
+            public byte[] readBytes(int handle, int byteCount) {
+                //Вызов, не реагирующий на cancelIo
+                started.countDown();
+                while(stuck.get()){
+                    Thread.yield();
+                }
+                return new byte[0];
+            }
+
+            @Override
+            public boolean closePort(int handle) {
+                if(stuck.get()){
+                    fail("handle closed while a call is in flight");
+                }
+                return super.closePort(handle);
+            }
+        };
+        final SerialPort port = new SerialPort("B", loopback);
+        assertTrue(port.openPort());
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    port.readBytes(1);
+                }
+                catch (SerialPortException ex) {
+                    //Do nothing
+                }
+            }
+        });
+        reader.start();
+        started.await();
+        assertFalse(port.closePort());
+        assertFalse(port.isOpened());
+        try {
+            port.writeBytes(new byte[1]);
+            fail("call accepted while the close is pending");
+        }
+        catch (SerialPortException ex) {
+            assertEquals(SerialPortException.TYPE_PORT_NOT_OPENED, ex.getExceptionType());
+        }
+        stuck.set(false);
+        reader.join(JOIN_TIMEOUT);
+        assertTrue(port.closePort());
+        assertTrue(port.openPort());
+        assertTrue(port.closePort());
+    }
+
+    @Test(timeout = 10000)
+    public void closeFromListener() throws Exception {
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B");
+        SerialPort writer = new SerialPort("A", loopback);
+        final SerialPort port = new SerialPort("B", loopback);
+        assertTrue(writer.openPort());
+        assertTrue(port.openPort());
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        port.addEventListener(new SerialPortEventListener() {
+            @Override
+            public void serialEvent(SerialPortEvent serialPortEvent) {
+                try {
+                    result.set(Boolean.valueOf(port.closePort()));
+                }
+                catch (SerialPortException ex) {
+                    result.set(ex);
+                }
+                closed.countDown();
+            }
+        });
+        writer.writeBytes(new byte[1]);
+        assertTrue(closed.await(JOIN_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(Boolean.TRUE, result.get());
+        assertTrue(writer.closePort());
+    }
+
+    private SerialPort openPty() throws SerialPortException {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().contains("linux"));
+        linuxInterface = new LinuxSerialNativeInterface();
+        master = linuxInterface.openPseudoTerminal();
+        Assume.assumeTrue(master != -1);
+        SerialPort port = new SerialPort(linuxInterface.getSlaveName(master), linuxInterface);
+        assertTrue(port.openPort());
+        return port;
+    }
+
+    /**
+     * Чтение, заблокированное в ожидании данных, должно завершиться
+     * исключением после закрытия порта, а не вернуть пустой массив.
+     */
+    private static void assertReadFailsOnClose(final SerialPort port) throws Exception {
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(port.readBytes(10));
+                }
+                catch (SerialPortException ex) {
+                    result.set(ex);
+                }
+            }
+        });
+        reader.start();
+        Thread.sleep(100);
+        assertTrue(port.closePort());
+        reader.join(JOIN_TIMEOUT);
+        assertFalse(reader.isAlive());
+        assertTrue("read returned " + result.get(), result.get() instanceof SerialPortException);
+        assertEquals(SerialPortException.TYPE_PORT_NOT_OPENED, ((SerialPortException)result.get()).getExceptionType());
+    }
+}
@@ -0,0 +1,139 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Обмен по одному байту "запрос - ответ". Слушатель вычитывает буфер
+ * целиком, и следующий байт снова даёт во входном буфере то же
+ * количество байт. Ивент RXCHAR при этом не должен теряться.
+ *
+ * @author scream3r
+ */
+public class SerialPortEventPingPongTest {
+
+    private static final int ROUNDS = 500;
+    private static final long ROUND_TIMEOUT = 2000;
+
+    private LinuxSerialNativeInterface linuxInterface;
+    private int master = -1;
+
+    @After
+    public void tearDown() {
+        if(master != -1){
+            linuxInterface.closePort(master);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void loopbackPingPong() throws Exception {
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B");
+        loopback.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        final SerialPort ping = new SerialPort("A", loopback);
+        SerialPort pong = new SerialPort("B", loopback);
+        assertTrue(ping.openPort());
+        assertTrue(pong.openPort());
+        pong.addEventListener(new Echo(pong));
+        final AtomicInteger rounds = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        ping.addEventListener(new SerialPortEventListener() {
+            @Override
+            public void serialEvent(SerialPortEvent serialPortEvent) {
+                if(!serialPortEvent.isRXCHAR()){
+                    return;
+                }
+                try {
+                    ping.readBytes(serialPortEvent.getEventValue());
+                    if(rounds.incrementAndGet() == ROUNDS){
+                        done.countDown();
+                    }
+                    else {
+                        ping.writeBytes(new byte[]{(byte)rounds.get()});
+                    }
+                }
+                catch (SerialPortException ex) {
+                    //Do nothing
+                }
+            }
+        });
+        ping.writeBytes(new byte[]{0});
+        assertTrue("stalled after " + rounds.get() + " rounds", done.await(ROUNDS * 10L, TimeUnit.MILLISECONDS));
+        assertTrue(ping.closePort());
+        assertTrue(pong.closePort());
+    }
+
+    @Test(timeout = 30000)
+    public void ptyPingPong() throws Exception {
+        Assume.assumeTrue(System.getProperty("os.name").toLowerCase().contains("linux"));
+        linuxInterface = new LinuxSerialNativeInterface();
+        master = linuxInterface.openPseudoTerminal();
+        Assume.assumeTrue(master != -1);
+        SerialPort pong = new SerialPort(linuxInterface.getSlaveName(master), linuxInterface);
+        assertTrue(pong.openPort());
+        pong.addEventListener(new Echo(pong));
+        byte[] request = new byte[1];
+        byte[] response = new byte[1];
+        for(int i = 0; i < ROUNDS; i++){
+            request[0] = (byte)i;
+            linuxInterface.writeBytes(master, request, 0, 1);
+            assertEquals("no response in round " + i, 1, linuxInterface.readBytes(master, response, 0, 1, (int)ROUND_TIMEOUT));
+            assertEquals(request[0], response[0]);
+        }
+        assertTrue(pong.closePort());
+    }
+
+    /**
+     * Слушатель, возвращающий принятые данные отправителю.
+     */
+    private static class Echo implements SerialPortEventListener {
+
+        private final SerialPort serialPort;
+
+        private Echo(SerialPort serialPort) {
+            this.serialPort = serialPort;
+        }
+
+        @Override
+        public void serialEvent(SerialPortEvent serialPortEvent) {
+            try {
+                if(serialPortEvent.isRXCHAR()){
+                    serialPort.writeBytes(serialPort.readBytes(serialPortEvent.getEventValue()));
+                }
+            }
+            catch (SerialPortException ex) {
+                //Do nothing
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Политики <b>SerialPortEventQueue</b> при заполненном буфере. Слушатель
+ * задерживает первый ивент, пока тест заполняет буфер.
+ *
+ * @author scream3r
+ */
+public class SerialPortEventQueueTest {
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> delivered = new ArrayList<String>();
+    private SerialPortEventQueue queue;
+    private SerialPortEventQueue.Stage stage;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if(stage != null){
+            queue.stop(stage);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void blockWaitsForSpace() throws Exception {
+        start(SerialPortEventQueue.POLICY_BLOCK);
+        final int[] events = packed(SerialPortEvent.RXFLAG, 2, SerialPortEvent.RXFLAG, 3, SerialPortEvent.RXFLAG, 4, SerialPortEvent.RXFLAG, 5);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stage.offer(events, 4);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("producer did not wait for space", producer.isAlive());
+        release.countDown();
+        producer.join();
+        awaitDelivered(5);
+        assertEquals(Arrays.asList("RXFLAG 1", "RXFLAG 2", "RXFLAG 3", "RXFLAG 4", "RXFLAG 5"), delivered());
+        assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void dropOldestKeepsNewest() throws Exception {
+        start(SerialPortEventQueue.POLICY_DROP_OLDEST);
+        stage.offer(packed(SerialPortEvent.RXFLAG, 2, SerialPortEvent.RXFLAG, 3, SerialPortEvent.RXFLAG, 4, SerialPortEvent.RXFLAG, 5), 4);
+        assertEquals(2, queue.getDroppedCount());
+        release.countDown();
+        awaitDelivered(3);
+        assertEquals(Arrays.asList("RXFLAG 1", "RXFLAG 4", "RXFLAG 5"), delivered());
+    }
+
+    @Test(timeout = 10000)
+    public void coalesceKeepsLastRxChar() throws Exception {
+        start(SerialPortEventQueue.POLICY_COALESCE_RXCHAR);
+        stage.offer(packed(SerialPortEvent.RXCHAR, 10, SerialPortEvent.RXFLAG, 2, SerialPortEvent.RXCHAR, 20, SerialPortEvent.RXCHAR, 30), 4);
+        assertEquals(2, queue.getCoalescedCount());
+        assertEquals(2, queue.size());
+        release.countDown();
+        awaitDelivered(3);
+        assertEquals(Arrays.asList("RXFLAG 1", "RXFLAG 2", "RXCHAR 30"), delivered());
+    }
+
+    /**
+     * Запуск очереди ёмкостью 2 и доставка первого ивента, на котором
+     * слушатель останавливается до <b>release</b>.
+     */
+    private void start(int policy) throws Exception {
+        queue = new SerialPortEventQueue(2, policy);
+        SerialPort serialPort = new SerialPort("A", new LoopbackSerialNativeInterface("A", "B"));
+        stage = queue.start("A", new SerialPortEventDispatcher(serialPort, new SerialPortEventListener() {
+            @Override
+            public void serialEvent(SerialPortEvent serialPortEvent) {
+                synchronized(delivered){
+                    delivered.add((serialPortEvent.isRXCHAR() ? "RXCHAR " : "RXFLAG ") + serialPortEvent.getEventValue());
+                    delivered.notifyAll();
+                }
+                entered.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ex) {
+                    //Do nothing
+                }
+            }
+        }));
+        stage.offer(packed(SerialPortEvent.RXFLAG, 1), 1);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        synchronized(delivered){
+            while(delivered.size() < count){
+                delivered.wait();
+            }
+        }
+    }
+
+    private List<String> delivered() {
+        synchronized(delivered){
+            return new ArrayList<String>(delivered);
+        }
+    }
+
+    private static int[] packed(int... events) {
+        int[] packedEvents = new int[SerialNativeInterface.MAX_EVENTS * 2];
+        System.arraycopy(events, 0, packedEvents, 0, events.length);
+        return packedEvents;
+    }
+}
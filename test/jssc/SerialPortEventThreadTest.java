@@ -0,0 +1,99 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Привязка потока цикла ивентов к процессору.
+ *
+ * @author scream3r
+ */
+public class SerialPortEventThreadTest {
+
+    private final AtomicReference<Thread> boundThread = new AtomicReference<Thread>();
+    private SerialPort serialPort;
+
+    @Before
+    public void setUp() throws SerialPortException {
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B") {
+            @Override
+            public boolean setThreadAffinity(int cpu) {
+                boundThread.set(Thread.currentThread());
+                return true;
+            }
+        };
+        serialPort = new SerialPort("A", loopback);
+        assertTrue(serialPort.openPort());
+        serialPort.setEventSpinning(1, TimeUnit.MILLISECONDS);
+        serialPort.setEventThreadAffinity(0);
+    }
+
+    @After
+    public void tearDown() throws SerialPortException {
+        serialPort.closePort();
+    }
+
+    @Test(timeout = 10000)
+    public void bindsOwnThread() throws Exception {
+        serialPort.addEventListener(new Ignore());
+        while(boundThread.get() == null){
+            Thread.sleep(1);
+        }
+        assertEquals("EventThread A", boundThread.get().getName());
+    }
+
+    @Test(timeout = 10000)
+    public void leavesExecutorThreadUnbound() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            serialPort.setEventExecutor(executor);
+            serialPort.addEventListener(new Ignore());
+            Thread.sleep(100);
+            assertTrue(serialPort.removeEventListener());
+            assertEquals(null, boundThread.get());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class Ignore implements SerialPortEventListener {
+
+        @Override
+        public void serialEvent(SerialPortEvent serialPortEvent) {
+            //Do nothing
+        }
+    }
+}
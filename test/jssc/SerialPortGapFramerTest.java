@@ -0,0 +1,94 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Выделение кадров по паузам <b>SerialPortGapFramer</b> на виртуальных
+ * портах.
+ *
+ * @author scream3r
+ */
+public class SerialPortGapFramerTest {
+
+    private SerialPort serialPort;
+    private SerialPort peer;
+
+    @Before
+    public void setUp() throws SerialPortException {
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B");
+        loopback.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        serialPort = new SerialPort("A", loopback);
+        peer = new SerialPort("B", loopback);
+        assertTrue(serialPort.openPort());
+        assertTrue(peer.openPort());
+    }
+
+    @After
+    public void tearDown() throws SerialPortException {
+        serialPort.closePort();
+        peer.closePort();
+    }
+
+    @Test(timeout = 10000)
+    public void splitsFramesAtGaps() throws Exception {
+        SerialPortGapFramer framer = new SerialPortGapFramer(serialPort);
+        framer.setMinGap(20, TimeUnit.MILLISECONDS);
+        assertNull(framer.readFrame(10, TimeUnit.MILLISECONDS));
+        peer.writeBytes(new byte[]{1, 2, 3, 4, 5});
+        assertFrame(framer.readFrame(5, TimeUnit.SECONDS), 1, 2, 3, 4, 5);
+        assertTrue(framer.getFrameEndTime() >= framer.getFrameStartTime());
+        peer.writeBytes(new byte[]{6, 7});
+        peer.writeBytes(new byte[]{8});
+        assertFrame(framer.readFrame(5, TimeUnit.SECONDS), 6, 7, 8);
+    }
+
+    @Test(timeout = 10000)
+    public void dropsOversizedFrame() throws Exception {
+        SerialPortGapFramer framer = new SerialPortGapFramer(serialPort, 4);
+        framer.setMinGap(20, TimeUnit.MILLISECONDS);
+        peer.writeBytes(new byte[]{1, 2, 3, 4, 5, 6});
+        assertNull(framer.readFrame(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, framer.getDiscardedCount());
+        peer.writeBytes(new byte[]{7, 8});
+        assertFrame(framer.readFrame(5, TimeUnit.SECONDS), 7, 8);
+    }
+
+    private static void assertFrame(ByteBuffer frame, int... expected) {
+        assertEquals(expected.length, frame.remaining());
+        for(int value : expected){
+            assertEquals(value, frame.get());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Асинхронные операции <b>SerialPortIoEngine</b> и закрытие порта.
+ *
+ * @author scream3r
+ */
+public class SerialPortIoEngineTest {
+
+    private SerialPortIoEngine engine;
+    private SerialPort serialPort;
+    private SerialPort peer;
+
+    @Before
+    public void setUp() throws SerialPortException {
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B");
+        loopback.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        engine = new SerialPortIoEngine("test-io");
+        serialPort = new SerialPort("A", loopback);
+        serialPort.setIoEngine(engine);
+        peer = new SerialPort("B", loopback);
+        assertTrue(serialPort.openPort());
+        assertTrue(peer.openPort());
+    }
+
+    @After
+    public void tearDown() throws SerialPortException {
+        if(serialPort.isOpened()){
+            serialPort.closePort();
+        }
+        peer.closePort();
+        engine.close();
+    }
+
+    @Test(timeout = 10000)
+    public void readAsyncCompletes() throws Exception {
+        CompletableFuture<byte[]> future = serialPort.readAsync(3, Duration.ofSeconds(5));
+        peer.writeBytes(new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void closeFailsPendingRead() throws Exception {
+        CompletableFuture<byte[]> future = serialPort.readAsync(1, Duration.ofMinutes(1));
+        assertTrue(serialPort.closePort());
+        assertTrue(future.isDone());
+        assertNotOpened(future);
+    }
+
+    @Test(timeout = 10000)
+    public void pendingReadDoesNotSurviveReopen() throws Exception {
+        CompletableFuture<byte[]> future = serialPort.readAsync(1, Duration.ofMinutes(1));
+        assertTrue(serialPort.closePort());
+        assertTrue(serialPort.openPort());
+        assertNotOpened(future);
+        peer.writeBytes(new byte[]{7});
+        assertArrayEquals(new byte[]{7}, serialPort.readBytes(1, 5, TimeUnit.SECONDS));
+    }
+
+    private static void assertNotOpened(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("operation completed after close");
+        }
+        catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof SerialPortException);
+            assertEquals(SerialPortException.TYPE_PORT_NOT_OPENED, ((SerialPortException)ex.getCause()).getExceptionType());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Порядок имён портов в <b>SerialPortList</b> не должен зависеть от
+ * порядка, в котором их сообщает <b>SerialNativeInterface</b>.
+ *
+ * @author scream3r
+ */
+public class SerialPortListTest {
+
+    private static final String[] SORTED_NAMES = {
+        "COM1", "com2", "COM3", "COM10", "COM200",
+        "/dev/cu.Bluetooth-Incoming-Port", "/dev/ttyACM0", "/dev/ttyS0", "/dev/ttyS1",
+        "/dev/ttyUSB0", "/dev/ttyUSB10", "/dev/ttyUSB2", "COMx", "xcom"
+    };
+
+    @Test
+    public void sortsNumberedNamesFirst() {
+        String[] names = SORTED_NAMES.clone();
+        Collections.reverse(Arrays.asList(names));
+        assertArrayEquals(SORTED_NAMES, SerialPortList.sortPortNames(names));
+    }
+
+    @Test
+    public void orderDoesNotDependOnInput() {
+        List<String> names = new ArrayList<String>(Arrays.asList(SORTED_NAMES));
+        Random random = new Random(0);
+        for(int i = 0; i < 1000; i++){
+            Collections.shuffle(names, random);
+            assertArrayEquals(names.toString(), SORTED_NAMES, SerialPortList.sortPortNames(names.toArray(new String[names.size()])));
+        }
+    }
+
+    @Test
+    public void dropsDuplicates() {
+        String[] names = {"COM2", "/dev/ttyS0", "COM1", "COM2", "/dev/ttyS0"};
+        assertArrayEquals(new String[]{"COM1", "COM2", "/dev/ttyS0"}, SerialPortList.sortPortNames(names));
+    }
+}
@@ -0,0 +1,123 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Аренды <b>SerialPortManager</b> и восстановление связи после отключения
+ * устройства.
+ *
+ * @author scream3r
+ */
+public class SerialPortManagerTest {
+
+    private LoopbackSerialNativeInterface loopback;
+    private SerialPortRegistry registry;
+    private SerialPortManager manager;
+
+    @Before
+    public void setUp() {
+        loopback = new LoopbackSerialNativeInterface("A", "B");
+        loopback.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        registry = new SerialPortRegistry(loopback);
+        manager = new SerialPortManager(loopback, registry);
+        manager.setCheckInterval(5, TimeUnit.MILLISECONDS);
+        manager.setReconnectDelay(5, 50, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test(timeout = 10000)
+    public void reconnectsAfterUnlink() throws Exception {
+        SerialPortLease lease = manager.acquire("A");
+        try {
+            reconnect(lease);
+        }
+        finally {
+            lease.release();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void supervisorStopsWithLastLease() throws Exception {
+        SerialPortLease first = manager.acquire("A");
+        SerialPortLease second = manager.acquire("A");
+        first.release();
+        assertTrue(isSupervisorRunning());
+        second.release();
+        while(isSupervisorRunning()){
+            Thread.sleep(1);
+        }
+        SerialPortLease lease = manager.acquire("A");
+        try {
+            reconnect(lease);
+        }
+        finally {
+            lease.release();
+        }
+    }
+
+    private void reconnect(SerialPortLease lease) throws Exception {
+        assertTrue(lease.isConnected());
+        loopback.unlinkPorts("A");
+        while(lease.isConnected()){
+            Thread.sleep(1);
+        }
+        loopback.linkPorts("A", "B");
+        while(!lease.isConnected()){
+            Thread.sleep(1);
+        }
+        assertEquals(1, lease.getReconnectCount());
+        SerialPort peer = new SerialPort("B", loopback);
+        assertTrue(peer.openPort());
+        try {
+            assertTrue(lease.writeBytes(new byte[]{1, 2, 3}));
+            assertArrayEquals(new byte[]{1, 2, 3}, peer.readBytes(3, 5, TimeUnit.SECONDS));
+        }
+        finally {
+            peer.closePort();
+        }
+    }
+
+    private static boolean isSupervisorRunning() {
+        for(Thread thread : Thread.getAllStackTraces().keySet()){
+            if(thread.getName().equals("SerialPortManager") && thread.isAlive()){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Учёт в <b>SerialPortMetrics</b> обращений к порту в обход методов
+ * <b>SerialPort</b>.
+ *
+ * @author scream3r
+ */
+public class SerialPortMetricsTest {
+
+    private SerialPort serialPort;
+    private SerialPort peer;
+    private SerialPortMetrics metrics;
+
+    @Before
+    public void setUp() throws SerialPortException {
+        LoopbackSerialNativeInterface loopback = new LoopbackSerialNativeInterface("A", "B");
+        loopback.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        serialPort = new SerialPort("A", loopback);
+        peer = new SerialPort("B", loopback);
+        assertTrue(serialPort.openPort());
+        assertTrue(peer.openPort());
+        serialPort.setMetricsEnabled(true);
+        metrics = serialPort.getMetrics();
+        assertNotNull(metrics);
+    }
+
+    @After
+    public void tearDown() throws SerialPortException {
+        serialPort.closePort();
+        peer.closePort();
+    }
+
+    @Test(timeout = 10000)
+    public void transmitterWrites() throws Exception {
+        SerialPortTransmitter transmitter = new SerialPortTransmitter(serialPort);
+        try {
+            transmitter.send(new byte[]{1, 2, 3}).get(5, TimeUnit.SECONDS);
+        }
+        finally {
+            transmitter.close();
+        }
+        assertEquals(3, metrics.getBytesWritten());
+        assertTrue(metrics.getWriteCalls() > 0);
+    }
+
+    @Test(timeout = 10000)
+    public void asyncReadsAndWrites() throws Exception {
+        serialPort.writeAsync(ByteBuffer.wrap(new byte[]{1, 2})).get(5, TimeUnit.SECONDS);
+        peer.writeBytes(new byte[]{3, 4, 5});
+        serialPort.readAsync(3, Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+        assertEquals(2, metrics.getBytesWritten());
+        assertEquals(3, metrics.getBytesRead());
+    }
+
+    @Test(timeout = 10000)
+    public void framerReads() throws Exception {
+        SerialPortGapFramer framer = new SerialPortGapFramer(serialPort);
+        framer.setMinGap(20, TimeUnit.MILLISECONDS);
+        peer.writeBytes(new byte[]{1, 2, 3, 4});
+        assertEquals(4, framer.readFrame(5, TimeUnit.SECONDS).remaining());
+        assertEquals(4, metrics.getBytesRead());
+    }
+
+    @Test(timeout = 10000)
+    public void spinningEventLoopWaits() throws Exception {
+        serialPort.setEventSpinning(1, TimeUnit.MILLISECONDS);
+        serialPort.addEventListener(new SerialPortEventListener() {
+            @Override
+            public void serialEvent(SerialPortEvent serialPortEvent) {
+                //Do nothing
+            }
+        });
+        while(metrics.getWaitEventsLatency().getCount() == 0){
+            Thread.sleep(1);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void selectorWaits() throws Exception {
+        SerialPortSelector selector = new SerialPortSelector(serialPort.getSerialInterface());
+        try {
+            selector.register(serialPort, SerialPort.MASK_RXCHAR, new SerialPortEventListener() {
+                @Override
+                public void serialEvent(SerialPortEvent serialPortEvent) {
+                    //Do nothing
+                }
+            });
+            selector.select(1);
+        }
+        finally {
+            selector.close();
+        }
+        assertTrue(metrics.getWaitEventsLatency().getCount() > 0);
+    }
+}
@@ -0,0 +1,136 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Подписка на данные порта через <b>SerialPortPublisher</b>.
+ *
+ * @author scream3r
+ */
+public class SerialPortPublisherTest {
+
+    private SerialPort serialPort;
+    private SerialPort peer;
+
+    @After
+    public void tearDown() throws SerialPortException {
+        if(serialPort.isOpened()){
+            serialPort.closePort();
+        }
+        peer.closePort();
+    }
+
+    @Test(timeout = 10000)
+    public void deliversReceivedData() throws Exception {
+        open(new LoopbackSerialNativeInterface("A", "B"));
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        new SerialPortPublisher(serialPort).subscribe(recorder);
+        assertTrue(recorder.subscribed.await(5, TimeUnit.SECONDS));
+        peer.writeBytes(new byte[]{1, 2, 3});
+        assertTrue(recorder.received.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void closeCompletesIdleSubscription() throws Exception {
+        open(new LoopbackSerialNativeInterface("A", "B"));
+        Recorder recorder = new Recorder(0);
+        new SerialPortPublisher(serialPort).subscribe(recorder);
+        assertTrue(recorder.subscribed.await(5, TimeUnit.SECONDS));
+        assertTrue(serialPort.closePort());
+        assertTrue(recorder.finished.await(5, TimeUnit.SECONDS));
+        assertEquals(null, recorder.error);
+    }
+
+    @Test(timeout = 10000)
+    public void unsupportedInterfaceFailsSubscribe() throws Exception {
+        open(new LoopbackSerialNativeInterface("A", "B") {
+            @Override
+            public int getInputBufferBytesCount(int handle) {
+                return -1;
+            }
+        });
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        new SerialPortPublisher(serialPort).subscribe(recorder);
+        assertTrue(recorder.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(recorder.error instanceof UnsupportedOperationException);
+    }
+
+    private void open(LoopbackSerialNativeInterface loopback) throws SerialPortException {
+        serialPort = new SerialPort("A", loopback);
+        peer = new SerialPort("B", loopback);
+        assertTrue(serialPort.openPort());
+        assertTrue(peer.openPort());
+    }
+
+    private static class Recorder implements Flow.Subscriber<ByteBuffer> {
+
+        private final long request;
+        private final CountDownLatch subscribed = new CountDownLatch(1);
+        private final CountDownLatch received = new CountDownLatch(3);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile Throwable error;
+
+        private Recorder(long request) {
+            this.request = request;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if(request > 0){
+                subscription.request(request);
+            }
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            while(item.hasRemaining()){
+                item.get();
+                received.countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            finished.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/* jSSC (Java Simple Serial Connector) - serial port communication library.
+ * © Alexey Sokolov (scream3r), 2010.
+ *
+ * This file is part of jSSC.
+ *
+ * jSSC is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jSSC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with jSSC.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * If you use jSSC in public project you can inform me about this by e-mail,
+ * of course if you want it.
+ *
+ * e-mail: scream3r.org@gmail.com
+ * web-site: www.scream3r.org
+ */
+package jssc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Закрытие <b>SerialPortTransmitter</b> и порта: каждое сообщение должно
+ * быть либо передано, либо завершено исключением, а переданные сообщения
+ * должны прийти на другой конец линии в порядке отправки.
+ *
+ * @author scream3r
+ */
+public class SerialPortTransmitterTest {
+
+    private static final long FUTURE_TIMEOUT = 5000;
+    private static final int PRODUCERS = 4;
+
+    private LoopbackSerialNativeInterface loopback;
+    private SerialPort sender;
+    private SerialPort receiver;
+
+    @Before
+    public void setUp() throws SerialPortException {
+        loopback = new LoopbackSerialNativeInterface("A", "B");
+        loopback.setSpeedFactor(LoopbackSerialNativeInterface.SPEED_UNLIMITED);
+        sender = new SerialPort("A", loopback);
+        receiver = new SerialPort("B", loopback);
+        assertTrue(sender.openPort());
+        assertTrue(receiver.openPort());
+    }
+
+    @After
+    public void tearDown() throws SerialPortException {
+        if(sender.isOpened()){
+            sender.closePort();
+        }
+        if(receiver.isOpened()){
+            receiver.closePort();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void deliversQueuedMessagesInOrder() throws Exception {
+        SerialPortTransmitter transmitter = new SerialPortTransmitter(sender);
+        List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+        for(int i = 0; i < 100; i++){
+            futures.add(transmitter.send(new byte[]{(byte)i}));
+        }
+        transmitter.close();
+        for(CompletableFuture<Integer> future : futures){
+            assertEquals(Integer.valueOf(1), future.get(FUTURE_TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+        byte[] data = receiver.readBytes(100, FUTURE_TIMEOUT, TimeUnit.MILLISECONDS);
+        for(int i = 0; i < 100; i++){
+            assertEquals((byte)i, data[i]);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void sendAfterCloseFails() throws Exception {
+        SerialPortTransmitter transmitter = new SerialPortTransmitter(sender);
+        transmitter.close();
+        try {
+            transmitter.send(new byte[1]).get(FUTURE_TIMEOUT, TimeUnit.MILLISECONDS);
+            fail("message sent after close");
+        }
+        catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void closeRaceCompletesEveryMessage() throws Exception {
+        for(int round = 0; round < 500; round++){
+            final SerialPortTransmitter transmitter = new SerialPortTransmitter(sender);
+            final List<CompletableFuture<Integer>> futures = new CopyOnWriteArrayList<CompletableFuture<Integer>>();
+            Thread[] producers = new Thread[PRODUCERS];
+            for(int i = 0; i < producers.length; i++){
+                producers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for(int j = 0; j < 20; j++){
+                            futures.add(transmitter.send(new byte[1]));
+                            Thread.yield();
+                        }
+                    }
+                });
+                producers[i].start();
+            }
+            Thread.yield();
+            transmitter.close();
+            for(Thread producer : producers){
+                producer.join();
+            }
+            int sent = 0;
+            for(CompletableFuture<Integer> future : futures){
+                try {
+                    future.get(FUTURE_TIMEOUT, TimeUnit.MILLISECONDS);
+                    sent++;
+                }
+                catch (ExecutionException ex) {
+                    //Сообщение отклонено закрытием
+                }
+                catch (TimeoutException ex) {
+                    fail("message neither sent nor rejected in round " + round);
+                }
+            }
+            if(sent > 0){
+                assertEquals(sent, receiver.readBytes(sent, FUTURE_TIMEOUT, TimeUnit.MILLISECONDS).length);
+            }
+            assertEquals(0, receiver.getInputBufferBytesCount());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void closePortFromCallback() throws Exception {
+        SerialPortTransmitter transmitter = new SerialPortTransmitter(sender);
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        transmitter.send(new byte[1]).thenAccept(new Consumer<Integer>() {
+            @Override
+            public void accept(Integer length) {
+                try {
+                    result.set(Boolean.valueOf(sender.closePort()));
+                }
+                catch (SerialPortException ex) {
+                    result.set(ex);
+                }
+                closed.countDown();
+            }
+        });
+        assertTrue(closed.await(FUTURE_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(Boolean.TRUE, result.get());
+        CompletableFuture<Integer> future = transmitter.send(new byte[1]);
+        try {
+            future.get(FUTURE_TIMEOUT, TimeUnit.MILLISECONDS);
+            fail("message sent to a closed port");
+        }
+        catch (ExecutionException ex) {
+            assertEquals(SerialPortException.TYPE_PORT_NOT_OPENED, ((SerialPortException)ex.getCause()).getExceptionType());
+        }
+        transmitter.close();
+    }
+}